@@ -147,8 +147,7 @@ public final class Abbreviation {
             final Iterator<Interval> intervalIterator =
                     consecutiveDocumentIterator.intervalIterator();
 
-            intResult.size(0);
-            reader.document(documentIndex, intResult);
+            reader.documentTerms(documentIndex, intResult);
             while (intervalIterator.hasNext()) {
                 final Interval interval = intervalIterator.next();
                 if ((interval.right + 2) < intResult.size()) {
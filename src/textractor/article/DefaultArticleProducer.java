@@ -44,10 +44,21 @@ public final class DefaultArticleProducer implements ArticleProducer {
      */
     public Article createArticle() {
         final Article article = new Article();
-        article.setArticleNumber(numberOfArticlesProcessed.getAndIncrement());
+        numberArticle(article);
         return article;
     }
 
+    /**
+     * Set the number of an article created elsewhere as if it had been
+     * created by this producer.  Loaders that create articles before they
+     * know whether the article will be kept can number only the ones
+     * that are.
+     * @param article The article to number
+     */
+    public void numberArticle(final Article article) {
+        article.setArticleNumber(numberOfArticlesProcessed.getAndIncrement());
+    }
+
     /**
      * Get the number of articles processed so far.
      * @return The number of articles processed so far
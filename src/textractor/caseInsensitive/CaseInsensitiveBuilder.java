@@ -28,7 +28,6 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.lang.time.StopWatch;
 import textractor.database.DocumentIndexManager;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.index.TermIterator;
 
 import java.io.FileNotFoundException;
@@ -139,7 +138,7 @@ public final class CaseInsensitiveBuilder {
 
         final DocumentIndexManager docmanager =
                 new DocumentIndexManager(basename);
-        docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+        docmanager.installTermDictionary();
         if (!line.hasOption("d")) {
             final CaseInsensitiveBuilder builder = new CaseInsensitiveBuilder(docmanager);
             final CaseInsensitiveStore cis = builder.build();
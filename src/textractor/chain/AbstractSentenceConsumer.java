@@ -28,15 +28,22 @@ import textractor.event.sentence.SentenceProcessingCompleteListener;
 import textractor.sentence.AbstractSentenceProcessor;
 import textractor.sentence.SentenceConsumer;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link org.apache.commons.chain.Command} implementation that executes
  * a {@link textractor.sentence.SentenceConsumer}.
+ * <p>
+ * By default a single thread consumes the work queue. Setting the
+ * <code>workers</code> property starts several consumer threads on the same
+ * queue, in which case {@link #consume} must be thread safe. Consumers that
+ * need to see the articles in the order they were queued can set the
+ * <code>ordered</code> property, which guarantees that calls to
+ * {@link #consume} are made one at a time and in queue order regardless of
+ * the number of workers.
  */
 public abstract class AbstractSentenceConsumer
     extends AbstractSentenceProcessor implements Command, SentenceConsumer,
@@ -45,15 +52,36 @@ public abstract class AbstractSentenceConsumer
     private static final Log LOG =
         LogFactory.getLog(AbstractSentenceConsumer.class);
 
-    /** Indicates the producer is done and there will be no more to consume. */
-    protected boolean productionCompleted;
-
     /** The queue that the consumer thread will work from. */
-    private BlockingQueue<ArticleSentencesPair> workQueue;
+    private WorkQueue<ArticleSentencesPair> workQueue;
 
     /** The {@link Context} that this {@link SentenceConsumer} can use. */
     protected TextractorContext textractorContext;
 
+    /** Number of threads consuming from the work queue. */
+    private int workers = 1;
+
+    /** Indicates that articles must be consumed in queue order. */
+    private boolean ordered;
+
+    /** Metrics for this stage of the chain. */
+    private StageMetrics metrics;
+
+    /** Number of consumer threads that have not finished yet. */
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    /** Guards taking from the queue and assigning a ticket in ordered mode. */
+    private final Object takeLock = new Object();
+
+    /** Ticket to be assigned to the next article taken in ordered mode. */
+    private long nextTicket;
+
+    /** Guards {@link #servingTicket}. */
+    private final Object orderLock = new Object();
+
+    /** Ticket of the next article allowed to be consumed in ordered mode. */
+    private long servingTicket;
+
     /**
      * Create a new {@link Command} to consume sentences.
      */
@@ -73,18 +101,20 @@ public abstract class AbstractSentenceConsumer
 
         // get the queue to work from
         workQueue = textractorContext.getWorkQueue(this);
+        metrics = textractorContext.getStageMetrics(this);
 
         // we want to add ouselves as a listener for both the producer
         // and the consuer to know when there is no more data to process
         addSentenceProcessingCompleteListener(this);
 
-        // TODO: deal with the producer complete event
-
-        // start a consumer thread
+        // start the consumer threads
         final ExecutorService executorService =
             textractorContext.getThreadPool();
-        final Future<Boolean> consumer = executorService.submit(this);
-        textractorContext.getWorkThreads().add(consumer);
+        activeWorkers.set(workers);
+        for (int i = 0; i < workers; i++) {
+            final Future<Boolean> consumer = executorService.submit(this);
+            textractorContext.getWorkThreads().add(consumer);
+        }
 
         // and let the chain continue it's work
         return CONTINUE_PROCESSING;
@@ -95,23 +125,29 @@ public abstract class AbstractSentenceConsumer
             if (LOG.isDebugEnabled()) {
                 LOG.debug(BeanUtils.describe(this));
             }
-            while (true) {
-                final ArticleSentencesPair pair =
-                        workQueue.poll(100, MILLISECONDS);
-                if (pair != null) {
+            if (ordered) {
+                consumeInOrder();
+            } else {
+                // the queue returns null once the producer is done and drained
+                ArticleSentencesPair pair;
+                long start = System.nanoTime();
+                while ((pair = workQueue.take()) != null) {
+                    final long taken = System.nanoTime();
+                    metrics.recordIdle(taken - start);
                     consume(pair.article, pair.sentences);
-                } else {
-                    if (productionCompleted) {
-                        break;
-                    }
+                    start = System.nanoTime();
+                    metrics.recordBusy(start - taken, 1);
                 }
             }
 
-            if (okToComplete()) {
+            // only the last worker to finish completes the consumer
+            if (activeWorkers.decrementAndGet() == 0 && okToComplete()) {
                 fireSentenceProcessingCompleteEvent();
             }
         } catch (Throwable t) {
+            activeWorkers.decrementAndGet();
             LOG.fatal("Got an exception in thread " + this.getClass().getName(), t);
+            consumerFailed(t);
             Thread.currentThread().getThreadGroup().interrupt();
             if (t instanceof Exception) {
                 throw (Exception) t;
@@ -122,6 +158,44 @@ public abstract class AbstractSentenceConsumer
         return true;
     }
 
+    /**
+     * Consume the work queue making sure that articles are consumed one at
+     * a time and in the order they were taken from the queue. Each article
+     * gets a ticket as it is taken and waits for its turn before being
+     * consumed.
+     * @throws Exception if there is a problem consuming an article
+     */
+    private void consumeInOrder() throws Exception {
+        while (true) {
+            final long start = System.nanoTime();
+            final ArticleSentencesPair pair;
+            final long ticket;
+            synchronized (takeLock) {
+                pair = workQueue.take();
+                ticket = nextTicket++;
+            }
+            if (pair == null) {
+                break;
+            }
+            synchronized (orderLock) {
+                while (ticket != servingTicket) {
+                    orderLock.wait();
+                }
+            }
+            final long started = System.nanoTime();
+            metrics.recordIdle(started - start);
+            try {
+                consume(pair.article, pair.sentences);
+                metrics.recordBusy(System.nanoTime() - started, 1);
+            } finally {
+                synchronized (orderLock) {
+                    servingTicket++;
+                    orderLock.notifyAll();
+                }
+            }
+        }
+    }
+
     /**
      * Indicate that all processing is complete and it's ok to terminate.
      * If false is returned the consumer thread will terminate without firing
@@ -134,6 +208,16 @@ public abstract class AbstractSentenceConsumer
         return true;
     }
 
+    /**
+     * Called on the failing thread when a consumer thread stops with an
+     * exception, before the other threads are interrupted.  Consumers that
+     * feed threads of their own should release them here since
+     * {@link #okToComplete()} will not be called.
+     * @param t The reason the consumer thread stopped
+     */
+    protected void consumerFailed(final Throwable t) {
+    }
+
     /**
      * This method gets called when a sentence processing is complete.
      * @param event A {@link SentenceProcessingCompleteEvent} object describing
@@ -141,8 +225,43 @@ public abstract class AbstractSentenceConsumer
      */
     public void processingComplete(final SentenceProcessingCompleteEvent event) {
         LOG.debug("Got completion from: " + event.getSource());
-        if (event.getSource() != this) {
-            productionCompleted = true;
+    }
+
+    /**
+     * Get the number of threads consuming from the work queue.
+     * @return The number of consumer threads
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Set the number of threads consuming from the work queue.
+     * Implementations of {@link #consume} must be thread safe if more than
+     * one worker is used.
+     * @param number The number of consumer threads
+     */
+    public void setWorkers(final int number) {
+        if (number < 1) {
+            throw new IllegalArgumentException("Number of workers must be at least 1");
         }
+        this.workers = number;
+    }
+
+    /**
+     * Indicates whether articles are consumed in the order they were queued.
+     * @return true if articles are consumed in order
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Choose if articles must be consumed one at a time in the order they
+     * were queued.
+     * @param ordered true if articles must be consumed in order
+     */
+    public void setOrdered(final boolean ordered) {
+        this.ordered = ordered;
     }
 }
@@ -36,8 +36,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -61,8 +59,42 @@ public abstract class AbstractSentenceProducer extends
     private int workQueueSize = 10000;
 
     /** The queue that the consumer thread will work from. */
-    private BlockingQueue<ArticleSentencesPair> workQueue =
-            new ArrayBlockingQueue<ArticleSentencesPair>(workQueueSize);
+    private WorkQueue<ArticleSentencesPair> workQueue =
+            new WorkQueue<ArticleSentencesPair>(workQueueSize);
+
+    /**
+     * Maximum number of threads for the whole chain, 0 means no limit.
+     * Only used when this producer is at the top of the chain.
+     */
+    private int threadPoolSize;
+
+    /**
+     * Prefix for the names of the chain threads. Only used when this
+     * producer is at the top of the chain.
+     */
+    private String threadNamePrefix;
+
+    /**
+     * Indicates whether chain threads are daemon threads. Only used when
+     * this producer is at the top of the chain.
+     */
+    private boolean daemonThreads;
+
+    /**
+     * Number of seconds between metrics reports, 0 means only report when
+     * the chain completes. Only used when this producer is at the top of
+     * the chain.
+     */
+    private int metricsInterval;
+
+    /** The {@link Context} that this producer is running in. */
+    protected TextractorContext textractorContext;
+
+    /** Metrics for this stage of the chain. */
+    private StageMetrics metrics;
+
+    /** When this producer last finished queueing an article. */
+    private long lastProduced;
 
     /**
      * The list of {@link org.apache.commons.chain.Command}s configured for
@@ -188,7 +220,9 @@ public abstract class AbstractSentenceProducer extends
             LOG.warn("Chain doesn't have any commands to execute");
         }
 
-        final TextractorContext textractorContext = (TextractorContext) context;
+        textractorContext = (TextractorContext) context;
+        configureContext(textractorContext);
+        metrics = textractorContext.getStageMetrics(this);
 
         // we want to add ouselves as a listener for both the producer
         // and the consuer to know when there is no more data to process
@@ -208,16 +242,20 @@ public abstract class AbstractSentenceProducer extends
                 ((SentenceProcessor)command).addSentenceProcessingCompleteListener(this);
             }
         }
+        // the queue is sealed when this producer fires its completion event
+        workQueue.addProducer();
+
+        // a latch for this thread and all the consumers
+        latch = new CountDownLatch(numberOfCommands + 1);
+
         // start a producer thread
         final ExecutorService executorService =
             textractorContext.getThreadPool();
 
+        lastProduced = System.nanoTime();
         final Future<Boolean> producer = executorService.submit(this);
         textractorContext.getWorkThreads().add(producer);
 
-        // a latch for this thread and all the consumers
-        latch = new CountDownLatch(numberOfCommands + 1);
-
         // Execute the commands in this list until one returns true
         // or throws an exception
         boolean saveResult = false;
@@ -259,7 +297,7 @@ public abstract class AbstractSentenceProducer extends
 
         // the assumption here is that the producer is at the top of the chain
         // so it's safe to shut everything down by now
-        executorService.shutdown();
+        textractorContext.shutdown();
 
         // Return the exception or result state from the last execute()
         if ((saveException != null) && !handled) {
@@ -277,14 +315,28 @@ public abstract class AbstractSentenceProducer extends
      */
     protected final void produce(final Article article,
                                  final Collection<Sentence> sentences) {
-        final ArticleSentencesPair pair =
-            new ArticleSentencesPair(article, sentences);
+        enqueue(new ArticleSentencesPair(article, sentences));
+    }
+
+    /**
+     * Add an article and its sentences to the work queue for the consumers.
+     * Subclasses may override this to hold on to articles before queueing
+     * them, but must eventually pass them on to this implementation.
+     * @param pair The article and sentences to queue
+     */
+    protected void enqueue(final ArticleSentencesPair pair) {
         // add the sentence to the queue for processing
         try {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Work queue is " + workQueue.size() + " / " + workQueueSize);
             }
+            final long start = System.nanoTime();
             workQueue.put(pair);
+            final long end = System.nanoTime();
+            // time blocked on a full queue is time spent waiting on consumers
+            metrics.recordBusy(start - lastProduced, 1);
+            metrics.recordIdle(end - start);
+            lastProduced = end;
         } catch (final InterruptedException e) {
             LOG.error("Interrupted while adding", e);
             Thread.currentThread().interrupt();
@@ -293,9 +345,36 @@ public abstract class AbstractSentenceProducer extends
 
     public void processingComplete(final SentenceProcessingCompleteEvent event) {
         LOG.debug("Got completion from: " + event.getSource());
+        if (event.getSource() == this) {
+            // no more sentences, let the consumers know once they drain the queue
+            try {
+                workQueue.producerDone();
+            } catch (final InterruptedException e) {
+                LOG.error("Interrupted while completing", e);
+                Thread.currentThread().interrupt();
+            }
+        }
         latch.countDown();
     }
 
+    /**
+     * Apply the thread pool and metrics settings of this producer to the
+     * context unless the pool was already started by an enclosing chain.
+     * @param context The context to configure
+     */
+    private void configureContext(final TextractorContext context) {
+        if (context.isThreadPoolStarted()) {
+            LOG.debug("Thread pool already started, not configuring context");
+            return;
+        }
+        context.setThreadPoolSize(threadPoolSize);
+        if (threadNamePrefix != null) {
+            context.setThreadNamePrefix(threadNamePrefix);
+        }
+        context.setDaemonThreads(daemonThreads);
+        context.setMetricsInterval(metricsInterval);
+    }
+
     /**
      * Get the size of the sentence production queue.
      * @return The size of the queue.
@@ -311,6 +390,75 @@ public abstract class AbstractSentenceProducer extends
     public void setWorkQueueSize(final int size) {
         this.workQueueSize = size;
         this.workQueue =
-            new ArrayBlockingQueue<ArticleSentencesPair>(workQueueSize);
+            new WorkQueue<ArticleSentencesPair>(workQueueSize);
+    }
+
+    /**
+     * Get the maximum number of threads used by the chain.
+     * @return The number of threads, 0 means no limit
+     */
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    /**
+     * Set the maximum number of threads used by the chain.  The pool must
+     * allow at least one thread for every stage and consumer worker in the
+     * chain, for every transform worker plus one for each transformer
+     * with more than one transform worker, and for every loader thread of a
+     * file loader that loads files in parallel.
+     * @param size The number of threads, 0 means no limit
+     */
+    public void setThreadPoolSize(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Thread pool size must not be negative");
+        }
+        this.threadPoolSize = size;
+    }
+
+    /**
+     * @return Prefix for the names of the chain threads
+     */
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    /**
+     * @param prefix Prefix for the names of the chain threads
+     */
+    public void setThreadNamePrefix(final String prefix) {
+        this.threadNamePrefix = prefix;
+    }
+
+    /**
+     * @return true if chain threads are daemon threads
+     */
+    public boolean isDaemonThreads() {
+        return daemonThreads;
+    }
+
+    /**
+     * @param daemon true if chain threads should be daemon threads
+     */
+    public void setDaemonThreads(final boolean daemon) {
+        this.daemonThreads = daemon;
+    }
+
+    /**
+     * @return Number of seconds between metrics reports
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * @param seconds Number of seconds between metrics reports, 0 means
+     * only report when the chain completes
+     */
+    public void setMetricsInterval(final int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Metrics interval must not be negative");
+        }
+        this.metricsInterval = seconds;
     }
 }
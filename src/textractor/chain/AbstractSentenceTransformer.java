@@ -38,13 +38,25 @@ import java.util.ListIterator;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Base class for {@link org.apache.commons.chain.Chain} implementations that
  * contain one or more {@link textractor.sentence.SentenceProcessor} commands.
+ * <p>
+ * By default articles are transformed one at a time on a single thread.
+ * Setting the <code>transformWorkers</code> property fans the articles out to
+ * that many threads of the chain thread pool, in which case
+ * {@link #transform} must be thread safe. A bounded chain thread pool must
+ * then allow one more thread for the reassembly of the transformed articles.
+ * The transformed articles are always written to the output queue in the
+ * order they were read from the input queue so that downstream commands
+ * (and document numbers) are not affected by the number of workers.
  */
 public abstract class AbstractSentenceTransformer extends
             AbstractSentenceProcessor implements Chain, SentenceTransformer,
@@ -54,17 +66,36 @@ public abstract class AbstractSentenceTransformer extends
         LogFactory.getLog(AbstractSentenceTransformer.class);
 
     /** The queue that the transformer will read to. */
-    private BlockingQueue<ArticleSentencesPair> inputQueue;
+    private WorkQueue<ArticleSentencesPair> inputQueue;
 
     /** Size of the transform output work queue. */
     private int outputQueueSize = 10000;
 
     /** The queue that the transformer will write to. */
-    private BlockingQueue<ArticleSentencesPair> outputQueue =
-            new ArrayBlockingQueue<ArticleSentencesPair>(outputQueueSize);
+    private WorkQueue<ArticleSentencesPair> outputQueue =
+            new WorkQueue<ArticleSentencesPair>(outputQueueSize);
 
-    /** Indicates the producer is done and there will be no more to consume. */
-    protected boolean productionCompleted;
+    /** Number of threads transforming articles concurrently. */
+    private int transformWorkers = 1;
+
+    /**
+     * Maximum number of articles that can be in the process of being
+     * transformed or waiting to be written in order to the output queue.
+     */
+    private int transformWindowSize = 1000;
+
+    /** Marks the end of the articles to reassemble. */
+    private static final FutureTask<ArticleSentencesPair> END_OF_TRANSFORMS =
+            new FutureTask<ArticleSentencesPair>(new Runnable() {
+                public void run() {
+                }
+            }, null);
+
+    /** The {@link Context} that this transformer can use. */
+    private TextractorContext textractorContext;
+
+    /** Metrics for this stage of the chain. */
+    private StageMetrics metrics;
 
     /**
      * The list of {@link org.apache.commons.chain.Command}s configured for
@@ -191,7 +222,7 @@ public abstract class AbstractSentenceTransformer extends
             return CONTINUE_PROCESSING;
         }
 
-        final TextractorContext textractorContext = (TextractorContext) context;
+        textractorContext = (TextractorContext) context;
 
         // we want to add ourselves as a listener for both the producer
         // and the consumer to know when there is no more data to process
@@ -199,6 +230,7 @@ public abstract class AbstractSentenceTransformer extends
 
         // Get the queue to work from
         inputQueue = textractorContext.getWorkQueue(this);
+        metrics = textractorContext.getStageMetrics(this);
 
         for (final Command command : commands) {
             textractorContext.setWorkQueue(command, outputQueue);
@@ -211,6 +243,9 @@ public abstract class AbstractSentenceTransformer extends
                 ((SentenceProcessor)command).addSentenceProcessingCompleteListener(this);
             }
         }
+        // the output queue is sealed once everything has been transformed
+        outputQueue.addProducer();
+
         // start a prducer thread
         final ExecutorService executorService =
             textractorContext.getThreadPool();
@@ -273,19 +308,24 @@ public abstract class AbstractSentenceTransformer extends
             if (LOG.isDebugEnabled()) {
                 LOG.debug(BeanUtils.describe(this));
             }
-            while (true) {
-                final ArticleSentencesPair pair = inputQueue.poll(100, MILLISECONDS);
-                if (pair != null) {
+            if (transformWorkers > 1) {
+                transformInParallel();
+            } else {
+                // the queue returns null once the producer is done and drained
+                ArticleSentencesPair pair;
+                long start = System.nanoTime();
+                while ((pair = inputQueue.take()) != null) {
+                    final long taken = System.nanoTime();
+                    metrics.recordIdle(taken - start);
                     final ArticleSentencesPair transformedPair = transform(pair);
+                    start = System.nanoTime();
+                    metrics.recordBusy(start - taken, 1);
                     if (transformedPair != null) {
                         outputQueue.put(transformedPair);
                     }
-                } else {
-                    if (productionCompleted) {
-                        break;
-                    }
                 }
             }
+            outputQueue.producerDone();
 
             if (okToComplete()) {
                 fireSentenceProcessingCompleteEvent();
@@ -302,6 +342,138 @@ public abstract class AbstractSentenceTransformer extends
         return true;
     }
 
+    /**
+     * Transform the articles from the input queue using
+     * {@link #transformWorkers} threads of the chain thread pool. Pending
+     * transformations are kept in input order and a separate thread writes
+     * each result to the output queue once it and all the ones before it
+     * are done.
+     * @throws Exception if there is a problem transforming an article
+     */
+    private void transformInParallel() throws Exception {
+        final ExecutorService threadPool = textractorContext.getThreadPool();
+        final BlockingQueue<Future<ArticleSentencesPair>> pending =
+                new ArrayBlockingQueue<Future<ArticleSentencesPair>>(
+                        transformWindowSize);
+        final BlockingQueue<FutureTask<ArticleSentencesPair>> tasks =
+                new LinkedBlockingQueue<FutureTask<ArticleSentencesPair>>();
+        final AtomicBoolean reassemblyFailed = new AtomicBoolean();
+        final Future<Boolean> reassembler =
+                threadPool.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        boolean reassembled = false;
+                        try {
+                            while (true) {
+                                final Future<ArticleSentencesPair> future =
+                                        pending.take();
+                                if (future == END_OF_TRANSFORMS) {
+                                    break;
+                                }
+                                final ArticleSentencesPair transformedPair;
+                                try {
+                                    transformedPair = future.get();
+                                } catch (ExecutionException e) {
+                                    if (e.getCause() instanceof Exception) {
+                                        throw (Exception) e.getCause();
+                                    } else {
+                                        throw e;
+                                    }
+                                }
+                                if (transformedPair != null) {
+                                    outputQueue.put(transformedPair);
+                                }
+                            }
+                            reassembled = true;
+                            return true;
+                        } finally {
+                            if (!reassembled) {
+                                // wake up the producer if it waits for room
+                                reassemblyFailed.set(true);
+                                pending.clear();
+                            }
+                        }
+                    }
+                });
+        for (int i = 0; i < transformWorkers; i++) {
+            threadPool.submit(new Callable<Boolean>() {
+                public Boolean call() throws InterruptedException {
+                    while (true) {
+                        final FutureTask<ArticleSentencesPair> task = tasks.take();
+                        if (task == END_OF_TRANSFORMS) {
+                            // leave the marker for the other workers
+                            tasks.put(task);
+                            return true;
+                        }
+                        task.run();
+                    }
+                }
+            });
+        }
+
+        try {
+            while (true) {
+                final long start = System.nanoTime();
+                final ArticleSentencesPair pair = inputQueue.take();
+                metrics.recordIdle(System.nanoTime() - start);
+                if (pair == null) {
+                    break;
+                }
+                final FutureTask<ArticleSentencesPair> task =
+                        new FutureTask<ArticleSentencesPair>(
+                                new Callable<ArticleSentencesPair>() {
+                                    public ArticleSentencesPair call() throws Exception {
+                                        final long started = System.nanoTime();
+                                        final ArticleSentencesPair transformedPair =
+                                                transform(pair);
+                                        metrics.recordBusy(
+                                                System.nanoTime() - started, 1);
+                                        return transformedPair;
+                                    }
+                                });
+                // the window of pending transformations bounds the tasks
+                enqueue(pending, reassemblyFailed, reassembler, task);
+                tasks.put(task);
+            }
+            enqueue(pending, reassemblyFailed, reassembler, END_OF_TRANSFORMS);
+
+            // wait for every transformed article to be written in order
+            try {
+                reassembler.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                } else {
+                    throw e;
+                }
+            }
+        } finally {
+            // stop the workers
+            tasks.put(END_OF_TRANSFORMS);
+        }
+    }
+
+    /**
+     * Add a pending transformation for the reassembly thread, giving up if
+     * that thread has failed.  A failed reassembly thread empties the queue,
+     * so the producer never stays blocked waiting for room.
+     * @param pending the queue of pending transformations
+     * @param reassemblyFailed set once the reassembly thread has failed
+     * @param reassembler the reassembly thread
+     * @param future the pending transformation
+     * @throws Exception if the reassembly thread failed
+     */
+    private void enqueue(final BlockingQueue<Future<ArticleSentencesPair>> pending,
+            final AtomicBoolean reassemblyFailed,
+            final Future<Boolean> reassembler,
+            final Future<ArticleSentencesPair> future) throws Exception {
+        pending.put(future);
+        if (reassemblyFailed.get()) {
+            // rethrows whatever stopped the reassembly
+            reassembler.get();
+            throw new IllegalStateException("Reassembly stopped early");
+        }
+    }
+
     /**
      * This method gets called when a sentence processing is complete.
      * @param event A {@link SentenceProcessingCompleteEvent} object
@@ -309,9 +481,6 @@ public abstract class AbstractSentenceTransformer extends
      */
     public void processingComplete(final SentenceProcessingCompleteEvent event) {
         LOG.debug("Got completion from: " + event.getSource());
-        if (event.getSource() != this) {
-            productionCompleted = true;
-        }
     }
 
     /**
@@ -341,6 +510,49 @@ public abstract class AbstractSentenceTransformer extends
     public void setOutputQueueSize(final int size) {
         this.outputQueueSize = size;
         this.outputQueue =
-            new ArrayBlockingQueue<ArticleSentencesPair>(outputQueueSize);
+            new WorkQueue<ArticleSentencesPair>(outputQueueSize);
+    }
+
+    /**
+     * Get the number of threads transforming articles concurrently.
+     * @return The number of transform threads
+     */
+    public int getTransformWorkers() {
+        return transformWorkers;
+    }
+
+    /**
+     * Set the number of threads transforming articles concurrently.
+     * Implementations of {@link #transform} must be thread safe if more than
+     * one worker is used. The workers, and one more thread that writes the
+     * transformed articles in order, are taken from the chain thread pool.
+     * @param number The number of transform threads
+     */
+    public void setTransformWorkers(final int number) {
+        if (number < 1) {
+            throw new IllegalArgumentException("Number of transform workers must be at least 1");
+        }
+        this.transformWorkers = number;
+    }
+
+    /**
+     * Get the maximum number of articles that can be in the process of being
+     * transformed when more than one worker is used.
+     * @return The size of the transform window
+     */
+    public int getTransformWindowSize() {
+        return transformWindowSize;
+    }
+
+    /**
+     * Set the maximum number of articles that can be in the process of being
+     * transformed when more than one worker is used.
+     * @param size The size of the transform window
+     */
+    public void setTransformWindowSize(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Transform window size must be at least 1");
+        }
+        this.transformWindowSize = size;
     }
 }
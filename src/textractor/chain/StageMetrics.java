@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the work done by one stage of a chain.  A stage is
+ * busy while it processes articles and idle while it waits for articles
+ * to arrive (or for room in the queue it writes to).
+ */
+public final class StageMetrics {
+    /** Number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1.0e9d;
+
+    /** The name of the stage. */
+    private final String name;
+
+    /** When the metrics were created. */
+    private final long startTime = System.nanoTime();
+
+    /** Number of articles processed by the stage. */
+    private final AtomicLong items = new AtomicLong();
+
+    /** Time spent processing articles. */
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /** Time spent waiting for work. */
+    private final AtomicLong idleNanos = new AtomicLong();
+
+    /**
+     * Create metrics for a stage.
+     * @param name The name of the stage
+     */
+    public StageMetrics(final String name) {
+        super();
+        this.name = name;
+    }
+
+    /**
+     * Record time spent processing articles.
+     * @param nanos The time spent in nanoseconds
+     * @param count The number of articles processed
+     */
+    public void recordBusy(final long nanos, final int count) {
+        busyNanos.addAndGet(nanos);
+        items.addAndGet(count);
+    }
+
+    /**
+     * Record time spent waiting for work.
+     * @param nanos The time spent in nanoseconds
+     */
+    public void recordIdle(final long nanos) {
+        idleNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return The name of the stage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of articles processed by the stage
+     */
+    public long getItems() {
+        return items.get();
+    }
+
+    /**
+     * @return The time spent processing articles in nanoseconds
+     */
+    public long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    /**
+     * @return The time spent waiting for work in nanoseconds
+     */
+    public long getIdleNanos() {
+        return idleNanos.get();
+    }
+
+    /**
+     * @return The number of articles processed per second since the
+     * metrics were created
+     */
+    public double getItemsPerSecond() {
+        final long elapsed = Math.max(1, System.nanoTime() - startTime);
+        return items.get() * NANOS_PER_SECOND / elapsed;
+    }
+
+    /**
+     * @return The fraction of the measured time the stage was busy
+     */
+    public double getBusyRatio() {
+        final long busy = busyNanos.get();
+        final long total = busy + idleNanos.get();
+        return total == 0 ? 0.0d : (double) busy / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: items=%d (%.1f/s) busy=%.1f%% busyTime=%.1fs idleTime=%.1fs",
+                name, items.get(), getItemsPerSecond(), getBusyRatio() * 100.0d,
+                busyNanos.get() / NANOS_PER_SECOND,
+                idleNanos.get() / NANOS_PER_SECOND);
+    }
+}
@@ -20,38 +20,91 @@ package textractor.chain;
 
 import org.apache.commons.chain.Command;
 import org.apache.commons.chain.impl.ContextBase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Defines a {@link org.apache.commons.chain.Context} used in a chain of
  * sentence processing commands.
+ * <p>
+ * The thread pool is created the first time it is requested so that the
+ * size, thread names and daemon policy can be configured before the chain
+ * starts.  Each stage of the chain holds on to a thread for as long as it
+ * runs, so a bounded pool must allow at least one thread per stage (plus
+ * one per extra consumer worker); submitting more work than the pool allows
+ * fails immediately rather than waiting on threads that will never free up.
+ * <p>
+ * The context also keeps {@link StageMetrics} for each stage which, along
+ * with the state of the work queues, are logged every
+ * {@link #getMetricsInterval()} seconds and once more at {@link #shutdown()}.
  */
 public class TextractorContext extends ContextBase {
     /**
      * Used during deserialization to verify that objects are compatible.
      */
-    private static final long serialVersionUID = 2L;
+    private static final long serialVersionUID = 3L;
+
+    /** Used to log debug and informational messages. */
+    private static final Log LOG = LogFactory.getLog(TextractorContext.class);
 
     /**
      * An {@link ExecutorService} that can be used to start new threads.
-     * TODO: This needs to be configurable
      */
-    private ExecutorService threadPool = Executors.newCachedThreadPool();
+    private ExecutorService threadPool;
+
+    /**
+     * Maximum number of threads in the pool, 0 means no limit.
+     */
+    private int threadPoolSize;
+
+    /**
+     * Prefix for the names of threads created by the pool.
+     */
+    private String threadNamePrefix = "textractor";
+
+    /**
+     * Indicates whether pool threads should be daemon threads.
+     */
+    private boolean daemonThreads;
+
+    /**
+     * Number of seconds between metrics reports, 0 means only report at
+     * shutdown.
+     */
+    private int metricsInterval;
+
+    /**
+     * Logs metrics periodically.
+     */
+    private ScheduledExecutorService metricsReporter;
+
+    /**
+     * Metrics for each stage in the chain, in the order the stages started.
+     */
+    private final Map<Command, StageMetrics> stageMetrics =
+        new LinkedHashMap<Command, StageMetrics>();
 
     /**
      * Queues that the producer and consumer threads will work from.
      * Consumers may be working from different producers in the chain.
      */
-    private final Map<Command, BlockingQueue<ArticleSentencesPair>> workQueues =
-        new ConcurrentHashMap<Command, BlockingQueue<ArticleSentencesPair>>();
+    private final Map<Command, WorkQueue<ArticleSentencesPair>> workQueues =
+        new ConcurrentHashMap<Command, WorkQueue<ArticleSentencesPair>>();
 
     /**
      * Threads running in this context.
@@ -71,7 +124,7 @@ public class TextractorContext extends ContextBase {
      * @param command {@link Command} to get the queue for
      * @return A queue of {@link ArticleSentencesPair} objects.
      */
-    public final BlockingQueue<ArticleSentencesPair>
+    public final WorkQueue<ArticleSentencesPair>
         getWorkQueue(final Command command) {
         return workQueues.get(command);
     }
@@ -82,7 +135,7 @@ public class TextractorContext extends ContextBase {
      * @param queue the queue to set
      */
     public final void setWorkQueue(final Command command,
-        final BlockingQueue<ArticleSentencesPair> queue) {
+        final WorkQueue<ArticleSentencesPair> queue) {
         workQueues.put(command, queue);
     }
 
@@ -102,9 +155,26 @@ public class TextractorContext extends ContextBase {
 
     /**
      * An {@link ExecutorService} that can be used to start new threads.
+     * The pool is created on the first call using the current settings.
      * @return The thread pool for this chain.
      */
-    public final ExecutorService getThreadPool() {
+    public final synchronized ExecutorService getThreadPool() {
+        if (threadPool == null) {
+            final ThreadFactory threadFactory = getThreadFactory(null);
+            if (threadPoolSize > 0) {
+                // hand work straight to an idle thread or fail - queueing
+                // would wait forever on stages that never finish
+                threadPool = new ThreadPoolExecutor(threadPoolSize,
+                        threadPoolSize, 60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(), threadFactory);
+            } else {
+                threadPool = Executors.newCachedThreadPool(threadFactory);
+            }
+            LOG.info("Created thread pool with "
+                    + (threadPoolSize > 0 ? threadPoolSize : "unlimited")
+                    + " threads");
+            startMetricsReporter();
+        }
         return threadPool;
     }
 
@@ -112,7 +182,189 @@ public class TextractorContext extends ContextBase {
      * Define the {@link ExecutorService} that can be used to start new threads.
      * @param pool The thread pool for this chain.
      */
-    public final void setThreadPool(final ExecutorService pool) {
+    public final synchronized void setThreadPool(final ExecutorService pool) {
         this.threadPool = pool;
     }
+
+    /**
+     * Indicates whether the thread pool has been created.
+     * @return true if the thread pool can no longer be configured
+     */
+    public final synchronized boolean isThreadPoolStarted() {
+        return threadPool != null;
+    }
+
+    /**
+     * Get a {@link ThreadFactory} that names threads and sets the daemon
+     * policy according to the settings of this context.
+     * @param name Name added to the thread name prefix, may be null
+     * @return A new thread factory
+     */
+    public final ThreadFactory getThreadFactory(final String name) {
+        final String prefix = name == null
+                ? threadNamePrefix : threadNamePrefix + "-" + name;
+        final boolean daemon = daemonThreads;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                        prefix + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(daemon);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @return Maximum number of threads in the pool, 0 means no limit
+     */
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    /**
+     * Set the maximum number of threads in the pool.
+     * @param size Maximum number of threads in the pool, 0 means no limit
+     */
+    public void setThreadPoolSize(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Thread pool size must not be negative");
+        }
+        checkNotStarted();
+        this.threadPoolSize = size;
+    }
+
+    /**
+     * @return Prefix for the names of threads created by the pool
+     */
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    /**
+     * @param prefix Prefix for the names of threads created by the pool
+     */
+    public void setThreadNamePrefix(final String prefix) {
+        checkNotStarted();
+        this.threadNamePrefix = prefix;
+    }
+
+    /**
+     * @return true if pool threads are daemon threads
+     */
+    public boolean isDaemonThreads() {
+        return daemonThreads;
+    }
+
+    /**
+     * Daemon threads do not keep the virtual machine running if the chain
+     * is abandoned.
+     * @param daemon true if pool threads should be daemon threads
+     */
+    public void setDaemonThreads(final boolean daemon) {
+        checkNotStarted();
+        this.daemonThreads = daemon;
+    }
+
+    /**
+     * @return Number of seconds between metrics reports
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    /**
+     * @param seconds Number of seconds between metrics reports, 0 means
+     * only report at shutdown
+     */
+    public void setMetricsInterval(final int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Metrics interval must not be negative");
+        }
+        checkNotStarted();
+        this.metricsInterval = seconds;
+    }
+
+    /**
+     * Settings that affect the pool cannot change once it exists.
+     */
+    private void checkNotStarted() {
+        if (isThreadPoolStarted()) {
+            throw new IllegalStateException("Thread pool already started");
+        }
+    }
+
+    /**
+     * Get the metrics for a stage of the chain, creating them if needed.
+     * @param command The {@link Command} to get the metrics for
+     * @return The metrics for the stage
+     */
+    public final StageMetrics getStageMetrics(final Command command) {
+        synchronized (stageMetrics) {
+            StageMetrics metrics = stageMetrics.get(command);
+            if (metrics == null) {
+                metrics = new StageMetrics(command.getClass().getSimpleName()
+                        + "#" + (stageMetrics.size() + 1));
+                stageMetrics.put(command, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Log the metrics of every stage along with the state of the queue it
+     * works from.
+     */
+    public final void logMetrics() {
+        if (!LOG.isInfoEnabled()) {
+            return;
+        }
+        synchronized (stageMetrics) {
+            for (final Map.Entry<Command, StageMetrics> entry
+                    : stageMetrics.entrySet()) {
+                final WorkQueue<ArticleSentencesPair> queue =
+                        workQueues.get(entry.getKey());
+                LOG.info(entry.getValue()
+                        + (queue == null ? "" : " queue: " + queue));
+            }
+        }
+    }
+
+    /**
+     * Start logging metrics periodically if an interval is configured.
+     */
+    private void startMetricsReporter() {
+        if (metricsInterval > 0) {
+            // never keep the virtual machine running just to report
+            metricsReporter = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable,
+                                    threadNamePrefix + "-metrics");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            metricsReporter.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    logMetrics();
+                }
+            }, metricsInterval, metricsInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Log the final metrics and shut down the thread pool.  Threads that
+     * are still running are allowed to finish.
+     */
+    public final synchronized void shutdown() {
+        if (metricsReporter != null) {
+            metricsReporter.shutdownNow();
+            metricsReporter = null;
+        }
+        logMetrics();
+        if (threadPool != null) {
+            threadPool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue that carries the end of the stream along with the data.
+ * <p>
+ * Every thread or command that writes to the queue registers itself with
+ * {@link #addProducer()} before it starts and calls {@link #producerDone()}
+ * once it has put its last element. When the last producer is done a marker
+ * is put behind the data, so consumers blocked in {@link #take()} drain
+ * everything that was produced and then get <code>null</code>. The marker is
+ * put back by each consumer that sees it so that any number of consumers
+ * are released.
+ * <p>
+ * The queue also counts the elements that go through it and the time
+ * spent waiting to put and take them, which shows whether the stage
+ * writing to the queue or the one reading from it is the bottleneck.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public final class WorkQueue<E> {
+    /** Marks the end of the stream. */
+    private static final Object END_OF_STREAM = new Object();
+
+    /** The elements in this queue followed, eventually, by the marker. */
+    private final BlockingQueue<Object> queue;
+
+    /** The capacity of this queue. */
+    private final int capacity;
+
+    /** Number of producers that have not finished yet. */
+    private final AtomicInteger producers = new AtomicInteger();
+
+    /** Indicates the end of stream marker was put in the queue. */
+    private volatile boolean sealed;
+
+    /** Number of elements put in the queue. */
+    private final AtomicLong puts = new AtomicLong();
+
+    /** Number of elements taken from the queue. */
+    private final AtomicLong takes = new AtomicLong();
+
+    /** Time spent waiting for room in the queue. */
+    private final AtomicLong putWaitNanos = new AtomicLong();
+
+    /** Time spent waiting for elements in the queue. */
+    private final AtomicLong takeWaitNanos = new AtomicLong();
+
+    /**
+     * Create a new queue.
+     * @param capacity the maximum number of elements in the queue
+     */
+    public WorkQueue(final int capacity) {
+        super();
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    /**
+     * Register a producer that will put elements in this queue.
+     * @throws IllegalStateException if the queue is already sealed
+     */
+    public void addProducer() {
+        if (sealed) {
+            throw new IllegalStateException("Work queue is already sealed");
+        }
+        producers.incrementAndGet();
+    }
+
+    /**
+     * Indicate that a producer has put its last element. The queue is sealed
+     * once every registered producer is done.
+     * @throws InterruptedException if interrupted while sealing the queue
+     */
+    public void producerDone() throws InterruptedException {
+        final int remaining = producers.decrementAndGet();
+        if (remaining == 0) {
+            sealed = true;
+            queue.put(END_OF_STREAM);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("More producers done than registered");
+        }
+    }
+
+    /**
+     * Add an element to the queue, waiting if necessary for space.
+     * @param element the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(final E element) throws InterruptedException {
+        assert element != null : "Cannot queue a null element";
+        assert !sealed : "Cannot queue an element after the queue is sealed";
+        final long start = System.nanoTime();
+        queue.put(element);
+        putWaitNanos.addAndGet(System.nanoTime() - start);
+        puts.incrementAndGet();
+    }
+
+    /**
+     * Retrieve and remove the next element, waiting until one is available.
+     * @return the next element or <code>null</code> if every producer is
+     * done and all the elements have been taken.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public E take() throws InterruptedException {
+        final long start = System.nanoTime();
+        final Object element = queue.take();
+        takeWaitNanos.addAndGet(System.nanoTime() - start);
+        if (element == END_OF_STREAM) {
+            // leave the marker for the other consumers
+            queue.put(END_OF_STREAM);
+            return null;
+        }
+        takes.incrementAndGet();
+        return (E) element;
+    }
+
+    /**
+     * Indicates that every producer is done.  There may still be elements
+     * left to take.
+     * @return true if the queue is sealed
+     */
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Get the number of elements in the queue.
+     * @return the number of elements in the queue
+     */
+    public int size() {
+        final int size = queue.size();
+        return sealed ? Math.max(0, size - 1) : size;
+    }
+
+    /**
+     * Get the maximum number of elements in the queue.
+     * @return the capacity of the queue
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of elements put in the queue
+     */
+    public long getPuts() {
+        return puts.get();
+    }
+
+    /**
+     * @return The number of elements taken from the queue
+     */
+    public long getTakes() {
+        return takes.get();
+    }
+
+    /**
+     * @return The total time spent waiting for room in the queue in
+     * nanoseconds
+     */
+    public long getPutWaitNanos() {
+        return putWaitNanos.get();
+    }
+
+    /**
+     * @return The total time spent waiting for elements in the queue in
+     * nanoseconds
+     */
+    public long getTakeWaitNanos() {
+        return takeWaitNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth=%d/%d puts=%d takes=%d putWait=%.1fs takeWait=%.1fs%s",
+                size(), capacity, puts.get(), takes.get(),
+                putWaitNanos.get() / 1.0e9d, takeWaitNanos.get() / 1.0e9d,
+                sealed ? " sealed" : "");
+    }
+}
@@ -18,10 +18,10 @@
 
 package textractor.chain.docstore;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.mg4j.document.DocumentFactory;
 import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.lang.math.IntRange;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,17 +32,14 @@ import textractor.datamodel.Article;
 import textractor.datamodel.OtmiArticle;
 import textractor.datamodel.Sentence;
 import textractor.event.sentence.SentenceProcessingCompleteEvent;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.docstore.DocumentStoreWriter;
 import textractor.mg4j.docstore.StringPerDocumentWriter;
 import textractor.mg4j.docstore.TermDocumentFrequencyWriter;
 import textractor.mg4j.document.TextractorFieldInfo;
-import textractor.mg4j.index.PositionedTerm;
 import textractor.sentence.SentenceProcessingException;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -194,27 +191,26 @@ public class DocumentStoreBuilder extends AbstractSentenceConsumer {
                 }
             }
 
+            final IntArrayList terms = new IntArrayList();
+            final IntArrayList starts = new IntArrayList();
+            final IntArrayList ends = new IntArrayList();
             for (final Sentence sentence : sentences) {
                 final int docIndex =
                         numberOfSentencesProcessed.getAndIncrement();
                 final int[] tokens;
                 if (writePositions) {
                     // TODO - what if there aren't positions in the sentence?
-                    final List<PositionedTerm> termList =
-                            docmanager.extractTerms(sentence);
-                    final List<IntRange> ranges =
-                            new ArrayList<IntRange>(termList.size());
-                    tokens = new int[termList.size()];
-                    for (int i = 0; i < termList.size(); i++) {
-                        final PositionedTerm term = termList.get(i);
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("Term " + term.getTerm() + ": \""
-                                    + term.getText() + "\" " + term.getRange());
+                    final int length = docmanager.extractTerms(sentence,
+                            terms, starts, ends);
+                    if (LOG.isTraceEnabled()) {
+                        for (int i = 0; i < length; i++) {
+                            LOG.trace("Term " + terms.getInt(i) + " ["
+                                    + starts.getInt(i) + ".." + ends.getInt(i) + "]");
                         }
-                        tokens[i] = term.getTerm();
-                        ranges.add(term.getRange());
                     }
-                    textDocStoreWriter.appendPositions(ranges);
+                    tokens = terms.toIntArray();
+                    textDocStoreWriter.appendPositions(starts.elements(),
+                            ends.elements(), length);
                 } else {
                     tokens = docmanager.extractTerms(sentence.getText());
                 }
@@ -324,8 +320,8 @@ public class DocumentStoreBuilder extends AbstractSentenceConsumer {
             throw new IOException(e);
         }
 
-        LOG.debug("Initializing hash term map");
-        docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+        LOG.debug("Initializing term dictionary");
+        docmanager.installTermDictionary();
         initTimer.stop();
         LOG.debug("Term map installed in " + initTimer.toString());
 
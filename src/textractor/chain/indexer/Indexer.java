@@ -46,6 +46,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import textractor.TextractorRuntimeException;
 import textractor.chain.AbstractSentenceConsumer;
+import textractor.chain.WorkQueue;
 import textractor.datamodel.Article;
 import textractor.datamodel.Sentence;
 import textractor.mg4j.document.AbstractTextractorDocumentFactory;
@@ -67,13 +68,10 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -100,16 +98,22 @@ public final class Indexer extends AbstractSentenceConsumer {
     /**
      * The mg4j indexer works on individual {@link Sentence} objects so we
      * consume {@link textractor.chain.ArticleSentencesPair}s and queue them
-     * up for the indexing thread.
+     * up for the indexing thread. The queue is sealed once the last
+     * article has been consumed.
      */
-    private BlockingQueue<Sentence> indexingQueue =
-            new ArrayBlockingQueue<Sentence>(indexingQueueSize);
+    private WorkQueue<Sentence> indexingQueue = newIndexingQueue(indexingQueueSize);
 
     /**
      * Indicates that the indexing process has been started.
      */
     private final AtomicBoolean indexingStarted = new AtomicBoolean();
 
+    /**
+     * Indicates that the indexing queue has been sealed, either because
+     * every article has been consumed or because consuming failed.
+     */
+    private final AtomicBoolean indexingQueueSealed = new AtomicBoolean();
+
     /**
      * Indicates that the indexing process has finished.
      */
@@ -193,6 +197,13 @@ public final class Indexer extends AbstractSentenceConsumer {
      * @param sentences A collection of Sentences to process.
      */
     public void consume(final Article article, final Collection<Sentence> sentences) {
+        if (indexingQueueSealed.get()) {
+            // another consumer thread failed and the indexer is finishing
+            LOG.warn("Indexing queue sealed, dropping article "
+                    + article.getArticleNumber());
+            return;
+        }
+
         // start the indexer once we start getting sentences to process
         if (!indexingStarted.getAndSet(true)) {
             final ExecutorService executorService =
@@ -460,61 +471,20 @@ public final class Indexer extends AbstractSentenceConsumer {
                      *         if there are no other documents.
                      */
                     public Document nextDocument() throws IOException {
-                        final String text;
-                        final Reference2ObjectMap<Enum<?>, Object> metadata;
-                        final Map<String, Object> fieldValues =
-                                new Object2ObjectOpenHashMap<String, Object>();
+                        final Sentence sentence;
                         try {
-                            Sentence sentence;
-                            do {
-                                sentence = indexingQueue.poll(100, MILLISECONDS);
-                                if (sentence == null && productionCompleted) {
-                                    return null;
-                                }
-                            } while (sentence == null);
-
-                            metadata = sentence.getMetaData();
-                            text = sentence.getText();
-                            if (indexFields != null) {
-                                final Map<String, Object> articleFieldValues =
-                                        sentence.getArticle().getAdditionalFieldsMap();
-                                for (final TextractorFieldInfo fieldInfo : indexFields) {
-                                    // Enforce additionalField Object being the right type
-                                    final Object value = assureFieldType(fieldInfo,
-                                            articleFieldValues.get(fieldInfo.getName()));
-                                    if (value != null) {
-                                        fieldValues.put(fieldInfo.getName(), value);
-                                    }
-                                }
-                            }
+                            sentence = indexingQueue.take();
                         } catch (final InterruptedException e) {
                             LOG.error("Interrupted!", e);
                             Thread.currentThread().interrupt();
                             return null;
                         }
 
-                        final Properties sentenceProperties = new Properties();
-                        sentenceProperties.addProperty("text", text);
-                        for (final Map.Entry<String, Object> entry : fieldValues.entrySet()) {
-                            sentenceProperties.addProperty(entry.getKey(), entry.getValue());
-                        }
-
-                        final String encoding =
-                                (String) metadata.get(
-                                        PropertyBasedDocumentFactory.MetadataKeys.ENCODING);
-
-                        final ByteArrayOutputStream memoryOutputStream =
-                                new ByteArrayOutputStream();
-                        try {
-                            sentenceProperties.save(memoryOutputStream, encoding);
-                        } catch (ConfigurationException e) {
-                            throw new TextractorRuntimeException(e);
+                        if (sentence == null) {
+                            // every sentence has been indexed
+                            return null;
                         }
-                        final InputStream stream =
-                                new FastBufferedInputStream(
-                                        new ByteArrayInputStream(
-                                                memoryOutputStream.toByteArray()));
-                        return factory.getDocument(stream, metadata);
+                        return getDocument(factory, indexFields, sentence);
                     }
 
                     /**
@@ -560,6 +530,104 @@ public final class Indexer extends AbstractSentenceConsumer {
         };
     }
 
+    /**
+     * Create the mg4j {@link Document} for a sentence. When the factory is a
+     * {@link AbstractTextractorDocumentFactory} that supports it (see
+     * {@link AbstractTextractorDocumentFactory#isDirectDocumentSupported()})
+     * the document is built directly from the sentence and the typed values
+     * of its article fields, otherwise
+     * the sentence is serialized and handed to
+     * {@link DocumentFactory#getDocument(InputStream, Reference2ObjectMap)}.
+     * @param factory the factory used to create the document
+     * @param indexFields the fields of the index or null if the factory does
+     * not describe them
+     * @param sentence the sentence to create the document for
+     * @return the document for the sentence
+     * @throws IOException if the document cannot be created
+     */
+    public static Document getDocument(final DocumentFactory factory,
+            final List<TextractorFieldInfo> indexFields,
+            final Sentence sentence) throws IOException {
+        final Map<String, Object> fieldValues =
+                getFieldValues(indexFields, sentence);
+        if (factory instanceof AbstractTextractorDocumentFactory
+                && ((AbstractTextractorDocumentFactory) factory)
+                        .isDirectDocumentSupported()) {
+            return ((AbstractTextractorDocumentFactory) factory).getDocument(
+                    sentence.getText(), fieldValues, sentence.getMetaData());
+        } else {
+            return getSerializedDocument(factory, sentence.getText(),
+                    fieldValues, sentence.getMetaData());
+        }
+    }
+
+    /**
+     * Get the values of the index fields for a sentence from the additional
+     * fields of its article, enforcing the type of each field.
+     * @param indexFields the fields of the index or null if the factory does
+     * not describe them
+     * @param sentence the sentence to get the field values for
+     * @return a map of field names to values
+     * @see #assureFieldType(TextractorFieldInfo, Object)
+     */
+    public static Map<String, Object> getFieldValues(
+            final List<TextractorFieldInfo> indexFields,
+            final Sentence sentence) {
+        final Map<String, Object> fieldValues =
+                new Object2ObjectOpenHashMap<String, Object>();
+        if (indexFields != null) {
+            final Map<String, Object> articleFieldValues =
+                    sentence.getArticle().getAdditionalFieldsMap();
+            for (final TextractorFieldInfo fieldInfo : indexFields) {
+                // Enforce additionalField Object being the right type
+                final Object value = assureFieldType(fieldInfo,
+                        articleFieldValues.get(fieldInfo.getName()));
+                if (value != null) {
+                    fieldValues.put(fieldInfo.getName(), value);
+                }
+            }
+        }
+        return fieldValues;
+    }
+
+    /**
+     * Create the mg4j {@link Document} for a sentence by saving the text and
+     * field values as properties that the factory parses back.
+     * @param factory the factory used to create the document
+     * @param text the text of the sentence
+     * @param fieldValues the values of the other fields of the sentence
+     * @param metadata the metadata for the sentence
+     * @return the document for the sentence
+     * @throws IOException if the document cannot be created
+     */
+    public static Document getSerializedDocument(final DocumentFactory factory,
+            final String text, final Map<String, Object> fieldValues,
+            final Reference2ObjectMap<Enum<?>, Object> metadata)
+            throws IOException {
+        final Properties sentenceProperties = new Properties();
+        sentenceProperties.addProperty("text", text);
+        for (final Map.Entry<String, Object> entry : fieldValues.entrySet()) {
+            sentenceProperties.addProperty(entry.getKey(), entry.getValue());
+        }
+
+        final String encoding =
+                (String) metadata.get(
+                        PropertyBasedDocumentFactory.MetadataKeys.ENCODING);
+
+        final ByteArrayOutputStream memoryOutputStream =
+                new ByteArrayOutputStream();
+        try {
+            sentenceProperties.save(memoryOutputStream, encoding);
+        } catch (ConfigurationException e) {
+            throw new TextractorRuntimeException(e);
+        }
+        final InputStream stream =
+                new FastBufferedInputStream(
+                        new ByteArrayInputStream(
+                                memoryOutputStream.toByteArray()));
+        return factory.getDocument(stream, metadata);
+    }
+
     /**
      * Assure that value is appropriate for fieldInfo.type. If fieldInfo.name
      * is "text" this will just return null. If value is appropriate, this will
@@ -841,16 +909,21 @@ public final class Indexer extends AbstractSentenceConsumer {
      */
     @Override
     public boolean okToComplete() {
+        // nothing else will be consumed so the indexer can finish
+        sealIndexingQueue();
+
         // if the indexer never started, it's ok to shutdown but we don't want
         // one to start while we are terminating
-        if (indexingStarted.getAndSet(true)) {
-            try {
-                // it's not ok to terminate until the indexer is done
-                indexingComplete.await();
-            } catch (InterruptedException e) {
-                LOG.error("Interrupted", e);
-                Thread.currentThread().interrupt();
-            }
+        if (!indexingStarted.getAndSet(true)) {
+            indexingComplete.countDown();
+        }
+
+        try {
+            // it's not ok to terminate until the indexer is done
+            indexingComplete.await();
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted", e);
+            Thread.currentThread().interrupt();
         }
 
         LOG.info("Number of Articles: " + numberOfArticlesProcessed.get());
@@ -859,6 +932,36 @@ public final class Indexer extends AbstractSentenceConsumer {
         return true;
     }
 
+    /**
+     * Seal the indexing queue so that the indexer does not wait for
+     * sentences that will never come.
+     * @param t The reason the consumer thread stopped
+     */
+    @Override
+    protected void consumerFailed(final Throwable t) {
+        if (indexingComplete.getCount() == 0) {
+            // the indexer is gone and nobody is waiting on the queue
+            indexingQueueSealed.set(true);
+        } else {
+            sealIndexingQueue();
+        }
+    }
+
+    /**
+     * Seal the indexing queue.  Only the first call has any effect so the
+     * queue can be sealed from both the completion and the failure paths.
+     */
+    private void sealIndexingQueue() {
+        if (indexingQueueSealed.compareAndSet(false, true)) {
+            try {
+                indexingQueue.producerDone();
+            } catch (InterruptedException e) {
+                LOG.error("Interrupted", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * @return the combineBufferSize
      */
@@ -929,7 +1032,18 @@ public final class Indexer extends AbstractSentenceConsumer {
      */
     public void setIndexingQueueSize(final int size) {
         this.indexingQueueSize = size;
-        indexingQueue =
-                new ArrayBlockingQueue<Sentence>(indexingQueueSize);
+        indexingQueue = newIndexingQueue(indexingQueueSize);
+    }
+
+    /**
+     * Create a queue for the indexing thread to work from.  The queue is
+     * fed by this consumer as a whole.
+     * @param size The size of the queue.
+     * @return A new queue for sentences to index
+     */
+    private static WorkQueue<Sentence> newIndexingQueue(final int size) {
+        final WorkQueue<Sentence> queue = new WorkQueue<Sentence>(size);
+        queue.addProducer();
+        return queue;
     }
 }
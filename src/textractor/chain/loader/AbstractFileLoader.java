@@ -30,6 +30,7 @@ import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import textractor.chain.AbstractSentenceProducer;
+import textractor.chain.ArticleSentencesPair;
 import textractor.datamodel.Article;
 import textractor.datamodel.Sentence;
 import textractor.event.sentence.SentenceProcessingCompleteEvent;
@@ -44,8 +45,16 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -54,6 +63,16 @@ import java.util.concurrent.atomic.AtomicInteger;
  * into a database via an appropriate
  * {@link textractor.sentence.SentenceConsumer} or
  * {@link textractor.sentence.SentenceProcessor}.
+ * <p>
+ * Loaders that override {@link #supportsParallelLoading()} can process
+ * several files at once by setting <code>loaderThreads</code>. Each file is
+ * then processed by one of that many threads of the chain thread pool,
+ * which holds on to the articles it produces. The articles are queued one
+ * file at a time in the same order the files would be processed by a single
+ * thread. Sentences are numbered as they are queued and loaders number
+ * their articles in {@link #acceptArticle(ArticleSentencesPair)}, so
+ * article and document numbers and the processed file log are the same
+ * regardless of the number of threads.
  */
 public abstract class AbstractFileLoader extends AbstractSentenceProducer {
     /**
@@ -66,6 +85,36 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
      */
     private final AtomicInteger numberOfSentencesProcessed = new AtomicInteger();
 
+    /**
+     * Number of threads used to process files.
+     */
+    private int loaderThreads = 1;
+
+    /**
+     * Articles produced from the file being processed by the current
+     * thread when files are loaded in parallel.
+     */
+    private final ThreadLocal<List<ArticleSentencesPair>> fileArticles =
+            new ThreadLocal<List<ArticleSentencesPair>>();
+
+    /**
+     * Files being processed in parallel, in the order they were submitted.
+     */
+    private final LinkedList<Future<FileArticles>> pendingFiles =
+            new LinkedList<Future<FileArticles>>();
+
+    /**
+     * Files waiting for a loader thread, null when loading serially.
+     */
+    private BlockingQueue<FutureTask<FileArticles>> loaderTasks;
+
+    /** Marks the end of the files for the loader threads. */
+    private static final FutureTask<FileArticles> END_OF_FILES =
+            new FutureTask<FileArticles>(new Runnable() {
+                public void run() {
+                }
+            }, null);
+
     /**
      * Name of the file to load/process.
      */
@@ -279,12 +328,224 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
             LOG.debug("Processing " + filename + " (pass "
                     + currentIteration + " of " + numberOfIterations + ")");
         }
+        if (loaderTasks != null) {
+            submitFile(filename);
+        } else {
+            logProcessedFile(filename);
+            processFilename(filename);
+        }
+    }
+
+    /**
+     * Write the name of a file to the processed file log if there is one.
+     *
+     * @param filename The name of the file processed
+     * @throws IOException if there is a problem writing to the log
+     */
+    private void logProcessedFile(final String filename) throws IOException {
         if (processedFileLogWriter != null) {
             processedFileLogWriter.append(filename);
             processedFileLogWriter.append(SystemUtils.LINE_SEPARATOR);
             processedFileLogWriter.flush();
         }
-        processFilename(filename);
+    }
+
+    /**
+     * Process a file on one of the loader threads.  If there are already
+     * enough files in progress, the oldest one is queued first.
+     *
+     * @param filename The name of the file to process
+     * @throws IOException if there is a problem processing an earlier file
+     */
+    private void submitFile(final String filename) throws IOException {
+        // keep the pool busy without holding too many files in memory
+        while (pendingFiles.size() >= 2 * loaderThreads) {
+            mergeNextFile();
+        }
+        final FutureTask<FileArticles> task = new FutureTask<FileArticles>(
+                new Callable<FileArticles>() {
+                    public FileArticles call() throws IOException {
+                        final List<ArticleSentencesPair> articles =
+                                new ArrayList<ArticleSentencesPair>();
+                        fileArticles.set(articles);
+                        try {
+                            processFilename(filename);
+                        } finally {
+                            fileArticles.remove();
+                        }
+                        return new FileArticles(filename, articles);
+                    }
+                });
+        pendingFiles.add(task);
+        loaderTasks.add(task);
+    }
+
+    /**
+     * Start {@link #loaderThreads} threads from the chain thread pool that
+     * process the files submitted to {@link #loaderTasks} until they see
+     * {@link #END_OF_FILES}.
+     */
+    private void startLoaderThreads() {
+        final BlockingQueue<FutureTask<FileArticles>> tasks =
+                new LinkedBlockingQueue<FutureTask<FileArticles>>();
+        final ExecutorService threadPool = textractorContext.getThreadPool();
+        for (int i = 0; i < loaderThreads; i++) {
+            threadPool.submit(new Callable<Boolean>() {
+                public Boolean call() throws InterruptedException {
+                    while (true) {
+                        final FutureTask<FileArticles> task = tasks.take();
+                        if (task == END_OF_FILES) {
+                            // leave the marker for the other loader threads
+                            tasks.put(task);
+                            return true;
+                        }
+                        task.run();
+                    }
+                }
+            });
+        }
+        loaderTasks = tasks;
+    }
+
+    /**
+     * Stop the loader threads, abandoning any files still in progress.
+     */
+    private void stopLoaderThreads() {
+        if (loaderTasks != null) {
+            loaderTasks.clear();
+            for (final Future<FileArticles> pending : pendingFiles) {
+                pending.cancel(true);
+            }
+            loaderTasks.add(END_OF_FILES);
+            loaderTasks = null;
+        }
+        pendingFiles.clear();
+    }
+
+    /**
+     * Wait for the oldest file in progress and queue its articles, numbering
+     * them and their sentences as if they had been loaded serially.
+     *
+     * @throws IOException if there is a problem processing the file
+     */
+    private void mergeNextFile() throws IOException {
+        final FileArticles loaded;
+        try {
+            loaded = pendingFiles.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading files");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+
+        logProcessedFile(loaded.filename);
+        beginQueueingFile(loaded.filename);
+        for (final ArticleSentencesPair pair : loaded.articles) {
+            if (acceptArticle(pair) && pair.sentences != null) {
+                for (final Sentence sentence : pair.sentences) {
+                    sentence.setDocumentNumber(
+                            numberOfSentencesProcessed.getAndIncrement());
+                }
+                super.enqueue(pair);
+            }
+        }
+    }
+
+    /**
+     * Queue the articles from every file still in progress.
+     *
+     * @throws IOException if there is a problem processing a file
+     */
+    private void mergeAllFiles() throws IOException {
+        while (!pendingFiles.isEmpty()) {
+            mergeNextFile();
+        }
+    }
+
+    /**
+     * Holds on to the articles from the file being processed when files are
+     * loaded in parallel, otherwise the articles are queued right away.
+     *
+     * @param pair The article and sentences to queue
+     */
+    @Override
+    protected final void enqueue(final ArticleSentencesPair pair) {
+        final List<ArticleSentencesPair> articles = fileArticles.get();
+        if (articles == null) {
+            super.enqueue(pair);
+        } else {
+            articles.add(pair);
+        }
+    }
+
+    /**
+     * Record, on a loader thread, an article that was created but will not
+     * be queued, so that {@link #acceptArticle(ArticleSentencesPair)} is
+     * still called for it at the point in the file where it was created.
+     *
+     * @param article The article that will not be queued
+     */
+    protected final void holdPlace(final Article article) {
+        fileArticles.get().add(new ArticleSentencesPair(article, null));
+    }
+
+    /**
+     * Indicates that the current thread is one of several loader threads,
+     * in which case the articles it produces are numbered and queued only
+     * once the whole file is processed and all the files before it have
+     * been queued.
+     *
+     * @return true if articles produced by this thread are held back
+     */
+    protected final boolean isDeferringArticles() {
+        return fileArticles.get() != null;
+    }
+
+    /**
+     * Called, in file order, before the articles a loader thread produced
+     * from a file are passed to {@link #acceptArticle(ArticleSentencesPair)}.
+     *
+     * @param filename The name of the file whose articles will be queued
+     */
+    protected void beginQueueingFile(final String filename) {
+    }
+
+    /**
+     * Called, in file order, for each article produced by a loader thread
+     * just before it is queued. Subclasses that decide whether to keep an
+     * article based on the articles loaded before it should make that
+     * decision here when {@link #isDeferringArticles()} is true. Articles
+     * created on loader threads should also be numbered here, once they
+     * are known to be kept, so that the numbers are the same as when the
+     * files are loaded serially.
+     *
+     * @param pair The article about to be queued and its sentences, which
+     * are null for an article recorded with {@link #holdPlace(Article)}
+     * that is never queued
+     * @return true if the article should be queued, false to drop it
+     */
+    protected boolean acceptArticle(final ArticleSentencesPair pair) {
+        return true;
+    }
+
+    /**
+     * Indicates whether {@link #processFilename(String)} can be called by
+     * several threads at once.  Implementations that return true must not
+     * share per-file state between calls.
+     *
+     * @return true if files can be loaded in parallel
+     */
+    protected boolean supportsParallelLoading() {
+        return false;
     }
 
     /**
@@ -317,6 +578,15 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
                 }
             }
 
+            if (loaderThreads > 1) {
+                if (supportsParallelLoading()) {
+                    startLoaderThreads();
+                } else {
+                    LOG.warn(getClass().getName() + " cannot load files in "
+                            + "parallel, ignoring loaderThreads");
+                }
+            }
+
             // iterate over the directory, file or list
             for (currentIteration = 1; currentIteration <= numberOfIterations; currentIteration++) {
                 beginIteration(currentIteration);
@@ -330,6 +600,8 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
                     LOG.error("No file or directory specified.");
                     return false;
                 }
+                // the iteration is not over until every file is queued
+                mergeAllFiles();
 
                 endIteration(currentIteration);
             }
@@ -343,6 +615,8 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
             } else {
                 throw new Exception(t);
             }
+        } finally {
+            stopLoaderThreads();
         }
         return true;
     }
@@ -357,6 +631,10 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
     public final Sentence produce(final Article article,
                                   final CharSequence text) {
         final Sentence sentence = new Sentence(article, text.toString());
+        if (isDeferringArticles()) {
+            // numbered once the file is merged in order
+            return sentence;
+        }
         final long sentenceNumber =
                 numberOfSentencesProcessed.getAndIncrement();
         sentence.setDocumentNumber(sentenceNumber);
@@ -378,6 +656,30 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
         return numberOfSentencesProcessed.get();
     }
 
+    /**
+     * Get the number of threads used to process files.
+     *
+     * @return The number of loader threads
+     */
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    /**
+     * Set the number of threads used to process files.  Only loaders that
+     * support parallel loading use more than one thread.  The threads come
+     * from the chain thread pool, which must allow for them in addition to
+     * the loader itself.
+     *
+     * @param number The number of loader threads
+     */
+    public void setLoaderThreads(final int number) {
+        if (number < 1) {
+            throw new IllegalArgumentException("Number of loader threads must be at least 1");
+        }
+        this.loaderThreads = number;
+    }
+
     /**
      * Get the name of the directory to process.
      *
@@ -608,4 +910,27 @@ public abstract class AbstractFileLoader extends AbstractSentenceProducer {
             }
         }
     }
+
+    /**
+     * The articles produced from a single file.
+     */
+    private static final class FileArticles {
+        /** The name of the file. */
+        private final String filename;
+
+        /** The articles in the order they were produced. */
+        private final List<ArticleSentencesPair> articles;
+
+        /**
+         * Create a new set of articles from a file.
+         * @param filename The name of the file
+         * @param articles The articles in the order they were produced
+         */
+        private FileArticles(final String filename,
+                final List<ArticleSentencesPair> articles) {
+            super();
+            this.filename = filename;
+            this.articles = articles;
+        }
+    }
 }
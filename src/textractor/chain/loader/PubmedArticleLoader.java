@@ -33,13 +33,14 @@ import org.apache.commons.lang.time.StopWatch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import static textractor.TextractorConstants.TIMER_LOG;
-import textractor.article.ArticleProducer;
 import textractor.article.DefaultArticleProducer;
+import textractor.chain.ArticleSentencesPair;
 import textractor.datamodel.Article;
 import textractor.datamodel.Sentence;
 import textractor.parsers.PubmedExtractor;
 import textractor.parsers.PubmedLoadExtractor;
 import textractor.parsers.PubmedLoader;
+import textractor.parsers.XmlElementStreamReader;
 import textractor.tools.DefaultSentenceSplitter;
 import textractor.tools.SentenceSplitter;
 
@@ -47,6 +48,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -56,7 +58,10 @@ import java.util.zip.GZIPInputStream;
 
 /**
  * Loader that can process pubmed/medline files into {@link Article}s and
- * {@link Sentence}s.  This class is not (yet) thread-safe.
+ * {@link Sentence}s.  Files can be loaded in parallel by setting
+ * <code>loaderThreads</code>, in which case the retraction count of each
+ * article is checked, and the articles kept are numbered, in file order as
+ * the articles are queued.
  */
 public final class PubmedArticleLoader extends AbstractFileLoader implements PubmedLoader {
 
@@ -65,13 +70,34 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
      */
     private static final Log LOG = LogFactory.getLog(PubmedArticleLoader.class);
 
+    /**
+     * Name of the element holding each citation in the file.
+     */
+    private static final String CITATION_ELEMENT = "MedlineCitation";
+
+    /**
+     * Start tag wrapped around each citation when streaming.
+     */
+    private static final String CITATION_SET_START = "<MedlineCitationSet>";
+
+    /**
+     * End tag wrapped around each citation when streaming.
+     */
+    private static final String CITATION_SET_END = "</MedlineCitationSet>";
+
     /**
      * Name of the element that defines an article.
      */
     private String articleElementName;
 
     /**
-     * Total number of articles processed by this loader.
+     * Indicates that files are parsed one citation at a time rather than
+     * read into memory whole.
+     */
+    private boolean streaming;
+
+    /**
+     * Number of articles processed from the last file by this loader.
      */
     private int numberOfArticlesProcessed;
 
@@ -79,7 +105,8 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
      * The article producer to use.
      * TODO: This needs to be dynamic
      */
-    private final ArticleProducer articleProducer = new DefaultArticleProducer();
+    private final DefaultArticleProducer articleProducer =
+            new DefaultArticleProducer();
 
     /**
      * Indicates whether or not retractions should be handled.
@@ -112,12 +139,6 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
      */
     private boolean loadAbstracts = true;
 
-    /**
-     * The actual text of an article.
-     * TODO: reusing this is NOT thread-safe - it needs to be method local
-     */
-    private final MutableString fullDocumentText = new MutableString();
-
     /**
      * Create a new loader.
      */
@@ -146,39 +167,11 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
         }
         final StopWatch timer = new StopWatch();
         LOG.info("Scanning " + filename);
-        // reset local counter
-        numberOfArticlesProcessed = 0;
-        timer.start();
-
-        final InputStream stream;
-        if (filename.endsWith(".gz") || filename.endsWith(".zip")) {
-            stream = new GZIPInputStream(new FileInputStream(filename));
-        } else {
-            stream = new FileInputStream(filename);
-        }
-
-        final FastBufferedReader reader =
-                new FastBufferedReader(new InputStreamReader(stream, "UTF-8"));
-        char[] buffer = new char[10000];
-
-        // read the whole file in memory:
-        int length;
-        int offset = 0;
-
-        try {
-            while ((length = reader.read(buffer, offset, buffer.length - offset)) > 0) {
-                offset += length;
-                buffer = CharArrays.grow(buffer, offset + 1);
-            }
-
-            // DO NOT TRIM the buffer. Trimming allocates a new buffer and
-            // copies the result in the new one. This does in fact use more
-            // memory transiently and result in more garbage collection.
-        } finally {
-            // and close up stuff we don't need anymore
-            IOUtils.closeQuietly(reader);
-            IOUtils.closeQuietly(stream);
+        if (!isDeferringArticles()) {
+            // reset local counter, loader threads reset it as they queue
+            numberOfArticlesProcessed = 0;
         }
+        timer.start();
 
         final ParsingFactory factory = new WellFormedXmlFactory();
         final BulletParser parser = new BulletParser(factory);
@@ -204,11 +197,51 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
 
         parser.setCallback(pubmedExtractor);
 
-        // parse and collect abbreviations:
-        // TODO: begin();
+        final InputStream stream;
+        if (filename.endsWith(".gz") || filename.endsWith(".zip")) {
+            stream = new GZIPInputStream(new FileInputStream(filename));
+        } else {
+            stream = new FileInputStream(filename);
+        }
 
-        parser.parse(buffer, 0, offset);
-        // TODO: end();
+        final FastBufferedReader reader =
+                new FastBufferedReader(new InputStreamReader(stream, "UTF-8"));
+
+        if (streaming) {
+            try {
+                parseCitations(reader, parser);
+            } finally {
+                IOUtils.closeQuietly(reader);
+                IOUtils.closeQuietly(stream);
+            }
+        } else {
+            char[] buffer = new char[10000];
+
+            // read the whole file in memory:
+            int length;
+            int offset = 0;
+
+            try {
+                while ((length = reader.read(buffer, offset, buffer.length - offset)) > 0) {
+                    offset += length;
+                    buffer = CharArrays.grow(buffer, offset + 1);
+                }
+
+                // DO NOT TRIM the buffer. Trimming allocates a new buffer and
+                // copies the result in the new one. This does in fact use more
+                // memory transiently and result in more garbage collection.
+            } finally {
+                // and close up stuff we don't need anymore
+                IOUtils.closeQuietly(reader);
+                IOUtils.closeQuietly(stream);
+            }
+
+            // parse and collect abbreviations:
+            // TODO: begin();
+
+            parser.parse(buffer, 0, offset);
+            // TODO: end();
+        }
 
         timer.stop();
         if (TIMER_LOG.isInfoEnabled()) {
@@ -217,11 +250,45 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
 
         if (LOG.isInfoEnabled()) {
             // count from the producer is from the start of the run
-            LOG.info("Loaded " + numberOfArticlesProcessed + " abstracts (cumulative: "
+            LOG.info("Loaded " + filename + " (cumulative abstracts: "
                     + articleProducer.getNumberOfArticlesProcessed() + ")");
         }
     }
 
+    /**
+     * Parse the citations in a file one at a time.  Only the
+     * <code>MedlineCitation</code> elements are kept, which is all the
+     * {@link PubmedExtractor} looks at in either MEDLINE or PubMed files.
+     * Each citation is wrapped in a citation set of its own so that the
+     * element paths seen by the extractor are the same as when the whole
+     * file is parsed.
+     * @param reader The decompressed file
+     * @param parser The parser to process each citation with
+     * @throws IOException if the file cannot be read
+     */
+    private void parseCitations(final Reader reader, final BulletParser parser)
+            throws IOException {
+        final XmlElementStreamReader citations =
+                new XmlElementStreamReader(reader, CITATION_ELEMENT);
+        final MutableString citation = new MutableString();
+        citation.append(CITATION_SET_START);
+        while (citations.next(citation)) {
+            citation.append(CITATION_SET_END);
+            parser.parse(citation.array(), 0, citation.length());
+            citation.length(CITATION_SET_START.length());
+        }
+    }
+
+    /**
+     * This loader keeps no per-file state outside of
+     * {@link #processFilename(String)}.
+     * @return true
+     */
+    @Override
+    protected boolean supportsParallelLoading() {
+        return true;
+    }
+
     /**
      * Get the number of articles processed so far.
      * @return The number of articles processed so far
@@ -309,7 +376,7 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
         int sentenceCount = 0;
         final List<Sentence> sentences = new ArrayList<Sentence>();
 
-        fullDocumentText.setLength(0);
+        final MutableString fullDocumentText = new MutableString();
         fullDocumentText.append(sentenceBoundary);
         if (loadTitles) {
             if (title.length() > 0) {
@@ -358,8 +425,13 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
             LOG.debug("converting " + pmid + " in " + filename);
         }
 
-        if (decrementArticleCount(pmid) == 0) {
-            final Article article = createArticle(pmid, filename);
+        // loader threads leave the count to acceptArticle so that only the
+        // last version of an article in file order is kept
+        if (isDeferringArticles() || decrementArticleCount(pmid) == 0) {
+            final Article article = newArticle(pmid, filename);
+            if (!isDeferringArticles()) {
+                numberArticle(article);
+            }
             if (additionalFieldsMap != null) {
                 for (final Map.Entry<String, Object> entry : additionalFieldsMap.entrySet()) {
                     article.setAdditionalField(entry.getKey(), entry.getValue());
@@ -384,13 +456,75 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
      * @return A new article.
      */
     public Article createArticle(final long pmid, final String filename) {
-        final Article article = articleProducer.createArticle();
+        final Article article = newArticle(pmid, filename);
+        if (isDeferringArticles()) {
+            // numbered by acceptArticle in file order
+            holdPlace(article);
+        } else {
+            numberArticle(article);
+        }
+        return article;
+    }
+
+    /**
+     * Create an {@link Article} that has not been numbered yet.
+     * @param pmid Pubmed identifier for the article.
+     * @param filename Filename that the article came from
+     * @return A new article.
+     */
+    private Article newArticle(final long pmid, final String filename) {
+        final Article article = new Article();
         article.setPmid(pmid);
         article.setFilename(filename);
-        numberOfArticlesProcessed++;
         return article;
     }
 
+    /**
+     * Number an article that is kept and count it.
+     * @param article The article to number
+     */
+    private void numberArticle(final Article article) {
+        articleProducer.numberArticle(article);
+        numberOfArticlesProcessed++;
+    }
+
+    /**
+     * Loader threads queue the articles of a file one file at a time, so
+     * the count of articles processed from a file starts over here.
+     * @param filename The name of the file whose articles will be queued
+     */
+    @Override
+    protected void beginQueueingFile(final String filename) {
+        numberOfArticlesProcessed = 0;
+    }
+
+    /**
+     * Keep an article loaded by one of several loader threads only if it
+     * is the last version of the article, numbering the articles that are
+     * kept in file order.
+     * @param pair The article about to be queued and its sentences
+     * @return true if the article has not been retracted or replaced
+     */
+    @Override
+    protected boolean acceptArticle(final ArticleSentencesPair pair) {
+        final Article article = pair.article;
+        if (pair.sentences == null) {
+            // created for a notice of retraction, numbered but not loaded
+            numberArticle(article);
+            return false;
+        }
+        final long pmid = article.getPmid();
+        if (decrementArticleCount(pmid) == 0) {
+            numberArticle(article);
+            return true;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Skipping " + pmid + ", count = "
+                    + retractionMap.get(pmid));
+        }
+        return false;
+    }
+
     /**
      * Removes an article from the collection of articles.  Most likely this
      * is because the article has been retracted.
@@ -415,6 +549,25 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
         this.articleElementName = elementName;
     }
 
+    /**
+     * Are files parsed one citation at a time?
+     * @return true if files are streamed
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Parse files one citation at a time as they are decompressed rather
+     * than reading each file into memory before parsing it.  Memory use
+     * then depends on the size of the largest citation rather than the size
+     * of the file, and articles reach the chain as soon as they are parsed.
+     * @param stream true if files should be streamed
+     */
+    public void setStreaming(final boolean stream) {
+        this.streaming = stream;
+    }
+
     /**
      * Are retractions being handled?
      * @return true if retractions are being handled
@@ -618,10 +771,12 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
             }
             for (final String retractedPmidString : retractedPmidStrings) {
                 final long retractedPmid = Long.parseLong(retractedPmidString);
-                if (!retractionMap.containsKey(retractedPmid)) {
-                    LOG.error("Retracted unknown article: " + retractedPmid);
+                synchronized (retractionMap) {
+                    if (!retractionMap.containsKey(retractedPmid)) {
+                        LOG.error("Retracted unknown article: " + retractedPmid);
+                    }
+                    retractionMap.put(retractedPmid, Byte.MAX_VALUE);
                 }
-                retractionMap.put(retractedPmid, Byte.MAX_VALUE);
             }
         }
 
@@ -631,14 +786,17 @@ public final class PubmedArticleLoader extends AbstractFileLoader implements Pub
          */
         private void incrementArticleCount(final MutableString pmidString) {
             final long pmid = Long.parseLong(pmidString.toString());
-            if (retractionMap.containsKey(pmid)) {
-                // the article was already processed at least once
-                // so we need to use it's previous count
-                final byte count = retractionMap.get(pmid);
-                retractionMap.put(pmid, (byte) (count + 1));
-            } else {
-                // this is the first time we've seen this article
-                retractionMap.put(pmid, (byte) 1);
+            // several loader threads may be counting at once
+            synchronized (retractionMap) {
+                if (retractionMap.containsKey(pmid)) {
+                    // the article was already processed at least once
+                    // so we need to use it's previous count
+                    final byte count = retractionMap.get(pmid);
+                    retractionMap.put(pmid, (byte) (count + 1));
+                } else {
+                    // this is the first time we've seen this article
+                    retractionMap.put(pmid, (byte) 1);
+                }
             }
         }
     }
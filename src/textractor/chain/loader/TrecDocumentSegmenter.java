@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Splits a TREC collection file into documents in a single pass.  Each
+ * document starts with a <code>&lt;DOC&gt;</code> line and ends with a
+ * <code>&lt;/DOC&gt;</code> line.  The header of a document is everything
+ * from the <code>&lt;DOC&gt;</code> line up to and including the
+ * <code>&lt;/DOCHDR&gt;</code> line and the content is everything after that
+ * up to, but not including, the <code>&lt;/DOC&gt;</code> line.  Marker lines
+ * must match exactly; a carriage return before the line feed is ignored.
+ * Anything outside of a document is skipped.
+ */
+public final class TrecDocumentSegmenter {
+    /** Size of the buffer used to read the stream. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Number of bytes in a line that are kept to compare with markers. */
+    private static final int MAX_MARKER_LENGTH = 16;
+
+    /** Ends a line. */
+    private static final byte[] LINE_FEED = {'\n'};
+
+    private static final byte[] DOC_OPEN;
+    private static final byte[] DOC_CLOSE;
+    private static final byte[] DOCHDR_CLOSE;
+
+    static {
+        try {
+            DOC_OPEN = "<DOC>".getBytes("ASCII");
+            DOC_CLOSE = "</DOC>".getBytes("ASCII");
+            DOCHDR_CLOSE = "</DOCHDR>".getBytes("ASCII");
+        } catch (UnsupportedEncodingException cantHappen) {
+            throw new RuntimeException(cantHappen);
+        }
+    }
+
+    /**
+     * The header and content of a single document.
+     */
+    public static final class TrecDocument {
+        /** The header of the document. */
+        private final byte[] header;
+
+        /** The content of the document. */
+        private final byte[] content;
+
+        /**
+         * Create a new document.
+         * @param header The header of the document
+         * @param content The content of the document
+         */
+        public TrecDocument(final byte[] header, final byte[] content) {
+            super();
+            this.header = header;
+            this.content = content;
+        }
+
+        /**
+         * @return The bytes from the start of the document to the end of the
+         * header
+         */
+        public byte[] getHeader() {
+            return header;
+        }
+
+        /**
+         * @return The bytes from the end of the header to the end of the
+         * document
+         */
+        public byte[] getContent() {
+            return content;
+        }
+    }
+
+    /** The stream to read documents from. */
+    private final InputStream stream;
+
+    /** Bytes read from the stream. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Position of the next byte to scan in the buffer. */
+    private int position;
+
+    /** Number of bytes in the buffer. */
+    private int limit;
+
+    /** The first bytes of the current line. */
+    private final byte[] line = new byte[MAX_MARKER_LENGTH];
+
+    /** Length of the current line without the line feed. */
+    private int lineLength;
+
+    /** Position of the current line in the current document. */
+    private int lineStart;
+
+    /** The bytes of the current document. */
+    private byte[] document = new byte[BUFFER_SIZE];
+
+    /** Number of bytes in the current document. */
+    private int documentLength;
+
+    /** Indicates a document has started. */
+    private boolean inDocument;
+
+    /** Length of the header of the current document, -1 until found. */
+    private int headerLength = -1;
+
+    /**
+     * Create a new segmenter.
+     * @param stream The stream to read documents from
+     */
+    public TrecDocumentSegmenter(final InputStream stream) {
+        super();
+        this.stream = stream;
+    }
+
+    /**
+     * Read the next document.
+     * @return The next document or null if there are no more
+     * @throws IOException if the stream cannot be read
+     */
+    public TrecDocument next() throws IOException {
+        while (true) {
+            if (position == limit) {
+                limit = stream.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    // a last line without a line feed can still end a document
+                    return lineLength > 0 ? endOfLine() : null;
+                }
+            }
+
+            // scan to the end of the line or the buffer
+            final int start = position;
+            if (lineLength == 0) {
+                lineStart = documentLength;
+            }
+            boolean endOfLine = false;
+            while (position < limit) {
+                final byte b = buffer[position++];
+                if (b == '\n') {
+                    endOfLine = true;
+                    break;
+                }
+                if (lineLength < MAX_MARKER_LENGTH) {
+                    line[lineLength] = b;
+                }
+                lineLength++;
+            }
+            if (inDocument) {
+                append(buffer, start, position - start);
+            }
+            if (endOfLine) {
+                final TrecDocument trecDocument = endOfLine();
+                if (trecDocument != null) {
+                    return trecDocument;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the line just read for document markers.
+     * @return A document if the line ended one, null otherwise
+     */
+    private TrecDocument endOfLine() {
+        TrecDocument trecDocument = null;
+        if (!inDocument) {
+            if (isMarker(DOC_OPEN)) {
+                // the marker line was skipped, so add it now
+                inDocument = true;
+                documentLength = 0;
+                headerLength = -1;
+                append(line, 0, lineLength);
+                append(LINE_FEED, 0, 1);
+            }
+        } else if (isMarker(DOC_CLOSE)) {
+            final int end = lineStart;
+            final int header = headerLength < 0 ? end : headerLength;
+            trecDocument = new TrecDocument(
+                    Arrays.copyOfRange(document, 0, header),
+                    Arrays.copyOfRange(document, header, end));
+            inDocument = false;
+            documentLength = 0;
+        } else if (headerLength < 0 && isMarker(DOCHDR_CLOSE)) {
+            headerLength = documentLength;
+        }
+        lineLength = 0;
+        return trecDocument;
+    }
+
+    /**
+     * Check if the current line is a marker, ignoring a trailing carriage
+     * return.
+     * @param marker The marker to check for
+     * @return true if the line is the marker
+     */
+    private boolean isMarker(final byte[] marker) {
+        int length = lineLength;
+        if (length > 0 && length <= MAX_MARKER_LENGTH
+                && line[length - 1] == '\r') {
+            length--;
+        }
+        if (length != marker.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[i] != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add bytes to the current document.
+     * @param bytes The bytes to add
+     * @param offset Where the bytes start
+     * @param length The number of bytes to add
+     */
+    private void append(final byte[] bytes, final int offset, final int length) {
+        if (documentLength + length > document.length) {
+            document = Arrays.copyOf(document,
+                    Math.max(document.length * 2, documentLength + length));
+        }
+        System.arraycopy(bytes, offset, document, documentLength, length);
+        documentLength += length;
+    }
+}
@@ -19,8 +19,6 @@
 package textractor.chain.loader;
 
 import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
-import it.unimi.dsi.fastutil.objects.ObjectArrayList;
-import it.unimi.dsi.mg4j.io.SegmentedInputStream;
 import it.unimi.dsi.mg4j.util.MutableString;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
@@ -32,13 +30,16 @@ import org.htmlparser.util.ParserException;
 import static textractor.TextractorConstants.TIMER_LOG;
 import textractor.datamodel.Article;
 import textractor.datamodel.OtmiArticle;
+import textractor.chain.loader.TrecDocumentSegmenter.TrecDocument;
 import textractor.datamodel.Sentence;
 import textractor.html.Html2Text;
 import textractor.tools.DefaultSentenceSplitter;
 import textractor.tools.PositionedText;
 import textractor.tools.SentenceSplitter;
+import textractor.util.ReadAheadInputStream;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,12 +50,25 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Loader that can process TREC GOV2 files into
  * {@link textractor.datamodel.Article}s and
  * {@link textractor.datamodel.Sentence}s.
+ * <p>
+ * Each file is read once.  Decompression runs ahead on one thread, a
+ * {@link TrecDocumentSegmenter} splits the bytes into documents on another
+ * and the loader thread parses the documents as they become available.
+ * The two extra threads come from the chain thread pool, which must allow
+ * for them.
  */
 public final class TrecGov2ArticleLoader extends AbstractFileLoader {
     /**
@@ -94,21 +108,15 @@ public final class TrecGov2ArticleLoader extends AbstractFileLoader {
      */
     private boolean loadAbstracts = true;
 
-    private static final byte[] DOC_OPEN;
-    private static final byte[] DOC_CLOSE;
     private static final byte[] DOCNO_OPEN;
     private static final byte[] DOCNO_CLOSE;
     private static final byte[] DOCHDR_OPEN;
-    private static final byte[] DOCHDR_CLOSE;
 
     static {
         try {
-            DOC_OPEN = "<DOC>".getBytes("ASCII");
-            DOC_CLOSE = "</DOC>".getBytes("ASCII");
             DOCNO_OPEN = "<DOCNO>".getBytes("ASCII");
             DOCNO_CLOSE = "</DOCNO>".getBytes("ASCII");
             DOCHDR_OPEN = "<DOCHDR>".getBytes("ASCII");
-            DOCHDR_CLOSE = "</DOCHDR>".getBytes("ASCII");
         } catch (UnsupportedEncodingException cantHappen) {
             throw new RuntimeException(cantHappen);
         }
@@ -129,41 +137,25 @@ public final class TrecGov2ArticleLoader extends AbstractFileLoader {
     private String documentUri;
 
     /**
-     * A compact description of the location and of the internal segmentation of
-     * a TREC document inside a file.  Essentially lifted from
-     * {@link it.unimi.dsi.mg4j.document.TRECDocumentCollection}.
+     * Number of bytes in each block read ahead of the segmenter.
      */
-    private static class TRECDocumentDescriptor {
-        /** The starting position of this document in the file. */
-        private final long startMarker;
-        /** The starting position of the content of this document in the file. */
-        private final int intermediateMarkerDiff;
-        /** The ending position. */
-        private final int stopMarkerDiff;
-
-        public TRECDocumentDescriptor(final long start,
-                                      final long intermediateMarker,
-                                      final long stop) {
-            this.startMarker = start;
-            this.intermediateMarkerDiff = (int) (intermediateMarker - start);
-            this.stopMarkerDiff = (int) (stop - start);
-        }
+    private static final int READ_AHEAD_BLOCK_SIZE = 256 * 1024;
 
-        public final long[] toSegments() {
-            return new long[] {
-                    startMarker,
-                    startMarker + intermediateMarkerDiff,
-                    stopMarkerDiff + startMarker
-            };
-        }
-    }
+    /**
+     * Number of blocks read ahead of the segmenter.
+     */
+    private static final int READ_AHEAD_BLOCKS = 8;
 
     /**
-     * The list of document descriptors.  We assume that descriptors within
-     * the same file are contiguous
+     * Number of documents split ahead of the parser.
      */
-    private final transient ObjectArrayList<TRECDocumentDescriptor> descriptors =
-            new ObjectArrayList<TRECDocumentDescriptor>();
+    private static final int DOCUMENT_QUEUE_SIZE = 64;
+
+    /**
+     * Marks the end of the documents in a file.
+     */
+    private static final TrecDocument END_OF_DOCUMENTS =
+            new TrecDocument(new byte[0], new byte[0]);
 
     /**
      * Total number of articles processed by this loader.
@@ -209,69 +201,45 @@ public final class TrecGov2ArticleLoader extends AbstractFileLoader {
         // configure the parser before loading
         configureParser(parser);
 
-        // read the file to extract mark positions of individual documents
-        // within the file
-        FastBufferedInputStream fbis = null;
-        try {
-            fbis = new FastBufferedInputStream(openFileStream(filename));
-
-            long currStart = 0;
-            long currInter = 0;
-            long oldPos = 0;
-            boolean pastHeader = false;
-            boolean startedBlock = false;
-
-            descriptors.clear();
-
-            int l;
-            while ((l = fbis.readLine(buffer)) != -1)  {
-                if (l == buffer.length) {
-                    // We filled the buffer, which means we have a very very long line. Let's skip it.
-                    while ((l = fbis.readLine(buffer)) == buffer.length) {
-                        ;
+        // decompress, split into documents and parse as separate stages,
+        // on the chain thread pool unless the loader runs outside a chain
+        final boolean privateStages = textractorContext == null;
+        final ExecutorService stages = privateStages
+                ? Executors.newFixedThreadPool(2)
+                : textractorContext.getThreadPool();
+        final ReadAheadInputStream stream = new ReadAheadInputStream(
+                openFileStream(filename), READ_AHEAD_BLOCK_SIZE,
+                READ_AHEAD_BLOCKS, stages);
+        final BlockingQueue<TrecDocument> documents =
+                new ArrayBlockingQueue<TrecDocument>(DOCUMENT_QUEUE_SIZE);
+        final Future<Boolean> segmenter = stages.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                try {
+                    final TrecDocumentSegmenter trecDocumentSegmenter =
+                            new TrecDocumentSegmenter(stream);
+                    TrecDocument document;
+                    while ((document = trecDocumentSegmenter.next()) != null) {
+                        documents.put(document);
                     }
-                } else {
-                    if (!startedBlock && equals(buffer, l, DOC_OPEN)) {
-                        currStart = oldPos;
-                        startedBlock = true; // Start of the current block (includes <DOC> marker)
-                    } else if (startedBlock && equals(buffer, l, DOC_CLOSE)) {
-                        final long currStop = oldPos;
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Setting markers <" + currStart + ", "
-                                    + currInter + ", " + currStop + ">" );
-                        }
-                        descriptors.add(new TRECDocumentDescriptor(currStart, currInter, currStop));
-                        startedBlock = pastHeader = false;
-                    } else if (startedBlock && !pastHeader && equals(buffer, l, DOCHDR_CLOSE)) {
-                        currInter = fbis.position();
-                        pastHeader = true;
-                    }
-                    oldPos = fbis.position();
+                } catch (InterruptedException e) {
+                    // the loader has stopped taking documents
+                    return false;
+                } catch (Exception e) {
+                    // wake the loader so it can report the error
+                    documents.put(END_OF_DOCUMENTS);
+                    throw e;
                 }
+                documents.put(END_OF_DOCUMENTS);
+                return true;
             }
+        });
 
-        } finally {
-            IOUtils.closeQuietly(fbis);
-        }
-
-        // Take the positions stored above and "convert" them to
-        // individual streams for processing.  The SegmentedInputStream
-        // allows us to do this without constantly opening and closing
-        // a file.
-        InputStream iStream = null;
-        SegmentedInputStream siStream = null;
         try {
-            iStream = openFileStream(filename);
-            siStream = new SegmentedInputStream(iStream);
-            for (final TRECDocumentDescriptor descriptor : descriptors) {
-                siStream.addBlock(descriptor.toSegments());
-            }
-
-            boolean done = false;
-            while (!done) {
-                parseHeader(siStream);
-                siStream.reset();
-                parseContent(siStream, filename);
+            TrecDocument document;
+            while ((document = documents.take()) != END_OF_DOCUMENTS) {
+                parseHeader(new ByteArrayInputStream(document.getHeader()));
+                parseContent(new ByteArrayInputStream(document.getContent()),
+                        filename);
 
                 final Article article =
                         createArticle(documentNumber, documentUri, filename);
@@ -279,16 +247,25 @@ public final class TrecGov2ArticleLoader extends AbstractFileLoader {
                         parser.getText(), parser.getPositions());
                 produce(article, sentences);
                 numberOfDocuments++;
+            }
 
-                if (siStream.hasMoreBlocks()) {
-                    siStream.nextBlock();
-                } else {
-                    done = true;
-                }
+            // rethrow anything that stopped the segmenter early
+            segmenter.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + filename);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException(e.getCause());
         } finally {
-            IOUtils.closeQuietly(siStream);
-            IOUtils.closeQuietly(iStream);
+            // stop both stages, closing the stream stops the read ahead
+            segmenter.cancel(true);
+            IOUtils.closeQuietly(stream);
+            if (privateStages) {
+                stages.shutdownNow();
+            }
         }
 
         timer.stop();
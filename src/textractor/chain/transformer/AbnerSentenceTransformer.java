@@ -50,9 +50,15 @@ public final class AbnerSentenceTransformer
         new AtomicInteger();
 
     /**
-     * Used to perform named entity tagging.
+     * Used to perform named entity tagging. The tagger is not thread safe
+     * so each transform worker gets its own.
      */
-    private static final Tagger TAGGER = new Tagger();
+    private static final ThreadLocal<Tagger> TAGGER = new ThreadLocal<Tagger>() {
+        @Override
+        protected Tagger initialValue() {
+            return new Tagger();
+        }
+    };
 
     /**
      * Create a new {@link textractor.sentence.SentenceTransformer} that
@@ -100,7 +106,7 @@ public final class AbnerSentenceTransformer
             int lastIndex = 0;
 
             // Big assumption here that the entities are in order they are found
-            final String[][] entities = TAGGER.getEntities(text);
+            final String[][] entities = TAGGER.get().getEntities(text);
             for (int i = 0; i < entities[0].length; i++) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(entities[1][i] + " [" + entities[0][i] + "]");
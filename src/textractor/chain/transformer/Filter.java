@@ -28,7 +28,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A {@link textractor.sentence.SentenceTransformer} that transforms
- * sentences using a specific {@link textractor.util.SentenceFilter}
+ * sentences using a specific {@link textractor.util.SentenceFilter}.
+ * When more than one transform worker is used, every worker calls the same
+ * {@link textractor.util.SentenceFilter}, which must be thread safe.
  */
 public final class Filter extends AbstractSentenceTransformer {
     /**
@@ -49,9 +51,10 @@ public final class Filter extends AbstractSentenceTransformer {
     private String sentenceFilterClass;
 
     /**
-     * The {@link textractor.util.SentenceFilter} to use.
+     * The {@link textractor.util.SentenceFilter} to use, shared by all the
+     * transform workers.
      */
-    private SentenceFilter sentenceFilter;
+    private volatile SentenceFilter sentenceFilter;
 
     /**
      * Create a new {@link textractor.sentence.SentenceTransformer}.
@@ -20,6 +20,7 @@ package textractor.database;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import it.unimi.dsi.mg4j.document.DocumentFactory;
 import it.unimi.dsi.mg4j.document.PropertyBasedDocumentFactory;
 import it.unimi.dsi.mg4j.index.BitStreamIndex;
@@ -43,11 +44,15 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.IntRange;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import textractor.TextractorRuntimeException;
 import textractor.datamodel.Sentence;
+import textractor.mg4j.HashTermMap;
+import textractor.mg4j.TermDictionary;
 import textractor.mg4j.TermFrequency;
 import textractor.mg4j.document.AbstractTextractorDocumentFactory;
 import textractor.mg4j.document.TextractorDocumentFactory;
 import textractor.mg4j.document.TextractorFieldInfo;
+import textractor.mg4j.index.DocumentUnion;
 import textractor.mg4j.index.PositionedTerm;
 import textractor.mg4j.index.TermIterator;
 import textractor.mg4j.io.ProteinWordSplitterReader;
@@ -68,7 +73,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -122,17 +126,17 @@ public final class DocumentIndexManager implements Closeable {
     private final Map<String, IndexDetails> allAliasesToIndexMap =
             new Object2ObjectOpenHashMap<String, IndexDetails>();
 
-    /** Temporary variable used with splitText. */
-    private final MutableString resultExtractTerms = new MutableString();
-
-    /** Temporary variable used with splitText. */
-    private final MutableString wordExtractTerms = new MutableString();
-
-    /** Temporary variable used with splitText/wordReader. */
-    private final MutableString wordSplitText = new MutableString();
-
-    /** Temporary variable used with splitText/wordReader. */
-    private final MutableString nonWordSplitText = new MutableString();
+    /**
+     * Buffers and word readers used by each thread to split text into terms,
+     * so that any number of threads can extract terms at the same time.
+     */
+    private final ThreadLocal<TokenizationContext> tokenizationContext =
+            new ThreadLocal<TokenizationContext>() {
+                @Override
+                protected TokenizationContext initialValue() {
+                    return new TokenizationContext();
+                }
+            };
 
     /**
      * The textractor properties.
@@ -154,6 +158,9 @@ public final class DocumentIndexManager implements Closeable {
     /** The DocumentFactory being used with this DocumentIndexManager. */
     private AbstractTextractorDocumentFactory factory;
 
+    /** Caches the results of queries, null when results are not cached. */
+    private QueryResultCache queryResultCache;
+
     /**
      * Initializes the DocumentIndexManager using the basename with a default
      * term suffix and property file suffix.
@@ -450,6 +457,12 @@ public final class DocumentIndexManager implements Closeable {
                         /* term maps */ true
                         );
             final IndexDetails details = new IndexDetails(aliasIndexBasename, alias, aliasIndex);
+            if (TermDictionary.isCurrent(aliasIndexBasename)) {
+                // mapped, so much faster to open than the term map of the index
+                details.setTermMap(new TermDictionary(aliasIndexBasename));
+                LOG.info("Using term dictionary "
+                        + TermDictionary.getFilename(aliasIndexBasename));
+            }
             details.setWordReader(wordReader);
             if (wordReader != null) {
                 textAliasesToIndexMap.put(alias, details);
@@ -638,6 +651,9 @@ public final class DocumentIndexManager implements Closeable {
      * Close all loaded indexes.
      */
     public void close() {
+        if (queryResultCache != null) {
+            queryResultCache.clear();
+        }
         for (final Map.Entry<String, IndexDetails> indexEntry : allAliasesToIndexMap.entrySet()) {
             final String indexAlias = indexEntry.getKey();
             final IndexDetails indexDetails = indexEntry.getValue();
@@ -679,53 +695,153 @@ public final class DocumentIndexManager implements Closeable {
      * be from the "text" index.
      * @param sentence the sentence to get the positions terms for
      * @return the list of positioned terms for the given sentence
+     * @see #extractTerms(Sentence, IntArrayList, IntArrayList, IntArrayList)
      */
-    public synchronized List<PositionedTerm> extractTerms(final Sentence sentence) {
-        final IndexDetails indexDetails = getIndexDetails("text");
-        final TermProcessor currentTermProcessor = indexDetails.getTermProcessor();
+    public List<PositionedTerm> extractTerms(final Sentence sentence) {
+        final IntArrayList terms = new IntArrayList();
+        final IntArrayList starts = new IntArrayList();
+        final IntArrayList ends = new IntArrayList();
+        final List<String> words = new ArrayList<String>();
+        final int length = extractTerms(sentence, terms, starts, ends, words);
 
-        final String sentenceText = sentence.getText();
-        final String downcasedSentenceText = sentenceText.toLowerCase();
-        final List<Integer> sentencePositions = sentence.getPositions();
-        final int length = splitText(indexDetails.getWordReader(),
-                sentenceText, resultExtractTerms);
         final List<PositionedTerm> termList = new ArrayList<PositionedTerm>(length);
-        int pos;
-        int lastPos = 0;
-        int i = 0;
-
-        while ((pos = resultExtractTerms.indexOf(' ', lastPos)) >= 0) {
-            wordExtractTerms.length(0);
-            wordExtractTerms.append(resultExtractTerms.subSequence(lastPos, pos));
-
-            final int start = downcasedSentenceText.indexOf(
-                    wordExtractTerms.toString().toLowerCase(), i);
-            final int end = start + wordExtractTerms.length();
-            final String text = wordExtractTerms.toString();
-
-            currentTermProcessor.processTerm(wordExtractTerms);
-
-            final int termIndex = findTermIndex(indexDetails, wordExtractTerms);
+        for (int i = 0; i < length; i++) {
             final PositionedTerm positionedTerm;
             if (sentence.hasPositons()) {
-                final int startPosition = sentencePositions.get(start);
-                final int endPosition = sentencePositions.get(end - 1);
                 final IntRange termRange =
-                        new IntRange(startPosition, endPosition);
-                positionedTerm = new PositionedTerm(termIndex, termRange, text);
+                        new IntRange(starts.getInt(i), ends.getInt(i));
+                positionedTerm = new PositionedTerm(terms.getInt(i), termRange,
+                        words.get(i));
             } else {
-                positionedTerm = new PositionedTerm(termIndex, new IntRange(0));
+                positionedTerm = new PositionedTerm(terms.getInt(i), new IntRange(0));
             }
             if (LOG.isTraceEnabled()) {
                 LOG.trace("adding " + positionedTerm);
             }
             termList.add(positionedTerm);
-            i = end;
-            lastPos = pos + 1;
         }
         return termList;
     }
 
+    /**
+     * Extract the terms of the given sentence along with the positions they
+     * occupied in the original document source.  The terms will be from the
+     * "text" index.  The word reader splits the sentence in a single pass
+     * and reports where each word starts, so no search in the sentence text
+     * and no object per term is needed.
+     * @param sentence the sentence to get the terms for
+     * @param terms The list is cleared and the index of each term is stored
+     * in <code>terms.elements()</code>, which grows as needed
+     * @param starts The list is cleared and the first position of each term
+     * is stored in <code>starts.elements()</code>, or zero if the sentence
+     * has no positions
+     * @param ends The list is cleared and the last position of each term
+     * is stored in <code>ends.elements()</code>, or zero if the sentence
+     * has no positions
+     * @return the number of terms in the sentence
+     */
+    public int extractTerms(final Sentence sentence, final IntArrayList terms,
+            final IntArrayList starts, final IntArrayList ends) {
+        return extractTerms(sentence, terms, starts, ends, null);
+    }
+
+    /**
+     * Extract the terms of the given sentence along with their positions.
+     * @param sentence the sentence to get the terms for
+     * @param terms where to store the index of each term
+     * @param starts where to store the first position of each term
+     * @param ends where to store the last position of each term
+     * @param words where to add the text of each term before it is
+     * processed, or null if the text is not needed
+     * @return the number of terms in the sentence
+     */
+    private int extractTerms(final Sentence sentence, final IntArrayList terms,
+            final IntArrayList starts, final IntArrayList ends,
+            final List<String> words) {
+        final IndexDetails indexDetails = getIndexDetails("text");
+        final TermProcessor currentTermProcessor = indexDetails.getTermProcessor();
+        final TokenizationContext context = tokenizationContext.get();
+        final MutableString resultExtractTerms = context.result;
+        final MutableString wordExtractTerms = context.word;
+
+        final String sentenceText = sentence.getText();
+        final List<Integer> sentencePositions =
+                sentence.hasPositons() ? sentence.getPositions() : null;
+        final int length = splitText(context, indexDetails.getWordReader(),
+                sentenceText, resultExtractTerms);
+        final int[] offsets = context.offsets.elements();
+        terms.size(length);
+        starts.size(length);
+        ends.size(length);
+        final int[] termElements = terms.elements();
+        final int[] startElements = starts.elements();
+        final int[] endElements = ends.elements();
+
+        final char[] resChars = resultExtractTerms.array();
+        String downcasedSentenceText = null;
+        int lastPos = 0;
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            int pos = lastPos;
+            while (resChars[pos] != ' ') {
+                pos++;
+            }
+            wordExtractTerms.length(0);
+            wordExtractTerms.append(resChars, lastPos, pos - lastPos);
+            if (words != null) {
+                words.add(wordExtractTerms.toString());
+            }
+
+            // the word reader may change the word, find it in the text then
+            int start = offsets[i];
+            if (!regionMatches(sentenceText, start, wordExtractTerms)) {
+                if (downcasedSentenceText == null) {
+                    downcasedSentenceText = sentenceText.toLowerCase();
+                }
+                start = downcasedSentenceText.indexOf(
+                        wordExtractTerms.toString().toLowerCase(), end);
+            }
+            end = start + wordExtractTerms.length();
+            if (sentencePositions != null) {
+                startElements[i] = sentencePositions.get(start);
+                endElements[i] = sentencePositions.get(end - 1);
+            } else {
+                startElements[i] = 0;
+                endElements[i] = 0;
+            }
+
+            currentTermProcessor.processTerm(wordExtractTerms);
+            termElements[i] = findTermIndex(indexDetails, wordExtractTerms);
+            lastPos = pos + 1;
+        }
+        return length;
+    }
+
+    /**
+     * Check whether a word occurs at the given offset in a text, ignoring
+     * case.
+     * @param text the text
+     * @param offset where the word is expected in the text
+     * @param word the word
+     * @return true if the text has the word at the offset
+     */
+    private static boolean regionMatches(final String text, final int offset,
+            final MutableString word) {
+        final int length = word.length();
+        if (offset < 0 || offset + length > text.length()) {
+            return false;
+        }
+        final char[] chars = word.array();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(offset + i);
+            if (c != chars[i] && Character.toLowerCase(c)
+                    != Character.toLowerCase(chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Extracts indexed terms from a document using the "text" index.
      *
@@ -733,7 +849,7 @@ public final class DocumentIndexManager implements Closeable {
      * @return An array of ints. Each int is the index of the term in the
      *         document index manager.
      */
-    public synchronized int[] extractTerms(final CharSequence documentContent) {
+    public int[] extractTerms(final CharSequence documentContent) {
         return extractTerms(getIndexDetails("text"), documentContent, null);
     }
 
@@ -743,7 +859,7 @@ public final class DocumentIndexManager implements Closeable {
      * @param documentContent the document to get the terms for
      * @return the int terms
      */
-    public synchronized int[] extractTerms(
+    public int[] extractTerms(
             final IndexDetails indexDetailsToUse, final CharSequence documentContent) {
         return extractTerms(indexDetailsToUse, documentContent, null);
     }
@@ -804,7 +920,7 @@ public final class DocumentIndexManager implements Closeable {
      * space (' ') and this value if internalSeparator is not null
      * @return the array of index term int's for the given string
      */
-    public synchronized int[] extractTerms(
+    public int[] extractTerms(
                 final IndexDetails indexDetailsToUse, final CharSequence documentContent,
                 final Character internalSeparator) {
         IndexDetails indexDetails = indexDetailsToUse;
@@ -813,7 +929,10 @@ public final class DocumentIndexManager implements Closeable {
             indexDetails = getIndexDetails("text");
         }
         final TermProcessor currentTermProcessor = indexDetails.getTermProcessor();
-        final int length = splitText(indexDetails.getWordReader(),
+        final TokenizationContext context = tokenizationContext.get();
+        final MutableString resultExtractTerms = context.result;
+        final MutableString wordExtractTerms = context.word;
+        final int length = splitText(context, indexDetails.getWordReader(),
                 documentContent, resultExtractTerms);
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Extracted %d terms from '%s' to '%s'",
@@ -822,18 +941,17 @@ public final class DocumentIndexManager implements Closeable {
 
         final int[] array = new int[length];
         int lastPos = 0;
-        final char[] resChars = resultExtractTerms.toCharArray();
+        // the backing array is only valid up to the length of the result
+        final char[] resChars = resultExtractTerms.array();
 
-        final int resultCharLength = resChars.length;
+        final int resultCharLength = resultExtractTerms.length();
         int tokenIndex = 0;
 
         for (int i = 0; i < resultCharLength; ++i) {
             if ((resChars[i] == ' ')
                         || (internalSeparator != null && resChars[i] == internalSeparator)) {
                 wordExtractTerms.length(0);
-                for (int j = lastPos; j < i; ++j) {
-                    wordExtractTerms.append(resChars[j]);
-                }
+                wordExtractTerms.append(resChars, lastPos, i - lastPos);
 
                 currentTermProcessor.processTerm(wordExtractTerms);
                 array[tokenIndex++] = findTermIndex(indexDetails, wordExtractTerms);
@@ -893,6 +1011,31 @@ public final class DocumentIndexManager implements Closeable {
      */
     public DocumentIterator queryAndExactOrderMg4jNativeWithIntArray(
             final int[] currentIndices) throws IOException {
+        if (queryResultCache == null) {
+            return consecutiveDocuments(currentIndices);
+        }
+
+        final long generation = queryResultCache.validate(getIndex("text"));
+        final int[] key = currentIndices.clone();
+        DocumentQueryResult result =
+                queryResultCache.getPhraseIntervals(generation, key);
+        if (result == null) {
+            final DocumentIterator documents = consecutiveDocuments(currentIndices);
+            result = new DocumentQueryResult(documents);
+            documents.dispose();
+            queryResultCache.putPhraseIntervals(generation, key, result);
+        }
+        return result.getDocumentIterator();
+    }
+
+    /**
+     * Run an mg4j query using "and exact order" on the "text" index.
+     * @param currentIndices the terms int's to query
+     * @return the query document iterator
+     * @throws IOException error executing query
+     */
+    private DocumentIterator consecutiveDocuments(final int[] currentIndices)
+            throws IOException {
         final DocumentIterator[] docIterators =
                 new DocumentIterator[currentIndices.length];
         for (int i = 0; i < currentIndices.length; i++) {
@@ -970,44 +1113,159 @@ public final class DocumentIndexManager implements Closeable {
     }
 
     /**
-     * Run a query using "and exact order".
+     * Run a query using "and exact order". The documents are intersected
+     * from the rarest term of the phrase, and in each document the sorted
+     * positions of consecutive terms are merged in linear time.
      * @param currentTerms the terms to query
-     * @return the query document iterator
+     * @return the positions of the last term of the phrase in each document
+     *         that contains the phrase, or null if no document does
      * @throws IOException error executing query
      */
     public TermDocumentPositions queryAndExactOrder(
             final String[] currentTerms) throws IOException {
-        final List<String> currentTermCollection = Arrays.asList(currentTerms);
-        TermDocumentPositions termDocumentPositions =
-                new TermDocumentPositions();
-
-        // to see if there exists any document with appearance of all the terms,
-        // before testing if they are in the right order.
-        int[] documents = queryAnd(currentTermCollection);
-        if (documents == null || documents.length == 0) {
-            return null;
-        } else {
-            query(currentTerms[0], termDocumentPositions);
-        }
-
-        final TermDocumentPositions[] tpss =
-                new TermDocumentPositions[currentTerms.length];
-        for (int j = 1; j < currentTerms.length; j++) {
-            tpss[j] = new TermDocumentPositions(currentTerms[j]);
-            query(currentTerms[j], tpss[j]);
-            termDocumentPositions =
-                    exactOrder(termDocumentPositions, tpss[j], documents);
-            documents = termDocumentPositions.getDocuments();
-            if (documents.length == 0) {
-                return null;      // return empty set immediately.
+        final IndexDetails indexDetails = getIndexDetails("text");
+        final int numTerms = currentTerms.length;
+        final int[] terms = new int[numTerms];
+        for (int i = 0; i < numTerms; i++) {
+            terms[i] = findTermIndex(indexDetails, currentTerms[i]);
+            if (terms[i] < 0) {
+                return null;
             }
         }
+        if (queryResultCache == null) {
+            return queryAndExactOrder(currentTerms, terms);
+        }
 
-        return termDocumentPositions;
+        final long generation = queryResultCache.validate(getIndex("text"));
+        final TermDocumentPositions cached =
+                queryResultCache.getPhrase(generation, terms);
+        if (cached != null) {
+            return cached == QueryResultCache.NO_PHRASE_MATCH
+                    ? null : copyOf(cached);
+        }
+        final TermDocumentPositions result = queryAndExactOrder(currentTerms, terms);
+        // remember when no document contains the phrase
+        queryResultCache.putPhrase(generation, terms, result == null
+                ? QueryResultCache.NO_PHRASE_MATCH : copyOf(result));
+        return result;
+    }
+
+    /**
+     * Run a query using "and exact order".
+     * @param currentTerms the terms to query
+     * @param terms the indices of the terms, all in the index
+     * @return the positions of the last term of the phrase in each document
+     *         that contains the phrase, or null if no document does
+     * @throws IOException error executing query
+     */
+    private TermDocumentPositions queryAndExactOrder(
+            final String[] currentTerms, final int[] terms) throws IOException {
+        final int numTerms = terms.length;
+        final IndexReader[] readers = new IndexReader[numTerms];
+        try {
+            final IndexIterator[] iterators = openPostingLists(terms, readers);
+            final IndexIterator[] byFrequency = iterators.clone();
+            sortByFrequency(byFrequency);
+            final IndexIterator lead = byFrequency[0];
+
+            final IntArrayList documents = new IntArrayList();
+            final List<int[]> positions = new ArrayList<int[]>();
+            // phrase starts that are still possible, and the positions of
+            // the next term, reused for every document
+            int[] starts = new int[16];
+            int[] next = new int[16];
+            int document = nextCommonDocument(byFrequency, lead.nextDocument());
+            while (document != -1) {
+                int count = iterators[0].count();
+                if (starts.length < count) {
+                    starts = new int[count];
+                }
+                iterators[0].positions(starts);
+                for (int k = 1; k < numTerms && count > 0; k++) {
+                    final int nextCount = iterators[k].count();
+                    if (next.length < nextCount) {
+                        next = new int[nextCount];
+                    }
+                    iterators[k].positions(next);
+                    count = followedBy(starts, count, next, nextCount, k);
+                }
+                if (count > 0) {
+                    // report where the last term of the phrase is
+                    final int[] lastPositions = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        lastPositions[i] = starts[i] + numTerms - 1;
+                    }
+                    documents.add(document);
+                    positions.add(lastPositions);
+                }
+                document = nextCommonDocument(byFrequency, lead.nextDocument());
+            }
+            if (documents.size() == 0) {
+                return null;
+            }
+
+            final TermDocumentPositions termDocumentPositions =
+                    new TermDocumentPositions(
+                            numTerms > 1 ? currentTerms[numTerms - 1] : null);
+            termDocumentPositions.allocate(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                termDocumentPositions.setPositions(i, documents.getInt(i),
+                        positions.get(i));
+            }
+            return termDocumentPositions;
+        } finally {
+            closeReaders(readers);
+        }
+    }
+
+    /**
+     * Keep the phrase starts that are followed by a term at a given offset.
+     * Both arrays of positions are sorted, so they are merged in one pass.
+     * @param starts Positions where the phrase may start, updated in place
+     * @param count The number of positions in starts
+     * @param positions Positions of the term in the document
+     * @param numberOfPositions The number of positions of the term
+     * @param offset The offset of the term in the phrase
+     * @return The number of positions left in starts
+     */
+    private static int followedBy(final int[] starts, final int count,
+            final int[] positions, final int numberOfPositions, final int offset) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < numberOfPositions; i++) {
+            final int expected = starts[i] + offset;
+            while (j < numberOfPositions && positions[j] < expected) {
+                j++;
+            }
+            if (j < numberOfPositions && positions[j] == expected) {
+                starts[kept++] = starts[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Copy positions, so that cached positions are never shared with
+     * callers.
+     * @param source The positions to copy
+     * @return A copy of the positions
+     */
+    private static TermDocumentPositions copyOf(final TermDocumentPositions source) {
+        final int[] documents = source.getDocuments();
+        final TermDocumentPositions copy =
+                new TermDocumentPositions(source.getTerm());
+        copy.allocate(documents.length);
+        for (int i = 0; i < documents.length; i++) {
+            copy.setPositions(i, documents[i], source.getPositions(i).clone());
+        }
+        return copy;
     }
 
     /**
      * Returns the documents that contain the intersection of the keywords.
+     * The posting lists are intersected from the keyword that occurs in the
+     * fewest documents, skipping through the lists of the other keywords, and
+     * positions are never decoded.
      *
      * @param keywords Collection of Strings. Each string is a keyword.
      * @return Documents that contain the intersection of keywords. Empty result
@@ -1019,39 +1277,171 @@ public final class DocumentIndexManager implements Closeable {
             throw new IllegalArgumentException("Empty query is not supported.");
         }
 
-        final int numTerms = keywords.size();
-        final Iterator<String> keywordIterator = keywords.iterator();
-        if (keywords.size() > 1) {
-            final int[][] results = new int[numTerms][0];
-            // do a query for each term:
-            for (int i = 0; i < numTerms; i++) {
-                final String keyword = keywordIterator.next();
-                results[i] = query(keyword);
+        final IndexDetails indexDetails = getIndexDetails("text");
+        final int[] terms = new int[keywords.size()];
+        int numTerms = 0;
+        for (final String keyword : keywords) {
+            final int term = findTermIndex(indexDetails, keyword);
+            if (term < 0) {
+                return new int[0];      // return empty set immediately.
+            }
+            terms[numTerms++] = term;
+        }
+        return queryAnd(terms);
+    }
 
-                if (results[i].length == 0) {
-                    return new int[0]; // return empty set immediately.
-                }
+    /**
+     * Returns the documents that contain all the terms of the "text" index.
+     * The terms are ordered by the number of documents they occur in, and
+     * the documents of the rarest term are looked up in the other posting
+     * lists with {@link IndexIterator#skipTo(int)}, which uses the skips of
+     * the index when it was built with them.  Positions are never decoded.
+     *
+     * @param terms The indices of the terms
+     * @return Documents that contain all the terms, in increasing order.
+     * @throws IOException If an error occurred reading the full text index
+     */
+    public int[] queryAnd(final int[] terms) throws IOException {
+        for (final int term : terms) {
+            if (term < 0) {
+                return new int[0];
+            }
+        }
+        if (queryResultCache == null) {
+            return intersectPostingLists(terms);
+        }
+        final int[] key = sortedSet(terms);
+        final long generation = queryResultCache.validate(getIndex("text"));
+        int[] documents =
+                cachedDocuments(generation, QueryResultCache.Operator.AND, key);
+        if (documents == null) {
+            documents = intersectPostingLists(key);
+            cacheDocuments(generation, QueryResultCache.Operator.AND, key,
+                    documents);
+        }
+        return documents;
+    }
 
-                if (i > 0) {
-                    // do an intersection between results for term i and for
-                    // term 0 store the result in place of results for term 0.
-                    results[0] = intersection(results[0], results[i]);
-                    if (results[0].length == 0) {
-                        return new int[0];      // return empty set immediately.
-                    }
-                }
+    /**
+     * Returns the documents that contain all the terms of the "text" index.
+     * @param terms The indices of the terms, all in the index
+     * @return Documents that contain all the terms, in increasing order.
+     * @throws IOException If an error occurred reading the full text index
+     */
+    private int[] intersectPostingLists(final int[] terms) throws IOException {
+        final IndexReader[] readers = new IndexReader[terms.length];
+        try {
+            final IndexIterator[] iterators = openPostingLists(terms, readers);
+            sortByFrequency(iterators);
+            final IndexIterator lead = iterators[0];
+            final IntArrayList result = new IntArrayList(lead.frequency());
+            int document = nextCommonDocument(iterators, lead.nextDocument());
+            while (document != -1) {
+                result.add(document);
+                document = nextCommonDocument(iterators, lead.nextDocument());
             }
+            return result.toIntArray();
+        } finally {
+            closeReaders(readers);
+        }
+    }
 
-            return results[0];
-        } else {
-            if (keywordIterator.hasNext()) {
-                return query(keywordIterator.next());
-            } else {
-                throw new InternalError("Only single keyword queries are supported at this time.");
+    /**
+     * Open the posting lists of terms in the "text" index.
+     * @param terms The indices of the terms
+     * @param readers Where to store the reader opened for each term
+     * @return An iterator over the posting list of each term
+     * @throws IOException If an error occurred reading the full text index
+     */
+    private IndexIterator[] openPostingLists(final int[] terms,
+            final IndexReader[] readers) throws IOException {
+        final Index index = getIndex("text");
+        final IndexIterator[] iterators = new IndexIterator[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            // nb. each term document iterator needs its own reader
+            readers[i] = index.getReader();
+            iterators[i] = readers[i].documents(terms[i]);
+        }
+        return iterators;
+    }
+
+    /**
+     * Close the readers opened by {@link #openPostingLists(int[], IndexReader[])}.
+     * @param readers The readers, some of which may be null
+     * @throws IOException If a reader cannot be closed
+     */
+    private static void closeReaders(final IndexReader[] readers)
+            throws IOException {
+        for (final IndexReader reader : readers) {
+            if (reader != null) {
+                reader.close();
             }
         }
     }
 
+    /**
+     * Sort iterators over posting lists from the shortest to the longest.
+     * @param iterators The iterators to sort
+     * @throws IOException If an error occurred reading the full text index
+     */
+    private static void sortByFrequency(final IndexIterator[] iterators)
+            throws IOException {
+        final int[] frequencies = new int[iterators.length];
+        for (int i = 0; i < iterators.length; i++) {
+            frequencies[i] = iterators[i].frequency();
+        }
+        // there are only a few terms in a query
+        for (int i = 1; i < iterators.length; i++) {
+            final IndexIterator iterator = iterators[i];
+            final int frequency = frequencies[i];
+            int j = i;
+            while (j > 0 && frequencies[j - 1] > frequency) {
+                iterators[j] = iterators[j - 1];
+                frequencies[j] = frequencies[j - 1];
+                j--;
+            }
+            iterators[j] = iterator;
+            frequencies[j] = frequency;
+        }
+    }
+
+    /**
+     * Find the next document found by all the iterators.  The first iterator
+     * proposes a document, and each other iterator skips to it.  When an
+     * iterator skips past the document, the first iterator skips in turn to
+     * the document that was found.
+     *
+     * @param iterators Iterators over posting lists, the shortest first
+     * @param candidate The current document of the first iterator
+     * @return The next document found by all the iterators, or -1 if there
+     *         are no more such documents.
+     * @throws IOException If an error occurred reading the full text index
+     */
+    private static int nextCommonDocument(final IndexIterator[] iterators,
+            final int candidate) throws IOException {
+        final IndexIterator lead = iterators[0];
+        int current = candidate;
+        while (current != -1 && current != Integer.MAX_VALUE) {
+            int i = 1;
+            while (i < iterators.length) {
+                final int document = iterators[i].skipTo(current);
+                if (document == Integer.MAX_VALUE) {
+                    // one list is exhausted, no other document can match
+                    return -1;
+                }
+                if (document != current) {
+                    break;
+                }
+                i++;
+            }
+            if (i == iterators.length) {
+                return current;
+            }
+            current = lead.skipTo(iterators[i].document());
+        }
+        return -1;
+    }
+
     /**
      * Returns the intersection of the two sets of arrays. The two sets must be
      * sorted in an ascending order or the behaviour of this method is
@@ -1144,31 +1534,129 @@ public final class DocumentIndexManager implements Closeable {
             // not found
             return new int[0];
         }
-        final IndexIterator indexIterator = getIndex("text").getReader().documents(term);
-        final int frequency = indexIterator.frequency();
-        final int[] documents = new int[frequency];
-        // number of occurences in a document cannot be more than max length
-        // of all documents.
-        final int[] occ = new int[getMaxDocumentSize()];
-        if (positions != null) {
-            positions.allocate(documents.length);
+        if (positions != null || queryResultCache == null) {
+            return query(term, positions);
+        }
+        final int[] key = {term};
+        final long generation = queryResultCache.validate(getIndex("text"));
+        int[] documents =
+                cachedDocuments(generation, QueryResultCache.Operator.TERM, key);
+        if (documents == null) {
+            documents = query(term, null);
+            cacheDocuments(generation, QueryResultCache.Operator.TERM, key,
+                    documents);
         }
+        return documents;
+    }
 
-        for (int i = 0; i < frequency; i++) {
-            final int document = indexIterator.nextDocument();
-            documents[i] = document;
-            final int result = indexIterator.positions(occ);
+    /**
+     * Returns the documents that contain a term of the "text" index.
+     * @param term The index of the term
+     * @param positions Where to store positions of the term in the document
+     *                  if needed, null otherwise.
+     * @return index of the documents that contain the term
+     * @throws IOException If an error occurred reading the full text index
+     */
+    private int[] query(final int term, final TermDocumentPositions positions)
+            throws IOException {
+        final IndexReader reader = getIndex("text").getReader();
+        try {
+            final IndexIterator indexIterator = reader.documents(term);
+            final int frequency = indexIterator.frequency();
+            final int[] documents = new int[frequency];
+            if (positions != null) {
+                positions.allocate(documents.length);
+            }
 
-            if (positions != null && result > 0) {
-                // collect positions:
-                positions.setPositions(i, documents[i], occ, result);
+            // grown to the largest number of occurrences in a document
+            int[] occ = new int[16];
+            for (int i = 0; i < frequency; i++) {
+                final int document = indexIterator.nextDocument();
+                documents[i] = document;
+                if (positions != null) {
+                    // positions are only decoded when they are collected
+                    final int count = indexIterator.count();
+                    if (occ.length < count) {
+                        occ = new int[Math.max(count, 2 * occ.length)];
+                    }
+                    final int result = indexIterator.positions(occ);
+                    if (result > 0) {
+                        positions.setPositions(i, documents[i], occ, result);
+                    }
+                }
             }
-            if (result < 0) {
-                throw new InternalError("Number of positions cannot be more than the "
-                        + "maximum length of all documents in this document index.");
+            return documents;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Cache the results of the queries run on the "text" index by
+     * {@link #query(String)}, {@link #queryAnd(Collection)},
+     * {@link #queryOr(Collection)}, {@link #queryAndExactOrder(String[])} and
+     * {@link #queryAndExactOrderMg4jNative(String[])}. Results are not cached
+     * unless a cache is installed. The cache is emptied when it is used with
+     * another index and when this manager is closed.
+     *
+     * @param cache The cache to use, or null to stop caching results
+     */
+    public void setQueryResultCache(final QueryResultCache cache) {
+        queryResultCache = cache;
+    }
+
+    /**
+     * @return The cache of query results, or null if results are not cached
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Get the documents of a query from the cache.
+     * @param generation The generation of the results of the "text" index
+     * @param operator The kind of query
+     * @param key The normalized indices of the terms of the query
+     * @return A copy of the documents, or null if the query is not cached
+     */
+    private int[] cachedDocuments(final long generation,
+            final QueryResultCache.Operator operator, final int[] key) {
+        final int[] documents =
+                queryResultCache.getDocuments(generation, operator, key);
+        return documents == null ? null : documents.clone();
+    }
+
+    /**
+     * Add the documents of a query to the cache.
+     * @param generation The generation of the results of the "text" index,
+     * obtained before the query was run
+     * @param operator The kind of query
+     * @param key The normalized indices of the terms of the query
+     * @param documents The documents, which are copied
+     */
+    private void cacheDocuments(final long generation,
+            final QueryResultCache.Operator operator, final int[] key,
+            final int[] documents) {
+        queryResultCache.putDocuments(generation, operator, key,
+                documents.clone());
+    }
+
+    /**
+     * Normalize the terms of a query whose result does not depend on the
+     * order of the terms.
+     * @param terms The indices of the terms
+     * @return The distinct indices in the index, in increasing order
+     */
+    private static int[] sortedSet(final int[] terms) {
+        final int[] sorted = terms.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (final int term : sorted) {
+            if (term >= 0 && (size == 0 || sorted[size - 1] != term)) {
+                sorted[size++] = term;
             }
         }
-        return documents;
+        return Arrays.copyOf(sorted, size);
     }
 
     /**
@@ -1200,6 +1688,46 @@ public final class DocumentIndexManager implements Closeable {
         }
     }
 
+    /**
+     * Install the {@link TermDictionary} of the "text" index, building it
+     * first if the index has no current dictionary.
+     * @throws IOException if the terms of the index cannot be read
+     */
+    public void installTermDictionary() throws IOException {
+        installTermDictionary("text");
+    }
+
+    /**
+     * Install the {@link TermDictionary} of the index associated with
+     * indexAlias, building it first if the index has no current dictionary.
+     * When the dictionary cannot be written, the terms are loaded in a
+     * {@link HashTermMap} instead.
+     * @param indexAlias the index to associate the term map with
+     * @throws IOException if the terms of the index cannot be read
+     */
+    public void installTermDictionary(final String indexAlias) throws IOException {
+        final IndexDetails indexDetails = getIndexDetails(indexAlias);
+        if (indexDetails == null) {
+            return;
+        }
+        final String indexBasename = indexDetails.getBasename();
+        final boolean current = TermDictionary.isCurrent(indexBasename);
+        if (current && indexDetails.getTermMap() instanceof TermDictionary) {
+            return;
+        }
+        if (!current) {
+            try {
+                TermDictionary.build(indexBasename);
+            } catch (final IOException e) {
+                LOG.warn("Cannot build term dictionary for " + indexBasename
+                        + ", loading the terms in memory", e);
+                indexDetails.setTermMap(new HashTermMap(getTerms(indexAlias), 0));
+                return;
+            }
+        }
+        indexDetails.setTermMap(new TermDictionary(indexBasename));
+    }
+
     public int findTermIndex(final CharSequence term) {
         return findTermIndex(getIndexDetails("text"), term);
     }
@@ -1283,92 +1811,87 @@ public final class DocumentIndexManager implements Closeable {
     }
 
     /**
-     * Modify/update the positions for a particular document in tps2 if those
-     * positions satisfy the exact order, but DO NOT remove the positions in
-     * documents if those documents do not have any exact order hit. The
-     * modified document numbers in tps2 are tracked by documents. Thus, tps2
-     * have more information than needed.
+     * Returns the documents that contain the union of the keywords. The
+     * posting lists of all the keywords are merged at once, see
+     * {@link #queryOrDocuments(Collection)}.
      *
-     * @param tps1      positions in documents of front term(s) intersection
-     * @param tps2      positions of next term and may be modified
-     * @param documents the documents that satisfy the exact order
-     * @return Positions of terms in this document.
+     * @param keywords Collection of Strings. Each string is a keyword.
+     * @return Documents that contain at least one of the keywords, in
+     *         increasing order. Empty result sets are returned as an empty
+     *         int array.
+     * @throws IOException xx
      */
-    private TermDocumentPositions exactOrder(
-            final TermDocumentPositions tps1, final TermDocumentPositions tps2,
-            final int[] documents) {
-        final int[] results = new int[documents.length];
-
-        int countDocument = 0;
-        for (final int document : documents) {
-            final int[] pos1 = tps1.getPositionsByDocument(document);
-            final int[] pos2 = tps2.getPositionsByDocument(document);
-            final int[] tempPos2 = new int[pos2.length];
-            int countPosition = 0;
-            for (final int aPos1 : pos1) {
-                for (final int aPos2 : pos2) {
-                    //if (pos1[k1] + 1 < pos2[k2]) break;
-                    if (aPos1 + 1 == aPos2) {
-                        tempPos2[countPosition++] = aPos2;
-                    }
-                }
-            }
-
-            if (countPosition > 0) {
-                final int[] newPos2 = new int[countPosition];
-                System.arraycopy(tempPos2, 0, newPos2, 0, countPosition);
-                results[countDocument++] = document;
-                tps2.setPositionsByDocument(document,
-                        newPos2, countPosition);
-            }
+    public int[] queryOr(final Collection<String> keywords) throws IOException {
+        final int[] terms = findTermIndices(keywords);
+        if (queryResultCache == null) {
+            return union(terms);
         }
-
-        final TermDocumentPositions tpsNew =
-                new TermDocumentPositions(tps2.getTerm());
-        tpsNew.allocate(countDocument);
-
-        for (int j = 0; j < countDocument; j++) {
-            tpsNew.setPositions(j, results[j],
-                    tps2.getPositionsByDocument(results[j]));
+        final int[] key = sortedSet(terms);
+        final long generation = queryResultCache.validate(getIndex("text"));
+        int[] documents =
+                cachedDocuments(generation, QueryResultCache.Operator.OR, key);
+        if (documents == null) {
+            documents = union(key);
+            cacheDocuments(generation, QueryResultCache.Operator.OR, key,
+                    documents);
         }
+        return documents;
+    }
 
-        return tpsNew;
+    /**
+     * Returns the documents that contain any of the terms of the "text"
+     * index.
+     * @param terms The indices of the terms, negative indices are ignored
+     * @return Documents that contain at least one of the terms, in
+     *         increasing order.
+     * @throws IOException If an error occurred reading the full text index
+     */
+    private int[] union(final int[] terms) throws IOException {
+        final DocumentUnion union = new DocumentUnion(getIndex("text"), terms);
+        try {
+            final IntArrayList documents = new IntArrayList();
+            int document;
+            while ((document = union.nextDocument()) != -1) {
+                documents.add(document);
+            }
+            return documents.toIntArray();
+        } finally {
+            union.close();
+        }
     }
 
     /**
-     * Returns the documents that contain the union of the keywords.
+     * Returns the documents that contain the union of the keywords, one at a
+     * time, so that callers can stop early. This will run on the "text"
+     * index. Keywords that are not in the index are ignored.
      *
-     * @param keywords Collection of Strings. Each string is a keyword that the
-     *                 document returned will contain.
-     * @return Documents that contain the union of keywords.
-     * @throws IOException xx
+     * @param keywords Collection of Strings. Each string is a keyword.
+     * @return Documents that contain at least one of the keywords. Call
+     *         close() when you are done with the documents.
+     * @throws IOException If an error occurred reading the full text index
      */
-    public int[] queryOr(final Collection<String> keywords) throws IOException {
+    public DocumentUnion queryOrDocuments(final Collection<String> keywords)
+            throws IOException {
+        return new DocumentUnion(getIndex("text"), findTermIndices(keywords));
+    }
+
+    /**
+     * Find the indices of keywords in the "text" index.
+     * @param keywords Collection of Strings. Each string is a keyword.
+     * @return The index of each keyword, or {@link #NO_SUCH_TERM}
+     */
+    private int[] findTermIndices(final Collection<String> keywords) {
         if (keywords.size() == 0) {
             throw new IllegalArgumentException("Empty query is not supported.");
         }
 
-        final int numTerms = keywords.size();
-        final Iterator<String> keywordIterator = keywords.iterator();
-        if (keywords.size() > 1) {
-            final int[][] results = new int[numTerms][0];
-            // do a query for each term:
-            for (int i = 0; i < numTerms; i++) {
-                results[i] = query(keywordIterator.next());
-                if (i > 0) {
-                    // do the union between results for term i and for term 0
-                    // store the result in place of results for term 0.
-                    results[0] = union(results[0], results[i]);
-                }
-            }
-            return results[0];
-        } else {
-            if (keywordIterator.hasNext()) {
-                return query(keywordIterator.next());
-            } else {
-                throw new InternalError("Only single keyword queries are supported at this time.");
-            }
+        final IndexDetails indexDetails = getIndexDetails("text");
+        final int[] terms = new int[keywords.size()];
+        int i = 0;
+        for (final String keyword : keywords) {
+            terms[i++] = findTermIndex(indexDetails, keyword);
         }
+        return terms;
     }
 
     /**
@@ -1535,7 +2058,7 @@ public final class DocumentIndexManager implements Closeable {
      *               Result is the text delimited by single space character.
      * @return The number of terms that were processed.
      */
-    public synchronized int splitText(
+    public int splitText(
             final CharSequence text, final MutableString result) {
         return splitText(getIndexDetails("text").getWordReader(), text, result);
     }
@@ -1553,18 +2076,39 @@ public final class DocumentIndexManager implements Closeable {
      * This method does not process the terms: each term is returned with the
      * capitalization that it had in the input text.
      *
+     * The word reader is not used directly: each thread splits the text
+     * with its own copy of the word reader, configured the same way.
+     *
      * @param currentWordReader the word reader to use to split the text
      * @param text   The input text to split into terms.
      * @param result A mutable string where the result will be stored.
      *               Result is the text delimited by single space character.
      * @return The number of terms that were processed.
      */
-    public synchronized int splitText(
+    public int splitText(
         final WordReader currentWordReader,
         final CharSequence text, final MutableString result) {
+        return splitText(tokenizationContext.get(), currentWordReader, text, result);
+    }
+
+    /**
+     * Split text into terms delimited by a single space character.
+     * @param context the buffers and word readers of the current thread
+     * @param sharedWordReader the word reader to use to split the text
+     * @param text   The input text to split into terms.
+     * @param result A mutable string where the result will be stored.
+     * @return The number of terms that were processed.
+     */
+    private int splitText(final TokenizationContext context,
+        final WordReader sharedWordReader,
+        final CharSequence text, final MutableString result) {
         int termCount = 0;
+        final MutableString wordSplitText = context.wordSplit;
+        final MutableString nonWordSplitText = context.nonWordSplit;
+        final IntArrayList offsets = context.offsets;
         wordSplitText.setLength(0);
         nonWordSplitText.setLength(0);
+        offsets.clear();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Splitting the text " + text);
         }
@@ -1579,7 +2123,11 @@ public final class DocumentIndexManager implements Closeable {
                 } else {
                     characterReader = new StringReader(text.toString());
                 }
+                final WordReader currentWordReader =
+                        context.getWordReader(sharedWordReader);
                 currentWordReader.setReader(characterReader);
+                // words and non-words follow each other in the text
+                int offset = 0;
                 while (currentWordReader.next(wordSplitText, nonWordSplitText)) {
                     if (wordSplitText.length() != 0) {
                         if (LOG.isDebugEnabled()) {
@@ -1588,7 +2136,9 @@ public final class DocumentIndexManager implements Closeable {
                         ++termCount;
                         result.append(wordSplitText);
                         result.append(' ');
+                        offsets.add(offset);
                     }
+                    offset += wordSplitText.length() + nonWordSplitText.length();
                 }
             } catch (final IOException e) {
                 LOG.error("Couldn't split text", e);
@@ -1830,4 +2380,78 @@ public final class DocumentIndexManager implements Closeable {
     public AbstractTextractorDocumentFactory getDocumentFactory() {
         return this.factory;
     }
+
+    /**
+     * The buffers and word readers one thread uses to split text into terms.
+     * Word readers keep the state of the text being split, so the shared
+     * word readers of the indexes are copied for each thread.
+     */
+    private static final class TokenizationContext {
+        /** The split text, with terms delimited by spaces. */
+        private final MutableString result = new MutableString();
+
+        /** A single term of the split text. */
+        private final MutableString word = new MutableString();
+
+        /** Temporary variable used with the word reader. */
+        private final MutableString wordSplit = new MutableString();
+
+        /** Temporary variable used with the word reader. */
+        private final MutableString nonWordSplit = new MutableString();
+
+        /** Where each word of the split text starts in the text. */
+        private final IntArrayList offsets = new IntArrayList();
+
+        /** The copies of the shared word readers, by identity. */
+        private final Map<WordReader, WordReader> wordReaders =
+                new Reference2ObjectOpenHashMap<WordReader, WordReader>();
+
+        /**
+         * Get the copy of a word reader owned by this thread.
+         * @param sharedWordReader a word reader that may be used by any thread
+         * @return a word reader that splits text the same way
+         */
+        private WordReader getWordReader(final WordReader sharedWordReader) {
+            WordReader wordReader = wordReaders.get(sharedWordReader);
+            if (wordReader == null) {
+                wordReader = copy(sharedWordReader);
+                wordReaders.put(sharedWordReader, wordReader);
+            }
+            return wordReader;
+        }
+
+        /**
+         * Copy a word reader.  Textractor word readers are created again from
+         * their saved properties, which restores them to the state they had
+         * when the index was built; {@link WordReader#copy()} does not keep
+         * the configuration of every reader.
+         * @param wordReader the word reader to copy
+         * @return the copy
+         */
+        private static WordReader copy(final WordReader wordReader) {
+            if (!(wordReader instanceof TextractorWordReader)) {
+                return wordReader.copy();
+            }
+            final Properties properties = new Properties();
+            ((TextractorWordReader) wordReader).saveProperties(properties);
+            try {
+                final TextractorWordReader copy = (TextractorWordReader)
+                        wordReader.getClass().getDeclaredConstructor().newInstance();
+                copy.configure(properties);
+                return copy;
+            } catch (final InstantiationException e) {
+                LOG.error("Cannot copy word reader " + wordReader, e);
+                throw new TextractorRuntimeException(e);
+            } catch (final IllegalAccessException e) {
+                LOG.error("Cannot copy word reader " + wordReader, e);
+                throw new TextractorRuntimeException(e);
+            } catch (final NoSuchMethodException e) {
+                LOG.error("Cannot copy word reader " + wordReader, e);
+                throw new TextractorRuntimeException(e);
+            } catch (final InvocationTargetException e) {
+                LOG.error("Cannot copy word reader " + wordReader, e);
+                throw new TextractorRuntimeException(e.getCause());
+            }
+        }
+    }
 }
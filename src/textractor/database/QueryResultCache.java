@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.database;
+
+import it.unimi.dsi.mg4j.search.Interval;
+import textractor.tools.DocumentQueryResult;
+import textractor.util.SegmentedCache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of queries run by a {@link DocumentIndexManager}.
+ * Queries are identified by their operator and the indices of their terms,
+ * so that the same query is found whatever the form of its keywords.  The
+ * cache is bounded by the approximate number of bytes of the results it
+ * holds, and split into segments that are locked independently and evict
+ * their least recently used results.
+ * <p/>
+ * The results of an index are only valid as long as the index is open.
+ * Callers {@link #validate(Object) validate} the index a query runs against
+ * before running it, and pass the generation they get back with the result:
+ * the cache is emptied and its generation changes when a different index is
+ * used, so that results computed from the previous index are never kept.
+ * <p/>
+ * Each kind of result has its own accessors, so a result is never read as
+ * the result of another kind of query.
+ */
+public final class QueryResultCache extends SegmentedCache<
+        QueryResultCache.Key, QueryResultCache.Result> {
+    /** The default number of bytes held by the cache. */
+    public static final long DEFAULT_MAXIMUM_BYTES = 16L * 1024 * 1024;
+
+    /** The default number of segments. */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * The result of a phrase that no document contains.  It is only
+     * compared with the results returned by {@link #getPhrase(long, int[])}
+     * and must not be modified.
+     */
+    public static final TermDocumentPositions NO_PHRASE_MATCH =
+            new TermDocumentPositions();
+
+    /** The approximate number of bytes of each document of a phrase. */
+    private static final int PHRASE_DOCUMENT_BYTES = 20;
+
+    /**
+     * The approximate number of bytes of each document of a phrase with
+     * intervals.
+     */
+    private static final int INTERVALS_DOCUMENT_BYTES = 40;
+
+    /** The approximate number of bytes of each interval of a phrase. */
+    private static final int INTERVAL_BYTES = 32;
+
+    /** The kinds of queries whose results are cached. */
+    public enum Operator {
+        /** The documents that contain a term. */
+        TERM,
+        /** The documents that contain all the terms. */
+        AND,
+        /** The documents that contain any of the terms. */
+        OR,
+        /** The documents and positions of a phrase. */
+        PHRASE,
+        /** The documents and intervals of a phrase. */
+        PHRASE_INTERVALS;
+
+        /**
+         * @return true if the result of the query is a list of documents
+         */
+        private boolean hasDocuments() {
+            return this == TERM || this == AND || this == OR;
+        }
+    }
+
+    /** The index the cached results were computed from. */
+    private volatile Object index;
+
+    /** Changes every time the cached results are discarded. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Create a cache with the default size and number of segments.
+     */
+    public QueryResultCache() {
+        this(DEFAULT_MAXIMUM_BYTES, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Create a cache.
+     * @param maximumBytes The largest number of bytes the cache holds,
+     * including {@link #ENTRY_OVERHEAD} for each result
+     * @param numberOfSegments The number of segments, rounded up to a power
+     * of two
+     */
+    public QueryResultCache(final long maximumBytes, final int numberOfSegments) {
+        super(maximumBytes, numberOfSegments);
+    }
+
+    /**
+     * Empty the cache if its results were computed from another index.
+     * @param queryIndex The index a query runs against
+     * @return The generation of the results of the index, to be passed to
+     * the accessors of the results
+     */
+    public long validate(final Object queryIndex) {
+        // read before the index, which changes before the generation
+        final long current = generation.get();
+        if (index == queryIndex) {
+            return current;
+        }
+        synchronized (this) {
+            if (index != queryIndex) {
+                if (index != null) {
+                    invalidations.incrementAndGet();
+                }
+                index = queryIndex;
+                clear();
+            }
+            return generation.get();
+        }
+    }
+
+    /**
+     * Get the documents of a query.
+     * @param queryGeneration The generation returned by
+     * {@link #validate(Object)} for the index the query runs against
+     * @param operator The kind of query, {@link Operator#TERM},
+     * {@link Operator#AND} or {@link Operator#OR}
+     * @param terms The indices of the terms of the query, normalized by the
+     * caller
+     * @return The documents, which must not be modified, or null if the
+     * query is not in the cache
+     */
+    public int[] getDocuments(final long queryGeneration,
+            final Operator operator, final int[] terms) {
+        checkDocuments(operator);
+        final Result result = get(queryGeneration, operator, terms);
+        return result == null ? null : ((Documents) result).documents;
+    }
+
+    /**
+     * Add the documents of a query to the cache.
+     * @param queryGeneration The generation returned by
+     * {@link #validate(Object)} before the query was run
+     * @param operator The kind of query, {@link Operator#TERM},
+     * {@link Operator#AND} or {@link Operator#OR}
+     * @param terms The indices of the terms of the query, normalized by the
+     * caller
+     * @param documents The documents, which must not be modified afterwards
+     */
+    public void putDocuments(final long queryGeneration,
+            final Operator operator, final int[] terms, final int[] documents) {
+        checkDocuments(operator);
+        put(operator, terms, new Documents(documents, queryGeneration));
+    }
+
+    /**
+     * Get the positions of a phrase.
+     * @param queryGeneration The generation returned by
+     * {@link #validate(Object)} for the index the query runs against
+     * @param terms The indices of the terms of the phrase
+     * @return The positions, which must not be modified,
+     * {@link #NO_PHRASE_MATCH} if no document contains the phrase, or null
+     * if the phrase is not in the cache
+     */
+    public TermDocumentPositions getPhrase(final long queryGeneration,
+            final int[] terms) {
+        final Result result = get(queryGeneration, Operator.PHRASE, terms);
+        return result == null ? null : ((Phrase) result).positions;
+    }
+
+    /**
+     * Add the positions of a phrase to the cache.
+     * @param queryGeneration The generation returned by
+     * {@link #validate(Object)} before the query was run
+     * @param terms The indices of the terms of the phrase
+     * @param positions The positions, which must not be modified afterwards,
+     * or {@link #NO_PHRASE_MATCH} if no document contains the phrase
+     */
+    public void putPhrase(final long queryGeneration, final int[] terms,
+            final TermDocumentPositions positions) {
+        put(Operator.PHRASE, terms, new Phrase(positions, queryGeneration));
+    }
+
+    /**
+     * Get the documents and intervals of a phrase.
+     * @param queryGeneration The generation returned by
+     * {@link #validate(Object)} for the index the query runs against
+     * @param terms The indices of the terms of the phrase
+     * @return The documents and intervals, which must not be modified, or
+     * null if the phrase is not in the cache
+     */
+    public DocumentQueryResult getPhraseIntervals(final long queryGeneration,
+            final int[] terms) {
+        final Result result =
+                get(queryGeneration, Operator.PHRASE_INTERVALS, terms);
+        return result == null ? null : ((PhraseIntervals) result).intervals;
+    }
+
+    /**
+     * Add the documents and intervals of a phrase to the cache.
+     * @param queryGeneration The generation returned by
+     * {@link #validate(Object)} before the query was run
+     * @param terms The indices of the terms of the phrase
+     * @param intervals The documents and intervals, which must not be
+     * modified afterwards
+     */
+    public void putPhraseIntervals(final long queryGeneration,
+            final int[] terms, final DocumentQueryResult intervals) {
+        put(Operator.PHRASE_INTERVALS, terms,
+                new PhraseIntervals(intervals, queryGeneration));
+    }
+
+    /**
+     * @param operator The kind of a query
+     * @throws IllegalArgumentException if the result of the query is not a
+     * list of documents
+     */
+    private static void checkDocuments(final Operator operator) {
+        if (!operator.hasDocuments()) {
+            throw new IllegalArgumentException(operator
+                    + " queries do not return a list of documents");
+        }
+    }
+
+    /**
+     * Get the result of a query.  Results are only added by the accessor of
+     * their operator, so the result has the type of the operator.
+     * @param queryGeneration The generation of the index of the query
+     * @param operator The kind of query
+     * @param terms The indices of the terms of the query
+     * @return The result or null if it is not in the cache
+     */
+    private Result get(final long queryGeneration, final Operator operator,
+            final int[] terms) {
+        if (queryGeneration != generation.get()) {
+            // the index changed since it was validated
+            return null;
+        }
+        return get(new Key(operator, terms));
+    }
+
+    /**
+     * Add the result of a query to the cache.  The result is dropped if the
+     * cache was emptied since the generation of the result was obtained.
+     * @param operator The kind of query
+     * @param terms The indices of the terms of the query
+     * @param result The result
+     */
+    private void put(final Operator operator, final int[] terms,
+            final Result result) {
+        if (result.generation != generation.get()) {
+            return;
+        }
+        put(new Key(operator, terms), result, result.size() + 4L * terms.length);
+    }
+
+    /**
+     * Remove every result from the cache.  Results of queries that are
+     * running are not added.  The statistics are kept.
+     */
+    @Override
+    public void clear() {
+        generation.incrementAndGet();
+        super.clear();
+    }
+
+    /**
+     * @param result A cached result
+     * @return true if the result was computed since the cache was last
+     * emptied
+     */
+    @Override
+    protected boolean isCurrent(final Result result) {
+        return result.generation == generation.get();
+    }
+
+    /**
+     * @return The number of times the cache was emptied because a different
+     * index was used
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[invalidations=" + getInvalidations() + "]";
+    }
+
+    /**
+     * A result and the generation it was computed in.
+     */
+    abstract static class Result {
+        private final long generation;
+
+        private Result(final long generation) {
+            super();
+            this.generation = generation;
+        }
+
+        /**
+         * @return The approximate number of bytes used by the result
+         */
+        abstract long size();
+    }
+
+    /**
+     * The documents of a query.
+     */
+    private static final class Documents extends Result {
+        private final int[] documents;
+
+        private Documents(final int[] documents, final long generation) {
+            super(generation);
+            this.documents = documents;
+        }
+
+        @Override
+        long size() {
+            return 4L * documents.length;
+        }
+    }
+
+    /**
+     * The positions of a phrase.
+     */
+    private static final class Phrase extends Result {
+        private final TermDocumentPositions positions;
+
+        private Phrase(final TermDocumentPositions positions,
+                final long generation) {
+            super(generation);
+            this.positions = positions;
+        }
+
+        @Override
+        long size() {
+            if (positions == NO_PHRASE_MATCH) {
+                return 0;
+            }
+            long size = 0;
+            for (int i = 0; i < positions.getDocuments().length; i++) {
+                size += PHRASE_DOCUMENT_BYTES
+                        + 4L * (positions.getPositions(i).length + 1);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The documents and intervals of a phrase.
+     */
+    private static final class PhraseIntervals extends Result {
+        private final DocumentQueryResult intervals;
+
+        private PhraseIntervals(final DocumentQueryResult intervals,
+                final long generation) {
+            super(generation);
+            this.intervals = intervals;
+        }
+
+        @Override
+        long size() {
+            long size = 0;
+            for (final int document : intervals.getDocuments()) {
+                size += INTERVALS_DOCUMENT_BYTES;
+                final Iterator<Interval> documentIntervals =
+                        intervals.getIntervalIterator(document);
+                while (documentIntervals.hasNext()) {
+                    documentIntervals.next();
+                    size += INTERVAL_BYTES;
+                }
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Identifies a query.
+     */
+    static final class Key {
+        private final Operator operator;
+        private final int[] terms;
+        private final int hashCode;
+
+        private Key(final Operator operator, final int[] terms) {
+            super();
+            this.operator = operator;
+            this.terms = terms;
+            this.hashCode = 31 * operator.ordinal() + Arrays.hashCode(terms);
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) object;
+            return operator == other.operator
+                    && Arrays.equals(terms, other.terms);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
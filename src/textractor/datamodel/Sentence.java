@@ -290,12 +290,27 @@ public final class Sentence extends TextractorDocument {
     public static MutableString getSpaceDelimitedProcessedTerms(
             final DocumentIndexManager docmanager,
             final String spaceDelimitedTerms) {
+        return getSpaceDelimitedProcessedTerms(docmanager.getTermProcessor(),
+                spaceDelimitedTerms);
+    }
+
+    /**
+     * Process each term with the termProcessor and returns the result.
+     *
+     * @param termProcessor       Term processor used to process terms
+     * @param spaceDelimitedTerms Input string, where terms are delimited by
+     *                            single space characters.
+     * @return Input term sequence where terms are substituted by their
+     *         processed term equivalent.
+     */
+    public static MutableString getSpaceDelimitedProcessedTerms(
+            final TermProcessor termProcessor,
+            final String spaceDelimitedTerms) {
         final StringTokenizer st =
                 new StringTokenizer(spaceDelimitedTerms, " ");
 
         final MutableString word = new MutableString();
         final MutableString spaceDelimitedProcessedTerms = new MutableString();
-        final TermProcessor termProcessor = docmanager.getTermProcessor();
         while (st.hasMoreTokens()) {
             word.replace(st.nextToken());
             termProcessor.processTerm(word);
@@ -0,0 +1,758 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j;
+
+import edu.mssm.crover.cli.CLI;
+import it.unimi.dsi.mg4j.index.TermMap;
+import it.unimi.dsi.mg4j.util.MutableString;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import textractor.database.DocumentIndexManager;
+import textractor.mg4j.index.TermIterator;
+import textractor.mg4j.io.MappedFile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.zip.CRC32;
+
+/**
+ * A term map stored in a file beside the index and read through a memory
+ * mapping, so that it is ready as soon as it is opened and takes no space
+ * on the heap.
+ * <p/>
+ * Terms are found with a minimal perfect hash built with the hash and
+ * displace method: each term falls in a bucket of about
+ * {@link #BUCKET_SIZE} terms, and each bucket stores the displacement that
+ * sends all its terms to distinct slots.  Each slot stores the index of its
+ * term and a 64 bit signature of the term, so terms that are not in the
+ * index are recognized.  Terms are retrieved from their index in a front
+ * coded list, in blocks of {@link #RATIO} terms where each term is stored
+ * as the length of the prefix it shares with the previous term and the
+ * remaining characters.
+ * <p/>
+ * The dictionary is written in <code>basename.termdict</code>, where
+ * basename is the basename of an index (for instance
+ * <code>medline-text</code>), by {@link #build(String)}.  It records the
+ * length, the modification time and the CRC-32 of the
+ * <code>basename.terms</code> file it was built from.
+ * {@link #isCurrent(String)} compares the length and the modification time,
+ * so it is false once the index is built again without reading the terms;
+ * {@link #isCurrent(String, boolean)} can also compare the CRC-32.
+ */
+public final class TermDictionary implements TermMap, Serializable {
+    /**
+     * Used to log debug and informational messages.
+     */
+    private static final Log LOG = LogFactory.getLog(TermDictionary.class);
+
+    /**
+     * Used during deserialization to verify that objects are compatible.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The extension of the dictionary file. */
+    public static final String EXTENSION = ".termdict";
+
+    /** Identifies term dictionary files. */
+    private static final int MAGIC = 0x54584454;   // "TXDT"
+
+    /** The version of the file format. */
+    private static final int VERSION = 3;
+
+    /** The length of the header in bytes. */
+    private static final int HEADER_LENGTH = 64;
+
+    /** The average number of terms in each bucket of the hash. */
+    static final int BUCKET_SIZE = 4;
+
+    /** The number of terms in each block of the front coded list. */
+    static final int RATIO = 16;
+
+    /** The number of displacements tried for one bucket before reseeding. */
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+
+    /** The number of seeds tried before giving up. */
+    private static final int MAX_SEEDS = 16;
+
+    /** Multiplier used to derive hashes from a seed or a displacement. */
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    /** The basename of the index. */
+    private final String basename;
+
+    /** The dictionary file. */
+    private final transient MappedFile data;
+
+    /** The number of terms. */
+    private final transient int numberOfTerms;
+
+    /** The number of buckets of the hash. */
+    private final transient int numberOfBuckets;
+
+    /** The seed of the hash. */
+    private final transient long seed;
+
+    /** Where the displacement of each bucket starts in the file. */
+    private final transient long displacementsStart;
+
+    /** Where the term index of each slot starts in the file. */
+    private final transient long idsStart;
+
+    /** Where the signature of each slot starts in the file. */
+    private final transient long signaturesStart;
+
+    /** Where the start of each front coded block is stored in the file. */
+    private final transient long blockOffsetsStart;
+
+    /** The bytes of the block being decoded by each thread. */
+    private final transient ThreadLocal<byte[]> blockBuffer =
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[1024];
+                }
+            };
+
+    /**
+     * Open the dictionary of an index.
+     * @param basename The basename of the index
+     * @throws IOException if the dictionary cannot be read
+     */
+    public TermDictionary(final String basename) throws IOException {
+        super();
+        this.basename = basename;
+        data = new MappedFile(getFilename(basename));
+        if (data.length() < HEADER_LENGTH || data.getInt(0) != MAGIC) {
+            throw new IOException(data.getFilename()
+                    + " is not a term dictionary");
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException(data.getFilename()
+                    + " is not a term dictionary version " + VERSION);
+        }
+        numberOfTerms = data.getInt(8);
+        numberOfBuckets = data.getInt(12);
+        seed = data.getLong(24);
+        blockOffsetsStart = data.getLong(48);
+        displacementsStart = HEADER_LENGTH;
+        idsStart = align(displacementsStart + 4L * numberOfBuckets);
+        signaturesStart = align(idsStart + 4L * numberOfTerms);
+    }
+
+    /**
+     * @param basename The basename of an index
+     * @return The name of the dictionary file of the index
+     */
+    public static String getFilename(final String basename) {
+        return basename + EXTENSION;
+    }
+
+    /**
+     * Check that an index has a dictionary built from its current terms.
+     * Only the header of the dictionary is read, and compared with the
+     * length and the modification time of the terms file.
+     * @param basename The basename of the index
+     * @return true if the dictionary can be used with the index
+     */
+    public static boolean isCurrent(final String basename) {
+        return isCurrent(basename, false);
+    }
+
+    /**
+     * Check that an index has a dictionary built from its current terms.
+     * @param basename The basename of the index
+     * @param verifyChecksum Whether to also compare the CRC-32 of the terms
+     * file, which reads the whole file
+     * @return true if the dictionary can be used with the index
+     */
+    public static boolean isCurrent(final String basename,
+            final boolean verifyChecksum) {
+        final File dictionaryFile = new File(getFilename(basename));
+        final File termsFile = new File(basename + ".terms");
+        if (!dictionaryFile.exists() || !termsFile.exists()) {
+            return false;
+        }
+        RandomAccessFile dictionary = null;
+        try {
+            dictionary = new RandomAccessFile(dictionaryFile, "r");
+            if (dictionary.length() < HEADER_LENGTH
+                    || dictionary.readInt() != MAGIC
+                    || dictionary.readInt() != VERSION) {
+                return false;
+            }
+            dictionary.seek(32);
+            final long termsLength = dictionary.readLong();
+            final long termsChecksum = dictionary.readLong();
+            dictionary.seek(56);
+            final long termsLastModified = dictionary.readLong();
+            if (termsLength != termsFile.length()
+                    || termsLastModified != termsFile.lastModified()) {
+                return false;
+            }
+            return !verifyChecksum || termsChecksum == checksum(termsFile);
+        } catch (final IOException e) {
+            LOG.warn("Cannot read term dictionary " + dictionaryFile, e);
+            return false;
+        } finally {
+            if (dictionary != null) {
+                try {
+                    dictionary.close();
+                } catch (final IOException e) {
+                    LOG.debug("Cannot close " + dictionaryFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the index of a term.
+     * @param term a term
+     * @return the index of the term or
+     * {@link DocumentIndexManager#NO_SUCH_TERM} if the term is not indexed
+     */
+    public int getNumber(final CharSequence term) {
+        if (numberOfTerms == 0) {
+            return DocumentIndexManager.NO_SUCH_TERM;
+        }
+        final long hash = hash(term, seed);
+        try {
+            final int displacement =
+                    data.getInt(displacementsStart + 4L * bucket(hash, numberOfBuckets));
+            final int slot = displacement < 0 ? -displacement - 1
+                    : slot(hash, displacement, numberOfTerms);
+            if (data.getLong(signaturesStart + 8L * slot) != hash) {
+                return DocumentIndexManager.NO_SUCH_TERM;
+            }
+            return data.getInt(idsStart + 4L * slot);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot read term dictionary "
+                    + data.getFilename(), e);
+        }
+    }
+
+    /**
+     * @return true, terms can be retrieved from their index
+     */
+    public boolean hasTerms() {
+        return true;
+    }
+
+    /**
+     * Get a term.
+     * @param index the index of the term
+     * @return the term, or null if there is no term with this index
+     */
+    public CharSequence getTerm(final int index) {
+        return getTerm(index, new MutableString());
+    }
+
+    /**
+     * Get a term.
+     * @param index the index of the term
+     * @param term the string where the term is stored
+     * @return the term, or null if there is no term with this index
+     */
+    public MutableString getTerm(final int index, final MutableString term) {
+        term.length(0);
+        if (index < 0 || index >= numberOfTerms) {
+            return null;
+        }
+        try {
+            final int block = index / RATIO;
+            final long start = data.getLong(blockOffsetsStart + 8L * block);
+            final int length = (int) (data.getLong(blockOffsetsStart
+                    + 8L * (block + 1)) - start);
+            byte[] bytes = blockBuffer.get();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+                blockBuffer.set(bytes);
+            }
+            data.read(start, bytes, 0, length);
+
+            // decode the terms of the block up to the one wanted
+            int position = 0;
+            final int count = index % RATIO;
+            for (int i = 0; i <= count; i++) {
+                int value = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = bytes[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                term.length(value);
+                int suffixLength = 0;
+                shift = 0;
+                do {
+                    b = bytes[position++];
+                    suffixLength |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                for (int j = 0; j < suffixLength; j++) {
+                    int c = 0;
+                    shift = 0;
+                    do {
+                        b = bytes[position++];
+                        c |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    term.append((char) c);
+                }
+            }
+            return term;
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot read term dictionary "
+                    + data.getFilename(), e);
+        }
+    }
+
+    /**
+     * @return the number of terms in the dictionary
+     */
+    public int size() {
+        return numberOfTerms;
+    }
+
+    /**
+     * Build the dictionary of an index from its <code>basename.terms</code>
+     * file.  The terms are read twice and never all kept in memory.
+     * @param basename The basename of the index
+     * @throws IOException if the terms cannot be read or the dictionary
+     * cannot be written
+     */
+    public static void build(final String basename) throws IOException {
+        final File termsFile = new File(basename + ".terms");
+        final long termsLength = termsFile.length();
+        final long termsLastModified = termsFile.lastModified();
+        final long termsChecksum = checksum(termsFile);
+
+        // hash all the terms once, the hashes for each seed derive from these
+        final long[] baseHashes = hashTerms(termsFile.getPath());
+        final int numberOfTerms = baseHashes.length;
+        final int numberOfBuckets =
+                Math.max(1, (numberOfTerms + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        final long[] signatures = new long[numberOfTerms];
+        final int[] ids = new int[numberOfTerms];
+        final int[] displacements = new int[numberOfBuckets];
+        long seed = 0;
+        boolean built = false;
+        for (int attempt = 0; attempt < MAX_SEEDS && !built; attempt++) {
+            seed = attempt;
+            final long[] hashes = new long[numberOfTerms];
+            for (int i = 0; i < numberOfTerms; i++) {
+                hashes[i] = seed(baseHashes[i], seed);
+            }
+            built = place(hashes, numberOfBuckets, displacements, ids, signatures);
+            if (!built) {
+                LOG.info("Could not build the hash of " + basename
+                        + " with seed " + seed);
+            }
+        }
+        if (!built) {
+            throw new IOException("Could not build a minimal perfect hash for "
+                    + basename + ".terms, some terms may be repeated");
+        }
+
+        final String filename = getFilename(basename);
+        // counts the bytes written, which may exceed the int of DataOutputStream
+        final CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+        final DataOutputStream output = new DataOutputStream(counter);
+        long blockOffsetsStart;
+        try {
+            // the header is completed once the size of the blocks is known
+            output.write(new byte[HEADER_LENGTH]);
+            for (final int displacement : displacements) {
+                output.writeInt(displacement);
+            }
+            pad(output, counter);
+            for (final int id : ids) {
+                output.writeInt(id);
+            }
+            pad(output, counter);
+            for (final long signature : signatures) {
+                output.writeLong(signature);
+            }
+
+            final long[] blockOffsets =
+                    new long[(numberOfTerms + RATIO - 1) / RATIO + 1];
+            final MutableString previous = new MutableString();
+            final TermIterator terms = new TermIterator(termsFile.getPath());
+            try {
+                for (int i = 0; i < numberOfTerms; i++) {
+                    if (!terms.hasNext()) {
+                        throw new IOException(termsFile + " changed while "
+                                + "the term dictionary was built");
+                    }
+                    final MutableString term = terms.nextMutableStringTerm();
+                    int prefix = 0;
+                    if (i % RATIO == 0) {
+                        blockOffsets[i / RATIO] = counter.getByteCount();
+                    } else {
+                        final int maxPrefix =
+                                Math.min(previous.length(), term.length());
+                        while (prefix < maxPrefix
+                                && previous.charAt(prefix) == term.charAt(prefix)) {
+                            prefix++;
+                        }
+                    }
+                    writeVByte(output, prefix);
+                    writeVByte(output, term.length() - prefix);
+                    for (int j = prefix; j < term.length(); j++) {
+                        writeVByte(output, term.charAt(j));
+                    }
+                    previous.replace(term);
+                }
+            } finally {
+                terms.close();
+            }
+            blockOffsets[blockOffsets.length - 1] = counter.getByteCount();
+            pad(output, counter);
+            blockOffsetsStart = counter.getByteCount();
+            for (final long offset : blockOffsets) {
+                output.writeLong(offset);
+            }
+        } finally {
+            output.close();
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        try {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(numberOfTerms);
+            file.writeInt(numberOfBuckets);
+            file.writeInt(RATIO);
+            file.writeInt(0);
+            file.writeLong(seed);
+            file.writeLong(termsLength);
+            file.writeLong(termsChecksum);
+            file.writeLong(blockOffsetsStart);
+            file.writeLong(termsLastModified);
+        } finally {
+            file.close();
+        }
+        LOG.info("Wrote term dictionary " + filename + " with "
+                + numberOfTerms + " terms");
+    }
+
+    /**
+     * Find the displacement of each bucket so that every term gets its own
+     * slot.  The largest buckets are placed first, while most slots are
+     * free.  Buckets of a single term are sent directly to a free slot,
+     * stored as a negative displacement.
+     * @param hashes The hash of each term
+     * @param numberOfBuckets The number of buckets
+     * @param displacements The displacement of each bucket
+     * @param ids The index of the term in each slot
+     * @param signatures The hash of the term in each slot
+     * @return false if a bucket could not be placed
+     */
+    private static boolean place(final long[] hashes, final int numberOfBuckets,
+            final int[] displacements, final int[] ids, final long[] signatures) {
+        final int numberOfTerms = hashes.length;
+
+        // group the terms by bucket
+        final int[] bucketStarts = new int[numberOfBuckets + 1];
+        for (final long hash : hashes) {
+            bucketStarts[bucket(hash, numberOfBuckets) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int i = 0; i < numberOfBuckets; i++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[i + 1]);
+            bucketStarts[i + 1] += bucketStarts[i];
+        }
+        final int[] terms = new int[numberOfTerms];
+        final int[] filled = new int[numberOfBuckets];
+        for (int i = 0; i < numberOfTerms; i++) {
+            final int bucket = bucket(hashes[i], numberOfBuckets);
+            terms[bucketStarts[bucket] + filled[bucket]++] = i;
+        }
+
+        // order the buckets from the largest to the smallest
+        final int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int i = 0; i < numberOfBuckets; i++) {
+            sizeStarts[maxBucketSize - filled[i] + 1]++;
+        }
+        for (int i = 0; i <= maxBucketSize; i++) {
+            sizeStarts[i + 1] += sizeStarts[i];
+        }
+        final int[] buckets = new int[numberOfBuckets];
+        for (int i = 0; i < numberOfBuckets; i++) {
+            buckets[sizeStarts[maxBucketSize - filled[i]]++] = i;
+        }
+
+        final boolean[] taken = new boolean[numberOfTerms];
+        final int[] slots = new int[maxBucketSize];
+        int nextFreeSlot = 0;
+        for (final int bucket : buckets) {
+            final int start = bucketStarts[bucket];
+            final int size = bucketStarts[bucket + 1] - start;
+            if (size == 0) {
+                break;
+            }
+            if (size == 1) {
+                while (taken[nextFreeSlot]) {
+                    nextFreeSlot++;
+                }
+                slots[0] = nextFreeSlot;
+                displacements[bucket] = -nextFreeSlot - 1;
+            } else {
+                int displacement = 0;
+                while (!fits(hashes, terms, start, size, displacement, taken, slots)) {
+                    if (++displacement == MAX_DISPLACEMENT) {
+                        return false;
+                    }
+                }
+                displacements[bucket] = displacement;
+            }
+            for (int i = 0; i < size; i++) {
+                final int term = terms[start + i];
+                taken[slots[i]] = true;
+                ids[slots[i]] = term;
+                signatures[slots[i]] = hashes[term];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a displacement sends the terms of a bucket to distinct
+     * free slots.
+     * @param hashes The hash of each term
+     * @param terms The terms grouped by bucket
+     * @param start Where the terms of the bucket start
+     * @param size The number of terms in the bucket
+     * @param displacement The displacement to check
+     * @param taken The slots already used
+     * @param slots Where to store the slot of each term of the bucket
+     * @return true if the displacement can be used
+     */
+    private static boolean fits(final long[] hashes, final int[] terms,
+            final int start, final int size, final int displacement,
+            final boolean[] taken, final int[] slots) {
+        for (int i = 0; i < size; i++) {
+            final int slot =
+                    slot(hashes[terms[start + i]], displacement, taken.length);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Hash all the terms of a terms file.
+     * @param filename The terms file
+     * @return The hash of each term, in the order of the file
+     * @throws IOException if the terms cannot be read
+     */
+    private static long[] hashTerms(final String filename) throws IOException {
+        long[] hashes = new long[1024];
+        int numberOfTerms = 0;
+        final TermIterator terms = new TermIterator(filename);
+        try {
+            while (terms.hasNext()) {
+                if (numberOfTerms == hashes.length) {
+                    final long[] larger = new long[2 * hashes.length];
+                    System.arraycopy(hashes, 0, larger, 0, numberOfTerms);
+                    hashes = larger;
+                }
+                hashes[numberOfTerms++] = hash(terms.nextTerm());
+            }
+        } finally {
+            terms.close();
+        }
+        final long[] result = new long[numberOfTerms];
+        System.arraycopy(hashes, 0, result, 0, numberOfTerms);
+        return result;
+    }
+
+    /**
+     * @param term a term
+     * @return a 64 bit hash of the characters of the term
+     */
+    private static long hash(final CharSequence term) {
+        // FNV-1a over the characters
+        long hash = 0xCBF29CE484222325L;
+        final int length = term.length();
+        for (int i = 0; i < length; i++) {
+            hash ^= term.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * @param term a term
+     * @param seed the seed of the dictionary
+     * @return the hash of the term used by the dictionary
+     */
+    private static long hash(final CharSequence term, final long seed) {
+        return seed(hash(term), seed);
+    }
+
+    /**
+     * @param hash the hash of a term
+     * @param seed the seed of the dictionary
+     * @return the hash of the term used by the dictionary
+     */
+    private static long seed(final long hash, final long seed) {
+        return mix(hash + seed * GOLDEN_RATIO);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, so that every bit of the result depends
+     * on every bit of the value.
+     * @param value a value
+     * @return the mixed value
+     */
+    private static long mix(final long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param hash the hash of a term
+     * @param numberOfBuckets the number of buckets
+     * @return the bucket of the term
+     */
+    private static int bucket(final long hash, final int numberOfBuckets) {
+        return (int) ((hash >>> 1) % numberOfBuckets);
+    }
+
+    /**
+     * @param hash the hash of a term
+     * @param displacement the displacement of the bucket of the term
+     * @param numberOfSlots the number of slots
+     * @return the slot of the term
+     */
+    private static int slot(final long hash, final int displacement,
+            final int numberOfSlots) {
+        return (int) ((mix(hash + displacement * GOLDEN_RATIO) >>> 1)
+                % numberOfSlots);
+    }
+
+    /**
+     * Compute the CRC-32 of a terms file.
+     * @param termsFile The terms file
+     * @return The checksum
+     * @throws IOException if the file cannot be read
+     */
+    private static long checksum(final File termsFile) throws IOException {
+        final FileInputStream input = new FileInputStream(termsFile);
+        try {
+            final CRC32 crc = new CRC32();
+            final byte[] bytes = new byte[1 << 16];
+            int length;
+            while ((length = input.read(bytes)) != -1) {
+                crc.update(bytes, 0, length);
+            }
+            return crc.getValue();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @param position a position in the file
+     * @return the position rounded up to a multiple of eight
+     */
+    private static long align(final long position) {
+        return (position + 7) & -8L;
+    }
+
+    /**
+     * Write zeros up to a position that is a multiple of eight.
+     * @param output the dictionary file
+     * @param counter the bytes written to the dictionary file
+     * @throws IOException if the zeros cannot be written
+     */
+    private static void pad(final DataOutputStream output,
+            final CountingOutputStream counter) throws IOException {
+        while ((counter.getByteCount() & 7) != 0) {
+            output.writeByte(0);
+        }
+    }
+
+    /**
+     * Write a value seven bits per byte, lowest bits first, with the high
+     * bit set on every byte but the last.
+     * @param output the dictionary file
+     * @param value the value
+     * @throws IOException if the value cannot be written
+     */
+    private static void writeVByte(final DataOutputStream output, final int value)
+            throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            output.writeByte(remaining | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte(remaining);
+    }
+
+    /**
+     * The dictionary file is opened again when the dictionary is
+     * deserialized.
+     * @return the dictionary
+     * @throws IOException if the dictionary cannot be opened
+     */
+    private Object readResolve() throws IOException {
+        return new TermDictionary(basename);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final String basename = CLI.getOption(args, "-basename", null);
+        if (basename == null) {
+            System.err.println("Index basename must be provided (-basename),"
+                    + " for instance medline-text");
+            System.exit(10);
+        }
+        if (CLI.isKeywordGiven(args, "-verify")) {
+            final boolean current = isCurrent(basename, true);
+            System.out.println(getFilename(basename) + (current
+                    ? " matches " : " does not match ") + basename + ".terms");
+            System.exit(current ? 0 : 1);
+        }
+        final long start = System.currentTimeMillis();
+        build(basename);
+        System.out.println("Built " + getFilename(basename) + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.docstore;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.mg4j.io.OutputBitStream;
+
+import java.io.IOException;
+
+/**
+ * Writes byte aligned values that decode without any bit manipulation.
+ * Single values are coded with variable-byte: seven bits per byte, lowest
+ * bits first, with the high bit set on every byte but the last.  An array
+ * is coded as its length followed by its values in blocks of four.  Each
+ * block starts with a control byte that gives the number of bytes, minus
+ * one, of each value in two bits, and the values follow with their lowest
+ * byte first.  The last block is padded with zeros.
+ * <p/>
+ * Values are treated as unsigned, so negative values take five bytes with
+ * variable-byte and four bytes in a block.
+ */
+public final class CompressionAdaptorGroupVarint extends CompressionAdaptor {
+    /** The number of values in each block. */
+    private static final int BLOCK_SIZE = 4;
+
+    /** The largest number of bytes a block takes. */
+    private static final int MAX_BLOCK_LENGTH = 1 + 4 * BLOCK_SIZE;
+
+    /** The largest number of bytes a variable-byte coded long takes. */
+    private static final int MAX_VBYTE_LENGTH = 10;
+
+    /** Bytes of the values being written. */
+    private byte[] buffer = new byte[1024];
+
+    public CompressionAdaptorGroupVarint(final OutputBitStream out) {
+        super(out);
+    }
+
+    @Override
+    public int write(final int value) throws IOException {
+        return write(value & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public int write(final long value) throws IOException {
+        final int length = writeVByte(value, 0);
+        return output.align()
+                + (int) output.write(buffer, (long) length * Byte.SIZE);
+    }
+
+    @Override
+    public int write(final int[] values) throws IOException {
+        final int maxLength = MAX_VBYTE_LENGTH
+                + (values.length + BLOCK_SIZE - 1) / BLOCK_SIZE * MAX_BLOCK_LENGTH;
+        if (buffer.length < maxLength) {
+            buffer = new byte[Math.max(maxLength, 2 * buffer.length)];
+        }
+        int length = writeVByte(values.length, 0);
+        for (int i = 0; i < values.length; i += BLOCK_SIZE) {
+            final int control = length++;
+            int lengths = 0;
+            for (int j = 0; j < BLOCK_SIZE; j++) {
+                final int value = i + j < values.length ? values[i + j] : 0;
+                final int bytes = byteLength(value);
+                for (int k = 0; k < bytes; k++) {
+                    buffer[length++] = (byte) (value >>> (k << 3));
+                }
+                lengths |= (bytes - 1) << (j << 1);
+            }
+            buffer[control] = (byte) lengths;
+        }
+        return output.align()
+                + (int) output.write(buffer, (long) length * Byte.SIZE);
+    }
+
+    /**
+     * Code a value with variable-byte into the buffer.
+     * @param value The value, treated as unsigned
+     * @param offset Where to write in the buffer
+     * @return The position after the value in the buffer
+     */
+    private int writeVByte(final long value, final int offset) {
+        int position = offset;
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer[position++] = (byte) (remaining | 0x80);
+            remaining >>>= 7;
+        }
+        buffer[position++] = (byte) remaining;
+        return position;
+    }
+
+    /**
+     * @param value A value
+     * @return The number of bytes needed for the value, from one to four
+     */
+    private static int byteLength(final int value) {
+        if ((value & 0xFFFFFF00) == 0) {
+            return 1;
+        } else if ((value & 0xFFFF0000) == 0) {
+            return 2;
+        } else if ((value & 0xFF000000) == 0) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * Decode an array written by {@link #write(int[])}.
+     * @param data The coded array
+     * @param offset Where the array starts in the data
+     * @return The values of the array
+     */
+    public static int[] decode(final byte[] data, final int offset) {
+        final IntArrayList values = new IntArrayList();
+        decode(data, offset, values);
+        return values.toIntArray();
+    }
+
+    /**
+     * Decode an array written by {@link #write(int[])}.
+     * @param data The coded array
+     * @param offset Where the array starts in the data
+     * @param values The values of the array are appended to this list
+     * @return The position after the array in the data
+     */
+    public static int decode(final byte[] data, final int offset,
+            final IntArrayList values) {
+        // the length is always much smaller than 2^31 so it fits in an int
+        int position = offset;
+        int length = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[position++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        // decode whole blocks, the last one is padded
+        final int size = values.size();
+        final int padded = (length + BLOCK_SIZE - 1) & -BLOCK_SIZE;
+        values.size(size + padded);
+        final int[] elements = values.elements();
+        for (int i = size; i < size + padded; i += BLOCK_SIZE) {
+            final int control = data[position++];
+            for (int j = 0; j < BLOCK_SIZE; j++) {
+                final int bytes = ((control >>> (j << 1)) & 3) + 1;
+                int value = data[position++] & 0xFF;
+                for (int k = 1; k < bytes; k++) {
+                    value |= (data[position++] & 0xFF) << (k << 3);
+                }
+                elements[i + j] = value;
+            }
+        }
+        values.size(size + length);
+        return position;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.docstore;
+
+import it.unimi.dsi.mg4j.io.OutputBitStream;
+import textractor.mg4j.io.MappedFile;
+
+import java.io.IOException;
+
+/**
+ * How the terms of each document are coded in the document data file.
+ * <p/>
+ * Document data files start with a header of four big-endian ints: zero,
+ * {@link #MAGIC}, {@link #VERSION} and the id of the format.  Files written
+ * before the header was introduced start directly with the gamma code of
+ * the first term.  A gamma code of an int has at most 31 leading zeros, so
+ * such files can never start with four zero bytes and are read as
+ * {@link #GAMMA}.
+ */
+public enum DocumentStoreFormat {
+    /**
+     * Each term is coded with Elias gamma. The reader decodes one code at a
+     * time and checks the bit position after each to find the end of the
+     * document.
+     */
+    GAMMA(1),
+
+    /**
+     * Each document is byte aligned.  The number of terms is coded with
+     * variable-byte and the terms follow in blocks of four coded with
+     * group varint.
+     * @see CompressionAdaptorGroupVarint
+     */
+    GROUP_VARINT(2);
+
+    /** Identifies document data files with a header. */
+    static final int MAGIC = 0x54584453;   // "TXDS"
+
+    /** The version of the header. */
+    static final int VERSION = 2;
+
+    /** The length of the header in bytes. */
+    static final int HEADER_LENGTH = 16;
+
+    /** The id of the format stored in the header. */
+    private final int id;
+
+    /**
+     * @param id The id of the format stored in the header
+     */
+    private DocumentStoreFormat(final int id) {
+        this.id = id;
+    }
+
+    /**
+     * Write the header for this format.
+     * @param output The start of the document data file
+     * @throws IOException if the header cannot be written
+     */
+    void writeHeader(final OutputBitStream output) throws IOException {
+        output.writeInt(0, 32);
+        output.writeInt(MAGIC, 32);
+        output.writeInt(VERSION, 32);
+        output.writeInt(id, 32);
+    }
+
+    /**
+     * Get the format of a document data file.
+     * @param documentData The document data file
+     * @return The format given in the header of the file or {@link #GAMMA}
+     * if the file has no header
+     * @throws IOException if the header cannot be read or names an unknown
+     * format
+     */
+    static DocumentStoreFormat read(final MappedFile documentData)
+            throws IOException {
+        if (documentData.length() < HEADER_LENGTH) {
+            return GAMMA;
+        }
+        final byte[] header = new byte[HEADER_LENGTH];
+        documentData.read(0, header, 0, HEADER_LENGTH);
+        if (getInt(header, 0) != 0) {
+            return GAMMA;
+        }
+        if (getInt(header, 4) != MAGIC || getInt(header, 8) > VERSION) {
+            throw new IOException(documentData.getFilename()
+                    + " is not a document store version " + VERSION
+                    + " or earlier");
+        }
+        final int id = getInt(header, 12);
+        for (final DocumentStoreFormat format : values()) {
+            if (format.id == id) {
+                return format;
+            }
+        }
+        throw new IOException("Unknown document store format " + id
+                + " in " + documentData.getFilename());
+    }
+
+    /**
+     * @param bytes Bytes with a big-endian int
+     * @param offset Where the int starts
+     * @return The int
+     */
+    private static int getInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -22,14 +22,14 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.io.BinIO;
 import it.unimi.dsi.mg4j.io.InputBitStream;
 import it.unimi.dsi.mg4j.util.MutableString;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.math.IntRange;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import textractor.database.DocumentIndexManager;
 import textractor.database.IndexDetails;
-import textractor.mg4j.offsets.LongDenseDeltaList;
+import textractor.mg4j.io.MappedFile;
+import textractor.mg4j.offsets.LongDenseEliasFanoList;
 import textractor.mg4j.offsets.LongDenseList;
 
 import java.io.Closeable;
@@ -39,10 +39,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- * Access a DocumentStore on disk.
+ * Access a DocumentStore on disk.  The document data, positions and offsets
+ * are mapped into memory and every read decodes through its own stream, so
+ * a single reader can be shared by any number of threads.
  * User: Fabien Campagne
  * Date: Oct 29, 2005
  * Time: 5:17:17 PM
@@ -63,18 +67,25 @@ public final class DocumentStoreReader implements Closeable {
     private LongDenseList offsets;
     private int[] smallIndexToTerms;
 
-    private FileInputStream documentInputStream;
-    private InputBitStream documentData;
+    /**
+     * The compressed documents.
+     */
+    private MappedFile documentData;
+
+    /**
+     * How the terms of the documents are coded.
+     */
+    private DocumentStoreFormat format;
 
     /**
-     * Stream used to read compressed term position information.
+     * The compressed term position information.
      */
-    private InputBitStream positionStream;
+    private volatile MappedFile positionData;
 
     /**
      * Offsets for compressed term position information.
      */
-    private LongDenseList positionOffsets;
+    private volatile LongDenseList positionOffsets;
 
     /**
      * The number of documents in this document store.
@@ -82,14 +93,38 @@ public final class DocumentStoreReader implements Closeable {
     private final int numberOfDocuments;
     public static final int DOCUMENT_NOT_FOUND =
         DocumentStoreWriter.DOCUMENT_NOT_FOUND;
-    private final int maxReads;
     private int[] mapDoc2PMID;
+
+    /**
+     * Maps pmids back to document numbers.
+     */
+    private PMIDIndex pmidIndex;
     private final boolean readPmids;
     private static final String SOME_WORD = "<someword>";
-    private final List<Integer> freqDocument = new IntArrayList();
 
     /**
-     * Object to sync reading from the position file.
+     * Buffers reused by each thread to decode documents.
+     */
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Buffers used by a single thread to decode documents.
+     */
+    private static final class Scratch {
+        /** The bytes of a byte aligned document. */
+        private byte[] bytes = new byte[1024];
+
+        /** The terms of a document. */
+        private final IntArrayList terms = new IntArrayList();
+    }
+
+    /**
+     * Object to sync loading the position information.
      */
     private final Object positionReadSync = new Object();
 
@@ -130,7 +165,7 @@ public final class DocumentStoreReader implements Closeable {
      * indexDetailsVal. It is only necessary to "readPmids" if reading from the "text" index.
      *
      * @param indexDetailsVal the document index to read the documents for
-     * @param maxReads xx
+     * @param maxReads Not used any more, offsets are read in constant time
      * @param readPmidsVal if true, the pmids file will be read
      * @throws IOException When docstore files cannot be read with
      * the given basename.
@@ -144,10 +179,12 @@ public final class DocumentStoreReader implements Closeable {
         this.basename = indexDetails.getBasename();
         this.numberOfTerms = indexDetails.getIndex().numberOfTerms;
         this.numberOfDocuments = indexDetails.getIndex().numberOfDocuments;
-        this.maxReads = maxReads;
         readOffsets();
         readSmallIndexToTerms();
         openDocumentDataFile();
+        if (readPmids) {
+            openPMIDIndex();
+        }
 
         final File positionFile =
                 new File(DocumentStoreWriter.getPositionFilename(basename));
@@ -168,6 +205,22 @@ public final class DocumentStoreReader implements Closeable {
         if (readPmids && mapDoc2PMID == null) {
             mapDoc2PMID =
                 BinIO.loadInts(DocumentStoreWriter.getPMIDMapFilename(basename));
+            if (pmidIndex == null) {
+                // stores written before the index existed
+                pmidIndex = PMIDIndex.build(mapDoc2PMID);
+            }
+        }
+    }
+
+    /**
+     * Map the index from pmids to documents if the store has one.
+     * @throws IOException if the index cannot be read
+     */
+    private void openPMIDIndex() throws IOException {
+        final File pmidIndexFile =
+                new File(DocumentStoreWriter.getPMIDIndexFilename(basename));
+        if (pmidIndexFile.exists()) {
+            pmidIndex = PMIDIndex.load(pmidIndexFile.getPath());
         }
     }
 
@@ -195,9 +248,10 @@ public final class DocumentStoreReader implements Closeable {
 
     /**
      * Retrieve the document number that corresponds to a given PMID.
-     * This method requires that PMID information has been read.
-     * Note also that this is an O(n) operation where n is the number
-     * of documents in the store.
+     * When several documents share the PMID, the first one is returned.
+     * This method requires that PMID information has been read, unless
+     * the store has an index from pmids to documents.  The lookup takes
+     * O(log n) time where n is the number of distinct PMIDs in the store.
      *
      * @see #readPMIDs()
      * @param pmid PMID for which the document number is sought
@@ -209,10 +263,32 @@ public final class DocumentStoreReader implements Closeable {
              return DOCUMENT_NOT_FOUND;
         }
 
-        assert mapDoc2PMID != null
+        assert pmidIndex != null
             : "readPMIDs must be called before getDocumentNumber can succeed.";
 
-        return ArrayUtils.indexOf(mapDoc2PMID, (int) pmid);
+        return pmidIndex.getDocumentNumber(pmid);
+    }
+
+    /**
+     * Retrieve all the document numbers that correspond to a given PMID,
+     * i.e., every sentence of an article.
+     * This method requires that PMID information has been read, unless
+     * the store has an index from pmids to documents.
+     *
+     * @see #readPMIDs()
+     * @param pmid PMID for which the document numbers are sought
+     * @return document numbers of the article corresponding to the PMID in
+     * increasing order, empty if not found.
+     */
+    public int[] getDocumentNumbers(final long pmid) {
+        if (!readPmids) {
+             return ArrayUtils.EMPTY_INT_ARRAY;
+        }
+
+        assert pmidIndex != null
+            : "readPMIDs must be called before getDocumentNumbers can succeed.";
+
+        return pmidIndex.getDocumentNumbers(pmid);
     }
 
     /**
@@ -220,9 +296,9 @@ public final class DocumentStoreReader implements Closeable {
      * @throws IOException error opening data file.
      */
     private void openDocumentDataFile() throws IOException {
-        documentInputStream = new FileInputStream(
+        documentData = new MappedFile(
                 DocumentStoreWriter.getDocumentDataFilename(basename));
-        documentData = new InputBitStream(new DataInputStream(documentInputStream));
+        format = DocumentStoreFormat.read(documentData);
     }
 
     /**
@@ -249,10 +325,9 @@ public final class DocumentStoreReader implements Closeable {
      * @throws IOException error reading data file.
      */
     private void readOffsets() throws IOException {
-        final long size = (new File(DocumentStoreWriter.getOffsetFilename(basename))).length();
-        final InputBitStream offsetBitStream =
-                new InputBitStream(DocumentStoreWriter.getOffsetFilename(basename), (int) size);
-        offsets = new LongDenseDeltaList(offsetBitStream, maxReads, numberOfDocuments);
+        offsets = LongDenseEliasFanoList.open(
+                DocumentStoreWriter.getOffsetFilename(basename),
+                numberOfDocuments + 1);
     }
 
     /**
@@ -260,13 +335,44 @@ public final class DocumentStoreReader implements Closeable {
      * @throws IOException error reading data file.
      */
     private void readPostionOffsets() throws IOException {
-        final String positionOffsetFilename =
-                DocumentStoreWriter.getPositionOffsetFilename(basename);
-        final long size = new File(positionOffsetFilename).length();
-        final InputBitStream offsetBitStream =
-                new InputBitStream(positionOffsetFilename, (int) size);
-        positionOffsets =
-                new LongDenseDeltaList(offsetBitStream, maxReads, numberOfDocuments);
+        positionOffsets = LongDenseEliasFanoList.open(
+                DocumentStoreWriter.getPositionOffsetFilename(basename),
+                numberOfDocuments + 1);
+    }
+
+    /**
+     * Decode the terms of a document as they are stored.
+     * @param documentIndex the document index number to read
+     * @param tokens The stored terms, which must be mapped with
+     * {@link #smallIndexToTerms}, are appended to this list
+     * @throws IOException error reading the data
+     */
+    private void readTokens(final int documentIndex, final IntArrayList tokens)
+            throws IOException {
+        final long start = offsets.getLong(documentIndex);
+        final long end = offsets.getLong(documentIndex + 1);   // read until the next document.
+        switch (format) {
+            case GROUP_VARINT:
+                // documents are byte aligned
+                final int length = (int) ((end - start) >>> 3);
+                final Scratch buffers = scratch.get();
+                if (buffers.bytes.length < length) {
+                    buffers.bytes = new byte[Math.max(length, 2 * buffers.bytes.length)];
+                }
+                documentData.read(start >>> 3, buffers.bytes, 0, length);
+                CompressionAdaptorGroupVarint.decode(buffers.bytes, 0, tokens);
+                break;
+            case GAMMA:
+                final InputBitStream documentStream = documentData.bitStream();
+                documentStream.position(start);
+                documentStream.readBits(start);
+                while (documentStream.readBits() < end) {
+                    tokens.add(documentStream.readGamma());
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unsupported format: " + format);
+        }
     }
 
     /**
@@ -291,27 +397,24 @@ public final class DocumentStoreReader implements Closeable {
      * @throws IOException error reading the data
      */
     public void document(final int documentIndex, final MutableString result) throws IOException {
-        final long start = offsets.getLong(documentIndex);
-        final long end = offsets.getLong(documentIndex + 1);   // read until the next document.
-
-        documentData.flush();
-        documentData.readBits(0);
-
-        documentInputStream.getChannel().position(start >> 3);
-        if ((start % 8) != 0) {
-            documentData.skip(start % 8);
-        }
-        documentData.readBits(start);
+        final IntArrayList tokens = scratch.get().terms;
+        tokens.clear();
+        readTokens(documentIndex, tokens);
+        appendText(tokens.elements(), tokens.size(), result);
+    }
 
+    /**
+     * Append the text of stored terms.
+     * @param tokens The stored terms
+     * @param length The number of terms
+     * @param result The text of the terms is appended to this string
+     */
+    private void appendText(final int[] tokens, final int length,
+            final MutableString result) {
         final char separator = ' ';
 
-        for (;;) {
-            final int token = documentData.readGamma();
-            final long read = documentData.readBits();
-            if (read > end) {
-                break;
-            }
-            final int term = smallIndexToTerms[token];
+        for (int i = 0; i < length; i++) {
+            final int term = smallIndexToTerms[tokens[i]];
 
             if (term == DocumentIndexManager.NO_SUCH_TERM) {
                 result.append(SOME_WORD);
@@ -336,29 +439,335 @@ public final class DocumentStoreReader implements Closeable {
      */
     public int document(final int documentIndex, final List<Integer> result)
             throws IOException {
-        final long start = offsets.getLong(documentIndex);
-        final long end = offsets.getLong(documentIndex + 1);   // read until the next document.
+        final int count = 0;
+        final IntArrayList tokens = scratch.get().terms;
+        tokens.clear();
+        readTokens(documentIndex, tokens);
+        final int[] elements = tokens.elements();
+        for (int i = 0; i < tokens.size(); i++) {
+            result.add(smallIndexToTerms[elements[i]]);
+        }
+        return count;
+    }
 
-        documentData.flush();
-        documentData.readBits(0);
+    /**
+     * Retrieves the words of a document from this document store without
+     * boxing them.  Each word is coded by the document manager this document
+     * store is associated to.
+     *
+     * @param documentIndex Index of the document to retrieve.
+     * @param terms The list is cleared and the words of the document are
+     *        stored in <code>terms.elements()</code>, which grows as needed.
+     * @return The number of words in the document
+     * @throws IOException error reading the data
+     */
+    public int documentTerms(final int documentIndex, final IntArrayList terms)
+            throws IOException {
+        terms.clear();
+        readTokens(documentIndex, terms);
+        final int[] elements = terms.elements();
+        final int length = terms.size();
+        for (int i = 0; i < length; i++) {
+            elements[i] = smallIndexToTerms[elements[i]];
+        }
+        return length;
+    }
 
-        documentInputStream.getChannel().position(start >> 3);
-        if ((start % 8) != 0) {
-            documentData.skip(start % 8);
+    /**
+     * Get a cursor that reads every document of this store in order.
+     * @return A cursor positioned before the first document
+     * @throws IOException error reading the data
+     */
+    public Cursor cursor() throws IOException {
+        return new Cursor(0);
+    }
+
+    /**
+     * Get a cursor that reads documents of this store in order.
+     * @param firstDocument The first document the cursor reads
+     * @return A cursor positioned before the given document
+     * @throws IOException error reading the data
+     */
+    public Cursor cursor(final int firstDocument) throws IOException {
+        return new Cursor(firstDocument);
+    }
+
+    /**
+     * Retrieves several documents from this document store in a single
+     * pass.  Offsets grow with document numbers, so the documents are read in
+     * the order they are stored in.  The words of document
+     * <code>sortedIds[i]</code> are
+     * <code>terms.elements()[starts[i]]</code> to
+     * <code>terms.elements()[starts[i + 1] - 1]</code>.
+     *
+     * @param sortedIds The documents to retrieve in increasing order
+     * @param terms The words of the documents. The list is cleared first.
+     * @param starts Where the words of each document start in the list,
+     * followed by the total number of words.  Must have room for
+     * <code>sortedIds.length + 1</code> values.
+     * @throws IOException error reading the data
+     */
+    public void documents(final int[] sortedIds, final IntArrayList terms,
+            final int[] starts) throws IOException {
+        if (starts.length <= sortedIds.length) {
+            throw new IllegalArgumentException("Room for "
+                    + (sortedIds.length + 1) + " starts is needed");
+        }
+        terms.clear();
+        if (sortedIds.length == 0) {
+            starts[0] = 0;
+            return;
+        }
+        final Cursor cursor = new Cursor(sortedIds[0]);
+        for (int i = 0; i < sortedIds.length; i++) {
+            if (i > 0 && sortedIds[i] <= sortedIds[i - 1]) {
+                throw new IllegalArgumentException("Document " + sortedIds[i]
+                        + " is not after " + sortedIds[i - 1]);
+            }
+            starts[i] = terms.size();
+            cursor.skipTo(sortedIds, i);
+            cursor.next(terms);
         }
-        documentData.readBits(start);
+        starts[sortedIds.length] = terms.size();
+    }
 
-        final int count = 0;
-        for (;;) {
-            final int token = documentData.readGamma();
-            final long read = documentData.readBits();
-            if (read > end) {
-                break;
+    /**
+     * Reads documents in the order they are stored in.  Consecutive
+     * documents are decoded from a single buffered pass over the document
+     * data, without looking up offsets or repositioning for each document.
+     * A cursor must only be used by one thread at a time, but any number of
+     * cursors can read the same store.
+     */
+    public final class Cursor {
+        /** The number of bytes read at once from the document data. */
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        /** The next document to read. */
+        private int documentIndex;
+
+        /** Reads gamma coded documents. */
+        private InputBitStream bitStream;
+
+        /** Bytes of byte aligned documents. */
+        private byte[] buffer;
+
+        /** The position in the document data of the first byte in the buffer. */
+        private long bufferStart;
+
+        /** The number of bytes in the buffer. */
+        private int bufferLength;
+
+        /** The stored terms of the current document. */
+        private final IntArrayList tokens = new IntArrayList();
+
+        /**
+         * The document that will be read after the next one, not greater
+         * than {@link #documentIndex} if it is not known.
+         */
+        private int following = -1;
+
+        /**
+         * Create a new cursor.
+         * @param firstDocument The first document to read
+         * @throws IOException error reading the data
+         */
+        private Cursor(final int firstDocument) throws IOException {
+            super();
+            if (firstDocument < 0 || firstDocument > numberOfDocuments) {
+                throw new IndexOutOfBoundsException("Document " + firstDocument
+                        + " is not in [0, " + numberOfDocuments + "]");
+            }
+            documentIndex = firstDocument;
+            switch (format) {
+                case GROUP_VARINT:
+                    buffer = new byte[BUFFER_SIZE];
+                    break;
+                case GAMMA:
+                    final long start = offsets.getLong(documentIndex);
+                    bitStream = new InputBitStream(documentData.stream(),
+                            BUFFER_SIZE);
+                    bitStream.position(start);
+                    bitStream.readBits(start);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported format: "
+                            + format);
             }
-            final int term = smallIndexToTerms[token];
-            result.add(term);
         }
-        return count;
+
+        /**
+         * @return The document that the next call to
+         * {@link #next(IntArrayList)} reads
+         */
+        public int getDocumentIndex() {
+            return documentIndex;
+        }
+
+        /**
+         * @return true if there are more documents to read
+         */
+        public boolean hasNext() {
+            return documentIndex < numberOfDocuments;
+        }
+
+        /**
+         * Move forward to a document.
+         * @param target The next document to read. Documents before it are
+         * skipped without being decoded.
+         * @throws IOException error reading the data
+         */
+        public void skipTo(final int target) throws IOException {
+            skipTo(target, -1);
+        }
+
+        /**
+         * Move forward to a document of a batch, knowing which documents
+         * will be read after it.  When the next one is too far away to be
+         * read into the same buffer, only the bytes of the target document
+         * are read instead of a whole buffer, which is what batches of
+         * scattered documents need.
+         * @param sortedIds The documents of the batch in increasing order,
+         * possibly repeated
+         * @param i The position in the batch of the next document to read
+         * @throws IOException error reading the data
+         */
+        public void skipTo(final int[] sortedIds, final int i)
+                throws IOException {
+            int next = i + 1;
+            while (next < sortedIds.length && sortedIds[next] == sortedIds[i]) {
+                next++;
+            }
+            skipTo(sortedIds[i], next < sortedIds.length
+                    ? sortedIds[next] : numberOfDocuments);
+        }
+
+        /**
+         * Move forward to a document, knowing which document will be read
+         * after it.
+         * @param target The next document to read
+         * @param next The document that will be read after the target, the
+         * number of documents if none will be, or a value not greater than
+         * the target if it is not known
+         * @throws IOException error reading the data
+         */
+        private void skipTo(final int target, final int next) throws IOException {
+            if (target < documentIndex || target > numberOfDocuments) {
+                throw new IndexOutOfBoundsException("Cannot skip from document "
+                        + documentIndex + " to " + target);
+            }
+            following = next;
+            if (target == documentIndex) {
+                return;
+            }
+            documentIndex = target;
+            if (bitStream != null) {
+                final long start = offsets.getLong(documentIndex);
+                bitStream.skip(start - bitStream.readBits());
+                bitStream.readBits(start);
+            }
+        }
+
+        /**
+         * Read the next document.  The words are appended to the list, coded
+         * by the document manager this document store is associated to.
+         * @param terms The words of the document are appended to this list
+         * @return The number of the document read
+         * @throws IOException error reading the data
+         * @throws java.util.NoSuchElementException if there are no more
+         * documents
+         */
+        public int next(final IntArrayList terms) throws IOException {
+            readTokens();
+            final int[] elements = tokens.elements();
+            for (int i = 0; i < tokens.size(); i++) {
+                terms.add(smallIndexToTerms[elements[i]]);
+            }
+            return documentIndex++;
+        }
+
+        /**
+         * Read the text of the next document.
+         * @param result The text of the document is appended to this string
+         * @return The number of the document read
+         * @throws IOException error reading the data
+         * @throws java.util.NoSuchElementException if there are no more
+         * documents
+         */
+        public int next(final MutableString result) throws IOException {
+            readTokens();
+            appendText(tokens.elements(), tokens.size(), result);
+            return documentIndex++;
+        }
+
+        /**
+         * Decode the stored terms of the next document into
+         * {@link #tokens}.
+         * @throws IOException error reading the data
+         */
+        private void readTokens() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final long end = offsets.getLong(documentIndex + 1);
+            tokens.clear();
+            if (bitStream != null) {
+                while (bitStream.readBits() < end) {
+                    tokens.add(bitStream.readGamma());
+                }
+            } else {
+                final long start = offsets.getLong(documentIndex) >>> 3;
+                final int length = (int) ((end >>> 3) - start);
+                fill(start, length, readLength(start, length));
+                CompressionAdaptorGroupVarint.decode(buffer,
+                        (int) (start - bufferStart), tokens);
+            }
+            following = -1;
+        }
+
+        /**
+         * Decide how many bytes to read for the current document if it is
+         * not in the buffer already.
+         * @param start The position of the first byte of the document
+         * @param length The number of bytes in the document
+         * @return The length of the document if the document read after it
+         * is known to be too far away to share a buffer with it, otherwise
+         * a whole buffer
+         * @throws IOException error reading the data
+         */
+        private int readLength(final long start, final int length)
+                throws IOException {
+            if (following > documentIndex) {
+                final long followingEnd = following < numberOfDocuments
+                        ? offsets.getLong(following + 1) >>> 3 : Long.MAX_VALUE;
+                if (followingEnd - start > BUFFER_SIZE) {
+                    return length;
+                }
+            }
+            return BUFFER_SIZE;
+        }
+
+        /**
+         * Make sure bytes of the document data are in the buffer.
+         * @param start The position of the first byte needed
+         * @param length The number of bytes needed
+         * @param readLength The number of bytes to read if the ones needed
+         * are not in the buffer
+         * @throws IOException error reading the data
+         */
+        private void fill(final long start, final int length,
+                final int readLength) throws IOException {
+            if (start >= bufferStart
+                    && start + length <= bufferStart + bufferLength) {
+                return;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            bufferStart = start;
+            bufferLength = (int) Math.min(Math.max(length, readLength),
+                    documentData.length() - start);
+            documentData.read(bufferStart, buffer, 0, bufferLength);
+        }
     }
 
     /**
@@ -382,18 +791,66 @@ public final class DocumentStoreReader implements Closeable {
     public int frequencies(
             final int documentIndex, final int[] termFrequencies, final int[] numDocForTerm)
             throws IOException {
-        freqDocument.clear();
-        document(documentIndex, freqDocument);
+        final IntArrayList terms = scratch.get().terms;
+        final int length = documentTerms(documentIndex, terms);
+        count(terms.elements(), length, termFrequencies, numDocForTerm);
+        return length;
+    }
 
-        int sum = 0;
-        for (final int termIndex : freqDocument) {
+    /**
+     * Count words.
+     * @param terms The words
+     * @param length The number of words
+     * @param termFrequencies The number of occurrences of each word is added
+     * to this array
+     * @param numDocForTerm optional, the number of occurrences of each word
+     * is also added to this array
+     */
+    private static void count(final int[] terms, final int length,
+            final int[] termFrequencies, final int[] numDocForTerm) {
+        for (int i = 0; i < length; i++) {
+            final int termIndex = terms[i];
             if (termIndex != DocumentIndexManager.NO_SUCH_TERM) {
                 termFrequencies[termIndex] += 1;
                 if (numDocForTerm != null) {
                     ++numDocForTerm[termIndex];
                 }
             }
-            ++sum;
+        }
+    }
+
+    /**
+     * Count the words of several documents.  The documents are read in a
+     * single pass in the order they are stored in, whatever their order in
+     * the array.
+     *
+     * @param documents The documents to count the words of. A document that
+     * appears more than once is counted each time.
+     * @param termFrequencies The number of occurrences of each word is added
+     * to this array
+     * @param numDocForTerm optional, the number of occurrences of each word
+     * is also added to this array
+     * @return The number of words in the documents
+     * @throws IOException error reading the data
+     */
+    public long frequencies(final int[] documents, final int[] termFrequencies,
+            final int[] numDocForTerm) throws IOException {
+        final int[] sortedIds = documents.clone();
+        Arrays.sort(sortedIds);
+        final IntArrayList terms = new IntArrayList();
+        long sum = 0;
+        Cursor cursor = null;
+        for (int i = 0; i < sortedIds.length; i++) {
+            if (i == 0 || sortedIds[i] != sortedIds[i - 1]) {
+                if (cursor == null) {
+                    cursor = cursor(sortedIds[i]);
+                }
+                cursor.skipTo(sortedIds, i);
+                terms.clear();
+                cursor.next(terms);
+            }
+            count(terms.elements(), terms.size(), termFrequencies, numDocForTerm);
+            sum += terms.size();
         }
         return sum;
     }
@@ -410,68 +867,98 @@ public final class DocumentStoreReader implements Closeable {
     public List<IntRange> positions(final int documentIndex) throws IOException {
         List<IntRange> ranges = null;
         if (positionsAvailable) {
+            final IntArrayList bounds = new IntArrayList();
+            final int numberOfPositions = positions(documentIndex, bounds);
+            final int[] elements = bounds.elements();
+            ranges = new ArrayList<IntRange>(numberOfPositions);
+            for (int i = 0; i < numberOfPositions; i++) {
+                final IntRange range =
+                        new IntRange(elements[2 * i], elements[2 * i + 1]);
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("range of " + i + " is " + range);
+                }
+                ranges.add(range);
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * Get the range of positions that each term occupied in the original
+     * document source without creating an object for each range.
+     * @param documentIndex index of the document to get the positions for
+     * @param bounds The list is cleared and the start and end of each
+     * range are stored one after the other in <code>bounds.elements()</code>,
+     * which grows as needed.
+     * @return The number of ranges, which is zero if this document store
+     * does not contain positon information
+     * @throws IOException if there is a problem reading the positions
+     * @see #isPositionsAvailable()
+     */
+    public int positions(final int documentIndex, final IntArrayList bounds)
+            throws IOException {
+        bounds.clear();
+        if (!positionsAvailable) {
+            return 0;
+        }
+        if (positionOffsets == null) {
+            // lazy load the offsets and the position data
             synchronized (positionReadSync) {
-                // lazy load the offsets
                 if (positionOffsets == null) {
-                    readPostionOffsets();
-                }
-                // and the position stream
-                if (positionStream == null) {
-                    positionStream = new InputBitStream(
+                    positionData = new MappedFile(
                             DocumentStoreWriter.getPositionFilename(basename));
+                    readPostionOffsets();
                 }
+            }
+        }
 
-                final long offset = positionOffsets.getLong(documentIndex);
-                positionStream.position(offset);
-
-                final int numberOfPositions;
-                switch (DocumentStoreWriter.POSITION_COMPRESSION) {
-                    case DELTA:
-                        numberOfPositions = positionStream.readDelta();
-                        break;
-                    case GAMMA:
-                        numberOfPositions = positionStream.readGamma();
-                        break;
-                    default:
-                        throw new IllegalArgumentException(
-                                "Unsupported compression: "
-                                        + DocumentStoreWriter.POSITION_COMPRESSION);
-                }
+        final InputBitStream positionStream = positionData.bitStream();
+        final long offset = positionOffsets.getLong(documentIndex);
+        positionStream.position(offset);
 
-                ranges = new ArrayList<IntRange>(numberOfPositions);
-
-                int lastPosition = 0;
-                for (int i = 0; i < numberOfPositions; i++) {
-                    final int start;
-                    final int end;
-
-                    switch (DocumentStoreWriter.POSITION_COMPRESSION) {
-                        case DELTA:
-                            start = positionStream.readDelta() + lastPosition;
-                            lastPosition = start;
-                            end = positionStream.readDelta() + lastPosition;
-                            lastPosition = end;
-                            break;
-                        case GAMMA:
-                            start = positionStream.readGamma();
-                            end = start + positionStream.readGamma();
-                            break;
-                        default:
-                            throw new IllegalArgumentException(
-                                    "Unsupported compression: "
-                                            + DocumentStoreWriter.POSITION_COMPRESSION);
-                    }
-
-                    final IntRange range = new IntRange(start, end);
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("range of " + i + " is " + range);
-                    }
-                    ranges.add(range);
-                }
-            }
+        final int numberOfPositions;
+        switch (DocumentStoreWriter.POSITION_COMPRESSION) {
+            case DELTA:
+                numberOfPositions = positionStream.readDelta();
+                break;
+            case GAMMA:
+                numberOfPositions = positionStream.readGamma();
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported compression: "
+                                + DocumentStoreWriter.POSITION_COMPRESSION);
         }
 
-        return ranges;
+        bounds.size(2 * numberOfPositions);
+        final int[] elements = bounds.elements();
+        int lastPosition = 0;
+        for (int i = 0; i < numberOfPositions; i++) {
+            final int start;
+            final int end;
+
+            switch (DocumentStoreWriter.POSITION_COMPRESSION) {
+                case DELTA:
+                    start = positionStream.readDelta() + lastPosition;
+                    lastPosition = start;
+                    end = positionStream.readDelta() + lastPosition;
+                    lastPosition = end;
+                    break;
+                case GAMMA:
+                    start = positionStream.readGamma();
+                    end = start + positionStream.readGamma();
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unsupported compression: "
+                                    + DocumentStoreWriter.POSITION_COMPRESSION);
+            }
+
+            elements[2 * i] = start;
+            elements[2 * i + 1] = end;
+        }
+        return numberOfPositions;
     }
 
     /**
@@ -508,12 +995,9 @@ public final class DocumentStoreReader implements Closeable {
      * @throws java.io.IOException if an I/O error occurs
      */
     public void close() throws IOException {
-        IOUtils.closeQuietly(documentInputStream);
-        if (documentData != null) {
-            documentData.close();
-        }
-        if (positionStream != null) {
-            positionStream.close();
-        }
+        // the files are already closed, the mappings are released once
+        // they are no longer referenced
+        documentData = null;
+        positionData = null;
     }
 }
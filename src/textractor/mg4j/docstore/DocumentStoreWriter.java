@@ -31,9 +31,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import textractor.database.DocumentIndexManager;
 import textractor.database.IndexDetails;
+import textractor.mg4j.offsets.LongDenseEliasFanoList;
 
 import java.io.Closeable;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
@@ -58,6 +58,10 @@ import java.util.List;
  * frequency data found in the inverted index. More frequent terms are
  * coded with shorter bit streams.
  * <p/>
+ * The terms are coded according to a {@link DocumentStoreFormat}, recorded
+ * in the header of the document data file.  The default is byte aligned
+ * group varint, which is larger than gamma but much faster to decode.
+ * <p/>
  * User: Fabien Campagne
  * Date: Oct 29, 2005
  * Time: 11:57:37 AM
@@ -117,11 +121,15 @@ public final class DocumentStoreWriter implements Closeable {
     private long previousPositionOffset;
 
     /**
-     * To compress documents.
-     * @see it.unimi.dsi.mg4j.index.CompressionFlags
+     * The format used unless another one is given to the constructor.
+     */
+    public static final DocumentStoreFormat DEFAULT_FORMAT =
+            DocumentStoreFormat.GROUP_VARINT;
+
+    /**
+     * How document terms are coded.
      */
-    private static final CompressionFlags.Coding DOC_COMPRESSION =
-            CompressionFlags.Coding.GAMMA;
+    private final DocumentStoreFormat format;
 
     /**
      * To compress offsets.
@@ -155,6 +163,7 @@ public final class DocumentStoreWriter implements Closeable {
      */
     private long lastOffset;
     private long lastPositionOffset;
+    private int numberOfPositionOffsets;
     private int lastDocumentIndexWritten;
     private final int lastTermIndex;
 
@@ -165,10 +174,10 @@ public final class DocumentStoreWriter implements Closeable {
      * pmid values. Positions will be written
      *
      * @param docmanager the document index manager
-     * @throws FileNotFoundException When docstore files cannot be written with
+     * @throws IOException When docstore files cannot be written with
      * the given basename.
      */
-    public DocumentStoreWriter(final DocumentIndexManager docmanager) throws FileNotFoundException {
+    public DocumentStoreWriter(final DocumentIndexManager docmanager) throws IOException {
         this(docmanager.getIndexDetails("text"), true, true);
     }
 
@@ -178,14 +187,32 @@ public final class DocumentStoreWriter implements Closeable {
      * @param indexDetailsVal the document index to write the documents for
      * @param writePmidsVal if true, the pmids file will be written
      * @param writePositionsVal if true, the positions data will be written
-     * @throws FileNotFoundException When docstore files cannot be written with
+     * @throws IOException When docstore files cannot be written with
      * the given basename.
      */
     public DocumentStoreWriter(
             final IndexDetails indexDetailsVal,
             final boolean writePmidsVal, final boolean writePositionsVal)
-            throws FileNotFoundException {
+            throws IOException {
+        this(indexDetailsVal, writePmidsVal, writePositionsVal, DEFAULT_FORMAT);
+    }
+
+    /**
+     * Initialize a document store writer.
+     *
+     * @param indexDetailsVal the document index to write the documents for
+     * @param writePmidsVal if true, the pmids file will be written
+     * @param writePositionsVal if true, the positions data will be written
+     * @param formatVal how the terms of the documents are coded
+     * @throws IOException When docstore files cannot be written with
+     * the given basename.
+     */
+    public DocumentStoreWriter(
+            final IndexDetails indexDetailsVal,
+            final boolean writePmidsVal, final boolean writePositionsVal,
+            final DocumentStoreFormat formatVal) throws IOException {
         this.indexDetails = indexDetailsVal;
+        this.format = formatVal;
         this.basename = indexDetails.getBasename();
         this.writePositions = writePositionsVal;
         if (writePmidsVal) {
@@ -208,19 +235,22 @@ public final class DocumentStoreWriter implements Closeable {
                 new FileOutputStream(compressedDocumentsFilename);
 
         docStream = new OutputBitStream(docFileOutputStream);
-        switch (DOC_COMPRESSION) {
-            case DELTA:
-                docBitStream =
-                        new CompressionAdaptorDelta(docStream);
-                break;
+        switch (format) {
             case GAMMA:
                 docBitStream =
                         new CompressionAdaptorGamma(docStream);
                 break;
+            case GROUP_VARINT:
+                docBitStream =
+                        new CompressionAdaptorGroupVarint(docStream);
+                break;
             default:
-                throw new IllegalArgumentException("Unsupported compression: "
-                        + DOC_COMPRESSION);
+                throw new IllegalArgumentException("Unsupported format: "
+                        + format);
         }
+        // the first document starts after the header
+        format.writeHeader(docStream);
+        lastOffset = docStream.writtenBits();
 
         offsetStream = new OutputBitStream(offsetFileOutputStream);
         switch (OFFSET_COMPRESSION) {
@@ -232,7 +262,7 @@ public final class DocumentStoreWriter implements Closeable {
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported compression: "
-                        + DOC_COMPRESSION);
+                        + OFFSET_COMPRESSION);
         }
 
 
@@ -250,7 +280,7 @@ public final class DocumentStoreWriter implements Closeable {
                     break;
                 default:
                     throw new IllegalArgumentException("Unsupported compression: "
-                            + DOC_COMPRESSION);
+                            + POSITION_COMPRESSION);
             }
 
             final FileOutputStream positionOffsetFileOutputStream =
@@ -268,7 +298,7 @@ public final class DocumentStoreWriter implements Closeable {
                     break;
                 default:
                     throw new IllegalArgumentException("Unsupported compression: "
-                            + DOC_COMPRESSION);
+                            + POSITION_OFFSET_COMPRESSION);
             }
         }
 
@@ -351,26 +381,47 @@ public final class DocumentStoreWriter implements Closeable {
      * @throws IOException If the positions cannot be written to
      */
     public int appendPositions(final List<IntRange> ranges) throws IOException {
+        final int[] starts = new int[ranges.size()];
+        final int[] ends = new int[ranges.size()];
+        for (int i = 0; i < starts.length; i++) {
+            final IntRange range = ranges.get(i);
+            starts[i] = range.getMinimumInteger();
+            ends[i] = range.getMaximumInteger();
+        }
+        return appendPositions(starts, ends, starts.length);
+    }
+
+    /**
+     * Append position information to the document store.
+     * @param starts The first position of each term in the document
+     * @param ends The last position of each term in the document
+     * @param numberOfTerms The number of terms in the document
+     * @return The number of bits written to the document store.
+     * @throws IOException If the positions cannot be written to
+     */
+    public int appendPositions(final int[] starts, final int[] ends,
+            final int numberOfTerms) throws IOException {
         if (!writePositions) {
             return 0;
         }
         // the first value is the number of positions (start and end)
-        int bitCount = positionBitStream.write(ranges.size());
+        int bitCount = positionBitStream.write(numberOfTerms);
         // then each start/end pair in order of the terms
         int lastPosition = 0;
-        for (final IntRange range : ranges) {
+        for (int i = 0; i < numberOfTerms; i++) {
             // store the start position of the term (delta from prior)
-            final int startPosition = range.getMinimumInteger();
+            final int startPosition = starts[i];
             bitCount += positionBitStream.write(startPosition - lastPosition);
             lastPosition = startPosition;
 
             // store the end position of the term (delta from prior)
-            final int endPosition = range.getMaximumInteger();
+            final int endPosition = ends[i];
             bitCount += positionBitStream.write(endPosition - lastPosition);
             lastPosition = endPosition;
         }
 
         positionOffsetBitStream.write(calculatePositionOffsetDelta(lastPositionOffset));
+        numberOfPositionOffsets++;
         lastPositionOffset = positionStream.writtenBits();
         return bitCount;
     }
@@ -461,22 +512,28 @@ public final class DocumentStoreWriter implements Closeable {
         offsetBitStream.write(calculateOffsetDelta(lastOffset));  // write end of last document.
         offsetStream.flush();
         offsetStream.close();
+        // constant time access to the offsets for the readers
+        LongDenseEliasFanoList.convert(getOffsetFilename(basename), count + 1);
         if (writePositions) {
             positionStream.flush();
             positionStream.close();
             positionOffsetBitStream.write(calculatePositionOffsetDelta(lastPositionOffset));
             positionOffsetStream.flush();
             positionOffsetStream.close();
+            LongDenseEliasFanoList.convert(getPositionOffsetFilename(basename),
+                    numberOfPositionOffsets + 1);
         }
     }
 
     /**
-     * Write document PMID info to the pmid map file.
+     * Write document PMID info to the pmid map file and the index from
+     * pmids back to documents.
      * @throws IOException if the file cannot be written or created
      */
     public void writePMIDs() throws IOException {
         if (documentPMIDs != null) {
             BinIO.storeInts(documentPMIDs, getPMIDMapFilename(basename));
+            PMIDIndex.write(documentPMIDs, getPMIDIndexFilename(basename));
         }
     }
 
@@ -489,6 +546,16 @@ public final class DocumentStoreWriter implements Closeable {
         return basename + "-docstore.pmids";
     }
 
+    /**
+     * Get the filename of the index from pmids to documents based on the
+     * basename.
+     * @param basename the basename to create the filename for
+     * @return the pmid index filename
+     */
+    public static String getPMIDIndexFilename(final String basename) {
+        return basename + "-docstore.pmids-index";
+    }
+
     /**
      * Optimize the term ordering.
      * @throws IOException error optimizing
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.docstore;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.apache.commons.lang.ArrayUtils;
+import textractor.mg4j.io.MappedFile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Maps PMIDs back to the documents of a document store.  The index holds
+ * the distinct PMIDs in increasing order, so a PMID is found with a binary
+ * search.  Each PMID is followed by the range of its documents, in
+ * increasing document order, in a single array of document numbers.  The
+ * layout on disk is the number of distinct PMIDs <code>n</code>, the
+ * <code>n</code> PMIDs, <code>n + 1</code> start positions into the
+ * document array and then the document array itself, all as big-endian
+ * ints so that the file can be mapped and read in place, whatever its
+ * size.
+ */
+public final class PMIDIndex {
+    /** The number of distinct PMIDs. */
+    private final int numberOfPMIDs;
+
+    /**
+     * The index data built in memory: the number of PMIDs, the PMIDs, the
+     * start of the documents of each PMID and the documents.  Null when the
+     * index is read from a file.
+     */
+    private final int[] data;
+
+    /** The index file, null when the index is built in memory. */
+    private final MappedFile file;
+
+    /**
+     * Create an index over data built in memory.
+     * @param data The data laid out as described in the class documentation
+     */
+    private PMIDIndex(final int[] data) {
+        super();
+        this.data = data;
+        this.file = null;
+        this.numberOfPMIDs = data[0];
+    }
+
+    /**
+     * Create an index over a mapped index file.
+     * @param file The data laid out as described in the class documentation
+     * @throws IOException if the file cannot be read
+     */
+    private PMIDIndex(final MappedFile file) throws IOException {
+        super();
+        this.data = null;
+        this.file = file;
+        this.numberOfPMIDs = file.getInt(0);
+    }
+
+    /**
+     * Map an index file into memory.
+     * @param filename The name of the index file
+     * @return The index
+     * @throws IOException if the file cannot be read
+     */
+    public static PMIDIndex load(final String filename) throws IOException {
+        return new PMIDIndex(new MappedFile(filename));
+    }
+
+    /**
+     * Build an index in memory.
+     * @param documentPMIDs The PMID of each document, documents without a
+     * PMID are {@link DocumentStoreWriter#DOCUMENT_NOT_FOUND}
+     * @return The index
+     */
+    public static PMIDIndex build(final int[] documentPMIDs) {
+        return new PMIDIndex(toArray(documentPMIDs));
+    }
+
+    /**
+     * Write an index file.
+     * @param documentPMIDs The PMID of each document, documents without a
+     * PMID are {@link DocumentStoreWriter#DOCUMENT_NOT_FOUND}
+     * @param filename The name of the index file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final int[] documentPMIDs, final String filename)
+            throws IOException {
+        final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            for (final int value : toArray(documentPMIDs)) {
+                output.writeInt(value);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Lay out the index for a set of documents.
+     * @param documentPMIDs The PMID of each document
+     * @return The index data
+     */
+    private static int[] toArray(final int[] documentPMIDs) {
+        // sort the documents that have a PMID by PMID, then document number
+        int numberOfDocuments = 0;
+        for (final int pmid : documentPMIDs) {
+            if (pmid != DocumentStoreWriter.DOCUMENT_NOT_FOUND) {
+                numberOfDocuments++;
+            }
+        }
+        final int[] documents = new int[numberOfDocuments];
+        for (int i = 0, j = 0; i < documentPMIDs.length; i++) {
+            if (documentPMIDs[i] != DocumentStoreWriter.DOCUMENT_NOT_FOUND) {
+                documents[j++] = i;
+            }
+        }
+        IntArrays.mergeSort(documents, new AbstractIntComparator() {
+            @Override
+            public int compare(final int document1, final int document2) {
+                final int pmid1 = documentPMIDs[document1];
+                final int pmid2 = documentPMIDs[document2];
+                return pmid1 < pmid2 ? -1 : (pmid1 == pmid2 ? 0 : 1);
+            }
+        });
+
+        int numberOfPMIDs = 0;
+        for (int i = 0; i < documents.length; i++) {
+            if (i == 0 || documentPMIDs[documents[i]]
+                    != documentPMIDs[documents[i - 1]]) {
+                numberOfPMIDs++;
+            }
+        }
+
+        final int[] data =
+                new int[1 + numberOfPMIDs + numberOfPMIDs + 1 + documents.length];
+        data[0] = numberOfPMIDs;
+        final int startsOffset = 1 + numberOfPMIDs;
+        for (int i = 0, j = 0; i < documents.length; i++) {
+            if (i == 0 || documentPMIDs[documents[i]]
+                    != documentPMIDs[documents[i - 1]]) {
+                data[1 + j] = documentPMIDs[documents[i]];
+                data[startsOffset + j] = i;
+                j++;
+            }
+        }
+        data[startsOffset + numberOfPMIDs] = documents.length;
+        System.arraycopy(documents, 0, data, startsOffset + numberOfPMIDs + 1,
+                documents.length);
+        return data;
+    }
+
+    /**
+     * Find a PMID in the index.
+     * @param pmid The PMID to find
+     * @return The position of the PMID or -1 if it is not in the index
+     */
+    private int find(final long pmid) {
+        if (pmid < Integer.MIN_VALUE || pmid > Integer.MAX_VALUE) {
+            return -1;
+        }
+        int low = 0;
+        int high = numberOfPMIDs - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int value = get(1 + middle);
+            if (value < pmid) {
+                low = middle + 1;
+            } else if (value > pmid) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the first document with a given PMID.
+     * @param pmid The PMID of the document
+     * @return The smallest document number with the PMID or
+     * {@link DocumentStoreWriter#DOCUMENT_NOT_FOUND}
+     */
+    public int getDocumentNumber(final long pmid) {
+        final int position = find(pmid);
+        if (position < 0) {
+            return DocumentStoreWriter.DOCUMENT_NOT_FOUND;
+        }
+        return get(documentsStart() + get(1L + numberOfPMIDs + position));
+    }
+
+    /**
+     * Get all the documents with a given PMID.
+     * @param pmid The PMID of the documents
+     * @return The document numbers in increasing order, empty if the PMID
+     * is not in the index
+     */
+    public int[] getDocumentNumbers(final long pmid) {
+        final int position = find(pmid);
+        if (position < 0) {
+            return ArrayUtils.EMPTY_INT_ARRAY;
+        }
+        final long startsOffset = 1L + numberOfPMIDs;
+        final int start = get(startsOffset + position);
+        final int end = get(startsOffset + position + 1);
+        final int[] documents = new int[end - start];
+        final long offset = documentsStart() + start;
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = get(offset + i);
+        }
+        return documents;
+    }
+
+    /**
+     * @return The number of distinct PMIDs in the index
+     */
+    public int getNumberOfPMIDs() {
+        return numberOfPMIDs;
+    }
+
+    /**
+     * @return The position of the first document number in the data
+     */
+    private long documentsStart() {
+        return 1L + numberOfPMIDs + numberOfPMIDs + 1;
+    }
+
+    /**
+     * Read a value of the index.
+     * @param index The position of the value, counted in ints
+     * @return The value
+     */
+    private int get(final long index) {
+        if (file == null) {
+            return data[(int) index];
+        }
+        try {
+            return file.getInt(4L * index);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot read PMID index "
+                    + file.getFilename(), e);
+        }
+    }
+}
@@ -18,14 +18,15 @@
 
 package textractor.mg4j.docstore;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.mg4j.io.InputBitStream;
 import org.apache.commons.io.IOUtils;
 import textractor.database.DocumentIndexManager;
-import textractor.mg4j.offsets.LongDenseDeltaList;
+import textractor.mg4j.offsets.LongDenseEliasFanoList;
+import textractor.mg4j.offsets.LongDenseList;
 
 import java.io.Closeable;
 import java.io.DataInputStream;
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
@@ -41,9 +42,8 @@ import java.io.IOException;
  */
 public final class TermDocumentFrequencyReader implements Closeable {
     private InputBitStream tdfStream;
-    private LongDenseDeltaList offsets;
+    private LongDenseList offsets;
     private int numberOfDocuments;
-    private int maxReads;
     private FileInputStream tdfInputStream;
     private int termNumber;
     private final String basename;
@@ -92,7 +92,7 @@ public final class TermDocumentFrequencyReader implements Closeable {
      * @param basename
      * @param documentNumber
      * @param termNumber
-     * @param maxReads
+     * @param maxReads Not used any more, offsets are read in constant time
      * @throws IOException
      */
     public TermDocumentFrequencyReader(final String basename,
@@ -110,7 +110,6 @@ public final class TermDocumentFrequencyReader implements Closeable {
 
         this.termNumber = termNumber;
         this.numberOfDocuments = documentNumber;
-        this.maxReads = maxReads;
         readOffsets(basename);
 
         transform = new UnityTransform(termNumber);
@@ -161,37 +160,79 @@ public final class TermDocumentFrequencyReader implements Closeable {
      */
     public int read(final int documentIndex, final int[] termFrequencies, final int[] numDocForTerm)
             throws IOException {
+        return read(documentIndex, termFrequencies, numDocForTerm, null, null);
+    }
+
+    /**
+     * Access term frequency information for a document, without storage
+     * for every term.  The terms that occur in the document are appended to
+     * a list, in increasing order of their transformed index, along with
+     * their frequency.
+     *
+     * @param documentIndex The document to read
+     * @param terms The initial index of each term of the document is
+     * appended to this list
+     * @param frequencies The frequency of each term in the document is
+     * appended to this list
+     * @return Sum of f(t,d) for the document.
+     * @throws IOException error reading the data
+     */
+    public int read(final int documentIndex, final IntArrayList terms,
+            final IntArrayList frequencies) throws IOException {
+        return read(documentIndex, null, null, terms, frequencies);
+    }
+
+    /**
+     * Decode the terms of a document and either add their frequencies to
+     * storage for every term or append them to lists.
+     *
+     * @param documentIndex The document to read
+     * @param termFrequencies Frequencies of every term, or null to append
+     * to the lists
+     * @param numDocForTerm optional, incremented for each term of the
+     * document when termFrequencies is given
+     * @param terms The initial index of each term, when termFrequencies is
+     * null
+     * @param frequencies The frequency of each term, when termFrequencies is
+     * null
+     * @return Sum of f(t,d) for the document.
+     * @throws IOException error reading the data
+     */
+    private int read(final int documentIndex, final int[] termFrequencies,
+            final int[] numDocForTerm, final IntArrayList terms,
+            final IntArrayList frequencies) throws IOException {
         final long end = positionDataInputStream(documentIndex);
         // first term index is coded delta:
-        int previousTermIndex = tdfStream.readDelta() - 1;
-        int termFrequency = tdfStream.readDelta();
-        termFrequencies[transform.getInitialTermIndex(previousTermIndex)]
-                += termFrequency;
-        int sum = termFrequency;
+        int termIndex = tdfStream.readDelta() - 1;
+        int sum = 0;
         for (;;) {
+            final int termFrequency = tdfStream.readDelta();
+            final int initialTermIndex = transform.getInitialTermIndex(termIndex);
+            if (termFrequencies != null) {
+                termFrequencies[initialTermIndex] += termFrequency;
+                if (numDocForTerm != null) {
+                    ++numDocForTerm[initialTermIndex];
+                }
+            } else {
+                terms.add(initialTermIndex);
+                frequencies.add(termFrequency);
+            }
+            sum += termFrequency;
             // following term indices are coded as delta from previous:
             final int diff = tdfStream.readDelta();
             final long read = tdfStream.readBits();
             if (read > end) {
                 break;
             }
-            final int termIndex = diff + previousTermIndex;
-            previousTermIndex = termIndex;
-            termFrequency = tdfStream.readDelta();
-            final int initialTermIndex = transform.getInitialTermIndex(termIndex);
-            termFrequencies[initialTermIndex] += termFrequency;
-            if (numDocForTerm != null) {
-                ++numDocForTerm[initialTermIndex];
-            }
-            sum += termFrequency;
+            termIndex += diff;
         }
         return sum;
     }
 
     private void readOffsets(final String basename) throws IOException {
-        final long size = (new File(TermDocumentFrequencyWriter.getOffsetFilename(basename))).length();
-        final InputBitStream offsetBitStream = new InputBitStream(TermDocumentFrequencyWriter.getOffsetFilename(basename), (int) size);
-        offsets = new LongDenseDeltaList(offsetBitStream, maxReads, numberOfDocuments);
+        offsets = LongDenseEliasFanoList.open(
+                TermDocumentFrequencyWriter.getOffsetFilename(basename),
+                numberOfDocuments + 1);
     }
 
     private long positionDataInputStream(final int documentIndex) throws IOException {
@@ -20,6 +20,7 @@ package textractor.mg4j.docstore;
 
 import it.unimi.dsi.mg4j.io.OutputBitStream;
 import textractor.database.DocumentIndexManager;
+import textractor.mg4j.offsets.LongDenseEliasFanoList;
 
 import java.io.Closeable;
 import java.io.FileNotFoundException;
@@ -216,6 +217,9 @@ public final class TermDocumentFrequencyWriter implements Closeable {
         offsetStream.writeDelta(calculateDelta(lastOffset));  // write end of last document.
         offsetStream.flush();
         offsetStream.close();
+        // constant time access to the offsets for the readers
+        LongDenseEliasFanoList.convert(getOffsetFilename(basename),
+                (int) numberOfOffsets + 1);
         frequencies.save(basename);
 
     }
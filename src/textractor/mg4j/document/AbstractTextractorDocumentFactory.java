@@ -26,9 +26,11 @@ import it.unimi.dsi.mg4j.util.Properties;
 import org.apache.commons.configuration.ConfigurationException;
 import textractor.mg4j.io.TweaseWordReader2;
 
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A factory that can produce MG4J documents from Textractor sentences.
@@ -117,6 +119,11 @@ public abstract class AbstractTextractorDocumentFactory extends PropertyBasedDoc
      */
     public static final int DEFAULT_MINIMUM_DASH_SPLIT_LENGTH = 8;
 
+    /**
+     * Name of the field that holds the text of the sentence.
+     */
+    public static final String TEXT_FIELD_NAME = "text";
+
     /**
      * Fields and configuration associated with this
      * {@link it.unimi.dsi.mg4j.document.DocumentFactory}.
@@ -390,4 +397,129 @@ public abstract class AbstractTextractorDocumentFactory extends PropertyBasedDoc
             }
         };
     }
+
+    /**
+     * Indicates whether documents built by
+     * {@link #getDocument(String, Map, Reference2ObjectMap)} are the same as
+     * the documents this factory parses from the serialized sentence. The
+     * {@link textractor.chain.indexer.Indexer} only builds documents directly
+     * for factories that return true; others, whose parsed documents may
+     * differ from the sentence, are always given the serialized sentence.
+     *
+     * @return false, subclasses that build identical documents directly
+     * return true
+     */
+    public boolean isDirectDocumentSupported() {
+        return false;
+    }
+
+    /**
+     * Returns a document built directly from the text of a sentence and the
+     * values of its additional fields. Unlike
+     * {@link #getDocument(java.io.InputStream, Reference2ObjectMap)} nothing
+     * is encoded or parsed, so the values must already be of the type
+     * declared by the corresponding {@link TextractorFieldInfo} (i.e.,
+     * {@link String} for {@link FieldType#TEXT} fields and {@link Long} for
+     * {@link FieldType#INT} fields).
+     *
+     * @param text the text of the sentence, returned for the field named
+     * {@link #TEXT_FIELD_NAME}
+     * @param fieldValues typed values of the other fields keyed by field name
+     * @param metadata a map from enums (e.g., keys taken in
+     * {@link it.unimi.dsi.mg4j.document.PropertyBasedDocumentFactory}) to various kind of objects.
+     * @return the document holding the given content.
+     */
+    public Document getDocument(final String text,
+            final Map<String, Object> fieldValues,
+            final Reference2ObjectMap<Enum<?>, Object> metadata) {
+        return new Document() {
+            /**
+             * The title of this document.
+             *
+             * @return the title to be used to refer to this document.
+             */
+            public CharSequence title() {
+                return (CharSequence) resolve(
+                        PropertyBasedDocumentFactory.MetadataKeys.TITLE, metadata);
+            }
+
+            /**
+             * Returns a string representation of the object.
+             *
+             * @return a string representation of the object.
+             */
+            @Override
+            public String toString() {
+                return title().toString();
+            }
+
+            /**
+             * A URI that is associated to this document.
+             *
+             * @return the URI associated to this document,
+             * or <code>null</code>.
+             */
+            public CharSequence uri() {
+                return (CharSequence) resolve(
+                        PropertyBasedDocumentFactory.MetadataKeys.URI, metadata);
+            }
+
+            /**
+             * Returns the content of the given field.
+             *
+             * @param field the field index.
+             * @return the field content; the actual type depends on the field
+             * type, as specified by the
+             * {@link it.unimi.dsi.mg4j.document.DocumentFactory} that built
+             * this document.
+             */
+            public Object content(final int field) {
+                ensureFieldIndex(field);
+                final TextractorFieldInfo fieldInfo = fields.get(field);
+                if (fieldInfo.type == FieldType.INT) {
+                    return fieldValues.get(fieldInfo.name);
+                } else if (TEXT_FIELD_NAME.equals(fieldInfo.name)) {
+                    return new StringReader(stripLeadingSpaces(text));
+                } else {
+                    return new StringReader(stripLeadingSpaces(
+                            (String) fieldValues.get(fieldInfo.name)));
+                }
+            }
+
+            /**
+             * Returns a word reader for the given field.
+             *
+             * @param field the field index.
+             * @return a word reader object that should be used to break the
+             * given field.
+             */
+            public WordReader wordReader(final int field) {
+                ensureFieldIndex(field);
+                return fields.get(field).wordReader;
+            }
+
+            /**
+             * Closes this document, releasing all resources.
+             */
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Removes the spaces that the properties format drops before a value
+     * (other whitespace is escaped when the value is saved), so that a direct
+     * document has the same words and positions as the one parsed from the
+     * serialized sentence.
+     *
+     * @param value the value of a text field
+     * @return the value without leading spaces
+     */
+    private static String stripLeadingSpaces(final String value) {
+        int start = 0;
+        while (start < value.length() && value.charAt(start) == ' ') {
+            start++;
+        }
+        return value.substring(start);
+    }
 }
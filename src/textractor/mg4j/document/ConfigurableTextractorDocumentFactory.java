@@ -408,4 +408,14 @@ public final class ConfigurableTextractorDocumentFactory extends AbstractTextrac
         };
     }
 
+    /**
+     * Documents of this factory hold the text and field values of the
+     * sentence as they are, so they can be built directly.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isDirectDocumentSupported() {
+        return true;
+    }
 }
@@ -30,9 +30,11 @@ import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import it.unimi.dsi.mg4j.document.AbstractDocumentCollection;
+import it.unimi.dsi.mg4j.document.AbstractDocumentIterator;
 import it.unimi.dsi.mg4j.document.Document;
 import it.unimi.dsi.mg4j.document.DocumentCollection;
 import it.unimi.dsi.mg4j.document.DocumentFactory;
+import it.unimi.dsi.mg4j.document.DocumentIterator;
 import it.unimi.dsi.mg4j.document.PropertyBasedDocumentFactory.MetadataKeys;
 import it.unimi.dsi.mg4j.util.MutableString;
 import org.apache.commons.configuration.ConfigurationException;
@@ -82,9 +84,17 @@ public final class DocStoreDocumentCollection extends AbstractDocumentCollection
     private final transient Map<String, DocumentStoreReader> aliasToReadersMap =
             new HashMap<String, DocumentStoreReader>();
 
+    /**
+     * The encoded text of recently retrieved documents, shared with every
+     * {@link #copy()} of this collection.  Null when documents are not cached.
+     */
+    private final transient DocumentCache cache;
+
     /**
      * Creates a document collection based on the documents in the document
-     * store associated to a full text index.
+     * store associated to a full text index.  Retrieved documents are kept
+     * in a {@link DocumentCache} only when the properties of the index set
+     * {@link DocumentCache#MAXIMUM_BYTES_PROPERTY}.
      *
      * @param docmanagerVal Manager for the full text index associated with the
      *        document store.
@@ -92,7 +102,25 @@ public final class DocStoreDocumentCollection extends AbstractDocumentCollection
      */
     public DocStoreDocumentCollection(
         final DocumentIndexManager docmanagerVal) throws IOException {
+        this(docmanagerVal,
+                DocumentCache.newInstance(docmanagerVal.getTextractorProperties()));
+    }
+
+    /**
+     * Creates a document collection based on the documents in the document
+     * store associated to a full text index.
+     *
+     * @param docmanagerVal Manager for the full text index associated with the
+     *        document store.
+     * @param cacheVal Cache for the text of retrieved documents, or null to
+     *        decode documents on every retrieval
+     * @throws IOException error opening appropriate files?
+     */
+    public DocStoreDocumentCollection(
+        final DocumentIndexManager docmanagerVal, final DocumentCache cacheVal)
+            throws IOException {
         this.docmanager = docmanagerVal;
+        this.cache = cacheVal;
         this.factory = docmanagerVal.getDocumentFactory();
 
         for (final TextractorFieldInfo fieldInfo : factory.getFieldInfoList()) {
@@ -137,6 +165,14 @@ public final class DocStoreDocumentCollection extends AbstractDocumentCollection
         return aliasToReadersMap.get(indexAlias);
     }
 
+    /**
+     * Returns the cache for the text of retrieved documents.
+     * @return the cache, or null if documents are not cached.
+     */
+    public DocumentCache getDocumentCache() {
+        return cache;
+    }
+
     /**
      * Returns the number of documents in the document store/ full text index.
      *
@@ -222,19 +258,83 @@ public final class DocStoreDocumentCollection extends AbstractDocumentCollection
      * @throws IOException error retrieving the document
      */
     public InputStream stream(final String indexAlias, final int index) throws IOException {
-        final MutableString result = new MutableString();
         final DocumentStoreReader currentReader = aliasToReadersMap.get(indexAlias);
         if (currentReader == null) {
             return null;
         }
+        if (cache != null) {
+            final byte[] text = cache.get(indexAlias, index);
+            if (text != null) {
+                return new FastBufferedInputStream(new ByteArrayInputStream(text));
+            }
+        }
+        final MutableString result = new MutableString();
         currentReader.document(index, result);
-        if (result.length() == 0) {
+        final byte[] text = encode(index, result);
+        if (cache != null) {
+            cache.put(indexAlias, index, text);
+        }
+        return new FastBufferedInputStream(new ByteArrayInputStream(text));
+    }
+
+    /**
+     * Obtain the stream for the text of a document.
+     * @param index the document number
+     * @param text the text of the document
+     * @return the stream for the document
+     * @throws IOException error encoding the document
+     */
+    private InputStream stream(final int index, final MutableString text)
+            throws IOException {
+        return new FastBufferedInputStream(new ByteArrayInputStream(
+                encode(index, text)));
+    }
+
+    /**
+     * Encode the text of a document.
+     * @param index the document number
+     * @param text the text of the document
+     * @return the text encoded in UTF-8
+     * @throws IOException error encoding the document
+     */
+    private byte[] encode(final int index, final MutableString text)
+            throws IOException {
+        if (text.length() == 0) {
             throw new IllegalStateException("Sentence #" + index
                     + " is not found in the document store.");
         }
+        return text.toString().getBytes("UTF-8");
+    }
 
-        return new FastBufferedInputStream(new ByteArrayInputStream(result
-                .toString().getBytes("UTF-8")));
+    /**
+     * Iterate over the documents of the "text" index in order.  The
+     * documents are decoded in a single pass over the document store instead
+     * of being retrieved one at a time.  They are not added to the document
+     * cache, so a scan does not evict the documents retrieved by others.
+     * @return an iterator over the documents
+     * @throws IOException error retrieving the documents
+     */
+    @Override
+    public DocumentIterator iterator() throws IOException {
+        final DocumentStoreReader reader = aliasToReadersMap.get("text");
+        if (reader == null) {
+            return super.iterator();
+        }
+        final DocumentStoreReader.Cursor cursor = reader.cursor();
+        final int size = size();
+        return new AbstractDocumentIterator() {
+            private final MutableString text = new MutableString();
+
+            public Document nextDocument() throws IOException {
+                if (cursor.getDocumentIndex() >= size || !cursor.hasNext()) {
+                    return null;
+                }
+                text.setLength(0);
+                final int index = cursor.next(text);
+                return factory.getDocument(stream(index, text),
+                        metadata("text", index));
+            }
+        };
     }
 
     /**
@@ -278,12 +378,13 @@ public final class DocStoreDocumentCollection extends AbstractDocumentCollection
     }
 
     /**
-     * Make a copy of this DocStoreDocumentCollection.
+     * Make a copy of this DocStoreDocumentCollection.  The copy shares the
+     * document cache of this collection.
      * @return the copy
      */
     public DocumentCollection copy() {
         try {
-            return new DocStoreDocumentCollection(docmanager);
+            return new DocStoreDocumentCollection(docmanager, cache);
         } catch (final IOException e) {
             LOG.error("Couldn't create copy", e);
             throw new TextractorRuntimeException(e);
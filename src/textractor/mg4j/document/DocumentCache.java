@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.document;
+
+import org.apache.commons.configuration.Configuration;
+import textractor.util.SegmentedCache;
+
+/**
+ * Caches the encoded text of documents retrieved from a document store.
+ * The cache is bounded by the number of bytes it holds and split into
+ * segments that are locked independently, so that threads looking up
+ * different documents rarely wait for each other.  Each segment evicts its
+ * least recently used documents once it holds more than its share of the
+ * bytes.
+ */
+public final class DocumentCache
+        extends SegmentedCache<DocumentCache.Key, byte[]> {
+    /** The default number of bytes held by the cache. */
+    public static final long DEFAULT_MAXIMUM_BYTES = 32L * 1024 * 1024;
+
+    /** The default number of segments. */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * Index property that sets the number of bytes held by the cache of a
+     * {@link DocStoreDocumentCollection}.  Documents are not cached when
+     * the property is absent or zero.
+     */
+    public static final String MAXIMUM_BYTES_PROPERTY = "documentCacheBytes";
+
+    /**
+     * Index property that sets the number of segments of the cache of a
+     * {@link DocStoreDocumentCollection}.
+     */
+    public static final String SEGMENTS_PROPERTY = "documentCacheSegments";
+
+    /**
+     * Create a cache with the default size and number of segments.
+     */
+    public DocumentCache() {
+        this(DEFAULT_MAXIMUM_BYTES, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Create a cache.
+     * @param maximumBytes The largest number of bytes the cache holds,
+     * including {@link #ENTRY_OVERHEAD} for each document
+     * @param numberOfSegments The number of segments, rounded up to a power
+     * of two
+     */
+    public DocumentCache(final long maximumBytes, final int numberOfSegments) {
+        super(maximumBytes, numberOfSegments);
+    }
+
+    /**
+     * Create the cache configured by the properties of an index.
+     * @param properties The properties of the index, may be null
+     * @return A cache of {@link #MAXIMUM_BYTES_PROPERTY} bytes split into
+     * {@link #SEGMENTS_PROPERTY} segments, or null if documents of the index
+     * are not cached
+     */
+    public static DocumentCache newInstance(final Configuration properties) {
+        if (properties == null) {
+            return null;
+        }
+        final long maximumBytes = properties.getLong(MAXIMUM_BYTES_PROPERTY, 0);
+        if (maximumBytes <= 0) {
+            return null;
+        }
+        return new DocumentCache(maximumBytes,
+                properties.getInt(SEGMENTS_PROPERTY, DEFAULT_SEGMENTS));
+    }
+
+    /**
+     * Get the text of a document.
+     * @param indexAlias The index the document belongs to
+     * @param index The document number
+     * @return The text of the document or null if it is not in the cache
+     */
+    public byte[] get(final String indexAlias, final int index) {
+        return get(new Key(indexAlias, index));
+    }
+
+    /**
+     * Add the text of a document to the cache.  The text must not be
+     * modified afterwards.
+     * @param indexAlias The index the document belongs to
+     * @param index The document number
+     * @param text The text of the document
+     */
+    public void put(final String indexAlias, final int index, final byte[] text) {
+        put(new Key(indexAlias, index), text, text.length);
+    }
+
+    /**
+     * Identifies a document.
+     */
+    static final class Key {
+        private final String indexAlias;
+        private final int index;
+
+        private Key(final String indexAlias, final int index) {
+            super();
+            this.indexAlias = indexAlias;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) object;
+            return index == other.index && indexAlias.equals(other.indexAlias);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * indexAlias.hashCode() + index;
+        }
+    }
+}
@@ -317,6 +317,17 @@ public final class TextractorDocumentFactory extends AbstractTextractorDocumentF
         };
     }
 
+    /**
+     * Documents of this factory hold the text and field values of the
+     * sentence as they are, so they can be built directly.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isDirectDocumentSupported() {
+        return true;
+    }
+
     public static PropertyBasedDocumentFactory getInstance(
             final Class<DocumentFactory> klass, final String basename, final Properties properties )
             throws InstantiationException, IllegalAccessException, InvocationTargetException,
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.index;
+
+import it.unimi.dsi.mg4j.index.Index;
+import it.unimi.dsi.mg4j.index.IndexIterator;
+import it.unimi.dsi.mg4j.index.IndexReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The documents that contain any of a set of terms, in increasing order and
+ * without duplicates.  The posting lists of the terms are merged with a
+ * heap ordered by the current document of each list, so each document
+ * costs a logarithm of the number of terms and nothing is copied.  Positions
+ * are never decoded.  Call {@link #close()} when you are done with the
+ * documents, even if they were not all read.
+ */
+public final class DocumentUnion implements Closeable {
+    /** The readers of the posting lists. */
+    private final IndexReader[] readers;
+
+    /** The iterators over the posting lists. */
+    private final IndexIterator[] iterators;
+
+    /** The current document of each iterator. */
+    private final int[] documents;
+
+    /** Iterators that are not exhausted, the smallest document first. */
+    private final int[] heap;
+
+    /** The number of iterators in the heap. */
+    private int size;
+
+    /**
+     * Merge the posting lists of terms.
+     * @param index The index the terms belong to
+     * @param terms The indices of the terms, negative indices are ignored
+     * @throws IOException If the posting lists cannot be read
+     */
+    public DocumentUnion(final Index index, final int[] terms) throws IOException {
+        super();
+        readers = new IndexReader[terms.length];
+        iterators = new IndexIterator[terms.length];
+        documents = new int[terms.length];
+        heap = new int[terms.length];
+        try {
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i] < 0) {
+                    continue;
+                }
+                // nb. each term document iterator needs its own reader
+                readers[i] = index.getReader();
+                iterators[i] = readers[i].documents(terms[i]);
+                final int document = iterators[i].nextDocument();
+                if (document != -1) {
+                    documents[i] = document;
+                    heap[size] = i;
+                    up(size++);
+                }
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if there are more documents
+     */
+    public boolean hasNext() {
+        return size > 0;
+    }
+
+    /**
+     * Get the next document.
+     * @return The next document, or -1 if there are no more documents
+     * @throws IOException If the posting lists cannot be read
+     */
+    public int nextDocument() throws IOException {
+        if (size == 0) {
+            return -1;
+        }
+        final int document = documents[heap[0]];
+        // move every list past the document so it is returned once
+        while (size > 0 && documents[heap[0]] == document) {
+            final int top = heap[0];
+            final int next = iterators[top].nextDocument();
+            if (next == -1) {
+                heap[0] = heap[--size];
+            } else {
+                documents[top] = next;
+            }
+            down(0);
+        }
+        return document;
+    }
+
+    /**
+     * Close the readers of the posting lists.
+     * @throws IOException If a reader cannot be closed
+     */
+    public void close() throws IOException {
+        size = 0;
+        for (int i = 0; i < readers.length; i++) {
+            if (readers[i] != null) {
+                readers[i].close();
+                readers[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Move an entry of the heap up until its parent is not larger.
+     * @param position The position of the entry
+     */
+    private void up(final int position) {
+        final int entry = heap[position];
+        final int document = documents[entry];
+        int current = position;
+        while (current > 0) {
+            final int parent = (current - 1) >>> 1;
+            if (documents[heap[parent]] <= document) {
+                break;
+            }
+            heap[current] = heap[parent];
+            current = parent;
+        }
+        heap[current] = entry;
+    }
+
+    /**
+     * Move an entry of the heap down until its children are not smaller.
+     * @param position The position of the entry
+     */
+    private void down(final int position) {
+        if (size == 0) {
+            return;
+        }
+        final int entry = heap[position];
+        final int document = documents[entry];
+        int current = position;
+        while (true) {
+            int child = 2 * current + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size
+                    && documents[heap[child + 1]] < documents[heap[child]]) {
+                child++;
+            }
+            if (documents[heap[child]] >= document) {
+                break;
+            }
+            heap[current] = heap[child];
+            current = child;
+        }
+        heap[current] = entry;
+    }
+}
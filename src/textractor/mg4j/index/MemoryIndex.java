@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.index;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.mg4j.index.TermMap;
+import it.unimi.dsi.mg4j.index.TermProcessor;
+import it.unimi.dsi.mg4j.io.WordReader;
+import it.unimi.dsi.mg4j.util.MutableString;
+import textractor.database.DocumentIndexManager;
+import textractor.database.TermDocumentPositions;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An inverted index of a few documents held in memory.  Documents are split
+ * and their terms processed the same way MG4J does when it builds an index
+ * on disk, so positions and processed terms are the same, but nothing is
+ * written to disk.  Terms are numbered in the order they first occur.
+ * <p/>
+ * The postings of all the terms are stored in two arrays, the document and
+ * the position of each occurrence, grouped by term and sorted by document
+ * and position.  The terms of each document are kept in order as well, so
+ * phrases are verified directly from the text of the documents.
+ * <p/>
+ * The index is read only once built, so any number of threads can use it at
+ * the same time.
+ */
+public final class MemoryIndex implements TermMap {
+    /** The term processor used to build this index. */
+    private final TermProcessor termProcessor;
+
+    /** The number of each term. */
+    private final Object2IntOpenHashMap<MutableString> termNumbers;
+
+    /** The terms, by number. */
+    private final List<MutableString> terms;
+
+    /** The terms of all the documents, one after the other. */
+    private final int[] tokens;
+
+    /** Where the terms of each document start, followed by their number. */
+    private final int[] documentStarts;
+
+    /** Where the postings of each term start, followed by their number. */
+    private final int[] termStarts;
+
+    /** The document of each posting. */
+    private final int[] postingDocuments;
+
+    /** The position of each posting. */
+    private final int[] postingPositions;
+
+    /** The number of documents that contain each term. */
+    private final int[] frequencies;
+
+    /**
+     * Index documents.
+     * @param wordReader Splits the documents into words
+     * @param termProcessor Processes the words into terms. Words that the
+     * processor rejects are not indexed, but still count for positions.
+     * @param documents The text of the documents. Document numbers are the
+     * positions in this list.
+     * @throws IOException if the documents cannot be split into words
+     */
+    public MemoryIndex(final WordReader wordReader,
+            final TermProcessor termProcessor,
+            final List<? extends CharSequence> documents) throws IOException {
+        super();
+        this.termProcessor = termProcessor;
+        termNumbers = new Object2IntOpenHashMap<MutableString>();
+        termNumbers.defaultReturnValue(DocumentIndexManager.NO_SUCH_TERM);
+        terms = new ArrayList<MutableString>();
+
+        final int numberOfDocuments = documents.size();
+        documentStarts = new int[numberOfDocuments + 1];
+        final IntArrayList allTokens = new IntArrayList();
+        final IntArrayList counts = new IntArrayList();
+        final MutableString word = new MutableString();
+        final MutableString nonWord = new MutableString();
+        for (int document = 0; document < numberOfDocuments; document++) {
+            documentStarts[document] = allTokens.size();
+            wordReader.setReader(new StringReader(documents.get(document).toString()));
+            while (wordReader.next(word, nonWord)) {
+                if (word.length() == 0) {
+                    continue;
+                }
+                if (!termProcessor.processTerm(word)) {
+                    allTokens.add(DocumentIndexManager.NO_SUCH_TERM);
+                    continue;
+                }
+                int term = termNumbers.getInt(word);
+                if (term == DocumentIndexManager.NO_SUCH_TERM) {
+                    term = terms.size();
+                    final MutableString copy = word.copy().compact();
+                    terms.add(copy);
+                    termNumbers.put(copy, term);
+                    counts.add(0);
+                }
+                counts.set(term, counts.getInt(term) + 1);
+                allTokens.add(term);
+            }
+        }
+        documentStarts[numberOfDocuments] = allTokens.size();
+        tokens = allTokens.toIntArray();
+
+        // group the occurrences by term; documents are visited in order, so
+        // the postings of each term are sorted
+        final int numberOfTerms = terms.size();
+        termStarts = new int[numberOfTerms + 1];
+        for (int term = 0; term < numberOfTerms; term++) {
+            termStarts[term + 1] = termStarts[term] + counts.getInt(term);
+        }
+        final int numberOfPostings = termStarts[numberOfTerms];
+        postingDocuments = new int[numberOfPostings];
+        postingPositions = new int[numberOfPostings];
+        frequencies = new int[numberOfTerms];
+        final int[] next = new int[numberOfTerms];
+        final int[] lastDocument = new int[numberOfTerms];
+        System.arraycopy(termStarts, 0, next, 0, numberOfTerms);
+        Arrays.fill(lastDocument, -1);
+        for (int document = 0; document < numberOfDocuments; document++) {
+            final int start = documentStarts[document];
+            for (int i = start; i < documentStarts[document + 1]; i++) {
+                final int term = tokens[i];
+                if (term < 0) {
+                    continue;
+                }
+                postingDocuments[next[term]] = document;
+                postingPositions[next[term]++] = i - start;
+                if (lastDocument[term] != document) {
+                    lastDocument[term] = document;
+                    frequencies[term]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of documents in this index
+     */
+    public int getNumberOfDocuments() {
+        return documentStarts.length - 1;
+    }
+
+    /**
+     * @return The term processor used to build this index
+     */
+    public TermProcessor getTermProcessor() {
+        return termProcessor;
+    }
+
+    /**
+     * Get the number of a processed term.
+     * @param term The term
+     * @return The number of the term, or
+     * {@link DocumentIndexManager#NO_SUCH_TERM} if it is not in the index
+     */
+    public int getNumber(final CharSequence term) {
+        if (term instanceof MutableString) {
+            return termNumbers.getInt(term);
+        } else {
+            return termNumbers.getInt(new MutableString(term));
+        }
+    }
+
+    /**
+     * @return true, the terms are always available
+     */
+    public boolean hasTerms() {
+        return true;
+    }
+
+    /**
+     * @param term The number of a term
+     * @return The term, or null if there is no such term
+     */
+    public CharSequence getTerm(final int term) {
+        if (term < 0 || term >= terms.size()) {
+            return null;
+        }
+        return terms.get(term);
+    }
+
+    /**
+     * @param term The number of a term
+     * @param result The term is stored in this string
+     * @return The result, or null if there is no such term
+     */
+    public MutableString getTerm(final int term, final MutableString result) {
+        if (term < 0 || term >= terms.size()) {
+            return null;
+        }
+        return result.replace(terms.get(term));
+    }
+
+    /**
+     * @return The number of terms in this index
+     */
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * @param term The number of a term
+     * @return The number of documents that contain the term
+     */
+    public int frequency(final int term) {
+        return term < 0 ? 0 : frequencies[term];
+    }
+
+    /**
+     * Get the documents that contain a term.
+     * @param term The number of a term
+     * @return The documents in increasing order
+     */
+    public int[] query(final int term) {
+        if (term < 0) {
+            return new int[0];
+        }
+        final int[] documents = new int[frequencies[term]];
+        int count = 0;
+        for (int p = termStarts[term]; p < termStarts[term + 1]; p++) {
+            if (count == 0 || documents[count - 1] != postingDocuments[p]) {
+                documents[count++] = postingDocuments[p];
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Get the terms of a document, in order.
+     * @param document The number of the document
+     * @param result The list is cleared and the terms of the document are
+     * stored in <code>result.elements()</code>. Words that were not indexed
+     * are {@link DocumentIndexManager#NO_SUCH_TERM}.
+     * @return The number of terms in the document
+     */
+    public int documentTerms(final int document, final IntArrayList result) {
+        final int start = documentStarts[document];
+        final int length = documentStarts[document + 1] - start;
+        result.size(length);
+        System.arraycopy(tokens, start, result.elements(), 0, length);
+        return length;
+    }
+
+    /**
+     * Find the documents that contain the terms next to each other and in
+     * order.  The occurrences of the rarest term are verified against the
+     * terms of their document.
+     * @param phrase The processed terms of the phrase
+     * @return The positions of the last term of the phrase in each document
+     * that contains the phrase, or null if no document does
+     * @see DocumentIndexManager#queryAndExactOrder(String[])
+     */
+    public TermDocumentPositions queryAndExactOrder(final String[] phrase) {
+        final int length = phrase.length;
+        final int[] phraseTerms = new int[length];
+        int rarest = 0;
+        for (int i = 0; i < length; i++) {
+            phraseTerms[i] = getNumber(phrase[i]);
+            if (phraseTerms[i] < 0) {
+                return null;
+            }
+            if (occurrences(phraseTerms[i]) < occurrences(phraseTerms[rarest])) {
+                rarest = i;
+            }
+        }
+
+        final IntArrayList documents = new IntArrayList();
+        final List<int[]> positions = new ArrayList<int[]>();
+        final IntArrayList documentPositions = new IntArrayList();
+        final int term = phraseTerms[rarest];
+        for (int p = termStarts[term]; p < termStarts[term + 1]; p++) {
+            final int document = postingDocuments[p];
+            final int start = postingPositions[p] - rarest;
+            final int offset = documentStarts[document] + start;
+            if (start < 0 || offset + length > documentStarts[document + 1]) {
+                continue;
+            }
+            boolean matches = true;
+            for (int k = 0; k < length && matches; k++) {
+                matches = tokens[offset + k] == phraseTerms[k];
+            }
+            if (!matches) {
+                continue;
+            }
+            if (documents.isEmpty()
+                    || documents.getInt(documents.size() - 1) != document) {
+                if (!documents.isEmpty()) {
+                    positions.add(documentPositions.toIntArray());
+                    documentPositions.clear();
+                }
+                documents.add(document);
+            }
+            // report where the last term of the phrase is
+            documentPositions.add(start + length - 1);
+        }
+        if (documents.isEmpty()) {
+            return null;
+        }
+        positions.add(documentPositions.toIntArray());
+
+        final TermDocumentPositions termDocumentPositions =
+                new TermDocumentPositions(length > 1 ? phrase[length - 1] : null);
+        termDocumentPositions.allocate(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            termDocumentPositions.setPositions(i, documents.getInt(i),
+                    positions.get(i));
+        }
+        return termDocumentPositions;
+    }
+
+    /**
+     * @param term The number of a term
+     * @return The number of times the term occurs in all the documents
+     */
+    private int occurrences(final int term) {
+        return termStarts[term + 1] - termStarts[term];
+    }
+}
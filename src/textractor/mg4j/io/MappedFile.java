@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.io;
+
+import it.unimi.dsi.fastutil.io.RepositionableStream;
+import it.unimi.dsi.mg4j.io.InputBitStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only file mapped into memory.  The mapping is shared and never
+ * modified so any number of threads can read the file at the same time,
+ * each through its own stream obtained from {@link #stream()} or
+ * {@link #bitStream()}.  Files larger than 2GB are mapped in several
+ * chunks.
+ */
+public final class MappedFile {
+    /** Each chunk holds 2<sup>30</sup> bytes. */
+    private static final int CHUNK_SHIFT = 30;
+
+    /** The number of bytes in each chunk. */
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    /** Mask to get the position within a chunk. */
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** The name of the file mapped. */
+    private final String filename;
+
+    /** The mapped chunks of the file. */
+    private final ByteBuffer[] chunks;
+
+    /** The length of the file in bytes. */
+    private final long length;
+
+    /**
+     * Map a file into memory.
+     * @param filename The name of the file to map
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedFile(final String filename) throws IOException {
+        super();
+        this.filename = filename;
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            // the mapping stays valid after the file is closed
+            final FileChannel channel = file.getChannel();
+            length = channel.size();
+            chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long start = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(CHUNK_SIZE, length - start));
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return The name of the file mapped
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return The length of the file in bytes
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Copy bytes from the file.  Any number of threads can read at the same
+     * time.
+     * @param position Where to start reading in the file
+     * @param bytes Where to copy the bytes
+     * @param offset Where to start copying in the array
+     * @param count The number of bytes to copy
+     * @throws IOException if the bytes are not all in the file
+     */
+    public void read(final long position, final byte[] bytes, final int offset,
+            final int count) throws IOException {
+        if (position < 0 || position + count > length) {
+            throw new IOException("Bytes " + position + " to "
+                    + (position + count) + " are outside of " + filename);
+        }
+        long current = position;
+        int copied = 0;
+        while (copied < count) {
+            // only read up to the end of the current chunk
+            final ByteBuffer chunk =
+                    chunks[(int) (current >>> CHUNK_SHIFT)].duplicate();
+            final int start = (int) (current & CHUNK_MASK);
+            final int n = Math.min(count - copied, chunk.limit() - start);
+            chunk.position(start);
+            chunk.get(bytes, offset + copied, n);
+            copied += n;
+            current += n;
+        }
+    }
+
+    /**
+     * Read a big-endian int from the file.  Any number of threads can read
+     * at the same time.
+     * @param position Where the int starts in the file
+     * @return The int
+     * @throws IOException if the int is not in the file
+     */
+    public int getInt(final long position) throws IOException {
+        if (position >= 0 && position + 4 <= length) {
+            final ByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+            final int start = (int) (position & CHUNK_MASK);
+            if (start + 4 <= chunk.limit()) {
+                return chunk.getInt(start);
+            }
+        }
+        // the int crosses the end of a chunk or is outside of the file
+        final byte[] bytes = new byte[4];
+        read(position, bytes, 0, 4);
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+                | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+    }
+
+    /**
+     * Read a big-endian long from the file.  Any number of threads can read
+     * at the same time.
+     * @param position Where the long starts in the file
+     * @return The long
+     * @throws IOException if the long is not in the file
+     */
+    public long getLong(final long position) throws IOException {
+        if (position >= 0 && position + 8 <= length) {
+            final ByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+            final int start = (int) (position & CHUNK_MASK);
+            if (start + 8 <= chunk.limit()) {
+                return chunk.getLong(start);
+            }
+        }
+        return (getInt(position) & 0xFFFFFFFFL) << 32
+                | (getInt(position + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get a new stream over the file.  The stream starts at the beginning
+     * of the file and can be repositioned.
+     * @return A stream that is independent of any other stream over the file
+     */
+    public InputStream stream() {
+        return new MappedInputStream();
+    }
+
+    /**
+     * Get a new bit stream over the file.  The bit stream reads directly
+     * from the mapping without buffering, so it is cheap to create one for
+     * each read.
+     * @return A bit stream that is independent of any other stream over the
+     * file
+     */
+    public InputBitStream bitStream() {
+        return new InputBitStream(stream(), 0);
+    }
+
+    /**
+     * A stream over the mapped chunks with its own position.
+     */
+    private final class MappedInputStream extends InputStream
+            implements RepositionableStream {
+        /** Position of the next byte to read. */
+        private long position;
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            final int b = chunks[(int) (position >>> CHUNK_SHIFT)]
+                    .get((int) (position & CHUNK_MASK)) & 0xFF;
+            position++;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int count) {
+            if (count == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            // only read up to the end of the current chunk
+            final ByteBuffer chunk =
+                    chunks[(int) (position >>> CHUNK_SHIFT)].duplicate();
+            final int start = (int) (position & CHUNK_MASK);
+            final int n = Math.min(count, chunk.limit() - start);
+            chunk.position(start);
+            chunk.get(bytes, offset, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        public long position() {
+            return position;
+        }
+
+        public void position(final long newPosition) throws IOException {
+            if (newPosition < 0 || newPosition > length) {
+                throw new IOException("Position " + newPosition
+                        + " is outside of " + filename);
+            }
+            position = newPosition;
+        }
+    }
+}
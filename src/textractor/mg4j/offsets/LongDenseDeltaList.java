@@ -23,6 +23,11 @@ import it.unimi.dsi.mg4j.io.InputBitStream;
 import java.io.IOException;
 
 /**
+ * Offsets stored as Elias delta coded differences.  Every
+ * <code>maxReads + 1</code>th offset is kept in memory and the others are
+ * decoded from the nearest of those.  Lookups that decode share a single
+ * stream and take turns on it.
+ *
  * @author Fabien Campagne
  *         Date: Mar 11, 2006
  *         Time: 1:32:52 PM
@@ -41,6 +46,7 @@ public final class LongDenseDeltaList implements LongDenseList {
      * Stream over the compressed offset information.
      */
     private final InputBitStream stream;
+
     /**
      * Maximum number of times stream.readLongDelta() will be called to access an offset.
      */
@@ -95,12 +101,14 @@ public final class LongDenseDeltaList implements LongDenseList {
             // exact match to an index in startValue:
             return startValue[slotNumber];
         } else {
-            long value = startValue[slotNumber];
-            stream.position(lowerBound[slotNumber]);
-            for (int i = 0; i < k; ++i) {
-                value += stream.readLongDelta();
+            synchronized (stream) {
+                long value = startValue[slotNumber];
+                stream.position(lowerBound[slotNumber]);
+                for (int i = 0; i < k; ++i) {
+                    value += stream.readLongDelta();
+                }
+                return value;
             }
-            return value;
         }
     }
 }
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.offsets;
+
+import it.unimi.dsi.mg4j.io.InputBitStream;
+import textractor.mg4j.io.MappedFile;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Offsets stored with the Elias-Fano representation of monotone
+ * sequences.  The low bits of each value are stored with a fixed width and
+ * the high bits in unary in a bit vector, where a sampled select index
+ * locates them.  Any value is found in constant time without decoding its
+ * neighbours, using a little more than <code>2 + log(u / n)</code> bits per
+ * value for <code>n</code> values up to <code>u</code>.
+ * <p>
+ * The list is immutable, so it can be shared by any number of threads. It
+ * can be saved next to the delta coded offsets it is built from and mapped
+ * back into memory with {@link #load(String)}.
+ */
+public final class LongDenseEliasFanoList implements LongDenseList {
+    /** Identifies files written by {@link #save(String)}. */
+    private static final long MAGIC = 0x454C49415346414EL;   // "ELIASFAN"
+
+    /** The file format version. */
+    private static final long VERSION = 1;
+
+    /** The position of every 2<sup>8</sup>th high bit is sampled. */
+    private static final int SAMPLE_SHIFT = 8;
+
+    /** The number of values in the list. */
+    private final int size;
+
+    /** The number of low bits stored for each value. */
+    private final int lowBits;
+
+    /** Mask to extract the low bits of a value. */
+    private final long lowMask;
+
+    /** The low bits of each value packed one after the other. */
+    private final LongBuffer lower;
+
+    /** The high bits in unary: one set bit for each value. */
+    private final LongBuffer upper;
+
+    /** The position in {@link #upper} of every sampled set bit. */
+    private final LongBuffer samples;
+
+    /**
+     * Create a list over encoded data.
+     * @param size The number of values
+     * @param lowBits The number of low bits stored for each value
+     * @param lower The low bits
+     * @param upper The high bits
+     * @param samples The select samples
+     */
+    private LongDenseEliasFanoList(final int size, final int lowBits,
+            final LongBuffer lower, final LongBuffer upper,
+            final LongBuffer samples) {
+        super();
+        this.size = size;
+        this.lowBits = lowBits;
+        this.lowMask = (1L << lowBits) - 1;
+        this.lower = lower;
+        this.upper = upper;
+        this.samples = samples;
+    }
+
+    /**
+     * Encode values.
+     * @param values The values in non-decreasing order
+     * @return The encoded values
+     */
+    public static LongDenseEliasFanoList fromValues(final long[] values) {
+        return encode(values, values.length);
+    }
+
+    /**
+     * Read delta coded offsets, as written by the document store writers,
+     * and encode them.
+     * @param offsetRawData The delta coded offsets.  Reading starts at the
+     * current position of the stream.
+     * @param numOffsets The maximum number of offsets to read. Fewer are
+     * encoded if the stream ends first.
+     * @return The offsets
+     * @throws IOException if the offsets cannot be read
+     */
+    public static LongDenseEliasFanoList fromDeltas(
+            final InputBitStream offsetRawData, final int numOffsets)
+            throws IOException {
+        long[] values = new long[Math.max(16, Math.min(numOffsets, 1 << 20))];
+        int size = 0;
+        long offset = 0;
+        try {
+            while (size < numOffsets) {
+                offset += offsetRawData.readLongDelta();
+                if (size == values.length) {
+                    final long[] grown = new long[(int) Math.min(numOffsets,
+                            2L * values.length)];
+                    System.arraycopy(values, 0, grown, 0, size);
+                    values = grown;
+                }
+                values[size++] = offset;
+            }
+        } catch (EOFException e) {
+            // the stream holds fewer offsets than requested
+        }
+        return encode(values, size);
+    }
+
+    /**
+     * Get the name of the file that holds the list for delta coded offsets.
+     * @param offsetFilename The name of the file with the delta coded offsets
+     * @return The name of the file with the list
+     */
+    public static String getFilename(final String offsetFilename) {
+        return offsetFilename + "-ef";
+    }
+
+    /**
+     * Get the list for a file of delta coded offsets.  The list saved next
+     * to the offsets is mapped into memory if it is there and up to date,
+     * otherwise the offsets are decoded.
+     * @param offsetFilename The name of the file with the delta coded offsets
+     * @param numOffsets The maximum number of offsets to read
+     * @return The offsets
+     * @throws IOException if the offsets cannot be read
+     */
+    public static LongDenseEliasFanoList open(final String offsetFilename,
+            final int numOffsets) throws IOException {
+        final File offsetFile = new File(offsetFilename);
+        final File listFile = new File(getFilename(offsetFilename));
+        if (listFile.exists()
+                && listFile.lastModified() >= offsetFile.lastModified()) {
+            return load(listFile.getPath());
+        }
+        return fromDeltas(new MappedFile(offsetFilename).bitStream(),
+                numOffsets);
+    }
+
+    /**
+     * Save the list for a file of delta coded offsets next to it.
+     * @param offsetFilename The name of the file with the delta coded offsets
+     * @param numOffsets The number of offsets in the file
+     * @throws IOException if the offsets cannot be read or the list cannot
+     * be written
+     */
+    public static void convert(final String offsetFilename,
+            final int numOffsets) throws IOException {
+        fromDeltas(new MappedFile(offsetFilename).bitStream(), numOffsets)
+                .save(getFilename(offsetFilename));
+    }
+
+    /**
+     * Encode values.
+     * @param values The values in non-decreasing order
+     * @param size The number of values to encode
+     * @return The encoded values
+     */
+    private static LongDenseEliasFanoList encode(final long[] values,
+            final int size) {
+        final long upperBound = size == 0 ? 0 : values[size - 1];
+        final int lowBits = lowBits(size, upperBound);
+        final long lowMask = (1L << lowBits) - 1;
+
+        final long[] lower = new long[words((long) size * lowBits)];
+        final long upperLength = size + (upperBound >>> lowBits) + 1;
+        final long[] upper = new long[words(upperLength)];
+        final long[] samples =
+                new long[(size + (1 << SAMPLE_SHIFT) - 1) >>> SAMPLE_SHIFT];
+
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            final long value = values[i];
+            if (value < previous) {
+                throw new IllegalArgumentException("Value " + value
+                        + " at " + i + " is smaller than " + previous);
+            }
+            previous = value;
+
+            if (lowBits != 0) {
+                final long position = (long) i * lowBits;
+                final int word = (int) (position >>> 6);
+                final int bit = (int) (position & 63);
+                final long low = value & lowMask;
+                lower[word] |= low << bit;
+                if (bit + lowBits > 64) {
+                    lower[word + 1] |= low >>> (64 - bit);
+                }
+            }
+
+            final long high = (value >>> lowBits) + i;
+            upper[(int) (high >>> 6)] |= 1L << (high & 63);
+            if ((i & ((1 << SAMPLE_SHIFT) - 1)) == 0) {
+                samples[i >>> SAMPLE_SHIFT] = high;
+            }
+        }
+        return new LongDenseEliasFanoList(size, lowBits, LongBuffer.wrap(lower),
+                LongBuffer.wrap(upper), LongBuffer.wrap(samples));
+    }
+
+    /**
+     * Choose the number of low bits for a sequence.
+     * @param size The number of values
+     * @param upperBound The largest value
+     * @return The number of low bits that minimizes the size of the list
+     */
+    private static int lowBits(final int size, final long upperBound) {
+        if (size == 0 || upperBound / size == 0) {
+            return 0;
+        }
+        return 63 - Long.numberOfLeadingZeros(upperBound / size);
+    }
+
+    /**
+     * @param bits A number of bits
+     * @return The number of longs needed to hold the bits
+     */
+    private static int words(final long bits) {
+        return (int) ((bits + 63) >>> 6);
+    }
+
+    /**
+     * Map a list saved with {@link #save(String)} into memory.
+     * @param filename The name of the file to map
+     * @return The list
+     * @throws IOException if the file cannot be read or is not a list
+     */
+    public static LongDenseEliasFanoList load(final String filename)
+            throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final LongBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size()).asLongBuffer();
+            if (data.limit() < 6 || data.get(0) != MAGIC
+                    || data.get(1) != VERSION) {
+                throw new IOException(filename
+                        + " is not an Elias-Fano offset list");
+            }
+            final int size = (int) data.get(2);
+            final int lowBits = (int) data.get(3);
+            final int lowerLength = words((long) size * lowBits);
+            final int upperLength = (int) data.get(4);
+            final int samplesLength = (int) data.get(5);
+            final int start = 6;
+            return new LongDenseEliasFanoList(size, lowBits,
+                    slice(data, start, lowerLength),
+                    slice(data, start + lowerLength, upperLength),
+                    slice(data, start + lowerLength + upperLength,
+                            samplesLength));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Get part of a buffer.
+     * @param data The buffer
+     * @param start The first element of the part
+     * @param length The number of elements in the part
+     * @return A buffer over the part
+     */
+    private static LongBuffer slice(final LongBuffer data, final int start,
+            final int length) {
+        final LongBuffer duplicate = data.duplicate();
+        duplicate.position(start);
+        duplicate.limit(start + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * Save this list so that it can be mapped with {@link #load(String)}.
+     * @param filename The name of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(final String filename) throws IOException {
+        final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)));
+        try {
+            output.writeLong(MAGIC);
+            output.writeLong(VERSION);
+            output.writeLong(size);
+            output.writeLong(lowBits);
+            output.writeLong(upper.limit());
+            output.writeLong(samples.limit());
+            write(output, lower);
+            write(output, upper);
+            write(output, samples);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Write the contents of a buffer.
+     * @param output Where to write the buffer
+     * @param buffer The buffer to write
+     * @throws IOException if the buffer cannot be written
+     */
+    private static void write(final DataOutputStream output,
+            final LongBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.limit(); i++) {
+            output.writeLong(buffer.get(i));
+        }
+    }
+
+    /**
+     * @return The number of values in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getLong(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index
+                    + " is not in [0, " + size + ")");
+        }
+        final long high = select(index) - index;
+        if (lowBits == 0) {
+            return high;
+        }
+        final long position = (long) index * lowBits;
+        final int word = (int) (position >>> 6);
+        final int bit = (int) (position & 63);
+        long low = lower.get(word) >>> bit;
+        if (bit + lowBits > 64) {
+            low |= lower.get(word + 1) << (64 - bit);
+        }
+        return (high << lowBits) | (low & lowMask);
+    }
+
+    /**
+     * Find a set bit in the high bits.
+     * @param rank The number of set bits before the one to find
+     * @return The position of the set bit
+     */
+    private long select(final int rank) {
+        final int sample = rank >>> SAMPLE_SHIFT;
+        final long start = samples.get(sample);
+        int remaining = rank - (sample << SAMPLE_SHIFT);
+        int word = (int) (start >>> 6);
+        long bits = upper.get(word) & (-1L << (start & 63));
+        int count;
+        while (remaining >= (count = Long.bitCount(bits))) {
+            remaining -= count;
+            bits = upper.get(++word);
+        }
+        // clear the set bits before the one we want
+        for (; remaining > 0; remaining--) {
+            bits &= bits - 1;
+        }
+        return ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+}
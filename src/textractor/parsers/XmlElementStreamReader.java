@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.parsers;
+
+import it.unimi.dsi.mg4j.util.MutableString;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the occurrences of a single XML element, one at a time, from a
+ * stream of characters.  Everything outside of the element is skipped.
+ * Only enough of the stream to hold the largest element is kept in memory
+ * so that arbitrarily large files can be processed one element at a time.
+ * <p>
+ * Elements are found by name only, they are expected not to nest within
+ * themselves and not to appear within comments or CDATA sections.
+ */
+public final class XmlElementStreamReader {
+    /** Initial size of the buffer. */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /** The characters to read the elements from. */
+    private final Reader reader;
+
+    /** The start tag without the closing bracket, i.e., "&lt;name". */
+    private final char[] startTag;
+
+    /** The end tag, i.e., "&lt;/name&gt;". */
+    private final char[] endTag;
+
+    /** Characters read from the stream but not consumed yet. */
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+
+    /** Position of the first character in the buffer not consumed yet. */
+    private int start;
+
+    /** Position after the last character read into the buffer. */
+    private int end;
+
+    /** Indicates the end of the stream was reached. */
+    private boolean endOfStream;
+
+    /**
+     * Create a new reader.
+     * @param reader The characters to read the elements from
+     * @param elementName The name of the element to read (case sensitive)
+     */
+    public XmlElementStreamReader(final Reader reader, final String elementName) {
+        super();
+        this.reader = reader;
+        this.startTag = ("<" + elementName).toCharArray();
+        this.endTag = ("</" + elementName + ">").toCharArray();
+    }
+
+    /**
+     * Read the next element, from the start tag to the end tag inclusive.
+     * @param element Where to append the characters of the element
+     * @return true if an element was read, false if there are no more
+     * @throws IOException if the stream cannot be read
+     */
+    public boolean next(final MutableString element) throws IOException {
+        // find the start tag, discarding everything before it
+        int elementStart;
+        while ((elementStart = findStartTag()) < 0) {
+            if (elementStart == -1) {
+                // only a partial start tag can be left at the end
+                start = Math.max(start, end - startTag.length);
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+        start = elementStart;
+
+        // find the end tag, reading more of the element as needed
+        int scan = start + startTag.length;
+        int elementEnd;
+        while ((elementEnd = indexOf(endTag, scan)) < 0) {
+            // an end tag may straddle the end of the buffer
+            final int offset = Math.max(scan, end - endTag.length + 1) - start;
+            if (!fill()) {
+                throw new IOException("Unterminated element "
+                        + new String(startTag, 1, startTag.length - 1));
+            }
+            scan = start + offset;
+        }
+        elementEnd += endTag.length;
+        element.append(buffer, start, elementEnd - start);
+        start = elementEnd;
+        return true;
+    }
+
+    /**
+     * Find the next start tag in the buffer.
+     * @return The position of the start tag, -1 if there is none or -2 if a
+     * start tag may begin at the end of the buffer
+     */
+    private int findStartTag() {
+        int scan = start;
+        int position;
+        while ((position = indexOf(startTag, scan)) >= 0) {
+            final int next = position + startTag.length;
+            if (next == end) {
+                // need to see the next character to tell "<a>" from "<ab>"
+                return endOfStream ? -1 : -2;
+            }
+            final char c = buffer[next];
+            if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                return position;
+            }
+            scan = position + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Find characters in the buffer.
+     * @param target The characters to find
+     * @param from Where to start looking
+     * @return The position of the characters or -1 if they are not found
+     */
+    private int indexOf(final char[] target, final int from) {
+        final int last = end - target.length;
+        final char first = target[0];
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] == first) {
+                int j = 1;
+                while (j < target.length && buffer[i + j] == target[j]) {
+                    j++;
+                }
+                if (j == target.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read more characters, moving the unconsumed characters to the front of
+     * the buffer and growing it if it is full.
+     * @return false if the end of the stream was reached
+     * @throws IOException if the stream cannot be read
+     */
+    private boolean fill() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            final char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, end);
+            buffer = grown;
+        }
+        final int read = reader.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            endOfStream = true;
+            return end > start;
+        }
+        end += read;
+        return true;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tfidf;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.mg4j.search.score.DocumentScoreInfo;
+import it.unimi.dsi.mg4j.search.score.ScoredDocumentBoundedSizeQueue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * A sparse vector of term scores.  Only the terms that have a score are
+ * stored, in increasing order of term index, so the size of the vector
+ * depends on the documents it was calculated from and not on the number of
+ * terms in the index.
+ *
+ * @see TfIdfCalculator#evaluatesSparse(int[], TermScores)
+ */
+public final class TermScores {
+    /** The index of each term, in increasing order. */
+    private final int[] terms;
+
+    /** The score of each term. */
+    private final float[] scores;
+
+    /** The number of documents that contain each term. */
+    private final int[] documentCounts;
+
+    /**
+     * Create a vector.  The arrays are used as they are, not copied.
+     * @param terms The index of each term, in increasing order
+     * @param scores The score of each term
+     * @param documentCounts The number of documents that contain each term
+     */
+    public TermScores(final int[] terms, final float[] scores,
+            final int[] documentCounts) {
+        super();
+        assert terms.length == scores.length
+                && terms.length == documentCounts.length
+                : "terms, scores and documentCounts must have the same length";
+        this.terms = terms;
+        this.scores = scores;
+        this.documentCounts = documentCounts;
+    }
+
+    /**
+     * @return The number of terms in this vector
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @param i The position of a term in this vector
+     * @return The index of the term
+     */
+    public int getTerm(final int i) {
+        return terms[i];
+    }
+
+    /**
+     * @param i The position of a term in this vector
+     * @return The score of the term
+     */
+    public float getScore(final int i) {
+        return scores[i];
+    }
+
+    /**
+     * @param i The position of a term in this vector
+     * @return The number of documents that contain the term
+     */
+    public int getDocumentCount(final int i) {
+        return documentCounts[i];
+    }
+
+    /**
+     * Find a term in this vector.
+     * @param term The index of a term
+     * @return The position of the term in this vector, or a negative value
+     * if the term has no score
+     */
+    public int find(final int term) {
+        return Arrays.binarySearch(terms, term);
+    }
+
+    /**
+     * @param term The index of a term
+     * @return The score of the term, or zero if the term has no score
+     */
+    public float score(final int term) {
+        final int i = find(term);
+        return i < 0 ? 0 : scores[i];
+    }
+
+    /**
+     * Multiply this vector with another one and sum the result.  Only the
+     * terms of both vectors are visited.
+     * @param other The other vector
+     * @return The dot product of the two vectors
+     * @see TfIdfCalculator#calculateTfIdfScore(float[], float[])
+     */
+    public float dot(final TermScores other) {
+        float sum = 0;
+        int i = 0;
+        int j = 0;
+        while (i < terms.length && j < other.terms.length) {
+            if (terms[i] < other.terms[j]) {
+                i++;
+            } else if (terms[i] > other.terms[j]) {
+                j++;
+            } else {
+                sum += scores[i++] * other.scores[j++];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Get the terms with the best scores.
+     * @param n The number of terms to return
+     * @return The index of the terms with the n largest scores, the largest
+     * first, like {@link TfIdfCalculator#bestScoresFavorLarge(float[], int)}
+     * returns for the equivalent array of scores
+     */
+    public int[] best(final int n) {
+        final ScoredDocumentBoundedSizeQueue<Void> top =
+                new ScoredDocumentBoundedSizeQueue<Void>(n);
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] != 0) {
+                top.enqueue(i, scores[i]);
+            }
+        }
+        final IntArrayList result = new IntArrayList();
+        while (!top.isEmpty()) {
+            final DocumentScoreInfo<Void> termInfo = top.dequeue();
+            result.add(terms[termInfo.document]);
+        }
+        Collections.reverse(result);
+        return result.toIntArray();
+    }
+
+    /**
+     * Expand this vector into an array indexed by term, the layout returned
+     * by {@link TfIdfCalculator#evaluates(int[])}.
+     * @param storageSize The size of the array
+     * @return The score of each term, zero for the terms not in this vector
+     */
+    public float[] toArray(final int storageSize) {
+        final float[] result = new float[storageSize];
+        for (int i = 0; i < terms.length; i++) {
+            result[terms[i]] = scores[i];
+        }
+        return result;
+    }
+}
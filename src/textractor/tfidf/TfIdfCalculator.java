@@ -19,6 +19,7 @@
 package textractor.tfidf;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.mg4j.search.score.DocumentScoreInfo;
 import it.unimi.dsi.mg4j.search.score.ScoredDocumentBoundedSizeQueue;
 import org.apache.commons.logging.Log;
@@ -29,7 +30,15 @@ import textractor.mg4j.docstore.TermDocumentFrequencyReader;
 import textractor.mg4j.docstore.TermSubsetTransform;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author Fabien Campagne
@@ -39,6 +48,11 @@ import java.util.Collections;
 public final class TfIdfCalculator {
     private static final Log LOG = LogFactory.getLog(TfIdfCalculator.class);
 
+    /**
+     * The smallest number of documents worth counting on a thread of its own.
+     */
+    private static final int MIN_DOCUMENTS_PER_THREAD = 16;
+
     private TermDocumentFrequencyReader tfIdfReader;
     private TermSubsetTransform transform;
     private final int numberOfTerms;
@@ -47,6 +61,18 @@ public final class TfIdfCalculator {
     private DocumentStoreReader docstore;
     private boolean debug;
 
+    /**
+     * The number of threads that count the words of the documents in
+     * {@link #evaluatesSparse(int[], TermScores)}.
+     */
+    private int numberOfThreads = 1;
+
+    /**
+     * The pool that runs all but the first range of documents, null when
+     * the documents are counted on the calling thread only.
+     */
+    private ExecutorService threadPool;
+
     /**
      * These will be re-initialized and re-used
      * every time evaluates() is called.
@@ -207,11 +233,11 @@ public final class TfIdfCalculator {
         }
 
         // evaluates tf in this set of documents:
-        for (final int doc : documents) {
-            if (docstore != null) {
-                sum += docstore.frequencies(doc, termFrequencies, numDocForTerm);
-            }
-            else {
+        if (docstore != null) {
+            // a single pass over the docstore in storage order
+            sum += docstore.frequencies(documents, termFrequencies, numDocForTerm);
+        } else {
+            for (final int doc : documents) {
                 sum += this.tfIdfReader.read(doc, termFrequencies, numDocForTerm);
             }
         }
@@ -247,6 +273,250 @@ public final class TfIdfCalculator {
         return tfIdf;
     }
 
+    /**
+     * @return The number of threads that count the words of the documents
+     * in {@link #evaluatesSparse(int[], TermScores)}
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * Count the words of the documents in
+     * {@link #evaluatesSparse(int[], TermScores)} on several threads.  The
+     * documents are split in consecutive ranges, each read by its own
+     * document store cursor, and the counts of every range are merged.  The
+     * calling thread counts the first range and the pool the others, so a
+     * pool shared with other work, such as the one of the
+     * {@link textractor.chain.TextractorContext}, can be used.  Ranges the
+     * pool rejects or has not started yet are counted by the calling
+     * thread.  The pool is not shut down by the calculator.  Only documents
+     * read from a {@link DocumentStoreReader} are counted in parallel; the
+     * {@link TermDocumentFrequencyReader} reads from a single stream.
+     * @param pool The pool to count with, or null to count on the calling
+     * thread only
+     * @param numberOfThreads The number of threads, including the calling
+     * thread
+     */
+    public void setThreadPool(final ExecutorService pool,
+            final int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be at least 1");
+        }
+        this.threadPool = pool;
+        this.numberOfThreads = pool == null ? 1 : numberOfThreads;
+    }
+
+    /**
+     * Scans a set of documents, calculating TF-IDF for each term
+     * that occurs in these documents.
+     *
+     * @param documents the documents to calculate tf-idf for
+     * @return The tf-idf of the terms that occur in the documents.
+     * @see #evaluatesSparse(int[], TermScores)
+     */
+    public TermScores evaluatesSparse(final int[] documents) throws IOException {
+        return evaluatesSparse(documents, null);
+    }
+
+    /**
+     * Scans a set of documents, calculating TF-IDF for each term
+     * that occurs in these documents.  The scores are the same as those of
+     * {@link #evaluates(int[], float[], int[])}, but only the terms of the
+     * documents are counted and scored, so the time and memory needed
+     * depend on the number of words in the documents rather than on the
+     * number of terms in the index.  The returned vector also tells how
+     * many of the documents contain each term.
+     *
+     * @param documents the documents to calculate tf-idf for. A document
+     *                  that appears more than once is counted each time.
+     * @param context   optional argument, when processing a tfIdfSi the
+     *                  associated tfIdfC. Terms that have no score in the
+     *                  context are not scored.
+     * @return The tf-idf of the terms that occur in the documents.
+     */
+    public TermScores evaluatesSparse(final int[] documents,
+            final TermScores context) throws IOException {
+        final int[] sortedIds = documents.clone();
+        Arrays.sort(sortedIds);
+        final int parts;
+        if (docstore != null && threadPool != null) {
+            parts = Math.max(1, Math.min(numberOfThreads,
+                    sortedIds.length / MIN_DOCUMENTS_PER_THREAD));
+        } else {
+            parts = 1;
+        }
+        final TermCounts counts;
+        if (parts == 1) {
+            counts = count(sortedIds, 0, sortedIds.length);
+        } else {
+            counts = countInParallel(sortedIds, parts);
+        }
+
+        final float numberOfDocuments = docmanager.getDocumentNumber();
+        final int[] terms = new int[counts.size];
+        final float[] scores = new float[counts.size];
+        final int[] documentCounts = new int[counts.size];
+        int size = 0;
+        for (int i = 0; i < counts.size; i++) {
+            final int termIndex = counts.terms[i];
+            if (context != null && context.score(termIndex) == 0) {
+                // no need to calculate the tfIdf of this term as it will
+                // multiply to zero in the scoring.
+                continue;
+            }
+            final int documentFrequency = allTermFrequencies[termIndex];
+            final float idf = (float) Math.log(numberOfDocuments / documentFrequency);
+            final float tf = ((float) counts.frequencies[i] / (float) counts.sum);
+            terms[size] = termIndex;
+            scores[size] = tf * idf;
+            documentCounts[size] = counts.documentCounts[i];
+            size++;
+        }
+        return new TermScores(Arrays.copyOf(terms, size),
+                Arrays.copyOf(scores, size), Arrays.copyOf(documentCounts, size));
+    }
+
+    /**
+     * Count the words of some of the documents on several threads.  Once
+     * the calling thread has counted the first range, it also counts every
+     * range that the pool has not started, either because the pool rejected
+     * it or because all the threads of the pool are busy.
+     *
+     * @param sortedIds The documents in increasing order
+     * @param parts The number of ranges of documents, one per thread
+     * @return The counts of all the documents
+     * @throws IOException error reading the documents
+     */
+    private TermCounts countInParallel(final int[] sortedIds, final int parts)
+            throws IOException {
+        final List<FutureTask<TermCounts>> ranges =
+                new ArrayList<FutureTask<TermCounts>>(parts - 1);
+        try {
+            for (int part = 1; part < parts; part++) {
+                final int from = (int) ((long) part * sortedIds.length / parts);
+                final int to = (int) ((long) (part + 1) * sortedIds.length / parts);
+                final FutureTask<TermCounts> range = new FutureTask<TermCounts>(
+                        new Callable<TermCounts>() {
+                            public TermCounts call() throws IOException {
+                                return count(sortedIds, from, to);
+                            }
+                        });
+                ranges.add(range);
+                try {
+                    threadPool.execute(range);
+                } catch (RejectedExecutionException e) {
+                    // no idle thread in a bounded pool, counted below
+                }
+            }
+            // the first range is counted by this thread
+            TermCounts counts = count(sortedIds, 0, sortedIds.length / parts);
+            for (final FutureTask<TermCounts> range : ranges) {
+                // does nothing if the pool has already started the range
+                range.run();
+            }
+            for (final FutureTask<TermCounts> range : ranges) {
+                counts = counts.merge(range.get());
+            }
+            return counts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting words");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            // do not leave ranges running after a failure
+            for (final FutureTask<TermCounts> range : ranges) {
+                range.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Count the words of a range of documents.  Each term of each document
+     * is recorded once with its frequency in the document, and the records
+     * are sorted by term to add them up, so no storage is needed for the
+     * terms that do not occur.  Documents are read in the order they are
+     * stored in, with a document store cursor of their own, so ranges can
+     * be counted on different threads.
+     *
+     * @param sortedIds The documents in increasing order
+     * @param from The first document of the range
+     * @param to The end of the range, exclusive
+     * @return The counts of the documents of the range
+     * @throws IOException error reading the documents
+     */
+    private TermCounts count(final int[] sortedIds, final int from,
+            final int to) throws IOException {
+        // term in the high bits, frequency in the document in the low bits
+        final LongArrayList records = new LongArrayList();
+        final IntArrayList terms = new IntArrayList();
+        final IntArrayList frequencies = new IntArrayList();
+        long sum = 0;
+        DocumentStoreReader.Cursor cursor = null;
+        int documentStart = 0;
+        int documentLength = 0;
+        int documentSum = 0;
+        for (int i = from; i < to; i++) {
+            if (i > from && sortedIds[i] == sortedIds[i - 1]) {
+                // the same document again, counted again
+                for (int r = documentStart; r < documentStart + documentLength; r++) {
+                    records.add(records.getLong(r));
+                }
+                sum += documentSum;
+                continue;
+            }
+            documentStart = records.size();
+            terms.clear();
+            if (docstore != null) {
+                if (cursor == null) {
+                    cursor = docstore.cursor(sortedIds[i]);
+                }
+                cursor.skipTo(sortedIds, i);
+                cursor.next(terms);
+                final int[] elements = terms.elements();
+                final int length = terms.size();
+                documentSum = length;
+                Arrays.sort(elements, 0, length);
+                for (int start = 0, end; start < length; start = end) {
+                    end = start + 1;
+                    while (end < length && elements[end] == elements[start]) {
+                        end++;
+                    }
+                    if (elements[start] != DocumentIndexManager.NO_SUCH_TERM) {
+                        records.add(record(elements[start], end - start));
+                    }
+                }
+            } else {
+                frequencies.clear();
+                documentSum = tfIdfReader.read(sortedIds[i], terms, frequencies);
+                for (int t = 0; t < terms.size(); t++) {
+                    records.add(record(terms.getInt(t), frequencies.getInt(t)));
+                }
+            }
+            documentLength = records.size() - documentStart;
+            sum += documentSum;
+        }
+        return new TermCounts(records, sum);
+    }
+
+    /**
+     * @param termIndex The index of a term
+     * @param frequency The frequency of the term in a document
+     * @return A record that sorts by term index
+     */
+    private static long record(final int termIndex, final int frequency) {
+        return ((long) termIndex << 32) | frequency;
+    }
+
     /**
      * Scans a set of documents, calculating the term selection value for each term
      * that occurs in these documents.
@@ -458,4 +728,103 @@ public final class TfIdfCalculator {
     public String getTerm(final int index) {
         return docmanager.termAsString(index);
     }
+
+    /**
+     * The words counted in some documents, by term.
+     */
+    private static final class TermCounts {
+        /** The terms that occur, in increasing order. */
+        private final int[] terms;
+
+        /** The number of occurrences of each term. */
+        private final int[] frequencies;
+
+        /** The number of documents that contain each term. */
+        private final int[] documentCounts;
+
+        /** The number of terms. */
+        private final int size;
+
+        /** The number of words in the documents. */
+        private final long sum;
+
+        /**
+         * Add up the records of the terms of documents.
+         * @param records The records of the terms of each document. The
+         * records are sorted in place.
+         * @param sum The number of words in the documents
+         */
+        private TermCounts(final LongArrayList records, final long sum) {
+            super();
+            final long[] elements = records.elements();
+            final int length = records.size();
+            Arrays.sort(elements, 0, length);
+            terms = new int[length];
+            frequencies = new int[length];
+            documentCounts = new int[length];
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                final int termIndex = (int) (elements[i] >>> 32);
+                if (count == 0 || terms[count - 1] != termIndex) {
+                    terms[count++] = termIndex;
+                }
+                frequencies[count - 1] += (int) elements[i];
+                documentCounts[count - 1]++;
+            }
+            this.size = count;
+            this.sum = sum;
+        }
+
+        /**
+         * @param terms The terms that occur, in increasing order
+         * @param frequencies The number of occurrences of each term
+         * @param documentCounts The number of documents that contain each term
+         * @param size The number of terms
+         * @param sum The number of words in the documents
+         */
+        private TermCounts(final int[] terms, final int[] frequencies,
+                final int[] documentCounts, final int size, final long sum) {
+            super();
+            this.terms = terms;
+            this.frequencies = frequencies;
+            this.documentCounts = documentCounts;
+            this.size = size;
+            this.sum = sum;
+        }
+
+        /**
+         * Add up these counts and the counts of other documents.
+         * @param other The counts of the other documents
+         * @return The counts of all the documents
+         */
+        private TermCounts merge(final TermCounts other) {
+            final int length = size + other.size;
+            final int[] mergedTerms = new int[length];
+            final int[] mergedFrequencies = new int[length];
+            final int[] mergedDocumentCounts = new int[length];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < size || j < other.size) {
+                if (j == other.size
+                        || (i < size && terms[i] < other.terms[j])) {
+                    mergedTerms[count] = terms[i];
+                    mergedFrequencies[count] = frequencies[i];
+                    mergedDocumentCounts[count++] = documentCounts[i++];
+                } else if (i == size || terms[i] > other.terms[j]) {
+                    mergedTerms[count] = other.terms[j];
+                    mergedFrequencies[count] = other.frequencies[j];
+                    mergedDocumentCounts[count++] = other.documentCounts[j++];
+                } else {
+                    mergedTerms[count] = terms[i];
+                    mergedFrequencies[count] =
+                            frequencies[i] + other.frequencies[j];
+                    mergedDocumentCounts[count++] =
+                            documentCounts[i++] + other.documentCounts[j++];
+                }
+            }
+            return new TermCounts(mergedTerms, mergedFrequencies,
+                    mergedDocumentCounts, count, sum + other.sum);
+        }
+    }
 }
@@ -26,7 +26,6 @@ import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.lang.time.StopWatch;
 import textractor.database.DocumentIndexManager;
 import textractor.datamodel.Sentence;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.docstore.DocumentStoreWriter;
 import textractor.mg4j.docstore.TermDocumentFrequencyWriter;
 import textractor.mg4j.document.TextractorDocumentFactory;
@@ -81,8 +80,8 @@ public final class BuildDocStoreFromPubmedArticles extends BuildDocumentIndexFro
         // install a fast term map.
         final StopWatch timer = new StopWatch();
         timer.start();
-        System.out.println("Initializing hash term map");
-        docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+        System.out.println("Initializing term dictionary");
+        docmanager.installTermDictionary();
         timer.stop();
         System.out.println("Term map installed in " + timer.toString());
         final DocumentStoreWriter writer = new DocumentStoreWriter(docmanager);
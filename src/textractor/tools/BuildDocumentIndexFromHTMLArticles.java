@@ -21,14 +21,18 @@ package textractor.tools;
 import com.martiansoftware.jsap.JSAPException;
 import edu.mssm.crover.cli.CLI;
 import it.unimi.dsi.mg4j.document.DocumentSequence;
+import it.unimi.dsi.mg4j.util.MutableString;
 import org.apache.commons.configuration.ConfigurationException;
 import org.htmlparser.util.DefaultParserFeedback;
 import textractor.datamodel.ArticlePool;
 import textractor.mg4j.document.TextractorDocumentFactory;
+import textractor.mg4j.index.MemoryIndex;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * User: Fabien Campagne
@@ -128,6 +132,30 @@ public class BuildDocumentIndexFromHTMLArticles extends BuildDocumentIndex {
         index(stemming, 0, basename);
     }
 
+    /**
+     * Index the collection of HTML articles in memory instead of on disk.
+     * The sentences of the articles are split and their terms processed
+     * with the word reader and term processor of the indexer options, as
+     * {@link #index(String[])} does, but they are given to the index as they
+     * are parsed and no file is written.  Meant for a few articles that are
+     * looked up once.
+     *
+     * @param args Arguments of the process, must include -d or -i or -url for source of articles.
+     * @return The index of the sentences of the articles
+     * @throws IOException if the articles cannot be read
+     */
+    public final MemoryIndex indexInMemory(final String[] args) throws IOException {
+        setProcessArguments(args);
+        initStemming(stemming);
+        final List<MutableString> sentences = new ArrayList<MutableString>();
+        final HTMLArticleConversionProcessDirectory htmlArticleConversionProcessDirectory =
+                new HTMLArticleConversionProcessDirectory(args, sentences, articlePool);
+        htmlArticleConversionProcessDirectory.setParserFeedBackLevel(parserFeedBackLevel);
+        htmlArticleConversionProcessDirectory.process();
+        return new MemoryIndex(indexerOptions.getWordReader(),
+                indexerOptions.getTermProcessor(), sentences);
+    }
+
     public final void setCommandLineArguments(final String[] args) {
         this.args = args;
     }
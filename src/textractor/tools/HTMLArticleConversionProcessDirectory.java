@@ -19,6 +19,8 @@
 package textractor.tools;
 
 import it.unimi.dsi.mg4j.util.MutableString;
+import it.unimi.dsi.mg4j.util.Properties;
+import org.apache.commons.configuration.ConfigurationException;
 import org.htmlparser.util.DefaultParserFeedback;
 import org.htmlparser.util.ParserException;
 import textractor.TextractorRuntimeException;
@@ -30,6 +32,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -41,6 +44,7 @@ import java.util.Iterator;
 public final class HTMLArticleConversionProcessDirectory extends ProcessDirectory {
     private int parserFeedBackLevel = DefaultParserFeedback.NORMAL;
     private final Writer writer;
+    private final List<MutableString> sentences;
     private int allArticleSentenceCount;
     private final ArticlePool articlePool;
 
@@ -57,6 +61,26 @@ public final class HTMLArticleConversionProcessDirectory extends ProcessDirector
         super(args, ".htm");
         this.setFileFilterExtension2(".html");
         this.writer = indexInputWriter;
+        this.sentences = null;
+        this.articlePool = articlePool;
+    }
+
+    /**
+     * Collect the sentences of the articles instead of writing them in the
+     * MG4J document format.
+     *
+     * @param args Arguments of the process, must include -d or -i or -url
+     * for source of articles.
+     * @param sentences The sentences of each article are added to this list,
+     * in order
+     * @param articlePool Records the number of sentences of each article
+     */
+    public HTMLArticleConversionProcessDirectory(final String[] args,
+            final List<MutableString> sentences, final ArticlePool articlePool) {
+        super(args, ".htm");
+        this.setFileFilterExtension2(".html");
+        this.writer = null;
+        this.sentences = sentences;
         this.articlePool = articlePool;
     }
 
@@ -75,9 +99,21 @@ public final class HTMLArticleConversionProcessDirectory extends ProcessDirector
         final Iterator<MutableString> it = splitter.split(text);
         while (it.hasNext()) {
             final MutableString document = it.next();
-            writer.write(document.array());
-            writer.write(" "); // mg4j omits the last word
-            writer.write(BuildDocumentIndex.DOCUMENT_SEPARATOR);
+            if (sentences != null) {
+                sentences.add(document);
+            } else {
+                // the indexing pipe is read by the TextractorDocumentFactory,
+                // which expects the text as a property of each document
+                final Properties sentenceProperties = new Properties();
+                sentenceProperties.setDelimiterParsingDisabled(true);
+                sentenceProperties.addProperty("text", document.toString());
+                try {
+                    sentenceProperties.save(writer);
+                } catch (final ConfigurationException e) {
+                    throw new TextractorRuntimeException(e);
+                }
+                writer.write(BuildDocumentIndex.DOCUMENT_SEPARATOR);
+            }
             count++;
             allArticleSentenceCount++;
         }
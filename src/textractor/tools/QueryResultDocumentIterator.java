@@ -58,6 +58,9 @@ public final class QueryResultDocumentIterator extends AbstractDocumentIterator
     }
 
     public int nextDocument() {
+        if (!hasNext()) {
+            return -1;
+        }
         return nextInt();
     }
 
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tools.chain;
+
+import edu.mssm.crover.cli.CLI;
+import it.unimi.dsi.mg4j.document.Document;
+import it.unimi.dsi.mg4j.document.DocumentFactory;
+import it.unimi.dsi.mg4j.io.WordReader;
+import it.unimi.dsi.mg4j.util.MutableString;
+import it.unimi.dsi.mg4j.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.time.StopWatch;
+import textractor.chain.indexer.Indexer;
+import textractor.datamodel.Article;
+import textractor.datamodel.Sentence;
+import textractor.mg4j.document.AbstractTextractorDocumentFactory;
+import textractor.mg4j.document.ConfigurableTextractorDocumentFactory;
+import textractor.mg4j.document.TextractorDocumentFactory;
+import textractor.mg4j.document.TextractorFieldInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the number of sentences per second the
+ * {@link textractor.chain.indexer.Indexer} can turn into mg4j documents
+ * (and tokenize) when sentences are serialized to the document factory
+ * versus when documents are built directly from the sentences.
+ * <p>
+ * Sentences are read one per line from the file given by <code>-input</code>
+ * and can be configured with additional fields using an index configuration
+ * file given by <code>-configuration</code>.
+ */
+public final class IndexerDocumentBenchmark {
+    /**
+     * Sentences used for the benchmark.
+     */
+    private final List<Sentence> sentences;
+
+    /**
+     * The factory used to create documents.
+     */
+    private final AbstractTextractorDocumentFactory factory;
+
+    /**
+     * Reusable word storage.
+     */
+    private final MutableString word = new MutableString();
+
+    /**
+     * Reusable non-word storage.
+     */
+    private final MutableString nonWord = new MutableString();
+
+    /**
+     * Create a new benchmark.
+     * @param factory the factory used to create documents
+     * @param sentences sentences used for the benchmark
+     */
+    public IndexerDocumentBenchmark(
+            final AbstractTextractorDocumentFactory factory,
+            final List<Sentence> sentences) {
+        super();
+        this.factory = factory;
+        this.sentences = sentences;
+    }
+
+    /**
+     * Create documents for every sentence and tokenize every field.
+     * @param serialize if true, use the serialized document path
+     * @return the number of words read
+     * @throws IOException if a document cannot be read
+     */
+    public long run(final boolean serialize) throws IOException {
+        final List<TextractorFieldInfo> indexFields = factory.getFieldInfoList();
+        long numberOfWords = 0;
+        for (final Sentence sentence : sentences) {
+            final Document document;
+            if (serialize) {
+                final Map<String, Object> fieldValues =
+                        Indexer.getFieldValues(indexFields, sentence);
+                document = Indexer.getSerializedDocument(factory,
+                        sentence.getText(), fieldValues, sentence.getMetaData());
+            } else {
+                document = Indexer.getDocument(factory, indexFields, sentence);
+            }
+
+            for (int field = 0; field < factory.numberOfFields(); field++) {
+                final Object content = document.content(field);
+                if (factory.fieldType(field) == DocumentFactory.FieldType.TEXT) {
+                    final WordReader wordReader = document.wordReader(field);
+                    wordReader.setReader((Reader) content);
+                    while (wordReader.next(word, nonWord)) {
+                        numberOfWords++;
+                    }
+                }
+            }
+            document.close();
+        }
+        return numberOfWords;
+    }
+
+    /**
+     * Time a number of runs of the benchmark.
+     * @param serialize if true, use the serialized document path
+     * @param runs the number of times to process the sentences
+     * @return the number of sentences processed per second
+     * @throws IOException if a document cannot be read
+     */
+    public double sentencesPerSecond(final boolean serialize, final int runs)
+            throws IOException {
+        final StopWatch timer = new StopWatch();
+        timer.start();
+        for (int i = 0; i < runs; i++) {
+            run(serialize);
+        }
+        timer.stop();
+        return sentences.size() * runs * 1000.0d / Math.max(1, timer.getTime());
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final String input = CLI.getOption(args, "-input", null);
+        final String configuration = CLI.getOption(args, "-configuration", null);
+        final int runs = CLI.getIntOption(args, "-runs", 5);
+        final int warmup = CLI.getIntOption(args, "-warmup", 1);
+
+        if (input == null) {
+            System.err.println("usage: " + IndexerDocumentBenchmark.class.getName()
+                    + " -input <sentences, one per line> [-configuration <index configuration>]"
+                    + " [-runs <n>] [-warmup <n>]");
+            System.exit(1);
+        }
+
+        final AbstractTextractorDocumentFactory factory;
+        final Properties properties = new Properties();
+        properties.addProperty(
+                AbstractTextractorDocumentFactory.MetadataKeys.PARENTHESESAREWORDS,
+                Boolean.FALSE.toString());
+        if (configuration == null) {
+            factory = new TextractorDocumentFactory(properties);
+        } else {
+            properties.addProperty(
+                    ConfigurableTextractorDocumentFactory.MetadataKeys.CONFIGURATION_FILE,
+                    configuration);
+            factory = new ConfigurableTextractorDocumentFactory(null, properties);
+        }
+
+        final List<Sentence> sentences = new ArrayList<Sentence>();
+        final Article article = new Article();
+        long documentNumber = 0;
+        for (final Object line : FileUtils.readLines(new File(input), "UTF-8")) {
+            final Sentence sentence = new Sentence(article, (String) line);
+            sentence.setDocumentNumber(documentNumber++);
+            sentences.add(sentence);
+        }
+
+        final IndexerDocumentBenchmark benchmark =
+                new IndexerDocumentBenchmark(factory, sentences);
+        for (int i = 0; i < warmup; i++) {
+            benchmark.run(true);
+            benchmark.run(false);
+        }
+
+        System.out.printf("serialized: %.1f sentences/s%n",
+                benchmark.sentencesPerSecond(true, runs));
+        System.out.printf("direct:     %.1f sentences/s%n",
+                benchmark.sentencesPerSecond(false, runs));
+    }
+}
@@ -31,7 +31,6 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.configuration.ConfigurationException;
 import textractor.database.DocumentIndexManager;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.io.TextractorWordReader;
 import textractor.query.clustering.TermCoOccurenceLoader;
 import textractor.query.clustering.TermSimilarityMatrix;
@@ -120,7 +119,7 @@ public class ClusterTool {
         final String basename = line.getOptionValue("b");
 
         docmanager = new DocumentIndexManager(basename);
-        docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+        docmanager.installTermDictionary();
         wordReader = docmanager.getWordReader();
         termProcessor = docmanager.getTermProcessor();
 
@@ -32,7 +32,6 @@ import textractor.datamodel.Article;
 import textractor.datamodel.OtmiArticle;
 import textractor.datamodel.Sentence;
 import textractor.datamodel.TextractorDocument;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.docstore.DocumentStoreWriter;
 import textractor.mg4j.docstore.StringPerDocumentWriter;
 import textractor.mg4j.docstore.TermDocumentFrequencyWriter;
@@ -114,8 +113,8 @@ public final class BuildDocStore {
         // install a fast term map.
         final StopWatch timer = new StopWatch();
         timer.start();
-        System.out.println("Initializing hash term map");
-        docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+        System.out.println("Initializing term dictionary");
+        docmanager.installTermDictionary();
         timer.stop();
         System.out.println("Term map installed in " + timer.toString());
 
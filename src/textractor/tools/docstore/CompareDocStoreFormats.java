@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tools.docstore;
+
+import edu.mssm.crover.cli.CLI;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.mg4j.io.InputBitStream;
+import it.unimi.dsi.mg4j.io.OutputBitStream;
+import org.apache.commons.configuration.ConfigurationException;
+import textractor.database.DocumentIndexManager;
+import textractor.mg4j.docstore.CompressionAdaptor;
+import textractor.mg4j.docstore.CompressionAdaptorGamma;
+import textractor.mg4j.docstore.CompressionAdaptorGroupVarint;
+import textractor.mg4j.docstore.DocumentStoreFormat;
+import textractor.mg4j.docstore.DocumentStoreReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+
+/**
+ * Compares the size and decoding speed of the document store formats on the
+ * documents of an existing document store.  The documents are coded again in
+ * memory with each format and decoded several times the way
+ * {@link DocumentStoreReader} does.
+ */
+public final class CompareDocStoreFormats {
+    /** The documents, as stored terms. */
+    private final int[][] documents;
+
+    /** The total number of terms in the documents. */
+    private long numberOfTerms;
+
+    private CompareDocStoreFormats(final int[][] documents) {
+        super();
+        this.documents = documents;
+        for (final int[] document : documents) {
+            numberOfTerms += document.length;
+        }
+    }
+
+    public static void main(final String[] args) throws ConfigurationException,
+            IOException, NoSuchMethodException, IllegalAccessException,
+            InvocationTargetException, InstantiationException,
+            ClassNotFoundException, URISyntaxException {
+        final String basename = CLI.getOption(args, "-basename", null);
+        int maxDocument = CLI.getIntOption(args, "-max-document", -1);
+        final int passes = CLI.getIntOption(args, "-passes", 5);
+
+        if (basename == null) {
+            System.err.println("Index basename must be provided (-basename)");
+            System.exit(10);
+        }
+
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final DocumentStoreReader docstore = new DocumentStoreReader(docmanager);
+        if (maxDocument == -1) {
+            maxDocument = docstore.getNumberOfDocuments();
+        }
+
+        // code the terms the way the writer stores them
+        final int[] termPermutation = docstore.getTermPermutation();
+        final int unknownTerm = termPermutation.length - 1;
+        final int[][] documents = new int[maxDocument][];
+        final IntArrayList tokens = new IntArrayList();
+        final DocumentStoreReader.Cursor cursor = docstore.cursor();
+        for (int documentIndex = 0; documentIndex < maxDocument; ++documentIndex) {
+            tokens.clear();
+            cursor.next(tokens);
+            documents[documentIndex] = new int[tokens.size()];
+            for (int i = 0; i < tokens.size(); i++) {
+                final int term = tokens.getInt(i);
+                documents[documentIndex][i] =
+                        term == DocumentIndexManager.NO_SUCH_TERM
+                                ? unknownTerm : termPermutation[term];
+            }
+        }
+        docstore.close();
+        docmanager.close();
+
+        final CompareDocStoreFormats compare =
+                new CompareDocStoreFormats(documents);
+        System.out.println(maxDocument + " documents, "
+                + compare.numberOfTerms + " terms");
+        for (final DocumentStoreFormat format : DocumentStoreFormat.values()) {
+            compare.compare(format, passes);
+        }
+    }
+
+    /**
+     * Code the documents with a format and time decoding them.
+     * @param format The format to use
+     * @param passes The number of times to decode all the documents
+     * @throws IOException if the documents cannot be coded
+     */
+    private void compare(final DocumentStoreFormat format, final int passes)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputBitStream output = new OutputBitStream(bytes);
+        final CompressionAdaptor adaptor;
+        switch (format) {
+            case GAMMA:
+                adaptor = new CompressionAdaptorGamma(output);
+                break;
+            case GROUP_VARINT:
+                adaptor = new CompressionAdaptorGroupVarint(output);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported format: "
+                        + format);
+        }
+        final long[] offsets = new long[documents.length + 1];
+        for (int i = 0; i < documents.length; i++) {
+            offsets[i] = output.writtenBits();
+            adaptor.write(documents[i]);
+        }
+        offsets[documents.length] = output.writtenBits();
+        // padding, as written by the document store writer
+        adaptor.write(10);
+        output.flush();
+        final byte[] data = bytes.toByteArray();
+
+        long checksum = 0;
+        long best = Long.MAX_VALUE;
+        for (int pass = 0; pass < passes; pass++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < documents.length; i++) {
+                final int[] decoded = decode(format, data, offsets[i], offsets[i + 1]);
+                checksum += decoded.length;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (checksum != numberOfTerms * passes) {
+            throw new IllegalStateException(format + " decoded "
+                    + checksum / passes + " terms instead of " + numberOfTerms);
+        }
+
+        System.out.printf("%s: %d bytes, %.2f bits/term, %.1f million terms/s%n",
+                format, offsets[documents.length] / Byte.SIZE,
+                (double) offsets[documents.length] / numberOfTerms,
+                numberOfTerms * 1000.0 / best);
+    }
+
+    /**
+     * Decode a document.
+     * @param format The format of the document
+     * @param data The coded documents
+     * @param start The start of the document in bits
+     * @param end The end of the document in bits
+     * @return The terms of the document
+     * @throws IOException if the document cannot be decoded
+     */
+    private static int[] decode(final DocumentStoreFormat format,
+            final byte[] data, final long start, final long end)
+            throws IOException {
+        switch (format) {
+            case GROUP_VARINT:
+                return CompressionAdaptorGroupVarint.decode(data, (int) (start >>> 3));
+            case GAMMA:
+                final InputBitStream input = new InputBitStream(data);
+                input.position(start);
+                input.readBits(start);
+                final IntArrayList tokens = new IntArrayList();
+                for (;;) {
+                    final int token = input.readGamma();
+                    if (input.readBits() > end) {
+                        break;
+                    }
+                    tokens.add(token);
+                }
+                return tokens.toIntArray();
+            default:
+                throw new IllegalArgumentException("Unsupported format: "
+                        + format);
+        }
+    }
+}
@@ -20,7 +20,6 @@ package textractor.tools.docstore;
 
 import edu.mssm.crover.cli.CLI;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import org.apache.commons.configuration.ConfigurationException;
 import textractor.database.DocumentIndexManager;
 import textractor.mg4j.docstore.DocumentStoreReader;
@@ -60,9 +59,10 @@ public final class DocStore2TfIdf {
         }
         final PrintWriter outPrintWriter = new PrintWriter(System.out);
 
-        final IntList tokens = new IntArrayList();
+        final IntArrayList tokens = new IntArrayList();
+        final DocumentStoreReader.Cursor cursor = docstore.cursor();
         for (int documentIndex = 0; documentIndex < maxDocument; ++documentIndex) {
-            docstore.document(documentIndex, tokens);
+            cursor.next(tokens);
             writer.appendDocument(documentIndex, tokens.toIntArray());
             if ((documentIndex % chunkSize) == 1) {
                 outPrintWriter.println("Converted document #" + documentIndex);
@@ -21,7 +21,6 @@ package textractor.tools.expansion;
 import edu.mssm.crover.cli.CLI;
 import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.mg4j.index.TermProcessor;
 import it.unimi.dsi.mg4j.search.DocumentIterator;
 import it.unimi.dsi.mg4j.search.Interval;
@@ -49,7 +48,6 @@ import textractor.database.DbManager;
 import textractor.database.DocumentIndexManager;
 import textractor.database.TextractorDatabaseException;
 import textractor.datamodel.Sentence;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.docstore.DocumentStoreReader;
 import textractor.tools.DocumentQueryResult;
 
@@ -100,7 +98,7 @@ public final class CollectExpansions {
     private String basename;
     private TermProcessor termProcessor;
     private Map<Integer, int[]> sentenceCache;
-    private IntList intList = new IntArrayList();
+    private IntArrayList intList = new IntArrayList();
 
     /**
      * Number of composed queries.
@@ -207,8 +205,8 @@ public final class CollectExpansions {
             // install a fast term map.
             final StopWatch timer = new StopWatch();
             timer.start();
-            System.out.println("Initializing hash term map");
-            docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+            System.out.println("Initializing term dictionary");
+            docmanager.installTermDictionary();
             timer.stop();
             System.out.println("Term map installed in " + timer.toString());
 
@@ -658,8 +656,7 @@ public final class CollectExpansions {
 
     private int[] getSentenceFromStore(final DbManager dbm, final int document) throws IOException {
         if (useDocStore) {
-            intList.clear();
-            docStoreReader.document(document, intList);
+            docStoreReader.documentTerms(document, intList);
             return intList.toIntArray();
         } else { // use database
             final Sentence sentence =
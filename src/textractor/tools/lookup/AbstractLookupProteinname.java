@@ -26,8 +26,11 @@ import org.apache.commons.logging.LogFactory;
 import textractor.database.DocumentIndexManager;
 import textractor.database.DocumentTermPositions;
 import textractor.datamodel.LookupResult;
+import textractor.mg4j.docstore.DocumentStoreReader;
+import textractor.mg4j.docstore.DocumentStoreWriter;
 import textractor.stemming.PaiceHuskStemmer;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
@@ -92,7 +95,15 @@ public abstract class AbstractLookupProteinname {
         final DocumentIndexManager manager =
                 new DocumentIndexManager(basename);
         try {
-
+            if (new File(DocumentStoreWriter.getDocumentDataFilename(basename)).exists()) {
+                // one pass over the docstore instead of one query per term
+                final DocumentStoreReader docstore = new DocumentStoreReader(manager);
+                try {
+                    return dictionary.lookupByTerm(manager, docstore);
+                } finally {
+                    docstore.close();
+                }
+            }
             return dictionary.lookupByTerm(manager);
         } finally {
             manager.close();
@@ -19,6 +19,9 @@
 package textractor.tools.lookup;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.mg4j.index.TermMap;
+import it.unimi.dsi.mg4j.index.TermProcessor;
 import it.unimi.dsi.mg4j.search.DocumentIterator;
 import it.unimi.dsi.mg4j.search.Interval;
 import it.unimi.dsi.mg4j.util.MutableString;
@@ -30,6 +33,8 @@ import textractor.database.TermDocumentPositions;
 import textractor.datamodel.LookupResult;
 import textractor.datamodel.Sentence;
 import textractor.datamodel.TermOccurrence;
+import textractor.mg4j.docstore.DocumentStoreReader;
+import textractor.mg4j.index.MemoryIndex;
 import textractor.stemming.PaiceHuskStemmer;
 import textractor.tools.DocumentQueryResult;
 
@@ -159,6 +164,210 @@ public final class Dictionary {
         return results;
     }
 
+    /**
+     * Look up every term of the dictionary with a single pass over the
+     * documents of a document store.  The terms are compiled into a
+     * {@link TermAutomaton}, so the cost does not grow with the number of
+     * terms in the dictionary.  The results are the same as those of
+     * {@link #lookupByTerm(DocumentIndexManager)}.
+     *
+     * @param docmanager The index the document store belongs to
+     * @param docstore The documents to look up the terms in
+     * @return The terms found, in the order of the dictionary
+     * @throws IOException if the documents cannot be read
+     */
+    public Collection<LookupResult> lookupByTerm(
+            final DocumentIndexManager docmanager,
+            final DocumentStoreReader docstore) throws IOException {
+        final String[] entries = terms.toArray(new String[terms.size()]);
+        final TermAutomaton automaton = compile(entries, docmanager);
+        final Matches matches = new Matches(entries.length);
+        final DocumentStoreReader.Cursor cursor = docstore.cursor();
+        final IntArrayList documentTerms = new IntArrayList();
+        while (cursor.hasNext()) {
+            documentTerms.clear();
+            final int document = cursor.next(documentTerms);
+            matches.add(automaton, document, documentTerms.elements(),
+                    documentTerms.size());
+        }
+        return matches.getResults(entries);
+    }
+
+    /**
+     * Look up every term of the dictionary in documents that are not
+     * indexed, with a single pass over the terms of each document.
+     *
+     * @param docmanager The index used to process the terms
+     * @param documents The text of the documents. Document numbers are the
+     * positions in this list.
+     * @return The terms found, in the order of the dictionary
+     */
+    public Collection<LookupResult> lookupByTerm(
+            final DocumentIndexManager docmanager,
+            final List<? extends CharSequence> documents) {
+        final String[] entries = terms.toArray(new String[terms.size()]);
+        final TermAutomaton automaton = compile(entries, docmanager);
+        final Matches matches = new Matches(entries.length);
+        for (int document = 0; document < documents.size(); document++) {
+            final int[] documentTerms =
+                    docmanager.extractTerms(documents.get(document));
+            matches.add(automaton, document, documentTerms,
+                    documentTerms.length);
+        }
+        return matches.getResults(entries);
+    }
+
+    /**
+     * Look up every term of the dictionary in an index held in memory, with
+     * a single pass over the terms of each document.
+     *
+     * @param index The documents to look up the terms in
+     * @return The terms found, in the order of the dictionary
+     */
+    public Collection<LookupResult> lookupByTerm(final MemoryIndex index) {
+        final String[] entries = terms.toArray(new String[terms.size()]);
+        final TermAutomaton automaton =
+                compile(entries, index.getTermProcessor(), index);
+        final Matches matches = new Matches(entries.length);
+        final IntArrayList documentTerms = new IntArrayList();
+        for (int document = 0; document < index.getNumberOfDocuments(); document++) {
+            final int length = index.documentTerms(document, documentTerms);
+            matches.add(automaton, document, documentTerms.elements(), length);
+        }
+        return matches.getResults(entries);
+    }
+
+    /**
+     * Convert dictionary terms to sequences of indexed terms, processed the
+     * same way as {@link #lookup(String, DocumentIndexManager)} does.
+     *
+     * @param entries The dictionary terms
+     * @param docmanager The index used to process the terms
+     * @return An automaton that finds the terms
+     */
+    private static TermAutomaton compile(final String[] entries,
+            final DocumentIndexManager docmanager) {
+        return compile(entries, docmanager.getTermProcessor(),
+                docmanager.getIndexDetails("text").getTermMap());
+    }
+
+    /**
+     * Convert dictionary terms to sequences of indexed terms.
+     *
+     * @param entries The dictionary terms
+     * @param termProcessor Processes the words of the terms
+     * @param termMap Numbers the processed words
+     * @return An automaton that finds the terms
+     */
+    private static TermAutomaton compile(final String[] entries,
+            final TermProcessor termProcessor, final TermMap termMap) {
+        final List<int[]> sequences = new ArrayList<int[]>(entries.length);
+        for (final String entry : entries) {
+            final String[] entryTerms = Sentence.getSpaceDelimitedProcessedTerms(
+                    termProcessor, entry).toString().split("\\s");
+            final int[] sequence = new int[entryTerms.length];
+            for (int i = 0; i < entryTerms.length; i++) {
+                // terms that are not indexed never match
+                sequence[i] = termMap.getNumber(new MutableString(entryTerms[i]));
+            }
+            sequences.add(sequence);
+        }
+        final TermAutomaton automaton = new TermAutomaton(sequences);
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Compiled " + entries.length + " terms into "
+                    + automaton.getNumberOfStates() + " states.");
+        }
+        return automaton;
+    }
+
+    /**
+     * Collects the documents and positions where each dictionary term
+     * occurs, document after document.
+     */
+    private static final class Matches {
+        /** The documents of each term, or null if the term was not found. */
+        private final IntArrayList[] documents;
+
+        /** The positions of each term, for all its documents. */
+        private final IntArrayList[] positions;
+
+        /** Where the positions of each document of each term start. */
+        private final IntArrayList[] starts;
+
+        /** Reused for the matches of a document. */
+        private final IntArrayList sequences = new IntArrayList();
+        private final IntArrayList ends = new IntArrayList();
+
+        private Matches(final int numberOfTerms) {
+            super();
+            documents = new IntArrayList[numberOfTerms];
+            positions = new IntArrayList[numberOfTerms];
+            starts = new IntArrayList[numberOfTerms];
+        }
+
+        /**
+         * Find the terms in a document.  Documents must be added in
+         * increasing order.
+         * @param automaton The automaton of the dictionary
+         * @param document The number of the document
+         * @param documentTerms The indexed terms of the document
+         * @param length The number of terms in the document
+         */
+        private void add(final TermAutomaton automaton, final int document,
+                final int[] documentTerms, final int length) {
+            sequences.clear();
+            ends.clear();
+            final int count = automaton.match(documentTerms, length,
+                    sequences, ends);
+            for (int i = 0; i < count; i++) {
+                final int term = sequences.getInt(i);
+                if (documents[term] == null) {
+                    documents[term] = new IntArrayList();
+                    positions[term] = new IntArrayList();
+                    starts[term] = new IntArrayList();
+                }
+                final IntArrayList termDocuments = documents[term];
+                if (termDocuments.isEmpty()
+                        || termDocuments.getInt(termDocuments.size() - 1) != document) {
+                    termDocuments.add(document);
+                    starts[term].add(positions[term].size());
+                }
+                // matches end in increasing order, so positions stay sorted
+                positions[term].add(ends.getInt(i));
+            }
+        }
+
+        /**
+         * @param entries The dictionary terms
+         * @return The terms found, in the order of the dictionary
+         */
+        private Collection<LookupResult> getResults(final String[] entries) {
+            final List<LookupResult> results = new ArrayList<LookupResult>();
+            for (int term = 0; term < entries.length; term++) {
+                final IntArrayList termDocuments = documents[term];
+                if (termDocuments == null) {
+                    continue;
+                }
+                final int[] termPositions = positions[term].elements();
+                final IntArrayList termStarts = starts[term];
+                termStarts.add(positions[term].size());
+                final LookupResult result = new LookupResult(entries[term]);
+                result.allocate(termDocuments.size());
+                for (int i = 0; i < termDocuments.size(); i++) {
+                    final int start = termStarts.getInt(i);
+                    final int end = termStarts.getInt(i + 1);
+                    final int[] documentPositions = new int[end - start];
+                    System.arraycopy(termPositions, start, documentPositions,
+                            0, end - start);
+                    result.setPositions(i, termDocuments.getInt(i),
+                            documentPositions);
+                }
+                results.add(result);
+            }
+            return results;
+        }
+    }
+
     /**
      * Using the queryAndExactOrderMg4jNative, it is much slower than my own
      * method.
@@ -220,6 +429,28 @@ public final class Dictionary {
         }
     }
 
+    /**
+     * Look up a term in an index held in memory.
+     *
+     * @param originalTerm The term to look up
+     * @param index The documents to look up the term in
+     * @return Where the last word of the term occurs, or null if the term
+     * does not occur
+     */
+    public LookupResult lookup(final String originalTerm, final MemoryIndex index) {
+        final String[] currentTerms = Sentence.getSpaceDelimitedProcessedTerms(
+                index.getTermProcessor(), originalTerm).toString().split("\\s");
+        final TermDocumentPositions termDocumentPositions =
+                index.queryAndExactOrder(currentTerms);
+        if (termDocumentPositions != null) {
+            final LookupResult result = new LookupResult(originalTerm);
+            result.setValues(termDocumentPositions);
+            return result;
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Get a hashMap that contains the documents and the lookupedTerms in each
      * documents.
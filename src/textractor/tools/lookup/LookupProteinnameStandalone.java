@@ -31,6 +31,8 @@ import textractor.database.DocumentIndexManager;
 import textractor.datamodel.ArticlePool;
 import textractor.datamodel.LookupResult;
 import textractor.datamodel.TermOccurrence;
+import textractor.mg4j.index.MemoryIndex;
+import textractor.mg4j.io.ProteinWordSplitterReader;
 import textractor.tools.BuildDocumentIndexFromHTMLArticles;
 import textractor.util.ParseOutput;
 
@@ -59,6 +61,15 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
         LogFactory.getLog(LookupProteinnameStandalone.class);
     private FileWriter outputWriter;
 
+    /**
+     * Index of the articles when they are indexed in memory, or null if
+     * they are indexed on disk.
+     */
+    private MemoryIndex memoryIndex;
+
+    /** Indicates that the articles are indexed on disk instead of memory. */
+    private boolean diskIndex;
+
     /** Minimum ammount of memory required (148 = -Xmx150m). */
     private static final String minHeapMemory = "148";
 
@@ -92,9 +103,16 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
         indexBuilder.setParserFeedBackLevel(DefaultParserFeedback.QUIET);
         indexBuilder.setProcessArguments(args);
         indexBuilder.setArticlePool(articlePool);
+        indexBuilder.getIndexerOptions().setWordReaderClassName(
+                ProteinWordSplitterReader.class.getName());
         indexBuilder.setParenthesesAreWords(true);
-        indexBuilder.index(args);
-        docManager = new DocumentIndexManager(indexBasename);
+        if (diskIndex) {
+            indexBuilder.index(args);
+            docManager = new DocumentIndexManager(indexBasename);
+        } else {
+            // no temporary files for the few articles of a lookup
+            memoryIndex = indexBuilder.indexInMemory(args);
+        }
 
         timer.stop();
         TIMER_LOG.debug(LookupProteinnameStandalone.class.getName()
@@ -105,12 +123,20 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
         // lookup each term of dictionary in index
         // iterate through results and create annotations
         final ProteinMutation proteinMutation = new ProteinMutation();
-        final Set<String> mutations =
-                proteinMutation.identifyMutation(indexBasename);
+        final Set<String> mutations;
+        if (memoryIndex == null) {
+            mutations = proteinMutation.identifyMutation(indexBasename);
+        } else {
+            mutations = proteinMutation.identifyMutation(memoryIndex);
+        }
         dictionary.addTerms(mutations);
 
-        final Collection<LookupResult> lookupResults =
-            lookupAllTermsByTerm(indexBasename);
+        final Collection<LookupResult> lookupResults;
+        if (memoryIndex == null) {
+            lookupResults = lookupAllTermsByTerm(indexBasename);
+        } else {
+            lookupResults = dictionary.lookupByTerm(memoryIndex);
+        }
         timer.stop();
         TIMER_LOG.debug(LookupProteinnameStandalone.class.getName()
                 + ":lookup" + timer.toString());
@@ -122,7 +148,9 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
             outputWriter.close();
         }
 
-        docManager.removeIndexFiles();
+        if (docManager != null) {
+            docManager.removeIndexFiles();
+        }
         timer.stop();
         TIMER_LOG.debug(LookupProteinnameStandalone.class.getName()
                 + ":postprocess" + timer.toString());
@@ -139,6 +167,7 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
      */
     private void getOptions(final String[] args) throws IOException {
         subLookupResultsDirectory = CLI.getOption(args, "-subDirectory", "");
+        diskIndex = CLI.isKeywordGiven(args, "-diskIndex");
         final String exportDir = subLookupResultsDirectory + File.separator;
 
         // the option to export into a user designated single file, even if the
@@ -270,6 +299,9 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
                 "\n" +
                 "  -dic   Same as -dict\n" +
                 "\n" +
+                "  -diskIndex  Build  a  temporary  index  on  disk instead of\n" +
+                "         indexing the articles in memory.\n" +
+                "\n" +
                 "  -help  Prints extended help with credits and license information.\n");
         System.exit(0);
     }
@@ -335,10 +367,13 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
             Arrays.sort(articleTerms);
             for (final Object articleTerm : articleTerms) {
                 final String term = articleTerm.toString();
-                if (articleTermsMap.get(term) > articlePartialTermsMap.get(term)) {
+                // calculatePartial has no count for the last term
+                final Integer partial = articlePartialTermsMap.get(term);
+                final int partialCount = partial == null ? 0 : partial;
+                if (articleTermsMap.get(term) > partialCount) {
                     articleHitWriter.write(term + "\t" +
                             articleTermsMap.get(term) + "\t" +
-                            articlePartialTermsMap.get(term) + "\n");
+                            partialCount + "\n");
                 }
             }
 
@@ -467,8 +502,12 @@ public final class LookupProteinnameStandalone extends AbstractLookupProteinname
             final String tempTerm, final ArticlePool articlePool,
             final String articleID) throws IOException {
         if (!articleTermsMap.containsKey(tempTerm)) {
-            final LookupResult lookupResult =
-                dictionary.lookup(tempTerm, docManager);
+            final LookupResult lookupResult;
+            if (memoryIndex == null) {
+                lookupResult = dictionary.lookup(tempTerm, docManager);
+            } else {
+                lookupResult = dictionary.lookup(tempTerm, memoryIndex);
+            }
             if (lookupResult != null &&
                 lookupResult.getOccurrenceByArticle(articlePool).containsKey(articleID)) {
                     articleTermsMap.put(tempTerm, lookupResult.getOccurrenceByArticle(articlePool).getInt(articleID));
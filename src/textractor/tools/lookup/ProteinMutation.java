@@ -31,6 +31,7 @@ import textractor.database.TextractorManager;
 import textractor.datamodel.Sentence;
 import textractor.datamodel.annotation.SingleTermAnnotation;
 import textractor.learning.AnnotationFormatWriter;
+import textractor.mg4j.index.MemoryIndex;
 import textractor.mg4j.index.TermIterator;
 
 import java.io.FileOutputStream;
@@ -131,6 +132,19 @@ public final class ProteinMutation {
         return potentialMutations;
     }
 
+    /**
+     * Find the terms of an index held in memory that may be mutations.
+     * @param index The index to look for mutations in
+     * @return The terms that may be mutations
+     */
+    public Set<String> identifyMutation(final MemoryIndex index) {
+        final Set<String> potentialMutations = new HashSet<String>();
+        for (int term = 0; term < index.size(); term++) {
+            identifyMutation(index.getTerm(term).toString(), potentialMutations);
+        }
+        return potentialMutations;
+    }
+
     private boolean characterMaybeResidue(final char c) {
         switch (c) {
         case 'A':
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tools.lookup;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton over sequences of term indices.  All the
+ * sequences are found in a document with a single pass over its terms,
+ * whatever the number of sequences.  Terms that are not in the index
+ * (negative indices) never match, so they end every partial match.
+ * <p/>
+ * The automaton is read only once built, so any number of threads can use
+ * it at the same time.
+ */
+public final class TermAutomaton {
+    /** The state where every match starts. */
+    private static final int ROOT = 0;
+
+    /** The transitions, keyed by state in the high bits and term index. */
+    private final Long2IntOpenHashMap transitions;
+
+    /** The state reached by the longest proper suffix of each state. */
+    private final int[] failure;
+
+    /** The depth of each state, which is the length of the sequence. */
+    private final int[] depth;
+
+    /** The first sequence that ends at each state, or -1. */
+    private final int[] firstOutput;
+
+    /** The next sequence that ends at the same state, or -1. */
+    private final int[] nextOutput;
+
+    /** The closest state along the failure links that ends a sequence. */
+    private final int[] outputLink;
+
+    /** The number of sequences. */
+    private final int numberOfSequences;
+
+    /**
+     * Build the automaton for sequences of term indices.  Sequence i is
+     * reported as i by {@link #match(int[], int, IntArrayList, IntArrayList)}.
+     * Empty sequences and sequences with a negative term never match.
+     * @param sequences The sequences to find
+     */
+    public TermAutomaton(final List<int[]> sequences) {
+        super();
+        numberOfSequences = sequences.size();
+        transitions = new Long2IntOpenHashMap();
+        transitions.defaultReturnValue(-1);
+
+        // the trie of the sequences
+        final IntArrayList depths = new IntArrayList();
+        final IntArrayList firstOutputs = new IntArrayList();
+        depths.add(0);
+        firstOutputs.add(-1);
+        nextOutput = new int[numberOfSequences];
+        for (int i = 0; i < numberOfSequences; i++) {
+            final int[] sequence = sequences.get(i);
+            nextOutput[i] = -1;
+            if (!isValid(sequence)) {
+                continue;
+            }
+            int state = ROOT;
+            for (final int term : sequence) {
+                final long key = key(state, term);
+                int next = transitions.get(key);
+                if (next == -1) {
+                    next = depths.size();
+                    transitions.put(key, next);
+                    depths.add(depths.getInt(state) + 1);
+                    firstOutputs.add(-1);
+                }
+                state = next;
+            }
+            nextOutput[i] = firstOutputs.getInt(state);
+            firstOutputs.set(state, i);
+        }
+        final int numberOfStates = depths.size();
+        depth = depths.toIntArray();
+        firstOutput = firstOutputs.toIntArray();
+
+        // order the states by depth, so that the failure of each state is
+        // known before its children need it
+        final long[] keys = transitions.keySet().toLongArray();
+        final int[] byDepth = new int[numberOfStates];
+        final int[] depthStarts = new int[numberOfStates + 2];
+        for (int state = 0; state < numberOfStates; state++) {
+            depthStarts[depth[state] + 1]++;
+        }
+        for (int i = 0; i <= numberOfStates; i++) {
+            depthStarts[i + 1] += depthStarts[i];
+        }
+        for (int state = 0; state < numberOfStates; state++) {
+            byDepth[depthStarts[depth[state]]++] = state;
+        }
+        // parent and term of each state
+        final int[] parent = new int[numberOfStates];
+        final int[] label = new int[numberOfStates];
+        for (final long key : keys) {
+            final int child = transitions.get(key);
+            parent[child] = (int) (key >>> 32);
+            label[child] = (int) key;
+        }
+
+        failure = new int[numberOfStates];
+        outputLink = new int[numberOfStates];
+        outputLink[ROOT] = -1;
+        for (final int state : byDepth) {
+            if (state == ROOT) {
+                continue;
+            }
+            int fail = ROOT;
+            if (parent[state] != ROOT) {
+                // follow the failures of the parent until the term extends one
+                int candidate = failure[parent[state]];
+                while (true) {
+                    final int next = transitions.get(key(candidate, label[state]));
+                    if (next != -1) {
+                        fail = next;
+                        break;
+                    }
+                    if (candidate == ROOT) {
+                        break;
+                    }
+                    candidate = failure[candidate];
+                }
+            }
+            failure[state] = fail;
+            outputLink[state] = firstOutput[fail] != -1 ? fail : outputLink[fail];
+        }
+    }
+
+    /**
+     * Find all the sequences in a document.  Matches are reported in the
+     * order they end, and sequences that end at the same term from the
+     * longest to the shortest.
+     * @param terms The term indices of the document
+     * @param length The number of terms in the document
+     * @param sequences The sequence of each match is appended to this list
+     * @param ends The position of the last term of each match is appended
+     * to this list
+     * @return The number of matches found
+     */
+    public int match(final int[] terms, final int length,
+            final IntArrayList sequences, final IntArrayList ends) {
+        int matches = 0;
+        int state = ROOT;
+        for (int position = 0; position < length; position++) {
+            final int term = terms[position];
+            if (term < 0) {
+                state = ROOT;
+                continue;
+            }
+            int next = transitions.get(key(state, term));
+            while (next == -1 && state != ROOT) {
+                state = failure[state];
+                next = transitions.get(key(state, term));
+            }
+            state = next == -1 ? ROOT : next;
+
+            int output = firstOutput[state] != -1 ? state : outputLink[state];
+            while (output != -1) {
+                for (int sequence = firstOutput[output]; sequence != -1;
+                        sequence = nextOutput[sequence]) {
+                    sequences.add(sequence);
+                    ends.add(position);
+                    matches++;
+                }
+                output = outputLink[output];
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return The number of sequences the automaton was built with
+     */
+    public int getNumberOfSequences() {
+        return numberOfSequences;
+    }
+
+    /**
+     * @return The number of states of the automaton
+     */
+    public int getNumberOfStates() {
+        return depth.length;
+    }
+
+    /**
+     * @param sequence A sequence of term indices
+     * @return true if the sequence can be found
+     */
+    private static boolean isValid(final int[] sequence) {
+        if (sequence.length == 0) {
+            return false;
+        }
+        for (final int term : sequence) {
+            if (term < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param state A state
+     * @param term A term index
+     * @return The key of the transition from the state with the term
+     */
+    private static long key(final int state, final int term) {
+        return ((long) state << 32) | (term & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link InputStream} that reads another stream ahead of its reader on a
+ * separate thread.  This is useful when reading the underlying stream is
+ * expensive, e.g., when it is being decompressed, so that the work of
+ * producing the bytes overlaps with the work of processing them.  A fixed
+ * number of blocks is reused so memory use is bounded.
+ */
+public final class ReadAheadInputStream extends InputStream {
+    /**
+     * A block of bytes read from the underlying stream.
+     */
+    private static final class Block {
+        /** The bytes read. */
+        private final byte[] data;
+
+        /** Number of bytes read, -1 at the end of the stream. */
+        private int length;
+
+        /**
+         * Create a new block.
+         * @param size The size of the block
+         */
+        private Block(final int size) {
+            super();
+            data = new byte[size];
+        }
+    }
+
+    /** The stream being read ahead. */
+    private final InputStream source;
+
+    /** Blocks ready to be filled. */
+    private final BlockingQueue<Block> free;
+
+    /** Blocks filled and ready to be read. */
+    private final BlockingQueue<Block> filled;
+
+    /** The thread reading ahead. */
+    private final Future<Boolean> readAhead;
+
+    /** The block currently being read, null when one needs to be taken. */
+    private Block current;
+
+    /** Position of the next byte to read in the current block. */
+    private int position;
+
+    /** Indicates the end of the source was reached. */
+    private boolean endOfStream;
+
+    /**
+     * Create a new stream and start reading ahead.
+     * @param source The stream to read ahead
+     * @param blockSize The number of bytes in each block
+     * @param numberOfBlocks The number of blocks that can be read ahead
+     * @param executor The executor to read ahead with
+     */
+    public ReadAheadInputStream(final InputStream source, final int blockSize,
+            final int numberOfBlocks, final ExecutorService executor) {
+        super();
+        if (blockSize < 1 || numberOfBlocks < 1) {
+            throw new IllegalArgumentException("Block size and number of blocks must be positive");
+        }
+        this.source = source;
+        // one more block than can be queued is held by the reader
+        free = new ArrayBlockingQueue<Block>(numberOfBlocks + 1);
+        filled = new ArrayBlockingQueue<Block>(numberOfBlocks + 1);
+        for (int i = 0; i <= numberOfBlocks; i++) {
+            free.add(new Block(blockSize));
+        }
+        readAhead = executor.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                Block block;
+                do {
+                    block = free.take();
+                    try {
+                        block.length = fill(block.data);
+                    } catch (IOException e) {
+                        // let the reader see the end of the stream and the error
+                        block.length = -1;
+                        filled.put(block);
+                        throw e;
+                    }
+                    filled.put(block);
+                } while (block.length > 0);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Read as many bytes as the source can provide into a block.
+     * @param data Where to read the bytes to
+     * @return The number of bytes read or -1 at the end of the source
+     * @throws IOException if the source cannot be read
+     */
+    private int fill(final byte[] data) throws IOException {
+        int length = 0;
+        while (length < data.length) {
+            final int read = source.read(data, length, data.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length == 0 ? -1 : length;
+    }
+
+    /**
+     * Make sure there is a block with bytes left to read.
+     * @return false at the end of the stream
+     * @throws IOException if the source could not be read
+     */
+    private boolean nextBlock() throws IOException {
+        if (current != null && position < current.length) {
+            return true;
+        }
+        if (endOfStream) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        final Block block;
+        try {
+            block = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading ahead");
+        }
+        if (block.length < 0) {
+            endOfStream = true;
+            checkReadAhead();
+            return false;
+        }
+        current = block;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Wait for the thread reading ahead to finish and rethrow any error it
+     * ran into.  The thread queues the end of the stream before it throws so
+     * it may still be running when the reader gets there.
+     * @throws IOException if the source could not be read
+     */
+    private void checkReadAhead() throws IOException {
+        try {
+            readAhead.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading ahead");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        final int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    /**
+     * Stop reading ahead and close the source.
+     * @throws IOException if the source cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        readAhead.cancel(true);
+        source.close();
+    }
+}
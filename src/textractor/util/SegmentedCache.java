@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache bounded by the approximate number of bytes it holds.  The cache
+ * is split into segments that are locked independently, so that threads
+ * looking up different keys rarely wait for each other.  Each segment evicts
+ * its least recently used entries once it holds more than its share of the
+ * bytes.  Subclasses define the keys and values and how they are looked up.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the cached values
+ */
+public abstract class SegmentedCache<K, V> {
+    /**
+     * The approximate number of bytes used to keep track of each entry, in
+     * addition to its value.
+     */
+    public static final int ENTRY_OVERHEAD = 64;
+
+    /** The segments of the cache. */
+    private final Segment<K, V>[] segments;
+
+    /** Mask to get the segment of a hash code. */
+    private final int segmentMask;
+
+    /** The number of bytes each segment can hold. */
+    private final long maximumSegmentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a cache.
+     * @param maximumBytes The largest number of bytes the cache holds,
+     * including {@link #ENTRY_OVERHEAD} for each entry
+     * @param numberOfSegments The number of segments, rounded up to a power
+     * of two
+     */
+    @SuppressWarnings("unchecked")
+    protected SegmentedCache(final long maximumBytes, final int numberOfSegments) {
+        super();
+        if (maximumBytes < 0 || numberOfSegments <= 0) {
+            throw new IllegalArgumentException("Size " + maximumBytes
+                    + " and segments " + numberOfSegments + " must be positive");
+        }
+        int size = 1;
+        while (size < numberOfSegments) {
+            size <<= 1;
+        }
+        segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment<K, V>();
+        }
+        segmentMask = size - 1;
+        maximumSegmentBytes = maximumBytes / size;
+    }
+
+    /**
+     * Get a value.  Values that are no longer {@link #isCurrent(Object)
+     * current} are removed and not returned.
+     * @param key The key of the value
+     * @return The value or null if it is not in the cache
+     */
+    protected final V get(final K key) {
+        V value = null;
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            final Entry<V> entry = segment.get(key);
+            if (entry != null) {
+                if (isCurrent(entry.value)) {
+                    value = entry.value;
+                } else {
+                    segment.remove(key);
+                    segment.bytes -= entry.bytes;
+                }
+            }
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Add a value to the cache.  The value must not be modified afterwards.
+     * @param key The key of the value
+     * @param value The value
+     * @param size The approximate number of bytes used by the key and the
+     * value
+     */
+    protected final void put(final K key, final V value, final long size) {
+        final long bytes = size + ENTRY_OVERHEAD;
+        if (bytes > maximumSegmentBytes) {
+            // would evict everything else
+            return;
+        }
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            final Entry<V> previous = segment.put(key, new Entry<V>(value, bytes));
+            if (previous != null) {
+                segment.bytes -= previous.bytes;
+            }
+            segment.bytes += bytes;
+            // the iteration order is from least to most recently used
+            final Iterator<Entry<V>> entries = segment.values().iterator();
+            while (segment.bytes > maximumSegmentBytes) {
+                segment.bytes -= entries.next().bytes;
+                entries.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Check that a cached value can still be used.  Every value is current
+     * unless a subclass decides otherwise.
+     * @param value A cached value
+     * @return true if the value can be returned
+     */
+    protected boolean isCurrent(final V value) {
+        return true;
+    }
+
+    /**
+     * Remove every entry from the cache.  The statistics are kept.
+     */
+    public void clear() {
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * @return The number of lookups that found the value
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that did not find the value
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of entries removed to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The fraction of lookups that found the value
+     */
+    public double getHitRate() {
+        final long hitCount = hits.get();
+        final long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * @return The number of entries in the cache
+     */
+    public int getNumberOfEntries() {
+        int count = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                count += segment.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of bytes held by the cache, including
+     * {@link #ENTRY_OVERHEAD} for each entry
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[entries=" + getNumberOfEntries()
+                + ", bytes=" + getBytes() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions()
+                + ", hitRate=" + getHitRate() + "]";
+    }
+
+    /**
+     * @param key A key
+     * @return The segment that holds the value of the key
+     */
+    private Segment<K, V> segmentFor(final K key) {
+        int hash = key.hashCode();
+        // spread the bits of consecutive numbers
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+        return segments[hash & segmentMask];
+    }
+
+    /**
+     * Entries of one segment in order of use.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private static final long serialVersionUID = 1L;
+
+        /** The number of bytes held by this segment. */
+        private long bytes;
+
+        private Segment() {
+            super(16, 0.75f, true);
+        }
+    }
+
+    /**
+     * A value and its size.
+     */
+    private static final class Entry<V> {
+        private final V value;
+        private final long bytes;
+
+        private Entry(final V value, final long bytes) {
+            super();
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
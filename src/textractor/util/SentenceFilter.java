@@ -21,6 +21,10 @@ package textractor.util;
 import textractor.datamodel.TextractorDocument;
 
 /**
+ * Decides which sentences are removed from the index.  Implementations must
+ * be thread safe: a {@link textractor.chain.transformer.Filter} with more
+ * than one transform worker calls the same filter from several threads.
+ *
  * User: Fabien Campagne Date: Nov 7, 2004 Time: 10:08:02 AM
  */
 public interface SentenceFilter {
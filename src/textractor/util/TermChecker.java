@@ -27,7 +27,6 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.configuration.ConfigurationException;
 import textractor.database.DocumentIndexManager;
-import textractor.mg4j.HashTermMap;
 import textractor.mg4j.index.TermIterator;
 
 import java.io.FileNotFoundException;
@@ -134,7 +133,7 @@ public final class TermChecker {
 
         final DocumentIndexManager docmanager =
                 new DocumentIndexManager(basename);
-        docmanager.setTermMap(new HashTermMap(docmanager.getTerms(), 0));
+        docmanager.installTermDictionary();
         final TermChecker checker = new TermChecker(docmanager);
         checker.check();
     }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import textractor.datamodel.Article;
+import textractor.datamodel.Sentence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Produces a fixed number of articles with one sentence each, for tests of
+ * the chain.  Article i holds the sentence "i", whose document number is i.
+ */
+public final class CountingProducer extends AbstractSentenceProducer {
+    /** The number of articles to produce. */
+    private final int numberOfArticles;
+
+    /**
+     * Create a new producer.
+     * @param numberOfArticles The number of articles to produce
+     */
+    public CountingProducer(final int numberOfArticles) {
+        super();
+        this.numberOfArticles = numberOfArticles;
+    }
+
+    public Boolean call() throws Exception {
+        for (int i = 0; i < numberOfArticles; i++) {
+            final Article article = new Article();
+            article.setArticleNumber(i);
+            final Sentence sentence = produce(article, Integer.toString(i));
+            sentence.setDocumentNumber(i);
+            final Collection<Sentence> sentences = new ArrayList<Sentence>();
+            sentences.add(sentence);
+            produce(article, sentences);
+        }
+        fireSentenceProcessingCompleteEvent();
+        return true;
+    }
+
+    public Sentence produce(final Article article, final CharSequence text) {
+        return new Sentence(article, text.toString());
+    }
+
+    public int getNumberOfArticlesProcessed() {
+        return numberOfArticles;
+    }
+
+    public int getNumberOfSentencesProcessed() {
+        return numberOfArticles;
+    }
+}
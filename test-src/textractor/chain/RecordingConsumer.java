@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import textractor.datamodel.Article;
+import textractor.datamodel.Sentence;
+import textractor.event.sentence.SentenceProcessingCompleteEvent;
+import textractor.event.sentence.SentenceProcessingCompleteListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the articles and sentences it consumes, in the order they are
+ * consumed, and the number of completion events, for tests of the chain.
+ */
+public final class RecordingConsumer extends AbstractSentenceConsumer
+        implements SentenceProcessingCompleteListener {
+    /** The numbers of the articles consumed. */
+    private final List<Long> articleNumbers =
+            Collections.synchronizedList(new ArrayList<Long>());
+
+    /** The sentences consumed. */
+    private final List<Sentence> sentences =
+            Collections.synchronizedList(new ArrayList<Sentence>());
+
+    /** The number of completion events for this consumer. */
+    private final AtomicInteger completions = new AtomicInteger();
+
+    /** Released when this consumer completes. */
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    public void consume(final Article article,
+            final Collection<Sentence> articleSentences) {
+        synchronized (this) {
+            articleNumbers.add(article.getArticleNumber());
+            sentences.addAll(articleSentences);
+        }
+    }
+
+    public int getNumberOfArticlesProcessed() {
+        return articleNumbers.size();
+    }
+
+    public int getNumberOfSentencesProcessed() {
+        return sentences.size();
+    }
+
+    @Override
+    public void processingComplete(final SentenceProcessingCompleteEvent event) {
+        if (event.getSource() == this) {
+            completions.incrementAndGet();
+            completed.countDown();
+        }
+        super.processingComplete(event);
+    }
+
+    /**
+     * Wait for this consumer to complete.
+     * @param seconds The longest time to wait
+     * @return true if the consumer completed in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion(final long seconds) throws InterruptedException {
+        return completed.await(seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return The number of completion events for this consumer
+     */
+    public int getCompletions() {
+        return completions.get();
+    }
+
+    /**
+     * @return The numbers of the articles consumed, in order
+     */
+    public List<Long> getArticleNumbers() {
+        return articleNumbers;
+    }
+
+    /**
+     * @return The sentences consumed, in order
+     */
+    public List<Sentence> getSentences() {
+        return sentences;
+    }
+
+    /**
+     * @return The text of the sentences consumed, in order
+     */
+    public List<String> getTexts() {
+        final List<String> texts = new ArrayList<String>();
+        synchronized (sentences) {
+            for (final Sentence sentence : sentences) {
+                texts.add(sentence.getText());
+            }
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates the behavior of {@link AbstractSentenceConsumer} when more than
+ * one worker thread is used.
+ */
+public final class TestAbstractSentenceConsumer extends TestCase {
+    /** Number of articles produced for each test. */
+    private static final int NUMBER_OF_ARTICLES = 2000;
+
+    /**
+     * Several workers should consume every article and complete once.
+     * @throws Exception if there is a problem running the chain
+     */
+    public void testMultipleWorkers() throws Exception {
+        final RecordingConsumer consumer = new RecordingConsumer();
+        consumer.setWorkers(4);
+        runChain(consumer);
+
+        assertEquals(1, consumer.getCompletions());
+        assertEquals(NUMBER_OF_ARTICLES, consumer.getArticleNumbers().size());
+        final List<Long> sorted = new ArrayList<Long>(consumer.getArticleNumbers());
+        Collections.sort(sorted);
+        for (int i = 0; i < NUMBER_OF_ARTICLES; i++) {
+            assertEquals(Long.valueOf(i), sorted.get(i));
+        }
+    }
+
+    /**
+     * Ordered workers should consume every article in queue order.
+     * @throws Exception if there is a problem running the chain
+     */
+    public void testOrderedWorkers() throws Exception {
+        final RecordingConsumer consumer = new RecordingConsumer();
+        consumer.setWorkers(4);
+        consumer.setOrdered(true);
+        runChain(consumer);
+
+        assertEquals(1, consumer.getCompletions());
+        assertEquals(NUMBER_OF_ARTICLES, consumer.getArticleNumbers().size());
+        for (int i = 0; i < NUMBER_OF_ARTICLES; i++) {
+            assertEquals(Long.valueOf(i), consumer.getArticleNumbers().get(i));
+        }
+    }
+
+    /**
+     * Workers must be positive.
+     */
+    public void testInvalidWorkers() {
+        final RecordingConsumer consumer = new RecordingConsumer();
+        try {
+            consumer.setWorkers(0);
+            fail("Zero workers should not be allowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A chain should run in a pool just big enough for its threads and
+     * count the articles each stage processed.
+     * @throws Exception if there is a problem running the chain
+     */
+    public void testBoundedPoolMetrics() throws Exception {
+        final RecordingConsumer consumer = new RecordingConsumer();
+        consumer.setWorkers(4);
+        final CountingProducer producer = new CountingProducer(NUMBER_OF_ARTICLES);
+        producer.setThreadPoolSize(5);
+        producer.setThreadNamePrefix("bounded");
+        final TextractorContext context = new TextractorContext();
+        runChain(producer, consumer, context);
+
+        assertEquals(5, context.getThreadPoolSize());
+        assertEquals("bounded", context.getThreadNamePrefix());
+        assertEquals(NUMBER_OF_ARTICLES,
+                context.getStageMetrics(producer).getItems());
+        assertEquals(NUMBER_OF_ARTICLES,
+                context.getStageMetrics(consumer).getItems());
+        assertEquals(NUMBER_OF_ARTICLES, context.getWorkQueue(consumer).getTakes());
+    }
+
+    private void runChain(final RecordingConsumer consumer)
+            throws Exception {
+        runChain(new CountingProducer(NUMBER_OF_ARTICLES), consumer, new TextractorContext());
+    }
+
+    private void runChain(final CountingProducer producer,
+            final RecordingConsumer consumer, final TextractorContext context)
+            throws Exception {
+        producer.setWorkQueueSize(100);
+        producer.addCommand(consumer);
+        producer.execute(context);
+        assertTrue("Consumer did not complete",
+                consumer.awaitCompletion(10));
+    }
+}
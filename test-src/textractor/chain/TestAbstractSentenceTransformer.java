@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import junit.framework.TestCase;
+import textractor.datamodel.Sentence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Validates the behavior of {@link AbstractSentenceTransformer} when more
+ * than one transform worker is used.
+ */
+public final class TestAbstractSentenceTransformer extends TestCase {
+    /** Number of articles produced for each test. */
+    private static final int NUMBER_OF_ARTICLES = 500;
+
+    /**
+     * Takes a random amount of time to transform each article and drops
+     * every tenth one.
+     */
+    private static final class SlowTransformer extends AbstractSentenceTransformer {
+        private final Random random = new Random(42);
+        private final Set<String> threadNames =
+                Collections.synchronizedSet(new HashSet<String>());
+
+        public ArticleSentencesPair transform(final ArticleSentencesPair pair) {
+            threadNames.add(Thread.currentThread().getName());
+            final int delay;
+            synchronized (random) {
+                delay = random.nextInt(3);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (pair.article.getArticleNumber() % 10 == 9) {
+                return null;
+            }
+            for (final Sentence sentence : pair.sentences) {
+                sentence.setText("transformed " + sentence.getText());
+            }
+            return pair;
+        }
+
+        public int getNumberOfArticlesProcessed() {
+            return 0;
+        }
+
+        public int getNumberOfSentencesProcessed() {
+            return 0;
+        }
+    }
+
+    /**
+     * Transformed articles should reach the consumer in input order
+     * regardless of the number of transform workers.
+     * @throws Exception if there is a problem running the chain
+     */
+    public void testParallelTransformKeepsOrder() throws Exception {
+        final SlowTransformer transformer = new SlowTransformer();
+        transformer.setTransformWorkers(8);
+        transformer.setTransformWindowSize(16);
+        final RecordingConsumer consumer = new RecordingConsumer();
+        transformer.addCommand(consumer);
+
+        final CountingProducer producer = new CountingProducer(NUMBER_OF_ARTICLES);
+        producer.setWorkQueueSize(50);
+        producer.addCommand(transformer);
+        producer.execute(new TextractorContext());
+        assertTrue("Consumer did not complete",
+                consumer.awaitCompletion(30));
+
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < NUMBER_OF_ARTICLES; i++) {
+            if (i % 10 != 9) {
+                expected.add("transformed " + i);
+            }
+        }
+        assertEquals(expected, consumer.getTexts());
+    }
+
+    /**
+     * Transform workers should run on the chain thread pool, which only
+     * needs one more thread to reassemble the articles in order.
+     * @throws Exception if there is a problem running the chain
+     */
+    public void testTransformWorkersUseChainPool() throws Exception {
+        final SlowTransformer transformer = new SlowTransformer();
+        transformer.setTransformWorkers(4);
+        transformer.setTransformWindowSize(16);
+        final RecordingConsumer consumer = new RecordingConsumer();
+        transformer.addCommand(consumer);
+
+        final CountingProducer producer = new CountingProducer(NUMBER_OF_ARTICLES);
+        producer.setWorkQueueSize(50);
+        // producer, transformer, 4 workers, reassembly and consumer
+        producer.setThreadPoolSize(8);
+        producer.setThreadNamePrefix("bounded");
+        producer.addCommand(transformer);
+        producer.execute(new TextractorContext());
+        assertTrue("Consumer did not complete", consumer.awaitCompletion(30));
+
+        assertEquals(NUMBER_OF_ARTICLES - NUMBER_OF_ARTICLES / 10,
+                consumer.getTexts().size());
+        assertFalse(transformer.threadNames.isEmpty());
+        for (final String name : transformer.threadNames) {
+            assertTrue(name, name.matches("bounded-[0-9]+"));
+        }
+    }
+
+    /**
+     * Fails to transform one of the articles.
+     */
+    private static final class FailingTransformer extends AbstractSentenceTransformer {
+        private static final RuntimeException FAILURE =
+                new RuntimeException("transform failed");
+
+        public ArticleSentencesPair transform(final ArticleSentencesPair pair) {
+            if (pair.article.getArticleNumber() == 20) {
+                throw FAILURE;
+            }
+            return pair;
+        }
+
+        public int getNumberOfArticlesProcessed() {
+            return 0;
+        }
+
+        public int getNumberOfSentencesProcessed() {
+            return 0;
+        }
+    }
+
+    /**
+     * A failed transformation stops the transformer even when it is blocked
+     * waiting for room in a full window of pending transformations.
+     * @throws Exception if there is a problem running the chain
+     */
+    public void testFailedTransformStopsTransformer() throws Exception {
+        final FailingTransformer transformer = new FailingTransformer();
+        transformer.setTransformWorkers(2);
+        transformer.setTransformWindowSize(2);
+        transformer.addCommand(new RecordingConsumer());
+
+        final CountingProducer producer = new CountingProducer(NUMBER_OF_ARTICLES);
+        producer.setWorkQueueSize(50);
+        producer.addCommand(transformer);
+        final TextractorContext context = new TextractorContext();
+        // the failed stage interrupts every thread of its group
+        final Thread chain = new Thread(new ThreadGroup("failing-chain"),
+                new Runnable() {
+                    public void run() {
+                        try {
+                            producer.execute(context);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+        chain.start();
+        chain.join();
+
+        Throwable failure = null;
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (failure == null && System.currentTimeMillis() < deadline) {
+            for (final Future<Boolean> work
+                    : new ArrayList<Future<Boolean>>(context.getWorkThreads())) {
+                if (work.isDone()) {
+                    try {
+                        work.get();
+                    } catch (ExecutionException e) {
+                        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                            if (cause == FailingTransformer.FAILURE) {
+                                failure = cause;
+                            }
+                        }
+                    }
+                }
+            }
+            Thread.sleep(10);
+        }
+        assertSame("Transformer did not stop", FailingTransformer.FAILURE, failure);
+    }
+
+    /**
+     * Transform workers must be positive.
+     */
+    public void testInvalidTransformWorkers() {
+        final SlowTransformer transformer = new SlowTransformer();
+        try {
+            transformer.setTransformWorkers(0);
+            fail("Zero workers should not be allowed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates the thread pool settings of a {@link TextractorContext}.
+ */
+public final class TestTextractorContext extends TestCase {
+    /**
+     * Pool threads should be named and daemon as configured.
+     * @throws Exception if the thread cannot be run
+     */
+    public void testThreadSettings() throws Exception {
+        final TextractorContext context = new TextractorContext();
+        context.setThreadNamePrefix("test");
+        context.setDaemonThreads(true);
+        final ExecutorService pool = context.getThreadPool();
+        final Thread thread = pool.submit(new Callable<Thread>() {
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        }).get();
+        assertTrue(thread.getName().startsWith("test-"));
+        assertTrue(thread.isDaemon());
+        context.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A bounded pool should refuse work when every thread is busy.
+     * @throws Exception if the threads cannot be run
+     */
+    public void testBoundedPool() throws Exception {
+        final TextractorContext context = new TextractorContext();
+        context.setThreadPoolSize(2);
+        final ExecutorService pool = context.getThreadPool();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Boolean> blocked = new Callable<Boolean>() {
+            public Boolean call() throws InterruptedException {
+                release.await();
+                return true;
+            }
+        };
+        pool.submit(blocked);
+        pool.submit(blocked);
+        try {
+            pool.submit(blocked);
+            fail("The pool should not allow a third thread");
+        } catch (RejectedExecutionException e) {
+            // expected
+        } finally {
+            release.countDown();
+            context.shutdown();
+        }
+    }
+
+    /**
+     * Settings cannot change once the pool is started.
+     */
+    public void testSettingsFixedOnceStarted() {
+        final TextractorContext context = new TextractorContext();
+        assertFalse(context.isThreadPoolStarted());
+        context.getThreadPool();
+        assertTrue(context.isThreadPoolStarted());
+        try {
+            context.setThreadPoolSize(4);
+            fail("The pool size should not change once started");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            context.shutdown();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validates that the end of stream of a {@link WorkQueue} is never lost.
+ */
+public final class TestWorkQueue extends TestCase {
+    /**
+     * A queue with no producers left should release the consumer after the
+     * data has been taken.
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testSingleProducer() throws InterruptedException {
+        final WorkQueue<Integer> queue = new WorkQueue<Integer>(10);
+        queue.addProducer();
+        queue.put(1);
+        queue.put(2);
+        assertFalse(queue.isSealed());
+        queue.producerDone();
+        assertTrue(queue.isSealed());
+        assertEquals(2, queue.size());
+
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertNull(queue.take());
+        // the end of stream is seen by every later take
+        assertNull(queue.take());
+    }
+
+    /**
+     * The queue is sealed only once every producer is done.
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testSealedByLastProducer() throws InterruptedException {
+        final WorkQueue<Integer> queue = new WorkQueue<Integer>(10);
+        queue.addProducer();
+        queue.addProducer();
+        queue.producerDone();
+        assertFalse(queue.isSealed());
+        queue.put(3);
+        queue.producerDone();
+        assertTrue(queue.isSealed());
+        assertEquals(Integer.valueOf(3), queue.take());
+        assertNull(queue.take());
+
+        try {
+            queue.addProducer();
+            fail("Cannot add a producer to a sealed queue");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Many producers and consumers sharing a small queue should deliver
+     * every element exactly once and release every consumer.
+     * @throws Exception if the test fails
+     */
+    public void testManyProducersAndConsumers() throws Exception {
+        final int numberOfProducers = 5;
+        final int numberOfConsumers = 7;
+        final int elementsPerProducer = 5000;
+
+        for (int run = 0; run < 10; run++) {
+            final WorkQueue<Integer> queue = new WorkQueue<Integer>(3);
+            final ExecutorService pool = Executors.newCachedThreadPool();
+            final List<Future<Long>> consumers = new ArrayList<Future<Long>>();
+            final AtomicLong count = new AtomicLong();
+
+            for (int i = 0; i < numberOfConsumers; i++) {
+                consumers.add(pool.submit(new Callable<Long>() {
+                    public Long call() throws InterruptedException {
+                        long sum = 0;
+                        Integer element;
+                        while ((element = queue.take()) != null) {
+                            sum += element;
+                            count.incrementAndGet();
+                        }
+                        return sum;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < numberOfProducers; i++) {
+                queue.addProducer();
+            }
+            for (int i = 0; i < numberOfProducers; i++) {
+                pool.submit(new Callable<Boolean>() {
+                    public Boolean call() throws InterruptedException {
+                        for (int j = 1; j <= elementsPerProducer; j++) {
+                            queue.put(j);
+                        }
+                        queue.producerDone();
+                        return true;
+                    }
+                });
+            }
+
+            long sum = 0;
+            for (final Future<Long> consumer : consumers) {
+                sum += consumer.get(30, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            final long expectedSum = (long) numberOfProducers
+                    * elementsPerProducer * (elementsPerProducer + 1) / 2;
+            assertEquals(numberOfProducers * elementsPerProducer, count.get());
+            assertEquals(expectedSum, sum);
+        }
+    }
+}
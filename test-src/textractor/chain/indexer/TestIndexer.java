@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain.indexer;
+
+import junit.framework.TestCase;
+import textractor.datamodel.Article;
+import textractor.datamodel.Sentence;
+
+import java.util.Collections;
+
+/**
+ * Validates how the {@link textractor.chain.indexer.Indexer} seals the
+ * queue its indexing thread works from.
+ */
+public final class TestIndexer extends TestCase {
+    /**
+     * Completing more than once must not seal the queue twice.
+     * @throws Exception if the indexer cannot be created
+     */
+    public void testCompleteTwice() throws Exception {
+        final Indexer indexer = new Indexer();
+        assertTrue(indexer.okToComplete());
+        assertTrue(indexer.okToComplete());
+    }
+
+    /**
+     * A failed consumer seals the queue and later articles are dropped
+     * rather than queued behind the end of the queue.
+     * @throws Exception if the indexer cannot be created
+     */
+    public void testFailure() throws Exception {
+        final Indexer indexer = new Indexer();
+        indexer.consumerFailed(new IllegalStateException("test"));
+        indexer.consume(new Article(),
+                Collections.singletonList(new Sentence(new Article(), "dropped")));
+        assertEquals(0, indexer.getNumberOfSentencesProcessed());
+        assertEquals(0, indexer.getNumberOfArticlesProcessed());
+        assertTrue(indexer.okToComplete());
+    }
+}
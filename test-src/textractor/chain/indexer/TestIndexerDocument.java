@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain.indexer;
+
+import it.unimi.dsi.mg4j.document.Document;
+import it.unimi.dsi.mg4j.document.DocumentFactory;
+import it.unimi.dsi.mg4j.io.WordReader;
+import it.unimi.dsi.mg4j.util.MutableString;
+import it.unimi.dsi.mg4j.util.Properties;
+import junit.framework.TestCase;
+import textractor.datamodel.Article;
+import textractor.datamodel.Sentence;
+import textractor.mg4j.document.AbstractTextractorDocumentFactory;
+import textractor.mg4j.document.ConfigurableTextractorDocumentFactory;
+import textractor.mg4j.document.SfnDocumentFactory;
+import textractor.mg4j.document.TextractorDocumentFactory;
+import textractor.mg4j.document.TextractorFieldInfo;
+
+import java.io.File;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates that the documents the {@link textractor.chain.indexer.Indexer}
+ * builds directly from sentences index the same as the serialized ones.
+ */
+public final class TestIndexerDocument extends TestCase {
+    /**
+     * Sentences with characters that the serialized form has to escape.
+     */
+    private static final String[] TEXTS = {
+            "The protein (p53) binds to the receptor.",
+            "Commas, semicolons; and \"quotes\" are kept, as are = signs.",
+            "A backslash \\ and a trailing backslash \\",
+            "  leading and trailing spaces  ",
+            "\t\f leading tab and form feed",
+            "IL-2/IL-4 receptors: alpha-beta, #1 and !2",
+            ""
+    };
+
+    /**
+     * The single field factory opts in and indexes the same both ways.
+     * @throws Exception if the documents cannot be built
+     */
+    public void testTextractorDocumentFactory() throws Exception {
+        final Properties properties = new Properties();
+        properties.addProperty(
+                AbstractTextractorDocumentFactory.MetadataKeys.PARENTHESESAREWORDS,
+                Boolean.TRUE.toString());
+        final TextractorDocumentFactory factory =
+                new TextractorDocumentFactory(properties);
+        assertTrue(factory.isDirectDocumentSupported());
+        assertSameDocuments(factory, new Article());
+    }
+
+    /**
+     * The configurable factory opts in and indexes text and integer fields
+     * the same both ways.
+     * @throws Exception if the documents cannot be built
+     */
+    public void testConfigurableTextractorDocumentFactory() throws Exception {
+        final File configuration =
+                File.createTempFile("indexer-document", ".properties");
+        configuration.deleteOnExit();
+        final Properties fields = new Properties(configuration);
+        fields.addProperty("fields", "text,author,year");
+        fields.addProperty("field.year.type", DocumentFactory.FieldType.INT);
+        fields.save();
+
+        final Properties properties = new Properties();
+        properties.addProperty(
+                ConfigurableTextractorDocumentFactory.MetadataKeys.CONFIGURATION_FILE,
+                configuration.getAbsolutePath());
+        final ConfigurableTextractorDocumentFactory factory =
+                new ConfigurableTextractorDocumentFactory(null, properties);
+        assertTrue(factory.isDirectDocumentSupported());
+
+        final Article article = new Article();
+        article.setAdditionalField("author", " Smith, J., O'Brien \\ P.");
+        article.setAdditionalField("year", 2006);
+        assertSameDocuments(factory, article);
+    }
+
+    /**
+     * Factories that do not opt in are always given the serialized sentence.
+     * @throws Exception if the factory cannot be created
+     */
+    public void testOptIn() throws Exception {
+        assertFalse(new SfnDocumentFactory().isDirectDocumentSupported());
+    }
+
+    /**
+     * Index the sentences of an article both ways and compare the terms and
+     * positions of every field.
+     * @param factory The factory to build documents with
+     * @param article The article the sentences belong to
+     * @throws Exception if the documents cannot be built
+     */
+    private static void assertSameDocuments(
+            final AbstractTextractorDocumentFactory factory,
+            final Article article) throws Exception {
+        final List<TextractorFieldInfo> indexFields = factory.getFieldInfoList();
+        for (final String text : TEXTS) {
+            final Sentence sentence = new Sentence(article, text);
+            final Map<String, Object> fieldValues =
+                    Indexer.getFieldValues(indexFields, sentence);
+            final Document serialized = Indexer.getSerializedDocument(factory,
+                    text, fieldValues, sentence.getMetaData());
+            final Document direct =
+                    Indexer.getDocument(factory, indexFields, sentence);
+            for (int field = 0; field < factory.numberOfFields(); field++) {
+                if (factory.fieldType(field) == DocumentFactory.FieldType.TEXT) {
+                    assertEquals(text + " / " + factory.fieldName(field),
+                            terms(serialized, field), terms(direct, field));
+                } else {
+                    assertEquals(serialized.content(field), direct.content(field));
+                }
+            }
+            serialized.close();
+            direct.close();
+        }
+    }
+
+    /**
+     * @param document A document
+     * @param field A text field of the document
+     * @return The terms of the field, in position order
+     * @throws Exception if the field cannot be read
+     */
+    private static List<String> terms(final Document document, final int field)
+            throws Exception {
+        final WordReader wordReader = document.wordReader(field);
+        wordReader.setReader((Reader) document.content(field));
+        final MutableString word = new MutableString();
+        final MutableString nonWord = new MutableString();
+        final List<String> terms = new ArrayList<String>();
+        while (wordReader.next(word, nonWord)) {
+            terms.add(word.toString());
+        }
+        return terms;
+    }
+}
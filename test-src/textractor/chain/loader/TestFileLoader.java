@@ -22,7 +22,10 @@ import junit.framework.TestCase;
 import org.apache.commons.chain.Catalog;
 import org.apache.commons.chain.impl.CatalogBase;
 import org.apache.commons.io.FileUtils;
+import textractor.article.DefaultArticleProducer;
 import textractor.chain.AbstractSentenceConsumer;
+import textractor.chain.ArticleSentencesPair;
+import textractor.chain.RecordingConsumer;
 import textractor.datamodel.Article;
 import textractor.datamodel.Sentence;
 import textractor.sentence.SentenceProcessingException;
@@ -34,10 +37,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 public class TestFileLoader extends TestCase {
-    private final List<String> filenames = new ArrayList<String>();
+    private final List<String> filenames =
+            Collections.synchronizedList(new ArrayList<String>());
 
     public void setUp() {
         filenames.clear();
@@ -110,6 +116,51 @@ public class TestFileLoader extends TestCase {
                 list, log);
     }
 
+    /**
+     * Validate that files loaded by several threads are queued and numbered
+     * in file order.
+     * @throws Exception if there is a problem executing the chain
+     */
+    public void testParallelLoading() throws Exception {
+        final List<String> filenameList = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            filenameList.add("file" + i);
+        }
+        final File list = File.createTempFile(this.getClass().getName(), null);
+        FileUtils.writeLines(list, null, filenameList);
+        final File log = File.createTempFile(this.getClass().getName(), null);
+
+        final ParallelTestLoader loader = new ParallelTestLoader();
+        loader.setList(list.getAbsolutePath());
+        loader.setProcessedFileLog(log.getAbsolutePath());
+        loader.setLoaderThreads(4);
+        final RecordingConsumer consumer = new RecordingConsumer();
+        loader.addCommand(consumer);
+
+        final Catalog catalog = new CatalogBase();
+        catalog.addCommand("ParallelLoaderTest", loader);
+        final ChainExecutor chainExecutor = new ChainExecutor(catalog);
+        chainExecutor.execute();
+
+        // every file was processed, but not necessarily in order
+        assertEquals(filenameList.size(), filenames.size());
+
+        // articles and sentences are queued and numbered in file order
+        final int articlesPerFile = ParallelTestLoader.ARTICLES_PER_FILE;
+        assertEquals(filenameList.size() * articlesPerFile,
+                consumer.getSentences().size());
+        for (int i = 0; i < consumer.getSentences().size(); i++) {
+            final Sentence sentence = consumer.getSentences().get(i);
+            assertEquals(i, sentence.getArticle().getArticleNumber());
+            assertEquals(i, sentence.getDocumentNumber());
+            assertEquals(filenameList.get(i / articlesPerFile) + " "
+                    + (i % articlesPerFile), sentence.getText());
+        }
+
+        AssertFilesEqual.assertEquals("log file doesn't match file list",
+                list, log);
+    }
+
     private class TestLoader extends AbstractFileLoader {
         /**
          * Process a single file designated by name.
@@ -133,6 +184,49 @@ public class TestFileLoader extends TestCase {
         }
     }
 
+    /**
+     * Loader that produces a few single sentence articles per file, taking
+     * a random amount of time to do so, and numbers them as they are queued.
+     */
+    private class ParallelTestLoader extends AbstractFileLoader {
+        private static final int ARTICLES_PER_FILE = 3;
+        private final Random random = new Random();
+        private final DefaultArticleProducer articleProducer =
+                new DefaultArticleProducer();
+
+        public void processFilename(final String filename) throws IOException {
+            filenames.add(filename);
+            for (int i = 0; i < ARTICLES_PER_FILE; i++) {
+                try {
+                    Thread.sleep(random.nextInt(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                final Article article = new Article();
+                final List<Sentence> sentences = new ArrayList<Sentence>();
+                sentences.add(produce(article, filename + " " + i));
+                produce(article, sentences);
+            }
+        }
+
+        @Override
+        protected boolean acceptArticle(final ArticleSentencesPair pair) {
+            articleProducer.numberArticle(pair.article);
+            return true;
+        }
+
+        @Override
+        protected boolean supportsParallelLoading() {
+            return true;
+        }
+
+        public int getNumberOfArticlesProcessed() {
+            // not needed for this test
+            return 0;
+        }
+    }
+
     private class TestConsumer extends AbstractSentenceConsumer {
         /**
          * Get the number of articles processed so far.
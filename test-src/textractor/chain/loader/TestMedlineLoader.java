@@ -23,6 +23,7 @@ import org.apache.commons.chain.Catalog;
 import org.apache.commons.chain.impl.CatalogBase;
 import org.apache.commons.io.FileUtils;
 import textractor.chain.AbstractSentenceConsumer;
+import textractor.chain.RecordingConsumer;
 import textractor.datamodel.Article;
 import textractor.datamodel.Sentence;
 import textractor.sentence.SentenceProcessingException;
@@ -107,6 +108,100 @@ public class TestMedlineLoader extends TestCase {
         assertEquals("There should be a total of 156 articles", 156, pmids.size());
     }
 
+    /**
+     * Validate that streaming a medline sample file one citation at a time
+     * loads the same articles in the same order as reading the whole file.
+     * @throws Exception if there is a problem executing the chain
+     */
+    public void testMedlineSampleStreaming() throws Exception {
+        final String filename = "data/2011-medline-sample/medsamp2011.xml";
+        final PubmedArticleLoader loader = new PubmedArticleLoader();
+        loader.setFile(filename);
+        loader.addCommand(new TestConsumer());
+        final Catalog catalog = new CatalogBase();
+        catalog.addCommand("MedlineSampleLoader", loader);
+        new ChainExecutor(catalog).execute();
+        final List<Long> expectedPmids = new ArrayList<Long>(pmids);
+        pmids.clear();
+
+        final PubmedArticleLoader streamingLoader = new PubmedArticleLoader();
+        streamingLoader.setFile(filename);
+        streamingLoader.setStreaming(true);
+        streamingLoader.addCommand(new TestConsumer());
+        final Catalog streamingCatalog = new CatalogBase();
+        streamingCatalog.addCommand("MedlineSampleLoader", streamingLoader);
+        new ChainExecutor(streamingCatalog).execute();
+
+        assertEquals("There should be a total of 153 articles", 153, pmids.size());
+        assertEquals(expectedPmids, pmids);
+    }
+
+    /**
+     * Validate that retractions are handled across files loaded by several
+     * threads.
+     * @throws Exception if there is a problem executing the chain
+     */
+    public void testParallelRetractionProcessing() throws Exception {
+        final File[] testFiles = {
+            new File("data/pubmed/retraction/993.xml"),
+            new File("data/pubmed/retraction/239707.xml"),
+            new File("data/pubmed/retraction/multipleRetractions.xml"),
+            new File("data/2011-medline-sample/medsamp2011.xml")
+        };
+        final File testFileList = File.createTempFile("medline", ".txt");
+        FileUtils.writeLines(testFileList, Arrays.asList(testFiles));
+
+        final PubmedArticleLoader serialLoader = new PubmedArticleLoader();
+        final RecordingConsumer serial =
+                load(serialLoader, testFileList, 1);
+        final PubmedArticleLoader parallelLoader = new PubmedArticleLoader();
+        final RecordingConsumer parallel =
+                load(parallelLoader, testFileList, 3);
+        for (final Sentence sentence : parallel.getSentences()) {
+            pmids.add(sentence.getArticle().getPmid());
+        }
+
+        assertFalse("PMID 993 should not be included", pmids.contains(993L));
+        assertFalse("PMID 239707 should not be included", pmids.contains(239707L));
+        assertFalse("PMID 11543891 should be retracted", pmids.contains(11543891L));
+        assertTrue("PMID 8655018 should be included", pmids.contains(8655018L));
+
+        // the articles are numbered and counted as if loaded by one thread
+        assertEquals(serial.getArticleNumbers(), parallel.getArticleNumbers());
+        assertEquals(serial.getSentences().size(), parallel.getSentences().size());
+        for (int i = 0; i < serial.getSentences().size(); i++) {
+            final Sentence expected = serial.getSentences().get(i);
+            final Sentence sentence = parallel.getSentences().get(i);
+            assertEquals(expected.getDocumentNumber(), sentence.getDocumentNumber());
+            assertEquals(expected.getArticle().getPmid(),
+                    sentence.getArticle().getPmid());
+            assertEquals(expected.getText(), sentence.getText());
+        }
+        assertEquals(serialLoader.getNumberOfArticlesProcessed(),
+                parallelLoader.getNumberOfArticlesProcessed());
+    }
+
+    /**
+     * Load the files of a list, streaming one citation at a time.
+     * @param loader The loader to use
+     * @param list The file with the list of files to load
+     * @param loaderThreads The number of files to load at once
+     * @return The consumer of the articles loaded
+     * @throws Exception if there is a problem executing the chain
+     */
+    private RecordingConsumer load(final PubmedArticleLoader loader,
+            final File list, final int loaderThreads) throws Exception {
+        loader.setList(list.getAbsolutePath());
+        loader.setLoaderThreads(loaderThreads);
+        loader.setStreaming(true);
+        final RecordingConsumer consumer = new RecordingConsumer();
+        loader.addCommand(consumer);
+        final Catalog catalog = new CatalogBase();
+        catalog.addCommand("MedlineSampleLoader", loader);
+        new ChainExecutor(catalog).execute();
+        return consumer;
+    }
+
     public void testMultipleFileProcessing() throws Exception {
         final File[] testFiles = {
             new File("data/pubmed/retraction/993.xml"),
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.chain.loader;
+
+import junit.framework.TestCase;
+import textractor.chain.loader.TrecDocumentSegmenter.TrecDocument;
+import textractor.util.ReadAheadInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Test the {@link TrecDocumentSegmenter}.
+ */
+public class TestTrecDocumentSegmenter extends TestCase {
+    private static final String FIRST_HEADER =
+            "<DOC>\n<DOCNO>GX000-00-0000000</DOCNO>\n<DOCHDR>\n"
+            + "http://www.example.gov/\n</DOCHDR>\n";
+    private static final String FIRST_CONTENT =
+            "<html><body>first</body></html>\n";
+    private static final String SECOND_HEADER =
+            "<DOC>\n<DOCNO>GX000-00-0000001</DOCNO>\n<DOCHDR>\n"
+            + "http://www.example.gov/second\n</DOCHDR>\n";
+    private static final String SECOND_CONTENT =
+            "<html><body>second\n</DOC> is not a marker here</body></html>\n";
+    private static final String COLLECTION =
+            "junk before the first document\n"
+            + FIRST_HEADER + FIRST_CONTENT + "</DOC>\n"
+            + SECOND_HEADER + SECOND_CONTENT + "</DOC>\n";
+
+    public void testSegments() throws IOException {
+        assertSegments(new ByteArrayInputStream(COLLECTION.getBytes("ASCII")));
+    }
+
+    /**
+     * Markers split across reads must still be found.
+     */
+    public void testOneByteAtATime() throws IOException {
+        assertSegments(new FilterInputStream(
+                new ByteArrayInputStream(COLLECTION.getBytes("ASCII"))) {
+            @Override
+            public int read(final byte[] b, final int off, final int len)
+                    throws IOException {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        });
+    }
+
+    public void testReadAhead() throws IOException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final InputStream stream = new ReadAheadInputStream(
+                    new ByteArrayInputStream(COLLECTION.getBytes("ASCII")),
+                    7, 2, executor);
+            assertSegments(stream);
+            stream.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A source that fails partway through must fail the reader rather than
+     * look like the end of the stream.
+     */
+    public void testReadAheadError() throws IOException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the reader often gets to the end before the error is thrown
+            for (int i = 0; i < 100; i++) {
+                final InputStream stream = new ReadAheadInputStream(
+                        new FilterInputStream(new ByteArrayInputStream(
+                                COLLECTION.getBytes("ASCII"))) {
+                            private int bytesRead;
+
+                            @Override
+                            public int read(final byte[] b, final int off,
+                                    final int len) throws IOException {
+                                if (bytesRead >= 20) {
+                                    throw new IOException("corrupt");
+                                }
+                                final int read = super.read(b, off,
+                                        Math.min(len, 20 - bytesRead));
+                                bytesRead += read;
+                                return read;
+                            }
+                        }, 7, 2, executor);
+                int count = 0;
+                try {
+                    while (stream.read() != -1) {
+                        count++;
+                    }
+                    fail("The error should be rethrown, not end the stream");
+                } catch (IOException e) {
+                    assertEquals("corrupt", e.getMessage());
+                }
+                assertTrue(count <= 20);
+                stream.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testCarriageReturns() throws IOException {
+        final String collection = "<DOC>\r\n<DOCHDR>\r\n</DOCHDR>\r\n"
+                + "content\r\n</DOC>\r\n";
+        final TrecDocumentSegmenter segmenter = new TrecDocumentSegmenter(
+                new ByteArrayInputStream(collection.getBytes("ASCII")));
+        final TrecDocument document = segmenter.next();
+        assertNotNull(document);
+        assertEquals("<DOC>\r\n<DOCHDR>\r\n</DOCHDR>\r\n",
+                new String(document.getHeader(), "ASCII"));
+        assertEquals("content\r\n", new String(document.getContent(), "ASCII"));
+        assertNull(segmenter.next());
+    }
+
+    /**
+     * A document without a header and without a final line feed.
+     */
+    public void testNoHeader() throws IOException {
+        final String collection = "<DOC>\n<DOCNO>1</DOCNO>\n</DOC>";
+        final TrecDocumentSegmenter segmenter = new TrecDocumentSegmenter(
+                new ByteArrayInputStream(collection.getBytes("ASCII")));
+        final TrecDocument document = segmenter.next();
+        assertNotNull(document);
+        assertEquals("<DOC>\n<DOCNO>1</DOCNO>\n",
+                new String(document.getHeader(), "ASCII"));
+        assertEquals(0, document.getContent().length);
+        assertNull(segmenter.next());
+    }
+
+    public void testUnterminatedDocument() throws IOException {
+        final TrecDocumentSegmenter segmenter = new TrecDocumentSegmenter(
+                new ByteArrayInputStream("<DOC>\n<DOCNO>1</DOCNO>\n".getBytes("ASCII")));
+        assertNull(segmenter.next());
+    }
+
+    private void assertSegments(final InputStream stream) throws IOException {
+        final TrecDocumentSegmenter segmenter = new TrecDocumentSegmenter(stream);
+        TrecDocument document = segmenter.next();
+        assertNotNull(document);
+        assertEquals(FIRST_HEADER, new String(document.getHeader(), "ASCII"));
+        assertEquals(FIRST_CONTENT, new String(document.getContent(), "ASCII"));
+
+        document = segmenter.next();
+        assertNotNull(document);
+        assertEquals(SECOND_HEADER, new String(document.getHeader(), "ASCII"));
+        assertEquals(SECOND_CONTENT, new String(document.getContent(), "ASCII"));
+
+        assertNull(segmenter.next());
+        assertNull(segmenter.next());
+    }
+}
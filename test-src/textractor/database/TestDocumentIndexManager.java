@@ -18,6 +18,7 @@
 
 package textractor.database;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.mg4j.index.TermProcessor;
 import it.unimi.dsi.mg4j.search.DocumentIterator;
 import it.unimi.dsi.mg4j.search.Interval;
@@ -29,6 +30,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import textractor.datamodel.Sentence;
 import textractor.datamodel.TermOccurrence;
+import textractor.mg4j.index.DocumentUnion;
+import textractor.mg4j.index.PositionedTerm;
 import textractor.mg4j.index.TermIterator;
 import textractor.tools.BuildDocumentIndexFromTextDocuments;
 import textractor.tools.DocumentQueryResult;
@@ -243,6 +246,53 @@ public final class TestDocumentIndexManager extends TestCase {
         assertEquals("empty result set must be returned", 0, documents.length);
     }
 
+    /**
+     * Conjunctive queries that mix rare and common terms find the same
+     * documents as intersecting the documents of each term.
+     */
+    public void testQueryAndRareAndCommonTerms() throws Exception {
+        final String basename = "index/query-and-skips";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        final List<CharSequence> textCollection = new ArrayList<CharSequence>();
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder text = new StringBuilder("the protein");
+            if (i % 3 == 0) {
+                text.append(" binds");
+            }
+            if (i % 7 == 0) {
+                text.append(" receptor");
+            }
+            if (i == 5 || i == 1400 || i == 1995) {
+                text.append(" ubiquitin");
+            }
+            textCollection.add(text);
+        }
+        indexBuilder.index(textCollection);
+
+        final DocumentIndexManager docmanager2 = new DocumentIndexManager(basename);
+        final String[][] queries = {
+                {"protein", "ubiquitin"},
+                {"ubiquitin", "the", "protein"},
+                {"binds", "receptor"},
+                {"receptor", "binds", "ubiquitin"},
+                {"binds", "the"},
+                {"protein"}
+        };
+        for (final String[] query : queries) {
+            int[] expected = docmanager2.query(query[0]);
+            for (int i = 1; i < query.length; i++) {
+                expected = docmanager2.intersection(expected, docmanager2.query(query[i]));
+            }
+            final int[] documents = docmanager2.queryAnd(Arrays.asList(query));
+            assertTrue(Arrays.toString(query), Arrays.equals(expected, documents));
+        }
+        assertTrue(Arrays.equals(new int[] {1400, 1995},
+                docmanager2.queryAnd(Arrays.asList("ubiquitin", "receptor"))));
+        assertEquals(0, docmanager2.queryAnd(Arrays.asList("protein", "kinase")).length);
+        docmanager2.close();
+    }
+
     public void testQueryOr() throws IOException {
         // do the query:
         final List<String> keywords = new ArrayList<String>();
@@ -282,6 +332,55 @@ public final class TestDocumentIndexManager extends TestCase {
         }
     }
 
+    /**
+     * Disjunctive queries over many terms find the same documents as the
+     * union of the documents of each term, and can be read one at a time.
+     */
+    public void testQueryOrManyTerms() throws Exception {
+        final String basename = "index/query-or-union";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        final List<CharSequence> textCollection = new ArrayList<CharSequence>();
+        for (int i = 0; i < 500; i++) {
+            final StringBuilder text = new StringBuilder("document");
+            for (int j = 2; j < 12; j++) {
+                if (i % (j * j) == 0) {
+                    text.append(" term").append(j);
+                }
+            }
+            textCollection.add(text);
+        }
+        indexBuilder.index(textCollection);
+
+        final DocumentIndexManager docmanager2 = new DocumentIndexManager(basename);
+        final List<String> keywords = new ArrayList<String>();
+        for (int j = 2; j < 12; j++) {
+            keywords.add("term" + j);
+        }
+        keywords.add("term3");
+        keywords.add("Thistermisnotintheindex");
+        int[] expected = docmanager2.query(keywords.get(0));
+        for (final String keyword : keywords.subList(1, keywords.size() - 1)) {
+            expected = docmanager2.union(expected, docmanager2.query(keyword));
+        }
+        assertTrue(Arrays.equals(expected, docmanager2.queryOr(keywords)));
+
+        // stop after the first few documents
+        final DocumentUnion union = docmanager2.queryOrDocuments(keywords);
+        assertTrue(union.hasNext());
+        assertEquals(0, union.nextDocument());
+        assertEquals(4, union.nextDocument());
+        assertEquals(8, union.nextDocument());
+        assertEquals(9, union.nextDocument());
+        union.close();
+        assertFalse(union.hasNext());
+        assertEquals(-1, union.nextDocument());
+
+        assertEquals(0, docmanager2.queryOr(
+                Arrays.asList("Thistermisnotintheindex")).length);
+        docmanager2.close();
+    }
+
     public void testUnion() {
         final int[] array1 = {1, 2, 3, 6, 8};
         final int[] array2 = {2, 4, 6, 7};
@@ -493,6 +592,47 @@ public final class TestDocumentIndexManager extends TestCase {
         docmanager2.close();
     }
 
+    /**
+     * Phrases are found where their terms follow each other, including
+     * phrases that repeat a term or overlap themselves.
+     */
+    public void testQueryAndExactOrderPositions() throws Exception {
+        final String basename = "index/exact-order-positions";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        indexBuilder.index(new String[] {
+                "kinase a kinase b kinase a kinase c",
+                "a kinase c binds kinase a",
+                "kinase kinase kinase",
+                "c kinase a"
+        });
+
+        final DocumentIndexManager docmanager2 = new DocumentIndexManager(basename);
+        TermDocumentPositions positions =
+                docmanager2.queryAndExactOrder(new String[] {"kinase", "a", "kinase"});
+        assertTrue(Arrays.equals(new int[] {0}, positions.getDocuments()));
+        assertTrue(Arrays.equals(new int[] {2, 6}, positions.getPositions(0)));
+        assertEquals("kinase", positions.getTerm());
+
+        positions = docmanager2.queryAndExactOrder(new String[] {"kinase", "a"});
+        assertTrue(Arrays.equals(new int[] {0, 1, 3}, positions.getDocuments()));
+        assertTrue(Arrays.equals(new int[] {1, 5}, positions.getPositions(0)));
+        assertTrue(Arrays.equals(new int[] {5}, positions.getPositions(1)));
+        assertTrue(Arrays.equals(new int[] {2}, positions.getPositions(2)));
+
+        positions = docmanager2.queryAndExactOrder(new String[] {"kinase", "kinase"});
+        assertTrue(Arrays.equals(new int[] {2}, positions.getDocuments()));
+        assertTrue(Arrays.equals(new int[] {1, 2}, positions.getPositions(0)));
+
+        positions = docmanager2.queryAndExactOrder(new String[] {"c"});
+        assertTrue(Arrays.equals(new int[] {0, 1, 3}, positions.getDocuments()));
+        assertTrue(Arrays.equals(new int[] {7}, positions.getPositions(0)));
+
+        assertNull(docmanager2.queryAndExactOrder(new String[] {"a", "c"}));
+        assertNull(docmanager2.queryAndExactOrder(new String[] {"kinase", "ligase"}));
+        docmanager2.close();
+    }
+
     public void testQueryResult() throws Exception {
         final String basename = "index/with-parentheses";
         final BuildDocumentIndexFromTextDocuments indexBuilder =
@@ -629,6 +769,108 @@ public final class TestDocumentIndexManager extends TestCase {
         docmanager2.close();
     }
 
+    /**
+     * Threads extracting terms with the same manager must get the same terms
+     * as a single thread.
+     */
+    public void testConcurrentExtractTerms() throws Exception {
+        final String basename = "index/extract-concurrent-test";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        final String[] documents = new String[50];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = "Document " + i + " mentions (protein" + (i % 7)
+                    + ") and binds, to the receptor" + (i % 3) + ".";
+        }
+        indexBuilder.index(documents);
+        final DocumentIndexManager docmanager2 = new DocumentIndexManager(basename);
+
+        final int[][] expectedTerms = new int[documents.length][];
+        final String[] expectedSplit = new String[documents.length];
+        final MutableString result = new MutableString();
+        for (int i = 0; i < documents.length; i++) {
+            expectedTerms[i] = docmanager2.extractTerms(documents[i]);
+            docmanager2.splitText(documents[i], result);
+            expectedSplit[i] = result.toString();
+        }
+
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final MutableString split = new MutableString();
+                    try {
+                        for (int n = 0; n < 200; n++) {
+                            final int i = n % documents.length;
+                            assertTrue(Arrays.equals(expectedTerms[i],
+                                    docmanager2.extractTerms(new MutableString(documents[i]))));
+                            docmanager2.splitText(documents[i], split);
+                            assertEquals(expectedSplit[i], split.toString());
+                        }
+                    } catch (final Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        synchronized (failure) {
+            assertNull(failure[0]);
+        }
+        docmanager2.close();
+    }
+
+    /**
+     * Terms extracted with positions must match the positioned terms.
+     */
+    public void testExtractTermsWithPositions() throws Exception {
+        final String basename = "index/extract-positions-test";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        final String text = "  Hello, this is the (TEXT) to index,first document ";
+        indexBuilder.index(new String[] {text});
+        final DocumentIndexManager docmanager2 = new DocumentIndexManager(basename);
+
+        final Sentence sentence = new Sentence();
+        sentence.setText(text);
+        final List<Integer> positions = new ArrayList<Integer>();
+        for (int i = 0; i < text.length(); i++) {
+            positions.add(100 + 2 * i);
+        }
+        sentence.setPositions(positions);
+
+        final IntArrayList terms = new IntArrayList();
+        final IntArrayList starts = new IntArrayList();
+        final IntArrayList ends = new IntArrayList();
+        final int length = docmanager2.extractTerms(sentence, terms, starts, ends);
+        final int[] expectedTerms = docmanager2.extractTerms(text);
+        assertEquals(expectedTerms.length, length);
+        assertTrue(Arrays.equals(expectedTerms, terms.toIntArray()));
+
+        final List<PositionedTerm> positionedTerms = docmanager2.extractTerms(sentence);
+        assertEquals(length, positionedTerms.size());
+        for (int i = 0; i < length; i++) {
+            final PositionedTerm term = positionedTerms.get(i);
+            assertEquals(terms.getInt(i), term.getTerm());
+            assertEquals(starts.getInt(i), term.getRange().getMinimumInteger());
+            assertEquals(ends.getInt(i), term.getRange().getMaximumInteger());
+            final int start = (starts.getInt(i) - 100) / 2;
+            final int end = (ends.getInt(i) - 100) / 2;
+            assertEquals(term.getText(), text.substring(start, end + 1));
+        }
+        // "Hello" starts after the two leading spaces
+        assertEquals(104, starts.getInt(0));
+        assertEquals(112, ends.getInt(0));
+        docmanager2.close();
+    }
+
     public void testExtractTermsInternalChar() throws Exception {
         final String basename = "index/extract-internal-test";
         final BuildDocumentIndexFromTextDocuments indexBuilder = new BuildDocumentIndexFromTextDocuments(basename);
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.database;
+
+import it.unimi.dsi.mg4j.search.DocumentIterator;
+import junit.framework.TestCase;
+import textractor.database.QueryResultCache.Operator;
+import textractor.tools.BuildDocumentIndexFromTextDocuments;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Validates the {@link textractor.database.QueryResultCache}.
+ */
+public final class TestQueryResultCache extends TestCase {
+    /**
+     * Results are found by operator and terms, and the cache is emptied
+     * when another index is used.
+     */
+    public void testQueries() {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 4);
+        final long generation = cache.validate(new Object());
+        assertNull(cache.getDocuments(generation, Operator.AND, new int[] {1, 2}));
+        cache.putDocuments(generation, Operator.AND, new int[] {1, 2}, new int[] {3, 4});
+
+        assertTrue(Arrays.equals(new int[] {3, 4},
+                cache.getDocuments(generation, Operator.AND, new int[] {1, 2})));
+        assertNull(cache.getDocuments(generation, Operator.OR, new int[] {1, 2}));
+        assertNull(cache.getDocuments(generation, Operator.AND, new int[] {2, 1}));
+        assertNull(cache.getPhrase(generation, new int[] {1, 2}));
+        assertEquals(1, cache.getNumberOfEntries());
+        assertEquals(8 + 8 + QueryResultCache.ENTRY_OVERHEAD, cache.getBytes());
+
+        // phrases that no document contains are remembered
+        cache.putPhrase(generation, new int[] {1, 2}, QueryResultCache.NO_PHRASE_MATCH);
+        assertSame(QueryResultCache.NO_PHRASE_MATCH,
+                cache.getPhrase(generation, new int[] {1, 2}));
+        assertTrue(Arrays.equals(new int[] {3, 4},
+                cache.getDocuments(generation, Operator.AND, new int[] {1, 2})));
+        assertNull(cache.getPhraseIntervals(generation, new int[] {1, 2}));
+
+        // phrases are not lists of documents
+        try {
+            cache.getDocuments(generation, Operator.PHRASE, new int[] {1, 2});
+            fail("Phrases should not be read as documents");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // another index makes every result stale
+        final long next = cache.validate(new Object());
+        assertTrue(next != generation);
+        assertNull(cache.getDocuments(next, Operator.AND, new int[] {1, 2}));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.getNumberOfEntries());
+        assertEquals(0, cache.getBytes());
+    }
+
+    /**
+     * A result computed from an index is not kept once the cache was
+     * emptied for another index while the query ran.
+     */
+    public void testSwitchWhileRunning() {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 4);
+        final Object first = new Object();
+        final long generation = cache.validate(first);
+        assertEquals(generation, cache.validate(first));
+
+        // another thread switches to a new index before the result is added
+        final long next = cache.validate(new Object());
+        cache.putDocuments(generation, Operator.TERM, new int[] {1}, new int[] {7});
+        assertEquals(0, cache.getNumberOfEntries());
+        assertNull(cache.getDocuments(next, Operator.TERM, new int[] {1}));
+
+        // a lookup with a superseded generation finds nothing
+        cache.putDocuments(next, Operator.TERM, new int[] {1}, new int[] {8});
+        assertNull(cache.getDocuments(generation, Operator.TERM, new int[] {1}));
+        assertNotNull(cache.getDocuments(next, Operator.TERM, new int[] {1}));
+
+        // results of queries started before the cache was cleared are dropped
+        cache.clear();
+        assertNull(cache.getDocuments(next, Operator.TERM, new int[] {1}));
+        cache.putDocuments(next, Operator.TERM, new int[] {1}, new int[] {9});
+        assertEquals(0, cache.getNumberOfEntries());
+    }
+
+    /**
+     * Queries return the same results with and without the cache, and
+     * repeated queries are answered from the cache.
+     * @throws Exception if the index cannot be built
+     */
+    public void testDocumentIndexManager() throws Exception {
+        final String basename = "index/query-result-cache";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        indexBuilder.index(new String[] {
+                "the protein binds to the receptor",
+                "the receptor is expressed in the liver",
+                "the kinase binds the protein",
+                "a liver kinase"
+        });
+
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final List<String> and = Arrays.asList("protein", "binds");
+        final List<String> or = Arrays.asList("liver", "kinase", "nothing");
+        final String[] phrase = {"the", "receptor"};
+        final int[] term = docmanager.query("receptor");
+        final int[] documentsAnd = docmanager.queryAnd(and);
+        final int[] documentsOr = docmanager.queryOr(or);
+        final TermDocumentPositions positions = docmanager.queryAndExactOrder(phrase);
+
+        final QueryResultCache cache = new QueryResultCache();
+        docmanager.setQueryResultCache(cache);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Arrays.equals(term, docmanager.query("receptor")));
+            assertTrue(Arrays.equals(documentsAnd,
+                    docmanager.queryAnd(Arrays.asList("binds", "protein", "binds"))));
+            assertTrue(Arrays.equals(documentsOr, docmanager.queryOr(or)));
+            final TermDocumentPositions cached = docmanager.queryAndExactOrder(phrase);
+            assertTrue(Arrays.equals(positions.getDocuments(), cached.getDocuments()));
+            assertTrue(Arrays.equals(positions.getPositions(0), cached.getPositions(0)));
+            assertNull(docmanager.queryAndExactOrder(new String[] {"liver", "the"}));
+        }
+        assertEquals(5, cache.getMisses());
+        assertEquals(10, cache.getHits());
+        assertEquals(5, cache.getNumberOfEntries());
+
+        // callers get their own copy of the results
+        docmanager.query("receptor")[0] = -1;
+        assertTrue(Arrays.equals(term, docmanager.query("receptor")));
+
+        // phrases with intervals are replayed from the cache
+        for (int i = 0; i < 2; i++) {
+            final DocumentIterator documents =
+                    docmanager.queryAndExactOrderMg4jNative(phrase);
+            assertTrue(documents.hasNext());
+            assertEquals(0, documents.nextDocument());
+            assertTrue(documents.hasNext());
+            assertEquals(1, documents.nextDocument());
+            assertEquals(-1, documents.nextDocument());
+            documents.dispose();
+        }
+
+        docmanager.close();
+        assertEquals(0, cache.getNumberOfEntries());
+    }
+}
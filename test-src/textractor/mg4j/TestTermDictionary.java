@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j;
+
+import it.unimi.dsi.mg4j.util.MutableString;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import textractor.database.DocumentIndexManager;
+import textractor.tools.BuildDocumentIndexFromTextDocuments;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates the {@link textractor.mg4j.TermDictionary}.
+ */
+public final class TestTermDictionary extends TestCase {
+    /** Basename of the terms written by the tests. */
+    private static final String BASENAME = "index/term-dictionary-test";
+
+    /**
+     * Every term of a large list is found at its index, and terms that are
+     * not in the list are not found.
+     * @throws IOException if the dictionary cannot be built
+     */
+    public void testLookup() throws IOException {
+        final List<String> terms = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            terms.add("term" + Integer.toString(i * 7919, 36));
+        }
+        terms.add("\u03b1-helix");
+        Collections.sort(terms);
+        writeTerms(terms);
+        new File(TermDictionary.getFilename(BASENAME)).delete();
+
+        assertFalse(TermDictionary.isCurrent(BASENAME));
+        TermDictionary.build(BASENAME);
+        assertTrue(TermDictionary.isCurrent(BASENAME));
+
+        final TermDictionary dictionary = new TermDictionary(BASENAME);
+        assertEquals(terms.size(), dictionary.size());
+        final MutableString term = new MutableString();
+        for (int i = 0; i < terms.size(); i++) {
+            assertEquals(i, dictionary.getNumber(terms.get(i)));
+            assertEquals(i, dictionary.getNumber(new MutableString(terms.get(i))));
+            assertEquals(terms.get(i), dictionary.getTerm(i).toString());
+            assertEquals(terms.get(i), dictionary.getTerm(i, term).toString());
+        }
+        assertEquals(DocumentIndexManager.NO_SUCH_TERM,
+                dictionary.getNumber("protein"));
+        assertEquals(DocumentIndexManager.NO_SUCH_TERM,
+                dictionary.getNumber(""));
+        assertNull(dictionary.getTerm(-1));
+        assertNull(dictionary.getTerm(terms.size()));
+    }
+
+    /**
+     * A dictionary is no longer current once the terms change, and it is
+     * opened again when deserialized.
+     * @throws Exception if the dictionary cannot be built or serialized
+     */
+    public void testStaleAndSerialized() throws Exception {
+        final List<String> terms = new ArrayList<String>();
+        terms.add("alpha");
+        terms.add("beta");
+        writeTerms(terms);
+        TermDictionary.build(BASENAME);
+        assertTrue(TermDictionary.isCurrent(BASENAME));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(new TermDictionary(BASENAME));
+        output.close();
+        final TermDictionary copy = (TermDictionary) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(1, copy.getNumber("beta"));
+        assertEquals("alpha", copy.getTerm(0).toString());
+
+        terms.add("gamma");
+        writeTerms(terms);
+        assertFalse(TermDictionary.isCurrent(BASENAME));
+    }
+
+    /**
+     * A dictionary is no longer current when the terms file is written
+     * again.  When a term in the middle of a large terms file changes but
+     * the length and the modification time of the file stay the same, only
+     * the checksum tells that the dictionary is stale.
+     * @throws IOException if the dictionary cannot be built
+     */
+    public void testStaleMiddle() throws IOException {
+        final List<String> terms = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            terms.add(String.format("term%06d", i));
+        }
+        writeTerms(terms);
+        final File termsFile = new File(BASENAME + ".terms");
+        final long lastModified = termsFile.lastModified() - 60000;
+        assertTrue(termsFile.setLastModified(lastModified));
+        TermDictionary.build(BASENAME);
+        assertTrue(TermDictionary.isCurrent(BASENAME));
+        assertTrue(TermDictionary.isCurrent(BASENAME, true));
+
+        terms.set(5000, "term-05000");
+        writeTerms(terms);
+        assertFalse(TermDictionary.isCurrent(BASENAME));
+
+        assertTrue(termsFile.setLastModified(lastModified));
+        assertTrue(TermDictionary.isCurrent(BASENAME));
+        assertFalse(TermDictionary.isCurrent(BASENAME, true));
+    }
+
+    /**
+     * The document index manager uses the dictionary in place of the term
+     * map of the index.
+     * @throws Exception if the index cannot be built
+     */
+    public void testDocumentIndexManager() throws Exception {
+        final String basename = "index/term-dictionary-index";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        indexBuilder.index(new String[] {
+                "The protein binds to the receptor",
+                "The receptor is expressed in the liver"
+        });
+
+        DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final int receptor = docmanager.findTermIndex("receptor");
+        assertTrue(receptor != DocumentIndexManager.NO_SUCH_TERM);
+        docmanager.installTermDictionary();
+        assertTrue(docmanager.getIndexDetails("text").getTermMap()
+                instanceof TermDictionary);
+        assertEquals(receptor, docmanager.findTermIndex("receptor"));
+        assertEquals("receptor",
+                docmanager.termAsCharSequence(receptor).toString());
+        assertEquals(DocumentIndexManager.NO_SUCH_TERM,
+                docmanager.findTermIndex("kinase"));
+        docmanager.close();
+
+        // the dictionary is found when the index is opened again
+        docmanager = new DocumentIndexManager(basename);
+        assertTrue(docmanager.getIndexDetails("text").getTermMap()
+                instanceof TermDictionary);
+        assertEquals(receptor, docmanager.findTermIndex("receptor"));
+        docmanager.close();
+    }
+
+    /**
+     * Write a terms file.
+     * @param terms The terms, in order
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeTerms(final List<String> terms) throws IOException {
+        FileUtils.writeLines(new File(BASENAME + ".terms"), "UTF-8", terms);
+    }
+}
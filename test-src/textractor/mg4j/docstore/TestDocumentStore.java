@@ -20,21 +20,33 @@ package textractor.mg4j.docstore;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.mg4j.document.Document;
+import it.unimi.dsi.mg4j.document.DocumentIterator;
 import it.unimi.dsi.mg4j.document.DocumentSequence;
 import it.unimi.dsi.mg4j.document.PropertyBasedDocumentFactory;
+import it.unimi.dsi.mg4j.io.OutputBitStream;
 import it.unimi.dsi.mg4j.util.MutableString;
 import it.unimi.dsi.mg4j.util.Properties;
 import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.math.IntRange;
 import textractor.database.DocumentIndexManager;
 import textractor.mg4j.HashTermMap;
 import textractor.mg4j.TermFrequency;
 import textractor.mg4j.document.DocStoreDocumentCollection;
+import textractor.mg4j.document.DocumentCache;
+import textractor.mg4j.io.MappedFile;
 import textractor.mg4j.io.ProteinWordSplitterReader;
 import textractor.tools.BuildDocumentIndexFromTextDocuments;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests the DocumentStore.
@@ -103,17 +115,30 @@ public final class TestDocumentStore extends TestCase {
             docTokens[i] = docmanager.extractTerms(documents[i]);
         }
 
-        boolean optimize = false;
-        final int bitsWritten = writeToStore(docmanager, optimize, docTokens);
-
-        assertTrue(bitsWritten > 0);
-        optimize = true;
-        final int bitsWrittenOptimized =
-                writeToStore(docmanager, optimize, docTokens);
-
-        assertTrue(bitsWrittenOptimized > 0);
-        assertTrue("Optimizing must reduce the size of the compressed document representation.", bitsWrittenOptimized < bitsWritten);
+        for (final DocumentStoreFormat format : DocumentStoreFormat.values()) {
+            boolean optimize = false;
+            final int bitsWritten =
+                    writeToStore(docmanager, optimize, docTokens, format);
+
+            assertTrue(bitsWritten > 0);
+            optimize = true;
+            final int bitsWrittenOptimized =
+                    writeToStore(docmanager, optimize, docTokens, format);
+
+            assertTrue(bitsWrittenOptimized > 0);
+            if (format == DocumentStoreFormat.GAMMA) {
+                assertTrue("Optimizing must reduce the size of the compressed document representation.", bitsWrittenOptimized < bitsWritten);
+            } else {
+                // all the terms of this small index fit in one byte
+                assertTrue(bitsWrittenOptimized <= bitsWritten);
+            }
+            assertDocuments(docmanager, documents);
+        }
+        docmanager.close();
+    }
 
+    private void assertDocuments(final DocumentIndexManager docmanager,
+            final String[] documents) throws IOException {
         final DocumentStoreReader reader = new DocumentStoreReader(docmanager);
         final MutableString result = new MutableString();
         final MutableString splittedText = new MutableString();
@@ -143,7 +168,60 @@ public final class TestDocumentStore extends TestCase {
                     extractedTerms.length, j);
         }
         reader.close();
-        docmanager.close();
+    }
+
+    /**
+     * Stores written before the document data had a header must still be
+     * read as gamma coded.
+     */
+    public void testFormatWithoutHeader() throws Exception {
+        final File file = File.createTempFile("docstore", ".docs");
+        try {
+            final OutputBitStream output = new OutputBitStream(file);
+            output.writeGamma(0);
+            output.writeGamma(17);
+            output.writeGamma(3);
+            output.writeGamma(10);
+            output.close();
+            assertEquals(DocumentStoreFormat.GAMMA,
+                    DocumentStoreFormat.read(new MappedFile(file.getPath())));
+
+            for (final DocumentStoreFormat format : DocumentStoreFormat.values()) {
+                final OutputBitStream headerOutput = new OutputBitStream(file);
+                format.writeHeader(headerOutput);
+                headerOutput.close();
+                assertEquals(format,
+                        DocumentStoreFormat.read(new MappedFile(file.getPath())));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testGroupVarint() throws IOException {
+        final int[][] arrays = {
+                {},
+                {0},
+                {1, 255, 256, 65535},
+                {65536, 16777215, 16777216, Integer.MAX_VALUE, -1, 7},
+        };
+        final byte[] data = new byte[1024];
+        final OutputBitStream output = new OutputBitStream(data);
+        final CompressionAdaptor adaptor =
+                new CompressionAdaptorGroupVarint(output);
+        final int[] starts = new int[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            // single values must not break the alignment of arrays
+            adaptor.write(300);
+            starts[i] = (int) (output.writtenBits() / Byte.SIZE);
+            final int bits = adaptor.write(arrays[i]);
+            assertEquals(0, bits % Byte.SIZE);
+        }
+        output.flush();
+        for (int i = 0; i < arrays.length; i++) {
+            assertTrue(Arrays.equals(arrays[i],
+                    CompressionAdaptorGroupVarint.decode(data, starts[i])));
+        }
     }
 
     public void testDocumentPadding() throws Exception {
@@ -242,6 +320,60 @@ public final class TestDocumentStore extends TestCase {
     }
 
 
+    /**
+     * Several documents (sentences) share the PMID of their article.
+     */
+    public void testPMIDIndex() throws Exception {
+        final String basename = "index/docstore-test2";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        final String[] documents = {
+                "0", "1", "2", "3", "4", "5", "6", "7", "8",
+        };
+        indexBuilder.index(documents);
+
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final DocumentStoreWriter writer = new DocumentStoreWriter(docmanager);
+        final int[] tokens = {1, 2};
+        final long[] pmids = {
+                300L, 300L, 300L, 0L, 1212L, 300L, 1212L, 42L, 42L
+        };
+        for (int i = 0; i < documents.length; i++) {
+            writer.appendDocument(i, tokens);
+            // document 3 has no pmid
+            if (pmids[i] != 0L) {
+                writer.addDocumentPMID(i, pmids[i]);
+            }
+        }
+        writer.writePMIDs();
+        writer.close();
+
+        DocumentStoreReader reader = new DocumentStoreReader(docmanager);
+        // the index is mapped when the reader opens
+        assertPMIDLookups(reader);
+        reader.close();
+
+        // stores without an index fall back to building it in memory
+        assertTrue(new File(DocumentStoreWriter.getPMIDIndexFilename(
+                docmanager.getIndexDetails("text").getBasename())).delete());
+        reader = new DocumentStoreReader(docmanager);
+        reader.readPMIDs();
+        assertPMIDLookups(reader);
+        reader.close();
+        docmanager.close();
+    }
+
+    private void assertPMIDLookups(final DocumentStoreReader reader) {
+        assertEquals(0, reader.getDocumentNumber(300L));
+        assertEquals(4, reader.getDocumentNumber(1212L));
+        assertEquals(7, reader.getDocumentNumber(42L));
+        assertEquals(DocumentStoreReader.DOCUMENT_NOT_FOUND, reader.getDocumentNumber(43L));
+        assertTrue(Arrays.equals(new int[] {0, 1, 2, 5}, reader.getDocumentNumbers(300L)));
+        assertTrue(Arrays.equals(new int[] {4, 6}, reader.getDocumentNumbers(1212L)));
+        assertTrue(Arrays.equals(new int[] {7, 8}, reader.getDocumentNumbers(42L)));
+        assertEquals(0, reader.getDocumentNumbers(43L).length);
+    }
+
     public void testWriteUnknownTerms() throws Exception {
         testUnknownTerms(/* optimization */ true);
         testUnknownTerms(/* optimization */ false);
@@ -293,6 +425,295 @@ public final class TestDocumentStore extends TestCase {
         docmanager.close();
     }
 
+    /**
+     * A cursor reads the same documents as random access, in order, in
+     * batches and when skipping.
+     */
+    public void testCursor() throws Exception {
+        final String basename = "index/docstore-test4";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        final String[] documents = new String[200];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = "cursor " + i + " reads word" + (i % 11)
+                    + (i % 5 == 0 ? "" : " and word" + (i % 17));
+        }
+        indexBuilder.index(documents);
+
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        for (final DocumentStoreFormat format : DocumentStoreFormat.values()) {
+            final DocumentStoreWriter writer = new DocumentStoreWriter(
+                    docmanager.getIndexDetails("text"), true, false, format);
+            writer.optimizeTermOrdering();
+            for (int i = 0; i < documents.length; ++i) {
+                writer.appendDocument(i, docmanager.extractTerms(documents[i]));
+            }
+            writer.writePMIDs();
+            writer.close();
+
+            final DocumentStoreReader reader = new DocumentStoreReader(docmanager);
+            final int[][] expectedTerms = new int[documents.length][];
+            for (int i = 0; i < documents.length; i++) {
+                final IntList terms = new IntArrayList();
+                reader.document(i, terms);
+                expectedTerms[i] = terms.toIntArray();
+            }
+
+            final IntArrayList terms = new IntArrayList();
+            for (int i = 0; i < documents.length; i++) {
+                assertEquals(expectedTerms[i].length,
+                        reader.documentTerms(i, terms));
+                assertTrue(Arrays.equals(expectedTerms[i], terms.toIntArray()));
+            }
+
+            // every document in order
+            final DocumentStoreReader.Cursor cursor = reader.cursor();
+            final MutableString text = new MutableString();
+            for (int i = 0; i < documents.length; i++) {
+                assertTrue(cursor.hasNext());
+                terms.clear();
+                assertEquals(i, cursor.next(terms));
+                assertTrue(format + " document " + i,
+                        Arrays.equals(expectedTerms[i], terms.toIntArray()));
+            }
+            assertFalse(cursor.hasNext());
+
+            final DocumentStoreReader.Cursor textCursor = reader.cursor(150);
+            textCursor.skipTo(151);
+            assertEquals(151, textCursor.next(text));
+            assertEquals(reader.document(151).toString(), text.toString());
+
+            // a subset of the documents
+            final int[] sortedIds = {0, 3, 4, 50, 51, 120, 199};
+            final int[] starts = new int[sortedIds.length + 1];
+            reader.documents(sortedIds, terms, starts);
+            for (int i = 0; i < sortedIds.length; i++) {
+                final int[] documentTerms = Arrays.copyOfRange(
+                        terms.elements(), starts[i], starts[i + 1]);
+                assertTrue(format + " document " + sortedIds[i],
+                        Arrays.equals(expectedTerms[sortedIds[i]], documentTerms));
+            }
+            assertEquals(terms.size(), starts[sortedIds.length]);
+
+            // counts do not depend on the order of the documents
+            final int[] unsortedIds = {120, 4, 50, 4, 0};
+            final int[] expectedFrequencies = new int[docmanager.getNumberOfTerms() + 1];
+            long expectedSum = 0;
+            for (final int document : unsortedIds) {
+                expectedSum += reader.frequencies(document, expectedFrequencies, null);
+            }
+            final int[] frequencies = new int[expectedFrequencies.length];
+            assertEquals(expectedSum,
+                    reader.frequencies(unsortedIds, frequencies, null));
+            assertTrue(Arrays.equals(expectedFrequencies, frequencies));
+
+            try {
+                reader.documents(new int[] {5, 2}, terms, new int[3]);
+                fail("Unsorted documents must not be accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            reader.close();
+
+            // the collection iterates with a cursor
+            final DocStoreDocumentCollection uncached =
+                    new DocStoreDocumentCollection(docmanager);
+            assertNull(uncached.getDocumentCache());
+            uncached.close();
+            docmanager.getTextractorProperties().setProperty(
+                    DocumentCache.MAXIMUM_BYTES_PROPERTY, 1024 * 1024);
+            final DocStoreDocumentCollection collection =
+                    new DocStoreDocumentCollection(docmanager);
+            final DocumentIterator iterator = collection.iterator();
+            int count = 0;
+            Document document;
+            while ((document = iterator.nextDocument()) != null) {
+                assertEquals(Integer.toString(count), document.title().toString());
+                document.close();
+                count++;
+            }
+            assertEquals(documents.length, count);
+            iterator.close();
+
+            // iteration bypasses the cache, retrieval fills it
+            final DocumentCache cache = collection.getDocumentCache();
+            assertEquals(0, cache.getNumberOfEntries());
+            final MutableString expected = new MutableString();
+            collection.getDocumentStoreReader().document(5, expected);
+            assertEquals(expected.toString(),
+                    IOUtils.toString(collection.stream(5), "UTF-8"));
+            assertEquals(1, cache.getMisses());
+            final DocStoreDocumentCollection copy =
+                    (DocStoreDocumentCollection) collection.copy();
+            assertSame(cache, copy.getDocumentCache());
+            assertEquals(expected.toString(),
+                    IOUtils.toString(copy.stream(5), "UTF-8"));
+            assertEquals(1, cache.getHits());
+            copy.close();
+            collection.close();
+            docmanager.getTextractorProperties().clearProperty(
+                    DocumentCache.MAXIMUM_BYTES_PROPERTY);
+        }
+        docmanager.close();
+    }
+
+    /**
+     * Batches of documents too far apart to share a buffer are read one
+     * document at a time and decode the same as random access.
+     */
+    public void testSparseBatch() throws Exception {
+        final String basename = "index/docstore-test5";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        // enough text that a buffer only holds a few documents
+        final String[] documents = new String[60];
+        for (int i = 0; i < documents.length; i++) {
+            final StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 3000; w++) {
+                text.append("word").append((i * 31 + w * 7) % 200).append(' ');
+            }
+            documents[i] = text.toString();
+        }
+        indexBuilder.index(documents);
+
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        for (final DocumentStoreFormat format : DocumentStoreFormat.values()) {
+            final DocumentStoreWriter writer = new DocumentStoreWriter(
+                    docmanager.getIndexDetails("text"), true, false, format);
+            for (int i = 0; i < documents.length; ++i) {
+                writer.appendDocument(i, docmanager.extractTerms(documents[i]));
+            }
+            writer.close();
+
+            final DocumentStoreReader reader = new DocumentStoreReader(docmanager);
+            final int[] sortedIds = {0, 1, 30, 31, 59};
+            final IntArrayList terms = new IntArrayList();
+            final int[] starts = new int[sortedIds.length + 1];
+            reader.documents(sortedIds, terms, starts);
+            for (int i = 0; i < sortedIds.length; i++) {
+                final IntList expected = new IntArrayList();
+                reader.document(sortedIds[i], expected);
+                final int[] documentTerms = Arrays.copyOfRange(
+                        terms.elements(), starts[i], starts[i + 1]);
+                assertTrue(format + " document " + sortedIds[i],
+                        Arrays.equals(expected.toIntArray(), documentTerms));
+            }
+
+            final int[] unsortedIds = {59, 30, 0, 30};
+            final int[] expectedFrequencies = new int[docmanager.getNumberOfTerms() + 1];
+            long expectedSum = 0;
+            for (final int document : unsortedIds) {
+                expectedSum += reader.frequencies(document, expectedFrequencies, null);
+            }
+            final int[] frequencies = new int[expectedFrequencies.length];
+            assertEquals(expectedSum,
+                    reader.frequencies(unsortedIds, frequencies, null));
+            assertTrue(Arrays.equals(expectedFrequencies, frequencies));
+            reader.close();
+        }
+        docmanager.close();
+    }
+
+    /**
+     * Many threads share a single reader.
+     */
+    public void testConcurrentRetrieval() throws Exception {
+        final String basename = "index/docstore-test3";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        // more documents than the offsets keep in memory
+        final String[] documents = new String[300];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = "document " + i + " mentions word" + (i % 7)
+                    + " and word" + (i % 13) + " but not word" + (i % 3);
+        }
+        indexBuilder.index(documents);
+
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final int[][] docTokens = new int[documents.length][];
+        for (int i = 0; i < docTokens.length; ++i) {
+            docTokens[i] = docmanager.extractTerms(documents[i]);
+        }
+        final DocumentStoreWriter writer = new DocumentStoreWriter(docmanager);
+        writer.optimizeTermOrdering();
+        for (int i = 0; i < docTokens.length; ++i) {
+            writer.appendDocument(i, docTokens[i]);
+            final List<IntRange> ranges = new ArrayList<IntRange>();
+            for (int j = 0; j < docTokens[i].length; j++) {
+                ranges.add(new IntRange(i + 10 * j, i + 10 * j + j));
+            }
+            writer.appendPositions(ranges);
+        }
+        writer.close();
+
+        final DocumentStoreReader reader = new DocumentStoreReader(docmanager);
+        assertTrue(reader.isPositionsAvailable());
+        final IntArrayList bounds = new IntArrayList();
+        for (int i = 0; i < documents.length; i++) {
+            final List<IntRange> ranges = reader.positions(i);
+            assertEquals(ranges.size(), reader.positions(i, bounds));
+            for (int j = 0; j < ranges.size(); j++) {
+                assertEquals(i + 10 * j, bounds.getInt(2 * j));
+                assertEquals(ranges.get(j).getMaximumInteger(),
+                        bounds.getInt(2 * j + 1));
+            }
+        }
+        // what a single thread reads is the reference
+        final String[] expectedText = new String[documents.length];
+        final int[][] expectedTerms = new int[documents.length][];
+        for (int i = 0; i < documents.length; i++) {
+            expectedText[i] = reader.document(i).toString();
+            final IntList terms = new IntArrayList();
+            reader.document(i, terms);
+            expectedTerms[i] = terms.toIntArray();
+        }
+
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random random = new Random(seed);
+                    final IntList terms = new IntArrayList();
+                    try {
+                        for (int n = 0; n < 2000; n++) {
+                            final int i = random.nextInt(documents.length);
+                            if (!expectedText[i].equals(reader.document(i).toString())) {
+                                errors.incrementAndGet();
+                            }
+                            terms.clear();
+                            reader.document(i, terms);
+                            if (!Arrays.equals(expectedTerms[i], terms.toIntArray())) {
+                                errors.incrementAndGet();
+                            }
+                            final List<IntRange> ranges = reader.positions(i);
+                            for (int j = 0; j < ranges.size(); j++) {
+                                if (ranges.get(j).getMinimumInteger() != i + 10 * j
+                                        || ranges.get(j).getMaximumInteger() != i + 11 * j) {
+                                    errors.incrementAndGet();
+                                }
+                            }
+                            if (ranges.size() != expectedTerms[i].length) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        reader.close();
+        docmanager.close();
+    }
+
     private String createDocumentIndex() throws Exception {
         final String basename = "index/docstore-test";
         final BuildDocumentIndexFromTextDocuments indexBuilder =
@@ -309,10 +730,12 @@ public final class TestDocumentStore extends TestCase {
     }
 
     private int writeToStore(final DocumentIndexManager docmanager,
-                             final boolean optimize, final int[][] docTokens)
+                             final boolean optimize, final int[][] docTokens,
+                             final DocumentStoreFormat format)
             throws IOException {
         // now write documents to the store:
-        final DocumentStoreWriter writer = new DocumentStoreWriter(docmanager);
+        final DocumentStoreWriter writer = new DocumentStoreWriter(
+                docmanager.getIndexDetails("text"), true, true, format);
 
         if (optimize) {
             writer.optimizeTermOrdering();
@@ -320,7 +743,8 @@ public final class TestDocumentStore extends TestCase {
         int i = 0;
         int bitsWritten = 0;
         for (final int [] doc : docTokens) {
-            bitsWritten += writer.appendDocument(i++, doc);
+            // the writer recodes the tokens in place
+            bitsWritten += writer.appendDocument(i++, doc.clone());
         }
         writer.close();
         return bitsWritten;
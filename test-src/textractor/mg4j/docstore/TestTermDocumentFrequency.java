@@ -18,11 +18,13 @@
 
 package textractor.mg4j.docstore;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import junit.framework.TestCase;
 import org.apache.commons.configuration.ConfigurationException;
 import textractor.database.TextractorDatabaseException;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * @author Fabien Campagne
@@ -118,6 +120,59 @@ public class TestTermDocumentFrequency extends TestCase {
         assertEquals(2 + 2, frequencies[5]);
     }
 
+    /**
+     * Reading the terms of a document into lists gives the same frequencies
+     * as reading them into storage for every term.
+     */
+    public void testReadSparse() throws IOException {
+        final String basename = "index/term-doc-freqs-test";
+        final int maximumTermIndex = 9;
+        final TermDocumentFrequencyWriter writer = new TermDocumentFrequencyWriter(maximumTermIndex, basename);
+        final int[][] documents = {
+                {1, 2, 5, 1, 3, 1, 4, 2, 2, 5},
+                {3, 3, 3, 3},
+                {0},
+                {9, 0, 8, 7, 9, 6, 0},
+                {1, 2, 5, 1, 1, 1, 2, 2, 5}
+        };
+        for (final int[] tokens : documents) {
+            writer.appendDocument(0, tokens);
+        }
+        writer.close();
+
+        final TermDocumentFrequencyReader reader = new TermDocumentFrequencyReader(basename, documents.length,
+                maximumTermIndex, 1);
+        final IntArrayList terms = new IntArrayList();
+        final IntArrayList frequencies = new IntArrayList();
+        // read out of order so that the stream is repositioned
+        for (final int document : new int[] {3, 0, 4, 2, 1, 3}) {
+            final int[] expected = reader.createFrequencyStorage();
+            final int[] numDocForTerm = reader.createFrequencyStorage();
+            final int expectedSum = reader.read(document, expected, numDocForTerm);
+
+            terms.clear();
+            frequencies.clear();
+            final int sum = reader.read(document, terms, frequencies);
+            assertEquals(expectedSum, sum);
+            assertEquals(documents[document].length, sum);
+            assertEquals(terms.size(), frequencies.size());
+
+            final int[] actual = reader.createFrequencyStorage();
+            final int[] actualNumDocForTerm = reader.createFrequencyStorage();
+            for (int i = 0; i < terms.size(); i++) {
+                if (i > 0) {
+                    assertTrue(terms.getInt(i - 1) < terms.getInt(i));
+                }
+                assertTrue(frequencies.getInt(i) > 0);
+                actual[terms.getInt(i)] += frequencies.getInt(i);
+                ++actualNumDocForTerm[terms.getInt(i)];
+            }
+            assertTrue(Arrays.equals(expected, actual));
+            assertTrue(Arrays.equals(numDocForTerm, actualNumDocForTerm));
+        }
+        reader.close();
+    }
+
     public void testSubsetTermsFrequencyStorage() {
         final FrequencyStorageImpl frequencies = new FrequencyStorageImpl(10);
         final TermSubsetTransform subsetTransform = new TermSubsetTransform(frequencies.getTransform()) {
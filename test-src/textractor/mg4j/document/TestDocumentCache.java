@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.document;
+
+import it.unimi.dsi.mg4j.util.Properties;
+import junit.framework.TestCase;
+
+/**
+ * Validates the {@link textractor.mg4j.document.DocumentCache}.
+ */
+public final class TestDocumentCache extends TestCase {
+    /**
+     * Documents are found by index and number, and their text is counted
+     * in the size of the cache.
+     */
+    public void testDocuments() {
+        final DocumentCache cache = new DocumentCache(1024 * 1024, 4);
+        cache.put("text", 1, "one".getBytes());
+        cache.put("otmi", 1, "other".getBytes());
+
+        assertEquals("one", new String(cache.get("text", 1)));
+        assertEquals("other", new String(cache.get("otmi", 1)));
+        assertNull(cache.get("text", 2));
+        assertEquals(2, cache.getNumberOfEntries());
+        assertEquals(8 + 2 * DocumentCache.ENTRY_OVERHEAD, cache.getBytes());
+    }
+
+    /**
+     * The cache is only created when the properties of an index size it.
+     */
+    public void testNewInstance() {
+        assertNull(DocumentCache.newInstance(null));
+        final Properties properties = new Properties();
+        assertNull(DocumentCache.newInstance(properties));
+        properties.setProperty(DocumentCache.MAXIMUM_BYTES_PROPERTY, 0);
+        assertNull(DocumentCache.newInstance(properties));
+
+        properties.setProperty(DocumentCache.MAXIMUM_BYTES_PROPERTY, 1024);
+        properties.setProperty(DocumentCache.SEGMENTS_PROPERTY, 1);
+        final DocumentCache cache = DocumentCache.newInstance(properties);
+        assertNotNull(cache);
+        cache.put("text", 0, new byte[1024 - DocumentCache.ENTRY_OVERHEAD]);
+        assertNotNull(cache.get("text", 0));
+        cache.put("text", 1, new byte[1]);
+        assertEquals(1, cache.getEvictions());
+    }
+}
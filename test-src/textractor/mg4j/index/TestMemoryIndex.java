@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.mg4j.index;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import junit.framework.TestCase;
+import textractor.database.DocumentIndexManager;
+import textractor.database.TermDocumentPositions;
+import textractor.mg4j.io.ProteinWordSplitterReader;
+import textractor.tools.BuildDocumentIndexFromTextDocuments;
+
+import java.util.Arrays;
+
+/**
+ * Validates the {@link textractor.mg4j.index.MemoryIndex}.
+ */
+public final class TestMemoryIndex extends TestCase {
+    private static final String[] DOCUMENTS = {
+            "The protein (p53) binds to the receptor ",
+            "The receptor is expressed in the liver ",
+            "",
+            "the p53 receptor binds the p53 receptor "
+    };
+
+    /**
+     * Terms, documents and positions are the same as those of an index
+     * built on disk from the same documents.
+     * @throws Exception if the index cannot be built
+     */
+    public void testSameAsDiskIndex() throws Exception {
+        final String basename = "index/memory-index-test";
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        indexBuilder.index(DOCUMENTS);
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+
+        final MemoryIndex index = new MemoryIndex(
+                new ProteinWordSplitterReader(true),
+                LowercaseTermProcessor.getInstance(), Arrays.asList(DOCUMENTS));
+        assertEquals(DOCUMENTS.length, index.getNumberOfDocuments());
+        assertEquals(docmanager.getIndex("text").numberOfTerms, index.size());
+
+        final TermIterator terms = docmanager.getTerms();
+        while (terms.hasNext()) {
+            final String term = terms.next();
+            final int number = index.getNumber(term);
+            assertTrue(term, number != DocumentIndexManager.NO_SUCH_TERM);
+            assertEquals(term, index.getTerm(number).toString());
+            assertTrue(term, Arrays.equals(docmanager.query(term),
+                    index.query(number)));
+            assertEquals(docmanager.query(term).length, index.frequency(number));
+        }
+        terms.close();
+        assertEquals(DocumentIndexManager.NO_SUCH_TERM, index.getNumber("kinase"));
+
+        final String[][] phrases = {
+                {"the", "receptor"}, {"p53", "receptor"}, {"receptor"},
+                {"(", "p53", ")"}, {"liver", "the"}, {"the", "kinase"}
+        };
+        for (final String[] phrase : phrases) {
+            final TermDocumentPositions expected =
+                    docmanager.queryAndExactOrder(phrase);
+            final TermDocumentPositions actual = index.queryAndExactOrder(phrase);
+            if (expected == null) {
+                assertNull(actual);
+                continue;
+            }
+            assertTrue(Arrays.equals(expected.getDocuments(), actual.getDocuments()));
+            for (int i = 0; i < expected.getDocuments().length; i++) {
+                assertTrue(Arrays.equals(expected.getPositions(i),
+                        actual.getPositions(i)));
+            }
+        }
+        docmanager.close();
+    }
+
+    /**
+     * The terms of each document are kept in order.
+     * @throws Exception if the documents cannot be split
+     */
+    public void testDocumentTerms() throws Exception {
+        final MemoryIndex index = new MemoryIndex(
+                new ProteinWordSplitterReader(true),
+                LowercaseTermProcessor.getInstance(), Arrays.asList(DOCUMENTS));
+        final IntArrayList terms = new IntArrayList();
+        assertEquals(0, index.documentTerms(2, terms));
+        assertEquals(7, index.documentTerms(3, terms));
+        final int p53 = index.getNumber("p53");
+        final int receptor = index.getNumber("receptor");
+        assertEquals(index.getNumber("the"), terms.getInt(0));
+        assertEquals(p53, terms.getInt(1));
+        assertEquals(receptor, terms.getInt(2));
+        assertEquals(p53, terms.getInt(5));
+        assertEquals(receptor, terms.getInt(6));
+        assertTrue(Arrays.equals(new int[] {0, 1, 3}, index.query(receptor)));
+    }
+}
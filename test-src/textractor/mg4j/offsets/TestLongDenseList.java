@@ -18,12 +18,15 @@
 
 package textractor.mg4j.offsets;
 
+import it.unimi.dsi.mg4j.io.InputBitStream;
 import it.unimi.dsi.mg4j.io.OutputBitStream;
 import junit.framework.TestCase;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Random;
 
 /**
  * @author Fabien Campagne Date: Mar 9, 2006 Time: 11:04:27 PM
@@ -85,4 +88,73 @@ public class TestLongDenseList extends TestCase {
                     list.getLong(i));
         }
     }
+
+    public void testEliasFano() throws IOException {
+        final long[] offsets = randomOffsets(1000);
+        final byte[] array = new byte[16 * offsets.length];
+        final OutputBitStream streamer = new OutputBitStream(array);
+        long previous = 0;
+        for (final long offset : offsets) {
+            streamer.writeLongDelta(offset - previous);
+            previous = offset;
+        }
+        streamer.flush();
+
+        assertOffsets(offsets, LongDenseEliasFanoList.fromValues(offsets));
+        assertOffsets(offsets, LongDenseEliasFanoList.fromDeltas(
+                new InputBitStream(array), offsets.length));
+    }
+
+    public void testEliasFanoSaveAndLoad() throws IOException {
+        final long[] offsets = randomOffsets(700);
+        final File file = File.createTempFile("offsets", "-ef");
+        try {
+            LongDenseEliasFanoList.fromValues(offsets).save(file.getPath());
+            assertOffsets(offsets,
+                    LongDenseEliasFanoList.load(file.getPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testEliasFanoSmallLists() {
+        assertOffsets(new long[0],
+                LongDenseEliasFanoList.fromValues(new long[0]));
+        assertOffsets(new long[] {0},
+                LongDenseEliasFanoList.fromValues(new long[] {0}));
+        assertOffsets(new long[] {0, 0, 0, 7, 7},
+                LongDenseEliasFanoList.fromValues(new long[] {0, 0, 0, 7, 7}));
+        final long[] large = {1L << 40, (1L << 40) + 1, 1L << 50};
+        assertOffsets(large, LongDenseEliasFanoList.fromValues(large));
+    }
+
+    /**
+     * @param size The number of offsets
+     * @return Offsets in non-decreasing order with gaps of varying sizes
+     */
+    private long[] randomOffsets(final int size) {
+        final Random random = new Random(size);
+        final long[] offsets = new long[size];
+        long offset = 0;
+        for (int i = 0; i < size; i++) {
+            offset += random.nextBoolean() ? random.nextInt(3)
+                    : random.nextInt(100000);
+            offsets[i] = offset;
+        }
+        return offsets;
+    }
+
+    private void assertOffsets(final long[] offsets, final LongDenseEliasFanoList list) {
+        assertEquals(offsets.length, list.size());
+        for (int i = 0; i < offsets.length; ++i) {
+            assertEquals(("test failed for index: " + i), offsets[i],
+                    list.getLong(i));
+        }
+        try {
+            list.getLong(offsets.length);
+            fail("Index past the end of the list must not be accepted");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
 }
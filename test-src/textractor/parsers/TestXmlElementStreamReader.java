@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.parsers;
+
+import it.unimi.dsi.mg4j.util.MutableString;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Validates {@link XmlElementStreamReader}.
+ */
+public final class TestXmlElementStreamReader extends TestCase {
+    private static final String XML =
+            "<?xml version=\"1.0\"?>\n<CitationSet>\n"
+            + "<CitationSet2/>"
+            + "<Citation Owner=\"NLM\"><Id>1</Id></Citation>\n"
+            + "<Other>ignored</Other>"
+            + "<Citation><Id>2</Id><CitationList/></Citation>"
+            + "</CitationSet>\n";
+
+    /**
+     * Elements should be read in order and everything else skipped.
+     * @throws IOException if the text cannot be read
+     */
+    public void testElements() throws IOException {
+        assertElements(new StringReader(XML));
+    }
+
+    /**
+     * Tags that straddle reads should be found.
+     * @throws IOException if the text cannot be read
+     */
+    public void testOneCharacterAtATime() throws IOException {
+        assertElements(new StringReader(XML) {
+            @Override
+            public int read(final char[] buffer, final int offset, final int length)
+                    throws IOException {
+                return super.read(buffer, offset, Math.min(1, length));
+            }
+        });
+    }
+
+    /**
+     * Elements larger than the initial buffer should be read whole.
+     * @throws IOException if the text cannot be read
+     */
+    public void testLargeElement() throws IOException {
+        final StringBuilder text = new StringBuilder("<Citation>");
+        for (int i = 0; i < 100000; i++) {
+            text.append('x');
+        }
+        text.append("</Citation>");
+        final XmlElementStreamReader reader = new XmlElementStreamReader(
+                new StringReader("<Set>" + text + "</Set>"), "Citation");
+        final MutableString element = new MutableString();
+        assertTrue(reader.next(element));
+        assertEquals(text.toString(), element.toString());
+        assertFalse(reader.next(element));
+    }
+
+    /**
+     * An element that never ends is an error.
+     */
+    public void testUnterminatedElement() {
+        final XmlElementStreamReader reader = new XmlElementStreamReader(
+                new StringReader("<Citation><Id>1</Id>"), "Citation");
+        try {
+            reader.next(new MutableString());
+            fail("Unterminated element should not be read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertElements(final Reader input) throws IOException {
+        final XmlElementStreamReader reader =
+                new XmlElementStreamReader(input, "Citation");
+        final MutableString element = new MutableString();
+        assertTrue(reader.next(element));
+        assertEquals("<Citation Owner=\"NLM\"><Id>1</Id></Citation>",
+                element.toString());
+        element.length(0);
+        assertTrue(reader.next(element));
+        assertEquals("<Citation><Id>2</Id><CitationList/></Citation>",
+                element.toString());
+        assertFalse(reader.next(element));
+    }
+}
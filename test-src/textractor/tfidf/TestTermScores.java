@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tfidf;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import junit.framework.TestCase;
+import textractor.database.DocumentIndexManager;
+import textractor.mg4j.docstore.DocumentStoreReader;
+import textractor.mg4j.docstore.DocumentStoreWriter;
+import textractor.tools.BuildDocumentIndexFromTextDocuments;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates {@link textractor.tfidf.TermScores} and the sparse evaluation
+ * of {@link textractor.tfidf.TfIdfCalculator}.
+ */
+public final class TestTermScores extends TestCase {
+    private static final String[] WORDS = {
+            "protein", "kinase", "receptor", "binds", "liver", "cell",
+            "membrane", "the", "of", "p53", "tumor", "factor"
+    };
+
+    /**
+     * Vectors are searched, multiplied and expanded by term.
+     */
+    public void testVector() {
+        final TermScores first = new TermScores(new int[] {1, 4, 7},
+                new float[] {0.5f, 2f, 1f}, new int[] {1, 2, 1});
+        final TermScores second = new TermScores(new int[] {0, 4, 7, 9},
+                new float[] {3f, 0.5f, 4f, 1f}, new int[] {1, 1, 1, 1});
+        assertEquals(3, first.size());
+        assertEquals(1, first.find(4));
+        assertTrue(first.find(5) < 0);
+        assertEquals(2f, first.score(4), 0f);
+        assertEquals(0f, first.score(5), 0f);
+        assertEquals(5f, first.dot(second), 0f);
+        assertEquals(5f, second.dot(first), 0f);
+        assertTrue(Arrays.equals(new int[] {4, 7}, first.best(2)));
+        assertTrue(Arrays.equals(
+                TfIdfCalculator.bestScoresFavorLarge(second.toArray(10), 3),
+                second.best(3)));
+        assertTrue(Arrays.equals(new float[] {0, 0.5f, 0, 0, 2f, 0, 0, 1f},
+                first.toArray(8)));
+    }
+
+    /**
+     * Sparse scores are the tf-idf of the words counted in the documents,
+     * whether the documents are counted on one thread or several.
+     * @throws Exception if the index cannot be built
+     */
+    public void testEvaluatesSparse() throws Exception {
+        final String basename = "index/term-scores-test";
+        final String[] documents = new String[200];
+        for (int n = 0; n < documents.length; n++) {
+            final StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 3 + n % 7; w++) {
+                text.append(WORDS[(n * 7 + w * w) % WORDS.length]).append(' ');
+            }
+            documents[n] = text.toString();
+        }
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        indexBuilder.index(documents);
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final DocumentStoreWriter writer = new DocumentStoreWriter(docmanager);
+        for (int n = 0; n < documents.length; n++) {
+            writer.appendDocument(n, docmanager.extractTerms(documents[n]));
+        }
+        writer.close();
+
+        final DocumentStoreReader docstore = new DocumentStoreReader(docmanager);
+        final TfIdfCalculator calculator = new TfIdfCalculator(docstore, docmanager);
+        final IntArrayList selected = new IntArrayList();
+        for (int n = documents.length - 1; n >= 0; n -= 3) {
+            selected.add(n);
+        }
+        // a document counted twice
+        selected.add(7);
+        final int[] ids = selected.toIntArray();
+
+        final TermScores scores = calculator.evaluatesSparse(ids);
+        assertExpectedScores(docmanager, docstore, ids, scores);
+
+        final ExecutorService threadPool = Executors.newFixedThreadPool(3);
+        calculator.setThreadPool(threadPool, 4);
+        assertSameScores(scores, calculator.evaluatesSparse(ids));
+        // the pool is reused and stays open
+        assertSameScores(scores, calculator.evaluatesSparse(ids));
+        assertFalse(threadPool.isShutdown());
+
+        // pools without an idle thread leave the ranges to the calling thread
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable blocker = new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final ExecutorService bounded = new ThreadPoolExecutor(1, 1, 0L,
+                TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+        bounded.execute(blocker);
+        final ExecutorService busy = Executors.newFixedThreadPool(1);
+        busy.execute(blocker);
+        for (final ExecutorService saturated : new ExecutorService[] {bounded, busy}) {
+            calculator.setThreadPool(saturated, 4);
+            assertSameScores(scores, calculator.evaluatesSparse(ids));
+        }
+        release.countDown();
+        bounded.shutdown();
+        busy.shutdown();
+
+        // only the terms of the context are scored
+        final int kinase = docmanager.findTermIndex("kinase");
+        assertTrue(scores.find(kinase) >= 0);
+        final TermScores context = new TermScores(new int[] {kinase, 1000},
+                new float[] {1f, 1f}, new int[] {1, 1});
+        final TermScores filtered = calculator.evaluatesSparse(ids, context);
+        assertEquals(1, filtered.size());
+        assertEquals(kinase, filtered.getTerm(0));
+        assertEquals(scores.score(kinase), filtered.getScore(0), 0f);
+        assertEquals(0, calculator.evaluatesSparse(new int[0]).size());
+
+        threadPool.shutdown();
+        docstore.close();
+        docmanager.close();
+    }
+
+    /**
+     * @param expected The scores counted on one thread
+     * @param actual The scores counted on several threads
+     */
+    private static void assertSameScores(final TermScores expected,
+            final TermScores actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTerm(i), actual.getTerm(i));
+            assertEquals(expected.getScore(i), actual.getScore(i), 0f);
+            assertEquals(expected.getDocumentCount(i), actual.getDocumentCount(i));
+        }
+    }
+
+    /**
+     * @param docmanager The index of the documents
+     * @param docstore The words of the documents
+     * @param ids The documents the scores were calculated for
+     * @param scores The scores to check
+     * @throws Exception if the documents cannot be read
+     */
+    private static void assertExpectedScores(final DocumentIndexManager docmanager,
+            final DocumentStoreReader docstore, final int[] ids,
+            final TermScores scores) throws Exception {
+        final int[] frequencies = new int[docmanager.getNumberOfTerms() + 1];
+        final long sum = docstore.frequencies(ids, frequencies, null);
+        final int[] documentCounts = new int[frequencies.length];
+        final IntArrayList terms = new IntArrayList();
+        for (final int id : ids) {
+            docstore.documentTerms(id, terms);
+            final boolean[] seen = new boolean[frequencies.length];
+            for (int i = 0; i < terms.size(); i++) {
+                if (!seen[terms.getInt(i)]) {
+                    seen[terms.getInt(i)] = true;
+                    documentCounts[terms.getInt(i)]++;
+                }
+            }
+        }
+
+        int expectedSize = 0;
+        final float numberOfDocuments = docmanager.getDocumentNumber();
+        for (int term = 0; term < frequencies.length; term++) {
+            if (frequencies[term] == 0) {
+                assertTrue(scores.find(term) < 0);
+                continue;
+            }
+            expectedSize++;
+            final int i = scores.find(term);
+            assertTrue(docmanager.termAsString(term), i >= 0);
+            final float idf = (float) Math.log(numberOfDocuments
+                    / docmanager.frequency(term));
+            final float tf = (float) frequencies[term] / (float) sum;
+            assertEquals(tf * idf, scores.getScore(i), 0f);
+            assertEquals(documentCounts[term], scores.getDocumentCount(i));
+        }
+        assertEquals(expectedSize, scores.size());
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tools.lookup;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.htmlparser.util.DefaultParserFeedback;
+import textractor.database.DocumentIndexManager;
+import textractor.datamodel.ArticleInfo;
+import textractor.datamodel.ArticlePool;
+import textractor.datamodel.LookupResult;
+import textractor.mg4j.index.MemoryIndex;
+import textractor.mg4j.io.ProteinWordSplitterReader;
+import textractor.tools.BuildDocumentIndexFromHTMLArticles;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates that {@link textractor.tools.lookup.LookupProteinnameStandalone}
+ * finds the same terms whether the articles are indexed in memory or on
+ * disk.
+ */
+public final class TestLookupProteinnameStandalone extends TestCase {
+    /** Directory of the articles, dictionary and results of the tests. */
+    private static final String DIRECTORY = "index/lookup-standalone-test";
+
+    /** The articles to look terms up in. */
+    private static final String[] ARTICLES = {
+            "<html><body><p>The tumor suppressor p53 binds to the promoter of"
+                    + " cyclin D1. Protein kinase C (PKC) phosphorylates p53 at"
+                    + " serine 15. The R175H mutation of p53 is common.</p>"
+                    + "</body></html>",
+            "<html><body><p>Interleukin-2 receptor alpha is expressed in T"
+                    + " cells. Tumor necrosis factor activates protein kinase C."
+                    + " The IL-2/IL-4 receptors bind p53.</p></body></html>"
+    };
+
+    /** The terms of the dictionary. */
+    private static final String[] TERMS = {
+            "p53", "cyclin D1", "protein kinase C", "PKC", "(PKC)",
+            "interleukin-2 receptor", "tumor necrosis factor", "IL-2",
+            "IL-4 receptors", "absent kinase"
+    };
+
+    private File dictionaryFile;
+
+    @Override
+    protected void setUp() throws IOException {
+        final File directory = new File(DIRECTORY);
+        FileUtils.deleteDirectory(directory);
+        final File articles = new File(directory, "articles");
+        articles.mkdirs();
+        for (int i = 0; i < ARTICLES.length; i++) {
+            FileUtils.writeStringToFile(new File(articles, (10001 + i) + ".html"),
+                    ARTICLES[i], "UTF-8");
+        }
+        dictionaryFile = new File(directory, "dictionary.txt");
+        FileUtils.writeLines(dictionaryFile, "UTF-8", Arrays.asList(TERMS));
+    }
+
+    @Override
+    protected void tearDown() {
+        // the tool does not remove every file of its temporary disk index
+        final File[] files = new File(".").listFiles();
+        for (final File file : files) {
+            if (file.getName().startsWith("standalone-")) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Each term of the dictionary is found in the same documents and at the
+     * same positions in the index built in memory and in the index built on
+     * disk with the word reader of the lookup.
+     * @throws Exception if the articles cannot be indexed
+     */
+    public void testSameLookupResults() throws Exception {
+        final String[] args = {"-d", DIRECTORY + "/articles"};
+        final String basename = DIRECTORY + "/disk";
+
+        final ArticlePool diskArticles = new ArticlePool();
+        createIndexBuilder(basename, diskArticles).index(args);
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        assertTrue(docmanager.getWordReader() instanceof ProteinWordSplitterReader);
+
+        final ArticlePool memoryArticles = new ArticlePool();
+        final MemoryIndex index =
+                createIndexBuilder(basename, memoryArticles).indexInMemory(args);
+        assertEquals(docmanager.getDocumentNumber(), index.getNumberOfDocuments());
+        for (long pmid = 10001; pmid < 10001 + ARTICLES.length; pmid++) {
+            final ArticleInfo disk = diskArticles.getEntryByPMID(pmid);
+            final ArticleInfo memory = memoryArticles.getEntryByPMID(pmid);
+            assertEquals(disk.getDocumentNumberRangeStart(),
+                    memory.getDocumentNumberRangeStart());
+            assertEquals(disk.getDocumentNumberRangeLength(),
+                    memory.getDocumentNumberRangeLength());
+        }
+
+        final Dictionary dictionary =
+                new Dictionary(dictionaryFile.getPath(), false, false);
+        int found = 0;
+        for (final String term : TERMS) {
+            final LookupResult expected = dictionary.lookup(term, docmanager);
+            final LookupResult actual = dictionary.lookup(term, index);
+            assertSameResult(term, expected, actual);
+            if (expected != null) {
+                found++;
+            }
+        }
+        assertTrue(found > TERMS.length / 2);
+
+        final Map<String, LookupResult> expected = byTerm(
+                dictionary.lookupByTerm(docmanager));
+        final Map<String, LookupResult> actual = byTerm(
+                dictionary.lookupByTerm(index));
+        assertEquals(expected.keySet(), actual.keySet());
+        for (final String term : expected.keySet()) {
+            assertSameResult(term, expected.get(term), actual.get(term));
+        }
+        docmanager.close();
+    }
+
+    /**
+     * The tool writes the same hits with and without -diskIndex.
+     * @throws Exception if the lookup fails
+     */
+    public void testDiskIndexSwitch() throws Exception {
+        final String memoryHits = lookup("memory");
+        final String diskHits = lookup("disk", "-diskIndex");
+        assertTrue(memoryHits, memoryHits.contains("p53"));
+        assertEquals(diskHits, memoryHits);
+    }
+
+    /**
+     * Run the tool on the articles.
+     * @param name Name of the directory of the results
+     * @param options Additional options of the tool
+     * @return The hits written by the tool
+     * @throws Exception if the lookup fails
+     */
+    private String lookup(final String name, final String... options)
+            throws Exception {
+        final File results = new File(DIRECTORY, name);
+        results.mkdirs();
+        final List<String> args = new ArrayList<String>(Arrays.asList(
+                "-d", DIRECTORY + "/articles", "-dic", dictionaryFile.getPath(),
+                "-subDirectory", results.getPath(), "-o", "hits.txt"));
+        args.addAll(Arrays.asList(options));
+        final String[] allArgs = args.toArray(new String[args.size()]);
+        new LookupProteinnameStandalone(allArgs).process(allArgs);
+        return FileUtils.readFileToString(new File(results, "hits.txt"), "UTF-8");
+    }
+
+    /**
+     * @param basename The basename of the index on disk
+     * @param articlePool Records the sentences of each article
+     * @return A builder configured as the lookup configures it
+     */
+    private static BuildDocumentIndexFromHTMLArticles createIndexBuilder(
+            final String basename, final ArticlePool articlePool) {
+        final BuildDocumentIndexFromHTMLArticles indexBuilder =
+                new BuildDocumentIndexFromHTMLArticles(basename, false);
+        indexBuilder.setParserFeedBackLevel(DefaultParserFeedback.QUIET);
+        indexBuilder.setArticlePool(articlePool);
+        indexBuilder.getIndexerOptions().setWordReaderClassName(
+                ProteinWordSplitterReader.class.getName());
+        indexBuilder.setParenthesesAreWords(true);
+        return indexBuilder;
+    }
+
+    /**
+     * @param results Results of a lookup
+     * @return The results by term
+     */
+    private static Map<String, LookupResult> byTerm(
+            final Iterable<LookupResult> results) {
+        final Map<String, LookupResult> map = new HashMap<String, LookupResult>();
+        for (final LookupResult result : results) {
+            map.put(result.getTerm(), result);
+        }
+        return map;
+    }
+
+    /**
+     * @param term The term looked up
+     * @param expected The result of the lookup on disk
+     * @param actual The result of the lookup in memory
+     */
+    private static void assertSameResult(final String term,
+            final LookupResult expected, final LookupResult actual) {
+        if (expected == null) {
+            assertNull(term, actual);
+            return;
+        }
+        assertNotNull(term, actual);
+        assertTrue(term, Arrays.equals(expected.getDocuments(), actual.getDocuments()));
+        for (int i = 0; i < expected.getDocuments().length; i++) {
+            assertTrue(term, Arrays.equals(expected.getPositions(i),
+                    actual.getPositions(i)));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.tools.lookup;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import textractor.database.DocumentIndexManager;
+import textractor.datamodel.LookupResult;
+import textractor.mg4j.docstore.DocumentStoreReader;
+import textractor.mg4j.docstore.DocumentStoreWriter;
+import textractor.mg4j.index.LowercaseTermProcessor;
+import textractor.mg4j.index.MemoryIndex;
+import textractor.mg4j.io.ProteinWordSplitterReader;
+import textractor.tools.BuildDocumentIndexFromTextDocuments;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Validates the {@link textractor.tools.lookup.TermAutomaton} and the
+ * dictionary lookups that use it.
+ */
+public final class TestTermAutomaton extends TestCase {
+    /**
+     * Overlapping and nested sequences are all found where they end.
+     */
+    public void testMatch() {
+        final List<int[]> sequences = new ArrayList<int[]>();
+        sequences.add(new int[] {1, 2, 3});
+        sequences.add(new int[] {2, 3});
+        sequences.add(new int[] {3});
+        sequences.add(new int[] {2, 3, 4});
+        sequences.add(new int[] {1, 2, 3});
+        sequences.add(new int[] {1, -1});
+        sequences.add(new int[0]);
+        final TermAutomaton automaton = new TermAutomaton(sequences);
+        assertEquals(7, automaton.getNumberOfSequences());
+
+        final IntArrayList found = new IntArrayList();
+        final IntArrayList ends = new IntArrayList();
+        final int[] document = {1, 1, 2, 3, 4, -1, 2, -1, 3, 1, 2};
+        assertEquals(6, automaton.match(document, document.length, found, ends));
+        // the duplicate sequence is reported along with the first one
+        assertEquals(new IntArrayList(new int[] {4, 0, 1, 2, 3, 2}), found);
+        assertEquals(new IntArrayList(new int[] {3, 3, 3, 3, 4, 8}), ends);
+
+        // a term that is not indexed breaks the sequence
+        found.clear();
+        ends.clear();
+        assertEquals(1, automaton.match(new int[] {1, 2, -1, 3}, 4, found, ends));
+        assertEquals(2, found.getInt(0));
+        assertEquals(0, automaton.match(document, 0, found, ends));
+    }
+
+    /**
+     * The automaton finds the same terms as one phrase query per term, in
+     * a document store, in text and in an index held in memory.
+     * @throws Exception if the index cannot be built
+     */
+    public void testDictionaryLookup() throws Exception {
+        final String basename = "index/term-automaton-test";
+        final String[] documents = {
+                "the tumor necrosis factor binds its receptor",
+                "tumor necrosis factor receptor and necrosis factor",
+                "no protein name here",
+                "the receptor of the factor"
+        };
+        final BuildDocumentIndexFromTextDocuments indexBuilder =
+                new BuildDocumentIndexFromTextDocuments(basename);
+        indexBuilder.index(documents);
+        final DocumentIndexManager docmanager = new DocumentIndexManager(basename);
+        final DocumentStoreWriter writer = new DocumentStoreWriter(docmanager);
+        for (int n = 0; n < documents.length; n++) {
+            writer.appendDocument(n, docmanager.extractTerms(documents[n]));
+        }
+        writer.close();
+
+        final File dictionaryFile = new File(basename + ".dictionary");
+        FileUtils.writeLines(dictionaryFile, "UTF-8", Arrays.asList(
+                "tumor necrosis factor", "necrosis factor", "receptor",
+                "Factor Receptor", "kinase", "receptor kinase"));
+        final Dictionary dictionary =
+                new Dictionary(dictionaryFile.getPath(), false, false);
+
+        final Collection<LookupResult> expected = dictionary.lookupByTerm(docmanager);
+        assertEquals(4, expected.size());
+        final DocumentStoreReader docstore = new DocumentStoreReader(docmanager);
+        assertSameResults(expected, dictionary.lookupByTerm(docmanager, docstore));
+        docstore.close();
+        assertSameResults(expected,
+                dictionary.lookupByTerm(docmanager, Arrays.asList(documents)));
+        docmanager.close();
+
+        // and in an index held in memory
+        final MemoryIndex index = new MemoryIndex(
+                new ProteinWordSplitterReader(true),
+                LowercaseTermProcessor.getInstance(), Arrays.asList(documents));
+        assertSameResults(expected, dictionary.lookupByTerm(index));
+        final LookupResult result = dictionary.lookup("necrosis factor", index);
+        assertTrue(Arrays.equals(new int[] {0, 1}, result.getDocuments()));
+        assertTrue(Arrays.equals(new int[] {2, 6}, result.getPositions(1)));
+    }
+
+    /**
+     * @param expected The results of one query per term
+     * @param actual The results of the automaton
+     */
+    private static void assertSameResults(final Collection<LookupResult> expected,
+            final Collection<LookupResult> actual) {
+        assertEquals(expected.size(), actual.size());
+        final Iterator<LookupResult> results = actual.iterator();
+        for (final LookupResult result : expected) {
+            final LookupResult other = results.next();
+            assertEquals(result.getTerm(), other.getTerm());
+            assertTrue(Arrays.equals(result.getDocuments(), other.getDocuments()));
+            for (int i = 0; i < result.getDocuments().length; i++) {
+                assertTrue(result.getTerm(), Arrays.equals(
+                        result.getPositions(i), other.getPositions(i)));
+            }
+        }
+    }
+}
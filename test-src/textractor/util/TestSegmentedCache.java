@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2004-2009 Institute for Computational Biomedicine,
+ *                         Weill Medical College of Cornell University
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package textractor.util;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Validates the {@link textractor.util.SegmentedCache}.
+ */
+public final class TestSegmentedCache extends TestCase {
+    /**
+     * A cache of strings by number, where negative strings are stale.
+     */
+    private static final class StringCache extends SegmentedCache<Integer, String> {
+        private StringCache(final long maximumBytes, final int numberOfSegments) {
+            super(maximumBytes, numberOfSegments);
+        }
+
+        private String get(final int key) {
+            return get(Integer.valueOf(key));
+        }
+
+        private void put(final int key, final String value) {
+            put(Integer.valueOf(key), value, value.length());
+        }
+
+        @Override
+        protected boolean isCurrent(final String value) {
+            return !value.startsWith("-");
+        }
+    }
+
+    /**
+     * Values are found after they are added and counted as hits.
+     */
+    public void testHitsAndMisses() {
+        final StringCache cache = new StringCache(1024 * 1024, 4);
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        assertEquals("one", cache.get(1));
+        assertEquals("two", cache.get(2));
+        assertNull(cache.get(3));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+        assertEquals(2, cache.getNumberOfEntries());
+        assertEquals(6 + 2 * SegmentedCache.ENTRY_OVERHEAD, cache.getBytes());
+
+        cache.put(1, "uno");
+        assertEquals("uno", cache.get(1));
+        assertEquals(2, cache.getNumberOfEntries());
+        assertEquals(6 + 2 * SegmentedCache.ENTRY_OVERHEAD, cache.getBytes());
+
+        cache.clear();
+        assertEquals(0, cache.getNumberOfEntries());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get(1));
+    }
+
+    /**
+     * The least recently used values are evicted to stay within the size
+     * of the cache.
+     */
+    public void testEviction() {
+        final String value = new String(new char[100]);
+        final int entry = 100 + SegmentedCache.ENTRY_OVERHEAD;
+        final StringCache cache = new StringCache(3 * entry, 1);
+        cache.put(0, value);
+        cache.put(1, value);
+        cache.put(2, value);
+        // use 0 so that 1 is the least recently used
+        assertNotNull(cache.get(0));
+        cache.put(3, value);
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getNumberOfEntries());
+        assertEquals(3 * entry, cache.getBytes());
+        assertNotNull(cache.get(0));
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertNotNull(cache.get(3));
+
+        // too large to be cached at all
+        cache.put(4, new String(new char[3 * entry]));
+        assertNull(cache.get(4));
+        assertEquals(3, cache.getNumberOfEntries());
+
+        final StringCache disabled = new StringCache(0, 1);
+        disabled.put(0, "zero");
+        assertNull(disabled.get(0));
+    }
+
+    /**
+     * Values that are no longer current are removed when they are looked up.
+     */
+    public void testNotCurrent() {
+        final StringCache cache = new StringCache(1024, 1);
+        cache.put(0, "-stale");
+        cache.put(1, "current");
+        assertNull(cache.get(0));
+        assertEquals("current", cache.get(1));
+        assertEquals(1, cache.getNumberOfEntries());
+        assertEquals(7 + SegmentedCache.ENTRY_OVERHEAD, cache.getBytes());
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Several threads can use the cache at the same time.
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testConcurrentAccess() throws InterruptedException {
+        final StringCache cache = new StringCache(64 * 1024, 8);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            final int key = i % 500;
+                            final String value = cache.get(key);
+                            if (value == null) {
+                                cache.put(key, Integer.toString(key));
+                            } else {
+                                assertEquals(Integer.toString(key), value);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(4 * 10000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getBytes() <= 64 * 1024);
+    }
+}